@@ -1,9 +1,11 @@
 package com.github.analyticshub;
 
+import com.github.analyticshub.config.ProjectDataSourceSettings;
 import org.mybatis.spring.annotation.MapperScan;
 import org.springframework.boot.SpringApplication;
 import org.springframework.boot.autoconfigure.SpringBootApplication;
 import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.boot.context.properties.EnableConfigurationProperties;
 import org.springframework.context.event.EventListener;
 import org.springframework.core.env.Environment;
 import com.github.analyticshub.logging.StartupEnvironmentLogger;
@@ -22,6 +24,7 @@ import com.github.analyticshub.logging.StartupEnvironmentLogger;
  */
 @SpringBootApplication
 @MapperScan("com.github.analyticshub.mapper")
+@EnableConfigurationProperties(ProjectDataSourceSettings.class)
 public class AnalyticshubJavabackApplication {
 
     private static final System.Logger log = System.getLogger(AnalyticshubJavabackApplication.class.getName());
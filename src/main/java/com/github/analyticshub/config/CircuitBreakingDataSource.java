@@ -0,0 +1,83 @@
+package com.github.analyticshub.config;
+
+import com.github.analyticshub.exception.ProjectDbUnavailableException;
+import org.springframework.jdbc.datasource.DelegatingDataSource;
+
+import javax.sql.DataSource;
+import java.net.ConnectException;
+import java.sql.Connection;
+import java.sql.SQLException;
+
+/**
+ * 带熔断的项目数据源
+ * 熔断打开时 getConnection 直接抛出 ProjectDbUnavailableException（不等待连接超时），
+ * 获取连接的结果回报给熔断器；SQL 执行错误不计入。
+ * 只有建立连接失败（SQLState 08 类，或原因链中带驱动连接错误的超时）才计为失败：
+ * 连接池借用超时而数据库本身可达时，说明只是池被占满，不应打开熔断。
+ */
+final class CircuitBreakingDataSource extends DelegatingDataSource {
+
+    private final String projectId;
+    private final ProjectCircuitBreaker breaker;
+
+    CircuitBreakingDataSource(DataSource target, String projectId, ProjectCircuitBreaker breaker) {
+        super(target);
+        this.projectId = projectId;
+        this.breaker = breaker;
+    }
+
+    @Override
+    public Connection getConnection() throws SQLException {
+        if (!breaker.tryAcquire(System.nanoTime())) {
+            throw new ProjectDbUnavailableException(projectId);
+        }
+        try {
+            Connection connection = obtainTargetDataSource().getConnection();
+            breaker.onSuccess();
+            return connection;
+        } catch (SQLException | RuntimeException e) {
+            report(e);
+            throw e;
+        }
+    }
+
+    @Override
+    public Connection getConnection(String username, String password) throws SQLException {
+        if (!breaker.tryAcquire(System.nanoTime())) {
+            throw new ProjectDbUnavailableException(projectId);
+        }
+        try {
+            Connection connection = obtainTargetDataSource().getConnection(username, password);
+            breaker.onSuccess();
+            return connection;
+        } catch (SQLException | RuntimeException e) {
+            report(e);
+            throw e;
+        }
+    }
+
+    private void report(Exception e) {
+        if (isConnectFailure(e)) {
+            breaker.onFailure(System.nanoTime());
+        } else {
+            breaker.onInconclusive(System.nanoTime());
+        }
+    }
+
+    /**
+     * 是否为建立连接失败
+     * HikariCP 的借用超时（SQLTransientConnectionException）会把最近一次建连错误作为 cause 并沿用其 SQLState，
+     * 因此沿原因链查找 08 类 SQLState 或 ConnectException 即可区分“库不可达”和“池已满”。
+     */
+    static boolean isConnectFailure(Throwable e) {
+        for (Throwable t = e; t != null; t = t.getCause() == t ? null : t.getCause()) {
+            if (t instanceof SQLException sql && sql.getSQLState() != null && sql.getSQLState().startsWith("08")) {
+                return true;
+            }
+            if (t instanceof ConnectException) {
+                return true;
+            }
+        }
+        return false;
+    }
+}
@@ -3,21 +3,67 @@ package com.github.analyticshub.config;
 import com.baomidou.mybatisplus.core.conditions.query.LambdaQueryWrapper;
 import com.github.analyticshub.entity.AnalyticsProject;
 import com.github.analyticshub.mapper.AnalyticsProjectMapper;
+import com.github.analyticshub.util.BoundedLruCache;
 import com.github.analyticshub.util.CryptoUtils;
 import com.zaxxer.hikari.HikariConfig;
 import com.zaxxer.hikari.HikariDataSource;
+import jakarta.annotation.PostConstruct;
 import jakarta.annotation.PreDestroy;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
 
 import javax.sql.DataSource;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.LocalTime;
+import java.time.format.DateTimeParseException;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
 import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
 import java.util.regex.Pattern;
 
 /**
  * 多数据源管理器
  * 管理多个项目的数据库连接池
  * 使用HikariCP实现高性能连接池
+ *
+ * 项目配置：启动时将系统库中的全部项目加载为不可变快照，请求线程只读快照、不访问系统库。
+ * 本节点的管理端变更（提交后）立即更新快照；其他节点的变更由后台定时刷新同步。
+ * 未知项目ID按 TTL 负向缓存，首次出现时触发一次（限频的）后台刷新，以便尽快识别其他节点新建的项目。
+ *
+ * 连接池模式（app.project-datasource.pooling）：
+ * - per-project：每个项目独立连接池，通过 currentSchema 定位项目 schema；
+ * - shared：(host, port, db, user) 相同的项目共用一个连接池，getTableName 返回带 schema 的全限定表名。
+ * 连接池容量按观测到的需求自适应调整（见 ProjectConnectionPool）。
+ *
+ * 空闲回收：超过 idle-timeout 无访问（或超出 max-pools 时最久未访问）且无活跃连接的连接池被摘除并排空后关闭。
+ * 预热：连接池首次访问或空闲超过 after-idle 后的首个请求、以及 warmup.schedule 配置的时间点（projectId@HH:mm，服务器时区），
+ * 在后台提前建立连接。
+ *
+ * 熔断：getDataSource 返回带熔断的数据源（每项目一个熔断器），连续获取连接失败后快速失败（ProjectDbUnavailableException），
+ * 避免请求线程逐个等待连接超时；连接池创建不再同步建立连接。
+ *
+ * 热切换：项目连接配置变更（管理端重载或后台刷新）时，先创建并预热新连接池，再原子切换项目映射，
+ * 旧连接池不再分配新请求，待活跃连接归还（最长 drain-timeout）后关闭；连接配置未变化时沿用原连接池。
+ *
+ * 只读副本：配置了副本的项目，getReadDataSource 返回路由数据源（见 ReplicaRoutingDataSource），
+ * 分析查询在副本可用且复制延迟不超过 max-lag 时走副本（只读连接池），否则回退主库；未配置副本时等同 getDataSource。
  */
 @Component
 public class MultiDataSourceManager {
@@ -33,33 +79,337 @@ public class MultiDataSourceManager {
     private static final Pattern IDENTIFIER_PATTERN = Pattern.compile("^[a-z0-9_]+$");
     private static final Pattern PROJECT_ID_PATTERN = Pattern.compile("^[a-z0-9_-]+$");
 
+    // 未知项目触发的按需刷新最小间隔
+    private static final long ON_DEMAND_REFRESH_INTERVAL_MS = 5000;
+    // 摘除的连接池至少保留该时长，给已取得数据源、尚未借出连接的请求留出时间
+    private static final long POOL_CLOSE_MIN_GRACE_MS = 1000;
+    private static final long POOL_DRAIN_CHECK_INTERVAL_MS = 200;
+
     private final AnalyticsProjectMapper projectMapper;
-    
+    private final long negativeTtlNanos;
+
+    private final boolean sharedPools;
+    private final int maxPoolSize;
+    private final int minIdle;
+    private final int adaptiveMinPoolSize;
+    private final long connectionTimeoutMs;
+    private final long drainTimeoutMs;
+    private final boolean circuitBreakerEnabled;
+    private final int circuitFailureThreshold;
+    private final long circuitOpenDurationMs;
+    private final Map<String, ProjectCircuitBreaker> circuitBreakers = new ConcurrentHashMap<>();
+    private final Map<String, CircuitBreakingDataSource> guardedDataSources = new ConcurrentHashMap<>();
+    private final boolean replicaEnabled;
+    private final int replicaMaxPoolSize;
+    private final long replicaMaxLagMs;
+    private final long replicaLagCheckIntervalMs;
+    private final long replicaRetryAfterMs;
+    // 项目 → 只读副本路由
+    private final Map<String, ReplicaRoute> replicaRoutes = new ConcurrentHashMap<>();
+    private final long idleTimeoutNanos;
+    private final int maxPools;
+    private final int warmupConnections;
+    private final long warmupAfterIdleNanos;
+    private final List<WarmupWindow> warmupWindows;
+    private final Map<WarmupWindow, LocalDate> warmupFiredOn = new ConcurrentHashMap<>();
 
-    // 数据库连接池缓存
-    private final Map<String, HikariDataSource> dataSources = new ConcurrentHashMap<>();
+    // 连接池（按连接目标分组）与项目 → 连接池映射
+    private final Map<PoolKey, ProjectConnectionPool> pools = new ConcurrentHashMap<>();
+    private final Map<String, ProjectConnectionPool> projectPools = new ConcurrentHashMap<>();
+    // 已回收、等待延迟关闭的连接池
+    private final Set<ProjectConnectionPool> closingPools = ConcurrentHashMap.newKeySet();
     
-    // 项目配置缓存
-    private final Map<String, ProjectConfig> projectConfigs = new ConcurrentHashMap<>();
+    // 项目配置快照（不可变，整体替换）
+    private volatile Map<String, ProjectConfig> projectConfigs = Map.of();
+    private final Object snapshotLock = new Object();
+    private volatile long snapshotVersion;
+
+    // 未知项目ID → 负向缓存到期时间（nanoTime）
+    private final BoundedLruCache<String, Long> unknownProjects;
+
+    private final ScheduledExecutorService refresher;
+    private final ScheduledExecutorService poolMaintainer;
+    private final AtomicBoolean refreshQueued = new AtomicBoolean();
+    private final AtomicLong lastOnDemandRefreshMillis = new AtomicLong();
+    // 连接池切换串行执行（管理端重载与后台刷新）
+    private final Object swapLock = new Object();
 
-    public MultiDataSourceManager(AnalyticsProjectMapper projectMapper) {
+    public MultiDataSourceManager(AnalyticsProjectMapper projectMapper,
+                                  @Value("${app.project-config.refresh-interval-ms:60000}") long refreshIntervalMs,
+                                  @Value("${app.project-config.negative-ttl-ms:30000}") long negativeTtlMs,
+                                  @Value("${app.project-config.negative-max-size:10000}") int negativeMaxSize,
+                                  ProjectDataSourceSettings settings) {
         this.projectMapper = projectMapper;
+        this.negativeTtlNanos = negativeTtlMs * 1_000_000L;
+        this.unknownProjects = new BoundedLruCache<>(Math.max(1, negativeMaxSize));
+        String pooling = settings.pooling();
+        this.sharedPools = switch (pooling == null ? "" : pooling.trim().toLowerCase(Locale.ROOT)) {
+            case "", "per-project" -> false;
+            case "shared" -> true;
+            default -> throw new IllegalArgumentException("app.project-datasource.pooling 仅支持 per-project 或 shared: " + pooling);
+        };
+        this.maxPoolSize = Math.max(1, settings.maxPoolSize());
+        this.minIdle = Math.max(0, Math.min(settings.minIdle(), this.maxPoolSize));
+        // Hikari 要求连接超时不小于 250ms
+        this.connectionTimeoutMs = Math.max(250, settings.connectionTimeoutMs());
+        this.drainTimeoutMs = Math.max(POOL_CLOSE_MIN_GRACE_MS, settings.drainTimeoutMs());
+        ProjectDataSourceSettings.AdaptiveSizing adaptive = settings.adaptiveSizing();
+        // 关闭自适应时容量固定为 max-pool-size
+        this.adaptiveMinPoolSize = adaptive.enabled() ? adaptive.minPoolSize() : this.maxPoolSize;
+        long idleTimeoutMs = settings.eviction().idleTimeoutMs();
+        this.idleTimeoutNanos = Math.max(0, idleTimeoutMs) * 1_000_000L;
+        this.maxPools = Math.max(0, settings.eviction().maxPools());
+        ProjectDataSourceSettings.Warmup warmup = settings.warmup();
+        this.warmupConnections = Math.max(0, warmup.connections());
+        this.warmupAfterIdleNanos = Math.max(0, warmup.afterIdleMs()) * 1_000_000L;
+        this.warmupWindows = WarmupWindow.parseAll(warmup.schedule());
+        ProjectDataSourceSettings.CircuitBreaker breaker = settings.circuitBreaker();
+        this.circuitBreakerEnabled = breaker.enabled();
+        this.circuitFailureThreshold = breaker.failureThreshold();
+        this.circuitOpenDurationMs = breaker.openDurationMs();
+        ProjectDataSourceSettings.Replica replica = settings.replica();
+        this.replicaEnabled = replica.enabled();
+        this.replicaMaxPoolSize = Math.max(1, replica.maxPoolSize());
+        this.replicaMaxLagMs = Math.max(0, replica.maxLagMs());
+        this.replicaLagCheckIntervalMs = replica.lagCheckIntervalMs();
+        this.replicaRetryAfterMs = replica.retryAfterMs();
+
+        this.refresher = Executors.newSingleThreadScheduledExecutor(Thread.ofPlatform()
+                .name("project-config-refresher").daemon(true).factory());
+        if (refreshIntervalMs > 0) {
+            this.refresher.scheduleWithFixedDelay(this::refreshQuietly,
+                    refreshIntervalMs, refreshIntervalMs, TimeUnit.MILLISECONDS);
+        }
+
+        this.poolMaintainer = Executors.newSingleThreadScheduledExecutor(Thread.ofPlatform()
+                .name("project-pool-maintainer").daemon(true).factory());
+        if (adaptive.enabled()) {
+            long sample = Math.max(100, adaptive.sampleIntervalMs());
+            long resize = Math.max(sample, adaptive.resizeIntervalMs());
+            this.poolMaintainer.scheduleWithFixedDelay(() -> forEachPool(ProjectConnectionPool::sample),
+                    sample, sample, TimeUnit.MILLISECONDS);
+            this.poolMaintainer.scheduleWithFixedDelay(() -> forEachPool(ProjectConnectionPool::resize),
+                    resize, resize, TimeUnit.MILLISECONDS);
+        }
+        if (idleTimeoutNanos > 0 || this.maxPools > 0) {
+            long check = idleTimeoutMs > 0 ? Math.max(1000, Math.min(60_000, idleTimeoutMs / 2)) : 60_000;
+            this.poolMaintainer.scheduleWithFixedDelay(this::evictIdlePoolsQuietly, check, check, TimeUnit.MILLISECONDS);
+        }
+        if (!warmupWindows.isEmpty()) {
+            this.poolMaintainer.scheduleWithFixedDelay(this::runScheduledWarmups, 1, 20, TimeUnit.SECONDS);
+        }
+    }
+
+    /**
+     * 启动时加载项目快照；系统库暂不可用时以空快照启动，由后台刷新重试
+     */
+    @PostConstruct
+    public void loadSnapshot() {
+        try {
+            refreshProjects();
+        } catch (RuntimeException e) {
+            log.log(System.Logger.Level.WARNING, "加载项目配置快照失败，将由后台刷新重试: {0}", e.getMessage());
+        }
     }
 
     /**
      * 获取项目的数据源
      */
     public DataSource getDataSource(String projectId) {
+        ProjectConnectionPool pool = acquirePool(projectId);
+        if (pool.touch(System.nanoTime(), warmupAfterIdleNanos) && warmupConnections > 0) {
+            startWarmup(pool);
+        }
+        if (!circuitBreakerEnabled) {
+            return pool.dataSource();
+        }
+        // 每个项目复用同一个包装实例：事务资源按 DataSource 实例绑定
+        CircuitBreakingDataSource guarded = guardedDataSources.get(projectId);
+        if (guarded != null && guarded.getTargetDataSource() == pool.dataSource()) {
+            return guarded;
+        }
+        return guardedDataSources.compute(projectId, (id, existing) ->
+                existing != null && existing.getTargetDataSource() == pool.dataSource()
+                        ? existing
+                        : new CircuitBreakingDataSource(pool.dataSource(), id,
+                                circuitBreakers.computeIfAbsent(id, key ->
+                                        new ProjectCircuitBreaker(circuitFailureThreshold, circuitOpenDurationMs))));
+    }
+
+    /**
+     * 项目熔断器是否未处于 CLOSED（OPEN 或 HALF_OPEN）
+     * 供非必要的探测查询判断：此时不应占用 HALF_OPEN 唯一的试探名额
+     */
+    public boolean isCircuitOpen(String projectId) {
+        ProjectCircuitBreaker breaker = circuitBreakers.get(projectId);
+        return breaker != null && breaker.state() != ProjectCircuitBreaker.State.CLOSED;
+    }
+
+    /**
+     * 获取项目的只读数据源（分析查询）
+     * 配置了只读副本时按副本健康状况与复制延迟路由，否则返回主库数据源
+     */
+    public DataSource getReadDataSource(String projectId) {
+        if (!replicaEnabled) {
+            return getDataSource(projectId);
+        }
+        ProjectConfig config = requireActiveConfig(projectId);
+        if (config.replica() == null) {
+            return getDataSource(projectId);
+        }
+        PoolKey key = replicaKeyOf(projectId, config);
+        while (true) {
+            ReplicaRoute route = replicaRoutes.computeIfAbsent(projectId, id -> createReplicaRoute(id, key));
+            if (route.key().equals(key) && !route.dataSource().replica().isRetired()) {
+                return route.dataSource();
+            }
+            // 副本配置已变更或连接池已回收
+            if (replicaRoutes.remove(projectId, route)) {
+                retireReplica(route);
+            }
+        }
+    }
+
+    /**
+     * 各项目只读副本的复制延迟（毫秒，尚未检测为 -1）
+     */
+    Map<String, Long> replicaLags() {
+        Map<String, Long> lags = new TreeMap<>();
+        replicaRoutes.forEach((projectId, route) -> lags.put(projectId, route.dataSource().lagMs()));
+        return lags;
+    }
+
+    /**
+     * 各项目的熔断状态
+     */
+    Map<String, ProjectCircuitBreaker.Snapshot> circuitBreakerSnapshots() {
+        Map<String, ProjectCircuitBreaker.Snapshot> snapshots = new TreeMap<>();
+        circuitBreakers.forEach((projectId, breaker) -> snapshots.put(projectId, breaker.snapshot()));
+        return snapshots;
+    }
+
+    /**
+     * 启动预热：创建项目连接池并同步建立 min-idle 个连接
+     *
+     * @return 建立的连接数
+     */
+    public int prewarm(String projectId) {
+        ProjectConnectionPool pool = acquirePool(projectId);
+        pool.touch(System.nanoTime(), 0);
+        return pool.warmup(Math.max(1, minIdle));
+    }
+
+    /**
+     * 快照中所有启用的项目ID
+     */
+    public List<String> activeProjectIds() {
+        return projectConfigs.values().stream()
+                .filter(config -> Boolean.TRUE.equals(config.isActive()))
+                .map(ProjectConfig::projectId)
+                .sorted()
+                .toList();
+    }
+
+    private ProjectConnectionPool acquirePool(String projectId) {
         // Lazy init per project to avoid creating pools for unused projects.
-        return dataSources.computeIfAbsent(projectId, this::createDataSource);
+        while (true) {
+            ProjectConnectionPool pool = projectPools.computeIfAbsent(projectId, this::attachPool);
+            if (!pool.isRetired()) {
+                return pool;
+            }
+            // 连接池刚被回收，重新挂到新连接池
+            projectPools.remove(projectId, pool);
+        }
+    }
+
+    /**
+     * 是否为共享连接池模式（表名带 schema 限定）
+     */
+    public boolean isSharedPooling() {
+        return sharedPools;
     }
 
     /**
      * 获取项目配置
      */
     public ProjectConfig getProjectConfig(String projectId) {
-        // computeIfAbsent will cache the loaded config; do not manually put inside loadProjectConfig.
-        return projectConfigs.computeIfAbsent(projectId, this::loadProjectConfig);
+        ProjectConfig config = projectId == null ? null : projectConfigs.get(projectId);
+        if (config != null) {
+            return config;
+        }
+        validateProjectId(projectId);
+
+        long now = System.nanoTime();
+        Long unknownUntil = unknownProjects.get(projectId);
+        if (unknownUntil == null || now >= unknownUntil) {
+            unknownProjects.put(projectId, now + negativeTtlNanos);
+            log.log(System.Logger.Level.WARNING, "Project not found: {0} ({1})", projectId, debugValue(projectId));
+            requestRefresh();
+        }
+        return null;
+    }
+
+    /**
+     * 从系统库重新加载全部项目并替换快照
+     */
+    public void refreshProjects() {
+        // 查询期间若有单项目重载（管理端变更），重新查询，避免用旧数据覆盖新快照
+        for (int attempt = 0; attempt < 3; attempt++) {
+            long version = snapshotVersion;
+            List<AnalyticsProject> projects = projectMapper.selectList(new LambdaQueryWrapper<>());
+            Map<String, ProjectConfig> loaded = new HashMap<>();
+            for (AnalyticsProject project : projects) {
+                ProjectConfig config = toProjectConfigOrNull(project);
+                if (config != null) {
+                    loaded.put(config.projectId(), config);
+                }
+            }
+            synchronized (snapshotLock) {
+                if (version != snapshotVersion) {
+                    continue;
+                }
+                projectConfigs = Map.copyOf(loaded);
+                snapshotVersion++;
+            }
+            loaded.keySet().forEach(unknownProjects::remove);
+            log.log(System.Logger.Level.DEBUG, "Loaded project config snapshot: {0} projects", loaded.size());
+            // 其他节点修改了连接配置的项目：切换到新连接池
+            Set<String> withPools = new HashSet<>(projectPools.keySet());
+            withPools.addAll(replicaRoutes.keySet());
+            for (String projectId : withPools) {
+                swapPoolIfChanged(projectId, loaded.get(projectId));
+            }
+            return;
+        }
+    }
+
+    private void refreshQuietly() {
+        try {
+            refreshProjects();
+        } catch (RuntimeException e) {
+            log.log(System.Logger.Level.WARNING, "刷新项目配置快照失败: {0}", e.getMessage());
+        }
+    }
+
+    /**
+     * 后台刷新快照（限频，同一时间最多排队一次）
+     */
+    private void requestRefresh() {
+        long now = System.currentTimeMillis();
+        long last = lastOnDemandRefreshMillis.get();
+        if (now - last < ON_DEMAND_REFRESH_INTERVAL_MS || !lastOnDemandRefreshMillis.compareAndSet(last, now)) {
+            return;
+        }
+        if (refreshQueued.compareAndSet(false, true)) {
+            try {
+                refresher.execute(() -> {
+                    refreshQueued.set(false);
+                    refreshQuietly();
+                });
+            } catch (RuntimeException e) {
+                refreshQueued.set(false);
+            }
+        }
     }
 
     /**
@@ -78,83 +428,396 @@ public class MultiDataSourceManager {
 
         String tableName = config.tablePrefix() + baseName;
         validateIdentifier(tableName, "table name", MAX_TABLE_NAME_LENGTH);
+        return qualifyTableName(config, tableName);
+    }
+
+    /**
+     * 获取项目 schema 中不带项目前缀的表名（如同一 schema 内各项目共用、按 project_id 区分的 analytics_idempotency_keys）
+     */
+    public String getSchemaTableName(String projectId, String tableName) {
+        ProjectConfig config = getProjectConfig(projectId);
+        if (config == null) {
+            throw new IllegalArgumentException("Project not found: " + projectId);
+        }
+        validateProjectId(projectId);
+        validateIdentifier(tableName, "table name", MAX_TABLE_NAME_LENGTH);
+        validateIdentifier(config.dbSchema(), "database schema", MAX_SCHEMA_NAME_LENGTH);
+        return qualifyTableName(config, tableName);
+    }
+
+    private String qualifyTableName(ProjectConfig config, String tableName) {
+        // 共享连接池不设置 currentSchema，表名必须带 schema 限定
+        if (sharedPools) {
+            return quoteIdentifier(config.dbSchema()) + "." + quoteIdentifier(tableName);
+        }
         return quoteIdentifier(tableName);
     }
 
     /**
-     * 创建数据源
+     * 将项目挂到对应的连接池（不存在则创建）
      */
-    private HikariDataSource createDataSource(String projectId) {
+    private ProjectConnectionPool attachPool(String projectId) {
+        return attachPool(projectId, requireActiveConfig(projectId));
+    }
+
+    private ProjectConnectionPool attachPool(String projectId, ProjectConfig config) {
+        return pools.compute(poolKeyOf(projectId, config), (k, existing) -> {
+            ProjectConnectionPool pool = existing != null ? existing : createPool(k);
+            pool.projectIds().add(projectId);
+            return pool;
+        });
+    }
+
+    private PoolKey poolKeyOf(String projectId, ProjectConfig config) {
+        // 独立模式下 schema 体现在 JDBC URL（currentSchema）中，变更需要新连接池；共享模式下体现在表名中
+        return sharedPools
+                ? new PoolKey(null, config.dbHost(), config.dbPort(), config.dbName(), null, config.dbUser(), config.dbPassword())
+                : new PoolKey(projectId, config.dbHost(), config.dbPort(), config.dbName(), config.dbSchema(),
+                        config.dbUser(), config.dbPassword());
+    }
+
+    /**
+     * 只读副本连接池键：副本与主库库名 / schema 相同，始终按项目独立建池（currentSchema 定位 schema）
+     */
+    private static PoolKey replicaKeyOf(String projectId, ProjectConfig config) {
+        ReplicaConfig replica = config.replica();
+        return new PoolKey(projectId, replica.host(), replica.port(), config.dbName(), config.dbSchema(),
+                replica.user(), replica.password());
+    }
+
+    /**
+     * 连接配置变化时热切换项目的连接池：先创建并预热新连接池，再切换映射，旧连接池排空后关闭
+     *
+     * @param config 新配置；null 或未启用表示项目已删除/停用，只摘除旧连接池
+     */
+    private void swapPoolIfChanged(String projectId, ProjectConfig config) {
+        synchronized (swapLock) {
+            ProjectConnectionPool current = projectPools.get(projectId);
+            boolean active = config != null && Boolean.TRUE.equals(config.isActive());
+            ReplicaRoute route = replicaRoutes.get(projectId);
+            if (route != null && (!active || config.replica() == null || !route.key().equals(replicaKeyOf(projectId, config)))
+                    && replicaRoutes.remove(projectId, route)) {
+                retireReplica(route);
+            }
+            if (current == null && !active) {
+                return;
+            }
+            PoolKey target = active ? poolKeyOf(projectId, config) : null;
+            if (current != null && !current.isRetired() && target != null && target.equals(keyOf(current))) {
+                return;
+            }
+
+            ProjectConnectionPool replacement = null;
+            if (current != null && target != null) {
+                try {
+                    replacement = attachPool(projectId, config);
+                    replacement.touch(System.nanoTime(), 0);
+                    // 已在服务其他项目的共享连接池无需预热
+                    if (replacement.projectIds().size() == 1) {
+                        int warmed = replacement.warmup(Math.max(1, minIdle));
+                        log.log(System.Logger.Level.INFO, "Prepared datasource {0} for project {1}: {2} connections",
+                                replacement.poolName(), projectId, warmed);
+                    }
+                } catch (RuntimeException e) {
+                    // 新连接池不可用时仍切换：配置已生效，由熔断器处理后续失败
+                    log.log(System.Logger.Level.WARNING, "创建新连接池失败: {0} ({1})", projectId, e.getMessage());
+                }
+            }
+
+            // 配置已变更，熔断状态重新统计
+            circuitBreakers.remove(projectId);
+            guardedDataSources.remove(projectId);
+            if (replacement != null) {
+                projectPools.put(projectId, replacement);
+            } else {
+                // 未预建新连接池：下次访问按新配置懒创建
+                projectPools.remove(projectId);
+            }
+            if (current != null && current != replacement) {
+                releasePool(projectId, current);
+            }
+        }
+    }
+
+    /**
+     * 将项目从连接池摘除；连接池不再被任何项目使用时排空后关闭
+     */
+    private void releasePool(String projectId, ProjectConnectionPool pool) {
+        PoolKey key = keyOf(pool);
+        if (key == null) {
+            return;
+        }
+        boolean[] released = {false};
+        pools.computeIfPresent(key, (k, existing) -> {
+            existing.projectIds().remove(projectId);
+            if (!existing.projectIds().isEmpty()) {
+                return existing;
+            }
+            existing.retire();
+            released[0] = true;
+            return null;
+        });
+        if (released[0]) {
+            log.log(System.Logger.Level.INFO, "Draining datasource: {0}", pool.poolName());
+            pool.softEvictIdleConnections();
+            closeLater(pool);
+        }
+    }
+
+    /**
+     * 回收空闲连接池
+     */
+    void evictIdlePools() {
+        long now = System.nanoTime();
+        if (idleTimeoutNanos > 0) {
+            for (Map.Entry<PoolKey, ProjectConnectionPool> entry : pools.entrySet()) {
+                if (entry.getValue().isIdleLongerThan(now, idleTimeoutNanos)) {
+                    evictPool(entry.getKey(), entry.getValue(), now, idleTimeoutNanos, "idle");
+                }
+            }
+        }
+        if (idleTimeoutNanos > 0) {
+            for (ReplicaRoute route : replicaRoutes.values()) {
+                ProjectConnectionPool replica = route.dataSource().replica();
+                if (replica.isIdleLongerThan(now, idleTimeoutNanos) && replica.activeConnections() == 0
+                        && replicaRoutes.values().remove(route)) {
+                    log.log(System.Logger.Level.INFO, "Evicting idle datasource: {0}", replica.poolName());
+                    retireReplica(route);
+                }
+            }
+        }
+        if (maxPools > 0 && pools.size() > maxPools) {
+            List<Map.Entry<PoolKey, ProjectConnectionPool>> lru = new ArrayList<>(pools.entrySet());
+            lru.sort(Comparator.comparingLong(entry -> entry.getValue().lastAccessNanos()));
+            int excess = pools.size() - maxPools;
+            for (int i = 0; i < lru.size() && excess > 0; i++) {
+                if (evictPool(lru.get(i).getKey(), lru.get(i).getValue(), now, 0, "lru")) {
+                    excess--;
+                }
+            }
+        }
+    }
+
+    private void evictIdlePoolsQuietly() {
+        try {
+            evictIdlePools();
+        } catch (RuntimeException e) {
+            log.log(System.Logger.Level.WARNING, "回收空闲连接池失败: {0}", e.getMessage());
+        }
+    }
+
+    /**
+     * 摘除连接池并延迟关闭；仍有活跃连接或判定后被再次访问的连接池保留
+     */
+    private boolean evictPool(PoolKey key, ProjectConnectionPool pool, long now, long minIdleNanos, String reason) {
+        boolean[] evicted = {false};
+        pools.computeIfPresent(key, (k, existing) -> {
+            if (existing != pool || pool.activeConnections() > 0
+                    || (minIdleNanos > 0 && !pool.isIdleLongerThan(now, minIdleNanos))) {
+                return existing;
+            }
+            pool.retire();
+            evicted[0] = true;
+            return null;
+        });
+        if (!evicted[0]) {
+            return false;
+        }
+        for (String projectId : pool.projectIds()) {
+            projectPools.remove(projectId, pool);
+        }
+        log.log(System.Logger.Level.INFO, "Evicting {0} datasource: {1}", reason, pool.poolName());
+        closeLater(pool);
+        return true;
+    }
+
+    private void retireReplica(ReplicaRoute route) {
+        ProjectConnectionPool replica = route.dataSource().replica();
+        replica.retire();
+        replica.softEvictIdleConnections();
+        closeLater(replica);
+    }
+
+    /**
+     * 排空后关闭连接池：活跃连接全部归还（且已过最短保留时间）或超过 drain-timeout 时关闭
+     */
+    private void closeLater(ProjectConnectionPool pool) {
+        closingPools.add(pool);
+        long now = System.nanoTime();
+        scheduleDrainCheck(pool, now + POOL_CLOSE_MIN_GRACE_MS * 1_000_000L, now + drainTimeoutMs * 1_000_000L);
+    }
+
+    private void scheduleDrainCheck(ProjectConnectionPool pool, long earliestNanos, long deadlineNanos) {
+        try {
+            poolMaintainer.schedule(() -> checkDrained(pool, earliestNanos, deadlineNanos),
+                    POOL_DRAIN_CHECK_INTERVAL_MS, TimeUnit.MILLISECONDS);
+        } catch (RuntimeException e) {
+            closeQuietly(pool);
+        }
+    }
+
+    private void checkDrained(ProjectConnectionPool pool, long earliestNanos, long deadlineNanos) {
+        if (!closingPools.contains(pool)) {
+            return;
+        }
+        long now = System.nanoTime();
+        int active;
+        try {
+            active = pool.activeConnections();
+        } catch (RuntimeException e) {
+            active = 0;
+        }
+        if (now - deadlineNanos >= 0) {
+            if (active > 0) {
+                log.log(System.Logger.Level.WARNING, "连接池排空超时，强制关闭: {0}（活跃连接 {1}）", pool.poolName(), active);
+            }
+            closeQuietly(pool);
+        } else if (active == 0 && now - earliestNanos >= 0) {
+            closeQuietly(pool);
+        } else {
+            scheduleDrainCheck(pool, earliestNanos, deadlineNanos);
+        }
+    }
+
+    private void closeQuietly(ProjectConnectionPool pool) {
+        closingPools.remove(pool);
+        try {
+            pool.close();
+            log.log(System.Logger.Level.INFO, "Closed datasource: {0}", pool.poolName());
+        } catch (RuntimeException e) {
+            log.log(System.Logger.Level.ERROR, "Failed to close datasource", e);
+        }
+    }
+
+    private void startWarmup(ProjectConnectionPool pool) {
+        Thread.ofVirtual().name("project-pool-warmup").start(() -> pool.warmup(warmupConnections));
+    }
+
+    /**
+     * 按计划时间点预热（每个时间点每天一次）
+     */
+    private void runScheduledWarmups() {
+        LocalDateTime now = LocalDateTime.now();
+        for (WarmupWindow window : warmupWindows) {
+            if (!window.isDue(now) || now.toLocalDate().equals(warmupFiredOn.get(window))) {
+                continue;
+            }
+            warmupFiredOn.put(window, now.toLocalDate());
+            try {
+                getDataSource(window.projectId());
+                ProjectConnectionPool pool = projectPools.get(window.projectId());
+                if (pool != null && warmupConnections > 0) {
+                    log.log(System.Logger.Level.INFO, "Scheduled warmup for project: {0}", window.projectId());
+                    startWarmup(pool);
+                }
+            } catch (RuntimeException e) {
+                log.log(System.Logger.Level.WARNING, "计划预热失败: {0} ({1})", window.projectId(), e.getMessage());
+            }
+        }
+    }
+
+    private ProjectConfig requireActiveConfig(String projectId) {
         validateProjectId(projectId);
 
-        ProjectConfig config = loadProjectConfig(projectId);
+        ProjectConfig config = getProjectConfig(projectId);
         if (config == null) {
             throw new IllegalArgumentException("Project not found: " + projectId);
         }
 
-        if (!config.isActive()) {
+        if (!Boolean.TRUE.equals(config.isActive())) {
             throw new IllegalStateException("Project is not active: " + projectId);
         }
 
         validateIdentifier(config.dbName(), "database name", MAX_DB_NAME_LENGTH);
         validateIdentifier(config.dbSchema(), "database schema", MAX_SCHEMA_NAME_LENGTH);
+        return config;
+    }
 
-        HikariConfig hikariConfig = new HikariConfig();
-        hikariConfig.setJdbcUrl(String.format("jdbc:postgresql://%s:%d/%s?currentSchema=%s,public",
-                config.dbHost(), config.dbPort(), config.dbName(), config.dbSchema()));
-        hikariConfig.setUsername(config.dbUser());
-        hikariConfig.setPassword(config.dbPassword());
-        hikariConfig.setDriverClassName("org.postgresql.Driver");
-        
-        // HikariCP 优化配置
-        hikariConfig.setMaximumPoolSize(20);
-        hikariConfig.setMinimumIdle(5);
-        hikariConfig.setIdleTimeout(30000);
-        hikariConfig.setConnectionTimeout(2000);
-        hikariConfig.setMaxLifetime(1800000);
-        hikariConfig.setPoolName("AnalyticsPool-" + projectId);
+    /**
+     * 创建连接池
+     */
+    private ProjectConnectionPool createPool(PoolKey key) {
+        HikariConfig hikariConfig = hikariConfigOf(key, maxPoolSize, minIdle);
+        if (key.projectId() != null) {
+            hikariConfig.setPoolName("AnalyticsPool-" + key.projectId());
+        } else {
+            hikariConfig.setPoolName("AnalyticsPool-shared-" + key.user() + "@"
+                    + key.host() + ":" + key.port() + "/" + key.dbName());
+        }
 
         HikariDataSource dataSource = new HikariDataSource(hikariConfig);
-        log.log(System.Logger.Level.INFO, "✓ Created datasource for project: {0}", projectId);
+        log.log(System.Logger.Level.INFO, "✓ Created datasource: {0}", hikariConfig.getPoolName());
         
-        return dataSource;
+        return new ProjectConnectionPool(dataSource, minIdle, adaptiveMinPoolSize, maxPoolSize);
     }
 
     /**
-     * 加载项目配置
+     * 创建只读副本连接池与路由数据源
      */
-    private ProjectConfig loadProjectConfig(String projectId) {
-        validateProjectId(projectId);
+    private ReplicaRoute createReplicaRoute(String projectId, PoolKey key) {
+        int replicaMinIdle = Math.min(minIdle, replicaMaxPoolSize);
+        HikariConfig hikariConfig = hikariConfigOf(key, replicaMaxPoolSize, replicaMinIdle);
+        hikariConfig.setPoolName("AnalyticsReplica-" + projectId);
+        hikariConfig.setReadOnly(true);
+
+        HikariDataSource dataSource = new HikariDataSource(hikariConfig);
+        log.log(System.Logger.Level.INFO, "✓ Created datasource: {0}", hikariConfig.getPoolName());
 
-        LambdaQueryWrapper<AnalyticsProject> queryWrapper = new LambdaQueryWrapper<>();
-        queryWrapper.eq(AnalyticsProject::getProjectId, projectId);
-        AnalyticsProject project = projectMapper.selectOne(queryWrapper);
+        ProjectConnectionPool replica = new ProjectConnectionPool(dataSource, replicaMinIdle,
+                Math.min(adaptiveMinPoolSize, replicaMaxPoolSize), replicaMaxPoolSize);
+        return new ReplicaRoute(key, new ReplicaRoutingDataSource(projectId, replica, () -> getDataSource(projectId),
+                replicaMaxLagMs, replicaLagCheckIntervalMs, replicaRetryAfterMs));
+    }
+
+    private HikariConfig hikariConfigOf(PoolKey key, int maximumPoolSize, int minimumIdle) {
+        HikariConfig hikariConfig = new HikariConfig();
+        if (key.projectId() != null) {
+            hikariConfig.setJdbcUrl(String.format("jdbc:postgresql://%s:%d/%s?currentSchema=%s,public",
+                    key.host(), key.port(), key.dbName(), key.schema()));
+        } else {
+            hikariConfig.setJdbcUrl(String.format("jdbc:postgresql://%s:%d/%s",
+                    key.host(), key.port(), key.dbName()));
+        }
+        hikariConfig.setUsername(key.user());
+        hikariConfig.setPassword(key.password());
+        hikariConfig.setDriverClassName("org.postgresql.Driver");
         
-        if (project == null) {
-            log.log(System.Logger.Level.WARNING, "Project not found: {0} ({1})",
-                    projectId,
-                    debugValue(projectId));
-            try {
-                String available = projectMapper.selectList(new LambdaQueryWrapper<>())
-                        .stream()
-                        .map(AnalyticsProject::getProjectId)
-                        .filter(v -> v != null && !v.isBlank())
-                        .sorted()
-                        .reduce((a, b) -> a + "," + b)
-                        .orElse("<empty>");
-                log.log(System.Logger.Level.DEBUG, "Available projects: {0}", available);
-            } catch (Exception e) {
-                log.log(System.Logger.Level.DEBUG, "Failed to load available projects", e);
+        // HikariCP 优化配置
+        hikariConfig.setMaximumPoolSize(maximumPoolSize);
+        hikariConfig.setMinimumIdle(minimumIdle);
+        hikariConfig.setIdleTimeout(30000);
+        hikariConfig.setConnectionTimeout(connectionTimeoutMs);
+        hikariConfig.setMaxLifetime(1800000);
+        // 创建连接池时不同步建立连接，库不可用时由熔断器统计获取连接的失败
+        hikariConfig.setInitializationFailTimeout(-1);
+        return hikariConfig;
+    }
+
+    private PoolKey keyOf(ProjectConnectionPool pool) {
+        for (Map.Entry<PoolKey, ProjectConnectionPool> entry : pools.entrySet()) {
+            if (entry.getValue() == pool) {
+                return entry.getKey();
             }
-            return null;
         }
+        return null;
+    }
 
-        String password = null;
-        String encrypted = project.getDbPasswordEncrypted();
-        if (encrypted != null && !encrypted.isBlank()) {
-            password = CryptoUtils.decrypt(encrypted);
+    private void forEachPool(Consumer<ProjectConnectionPool> action) {
+        List<ProjectConnectionPool> all = new ArrayList<>(pools.values());
+        replicaRoutes.values().forEach(route -> all.add(route.dataSource().replica()));
+        for (ProjectConnectionPool pool : all) {
+            try {
+                action.accept(pool);
+            } catch (RuntimeException e) {
+                log.log(System.Logger.Level.WARNING, "连接池维护失败: {0} ({1})", pool.poolName(), e.getMessage());
+            }
         }
+    }
 
+    /**
+     * 转换项目配置；配置非法（标识符不合规、密码无法解密）的项目记录告警并跳过
+     */
+    private static ProjectConfig toProjectConfigOrNull(AnalyticsProject project) {
         try {
             validateProjectId(project.getProjectId());
             validateIdentifier(project.getDbName(), "database name", MAX_DB_NAME_LENGTH);
@@ -167,7 +830,42 @@ public class MultiDataSourceManager {
                     debugValue(project.getDbName()),
                     debugValue(project.getTablePrefix()),
                     debugValue(project.getDbUser()));
-            throw e;
+            return null;
+        }
+
+        String password = null;
+        String encrypted = project.getDbPasswordEncrypted();
+        if (encrypted != null && !encrypted.isBlank()) {
+            try {
+                password = CryptoUtils.decrypt(encrypted);
+            } catch (RuntimeException e) {
+                log.log(System.Logger.Level.WARNING, "Failed to decrypt db password for project: {0}", project.getProjectId());
+                return null;
+            }
+        }
+
+        ReplicaConfig replica = null;
+        if (project.getReplicaDbHost() != null && !project.getReplicaDbHost().isBlank()) {
+            // 副本用户 / 密码未配置时沿用主库
+            String replicaPassword = password;
+            String replicaEncrypted = project.getReplicaDbPasswordEncrypted();
+            if (replicaEncrypted != null && !replicaEncrypted.isBlank()) {
+                try {
+                    replicaPassword = CryptoUtils.decrypt(replicaEncrypted);
+                } catch (RuntimeException e) {
+                    log.log(System.Logger.Level.WARNING, "Failed to decrypt replica db password for project: {0}",
+                            project.getProjectId());
+                    replicaPassword = null;
+                }
+            }
+            if (replicaPassword != null || replicaEncrypted == null || replicaEncrypted.isBlank()) {
+                replica = new ReplicaConfig(
+                        project.getReplicaDbHost().strip(),
+                        project.getReplicaDbPort() != null ? project.getReplicaDbPort() : project.getDbPort(),
+                        project.getReplicaDbUser() != null && !project.getReplicaDbUser().isBlank()
+                                ? project.getReplicaDbUser() : project.getDbUser(),
+                        replicaPassword);
+            }
         }
 
         return new ProjectConfig(
@@ -180,9 +878,9 @@ public class MultiDataSourceManager {
                 project.getDbUser(),
                 password,
                 project.getTablePrefix(),
-                project.getIsActive()
+                project.getIsActive(),
+                replica
         );
-        // computeIfAbsent will cache the result, avoid recursive update here.
     }
 
     private static void validateProjectId(String projectId) {
@@ -239,15 +937,37 @@ public class MultiDataSourceManager {
      * 重新加载项目配置
      */
     public void reloadProject(String projectId) {
-        // 清除缓存
-        projectConfigs.remove(projectId);
-        
-        // 关闭旧连接池
-        HikariDataSource oldDataSource = dataSources.remove(projectId);
-        if (oldDataSource != null) {
-            oldDataSource.close();
-            log.log(System.Logger.Level.INFO, "Closed datasource for project: {0}", projectId);
+        // 管理端在事务内修改项目：提交后再更新快照，回滚则保持原样
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    reloadProjectNow(projectId);
+                }
+            });
+            return;
         }
+        reloadProjectNow(projectId);
+    }
+
+    private void reloadProjectNow(String projectId) {
+        AnalyticsProject project = projectMapper.selectOne(
+                new LambdaQueryWrapper<AnalyticsProject>().eq(AnalyticsProject::getProjectId, projectId));
+        ProjectConfig config = project == null ? null : toProjectConfigOrNull(project);
+        synchronized (snapshotLock) {
+            Map<String, ProjectConfig> updated = new HashMap<>(projectConfigs);
+            if (config == null) {
+                updated.remove(projectId);
+            } else {
+                updated.put(projectId, config);
+            }
+            projectConfigs = Map.copyOf(updated);
+            snapshotVersion++;
+        }
+        unknownProjects.remove(projectId);
+
+        // 连接配置变化时热切换连接池（共享连接池仍被其他项目使用时保留）
+        swapPoolIfChanged(projectId, config);
     }
 
     /**
@@ -255,18 +975,76 @@ public class MultiDataSourceManager {
      */
     @PreDestroy
     public void closeAll() {
-        dataSources.values().forEach(ds -> {
+        refresher.shutdownNow();
+        poolMaintainer.shutdownNow();
+        pools.values().forEach(pool -> {
             try {
-                ds.close();
+                pool.close();
             } catch (Exception e) {
                 log.log(System.Logger.Level.ERROR, "Failed to close datasource", e);
             }
         });
-        dataSources.clear();
-        projectConfigs.clear();
+        replicaRoutes.values().forEach(route -> {
+            try {
+                route.dataSource().replica().close();
+            } catch (Exception e) {
+                log.log(System.Logger.Level.ERROR, "Failed to close datasource", e);
+            }
+        });
+        pools.clear();
+        projectPools.clear();
+        replicaRoutes.clear();
+        closingPools.forEach(this::closeQuietly);
         log.log(System.Logger.Level.INFO, "All datasources closed");
     }
 
+    /**
+     * 计划预热时间点：projectId@HH:mm（服务器时区），在该分钟内触发
+     */
+    record WarmupWindow(String projectId, LocalTime time) {
+
+        static List<WarmupWindow> parseAll(String schedule) {
+            if (schedule == null || schedule.isBlank()) {
+                return List.of();
+            }
+            List<WarmupWindow> windows = new ArrayList<>();
+            for (String item : schedule.split(",")) {
+                String trimmed = item.strip();
+                if (trimmed.isEmpty()) {
+                    continue;
+                }
+                int at = trimmed.lastIndexOf('@');
+                if (at <= 0 || at == trimmed.length() - 1) {
+                    throw new IllegalArgumentException("app.project-datasource.warmup.schedule 格式应为 projectId@HH:mm: " + trimmed);
+                }
+                String projectId = trimmed.substring(0, at);
+                validateProjectId(projectId);
+                try {
+                    windows.add(new WarmupWindow(projectId, LocalTime.parse(trimmed.substring(at + 1))));
+                } catch (DateTimeParseException e) {
+                    throw new IllegalArgumentException("app.project-datasource.warmup.schedule 时间格式应为 HH:mm: " + trimmed, e);
+                }
+            }
+            return List.copyOf(windows);
+        }
+
+        boolean isDue(LocalDateTime now) {
+            return now.toLocalTime().truncatedTo(ChronoUnit.MINUTES).equals(time.truncatedTo(ChronoUnit.MINUTES));
+        }
+    }
+
+    /**
+     * 连接池分组键；独立模式下 projectId 参与分组，共享模式下为 null
+     */
+    private record PoolKey(String projectId, String host, Integer port, String dbName, String schema,
+                           String user, String password) {
+        @Override
+        public String toString() {
+            return user + "@" + host + ":" + port + "/" + dbName
+                    + (projectId == null ? "" : "?currentSchema=" + schema + " (" + projectId + ")");
+        }
+    }
+
     /**
      * 项目配置记录
      * 使用JDK 25的record特性
@@ -281,6 +1059,17 @@ public class MultiDataSourceManager {
             String dbUser,
             String dbPassword,
             String tablePrefix,
-            Boolean isActive
+            Boolean isActive,
+            ReplicaConfig replica
     ) {}
+
+    /**
+     * 只读副本连接配置（未配置副本时 ProjectConfig.replica 为 null）
+     */
+    public record ReplicaConfig(String host, Integer port, String user, String password) {}
+
+    /**
+     * 项目的只读副本路由及其连接池键
+     */
+    private record ReplicaRoute(PoolKey key, ReplicaRoutingDataSource dataSource) {}
 }
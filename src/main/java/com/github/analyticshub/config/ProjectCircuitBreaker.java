@@ -0,0 +1,111 @@
+package com.github.analyticshub.config;
+
+/**
+ * 项目数据库熔断器
+ * CLOSED：正常放行，连续 failureThreshold 次获取连接失败后转 OPEN；
+ * OPEN：直接拒绝（快速失败），openDuration 后转 HALF_OPEN；
+ * HALF_OPEN：只放行一个探测请求，成功则 CLOSED，失败则重新 OPEN。
+ */
+final class ProjectCircuitBreaker {
+
+    enum State { CLOSED, OPEN, HALF_OPEN }
+
+    private final int failureThreshold;
+    private final long openDurationNanos;
+
+    private volatile State state = State.CLOSED;
+    private int consecutiveFailures;
+    private long openedAtNanos;
+    private long probeStartedAtNanos;
+    private long openedAtMillis;
+
+    ProjectCircuitBreaker(int failureThreshold, long openDurationMs) {
+        this.failureThreshold = Math.max(1, failureThreshold);
+        this.openDurationNanos = Math.max(1, openDurationMs) * 1_000_000L;
+    }
+
+    /**
+     * 是否放行本次获取连接
+     */
+    boolean tryAcquire(long nowNanos) {
+        if (state == State.CLOSED) {
+            return true;
+        }
+        synchronized (this) {
+            switch (state) {
+                case CLOSED -> {
+                    return true;
+                }
+                case OPEN -> {
+                    if (nowNanos - openedAtNanos < openDurationNanos) {
+                        return false;
+                    }
+                    state = State.HALF_OPEN;
+                    probeStartedAtNanos = nowNanos;
+                    return true;
+                }
+                default -> {
+                    // 探测请求未回报（异常退出等）时，超过一个打开周期后允许再次探测
+                    if (nowNanos - probeStartedAtNanos < openDurationNanos) {
+                        return false;
+                    }
+                    probeStartedAtNanos = nowNanos;
+                    return true;
+                }
+            }
+        }
+    }
+
+    void onSuccess() {
+        if (state == State.CLOSED && consecutiveFailures == 0) {
+            return;
+        }
+        synchronized (this) {
+            state = State.CLOSED;
+            consecutiveFailures = 0;
+        }
+    }
+
+    void onFailure(long nowNanos) {
+        synchronized (this) {
+            consecutiveFailures++;
+            if (state == State.HALF_OPEN || consecutiveFailures >= failureThreshold) {
+                if (state != State.OPEN) {
+                    openedAtMillis = System.currentTimeMillis();
+                }
+                state = State.OPEN;
+                openedAtNanos = nowNanos;
+            }
+        }
+    }
+
+    /**
+     * 获取连接失败但与数据库可达性无关（如连接池借用超时）：不计入失败；
+     * 若本次是半开探测，则释放探测名额，让下一个请求重新探测
+     */
+    void onInconclusive(long nowNanos) {
+        if (state != State.HALF_OPEN) {
+            return;
+        }
+        synchronized (this) {
+            if (state == State.HALF_OPEN) {
+                probeStartedAtNanos = nowNanos - openDurationNanos;
+            }
+        }
+    }
+
+    State state() {
+        return state;
+    }
+
+    synchronized Snapshot snapshot() {
+        return new Snapshot(state.name(), consecutiveFailures, state == State.CLOSED ? null : openedAtMillis);
+    }
+
+    /**
+     * 熔断状态快照（健康检查展示）
+     *
+     * @param openedAtMillis 最近一次打开的时间；CLOSED 时为 null
+     */
+    record Snapshot(String state, int consecutiveFailures, Long openedAtMillis) {}
+}
@@ -0,0 +1,212 @@
+package com.github.analyticshub.config;
+
+import com.zaxxer.hikari.HikariConfigMXBean;
+import com.zaxxer.hikari.HikariDataSource;
+import com.zaxxer.hikari.HikariPoolMXBean;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 项目连接池
+ * 独立模式下每个项目一个；共享模式下 (host, port, db, user) 相同的项目共用一个，隔离依靠带 schema 的全限定表名。
+ *
+ * 自适应容量：定期采样“活跃连接 + 等待线程”作为需求，
+ * 出现等待时立即扩容，每个调整周期按周期内峰值收缩，容量在 [minPoolSize, maxPoolSize] 之间。
+ *
+ * 空闲回收与预热：记录最近访问时间，长期无访问的连接池由 MultiDataSourceManager 回收（标记 retired 后延迟关闭）；
+ * 首次访问或空闲较久后的首个请求触发后台预热，提前建立连接。
+ */
+final class ProjectConnectionPool {
+
+    private static final System.Logger log = System.getLogger(ProjectConnectionPool.class.getName());
+
+    private final HikariDataSource dataSource;
+    private final Set<String> projectIds = ConcurrentHashMap.newKeySet();
+    private final int minIdle;
+    private final int minPoolSize;
+    private final int maxPoolSize;
+    private final AtomicInteger peakDemand = new AtomicInteger();
+
+    // 最近访问时间（nanoTime）；0 表示尚未访问
+    private volatile long lastAccessNanos;
+    private volatile boolean retired;
+    private final AtomicBoolean warmingUp = new AtomicBoolean();
+
+    ProjectConnectionPool(HikariDataSource dataSource, int minIdle, int minPoolSize, int maxPoolSize) {
+        this.dataSource = dataSource;
+        this.minIdle = minIdle;
+        this.maxPoolSize = Math.max(1, maxPoolSize);
+        this.minPoolSize = Math.max(1, Math.min(minPoolSize, this.maxPoolSize));
+    }
+
+    HikariDataSource dataSource() {
+        return dataSource;
+    }
+
+    /**
+     * 使用该连接池的项目（修改需在 MultiDataSourceManager 的池映射 compute 内进行）
+     */
+    Set<String> projectIds() {
+        return projectIds;
+    }
+
+    String poolName() {
+        return dataSource.getPoolName();
+    }
+
+    /**
+     * 记录访问
+     *
+     * @return 首次访问或距上次访问超过 warmupAfterIdleNanos 时返回 true（需要预热）
+     */
+    boolean touch(long nowNanos, long warmupAfterIdleNanos) {
+        long last = lastAccessNanos;
+        // 热点项目每个请求都会调用，间隔不足 1 秒不重复写入
+        if (last != 0 && nowNanos - last < 1_000_000_000L) {
+            return false;
+        }
+        lastAccessNanos = nowNanos;
+        return last == 0 || (warmupAfterIdleNanos > 0 && nowNanos - last > warmupAfterIdleNanos);
+    }
+
+    long lastAccessNanos() {
+        return lastAccessNanos;
+    }
+
+    boolean isIdleLongerThan(long nowNanos, long idleNanos) {
+        long last = lastAccessNanos;
+        return last != 0 && nowNanos - last > idleNanos;
+    }
+
+    int activeConnections() {
+        HikariPoolMXBean pool = dataSource.getHikariPoolMXBean();
+        return pool == null ? 0 : pool.getActiveConnections();
+    }
+
+    /**
+     * 标记为已回收：之后从映射中取到该连接池的调用方应重新获取
+     */
+    void retire() {
+        retired = true;
+    }
+
+    boolean isRetired() {
+        return retired;
+    }
+
+    /**
+     * 预热：同时借出最多 connections 个连接后归还，迫使连接池建立连接（阻塞，调用方在后台线程执行）
+     * 容量先扩到足以容纳预热连接，并至少留出 1 个给业务请求
+     *
+     * @return 实际建立（借出）的连接数；已有预热在进行时返回 0
+     */
+    int warmup(int connections) {
+        if (!warmingUp.compareAndSet(false, true)) {
+            return 0;
+        }
+        List<Connection> borrowed = new ArrayList<>();
+        try {
+            int wanted = Math.min(maxPoolSize, connections + 1);
+            if (currentMaximumPoolSize() < wanted) {
+                applySize(wanted);
+            }
+            int target = Math.min(connections, currentMaximumPoolSize() - 1);
+            for (int i = 0; i < target && !retired; i++) {
+                borrowed.add(dataSource.getConnection());
+            }
+            log.log(System.Logger.Level.DEBUG, "Warmed up datasource {0}: {1} connections", poolName(), borrowed.size());
+            return borrowed.size();
+        } catch (SQLException | RuntimeException e) {
+            log.log(System.Logger.Level.WARNING, "连接池预热失败: {0} ({1})", poolName(), e.getMessage());
+            return borrowed.size();
+        } finally {
+            for (Connection connection : borrowed) {
+                try {
+                    connection.close();
+                } catch (SQLException ignored) {
+                    // 归还失败由连接池自行回收
+                }
+            }
+            warmingUp.set(false);
+        }
+    }
+
+    /**
+     * 采样当前需求；有线程在等待连接时立即扩容
+     */
+    void sample() {
+        HikariPoolMXBean pool = dataSource.getHikariPoolMXBean();
+        if (pool == null) {
+            return;
+        }
+        int waiting = pool.getThreadsAwaitingConnection();
+        int demand = pool.getActiveConnections() + waiting;
+        peakDemand.accumulateAndGet(demand, Math::max);
+        if (waiting > 0) {
+            int target = targetSize(demand);
+            if (target > currentMaximumPoolSize()) {
+                applySize(target);
+            }
+        }
+    }
+
+    /**
+     * 按上一周期的峰值需求调整容量，并开始新的统计周期
+     */
+    void resize() {
+        int peak = peakDemand.getAndSet(0);
+        int target = targetSize(peak);
+        if (target != currentMaximumPoolSize()) {
+            applySize(target);
+        }
+    }
+
+    int currentMaximumPoolSize() {
+        return dataSource.getHikariConfigMXBean().getMaximumPoolSize();
+    }
+
+    /**
+     * 立即关闭空闲连接，使用中的连接归还时关闭（摘除后尽快释放数据库端连接）
+     */
+    void softEvictIdleConnections() {
+        HikariPoolMXBean pool = dataSource.getHikariPoolMXBean();
+        if (pool != null) {
+            pool.softEvictConnections();
+        }
+    }
+
+    void close() {
+        dataSource.close();
+    }
+
+    /**
+     * 目标容量：峰值需求留 50% 余量再加 1
+     */
+    int targetSize(int demand) {
+        int target = demand + (demand + 1) / 2 + 1;
+        return Math.max(minPoolSize, Math.min(maxPoolSize, target));
+    }
+
+    private void applySize(int target) {
+        HikariConfigMXBean config = dataSource.getHikariConfigMXBean();
+        int previous = config.getMaximumPoolSize();
+        int idle = Math.min(minIdle, target);
+        // 保持 minimumIdle <= maximumPoolSize
+        if (target < previous) {
+            config.setMinimumIdle(idle);
+            config.setMaximumPoolSize(target);
+        } else {
+            config.setMaximumPoolSize(target);
+            config.setMinimumIdle(idle);
+        }
+        log.log(System.Logger.Level.INFO, "Resized datasource {0}: maximumPoolSize {1} -> {2}",
+                dataSource.getPoolName(), previous, target);
+    }
+}
@@ -0,0 +1,68 @@
+package com.github.analyticshub.config;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.boot.context.properties.bind.DefaultValue;
+
+/**
+ * 项目数据源配置（app.project-datasource.*）
+ * 顶层为连接池设置，回收、预热、熔断、只读副本各自分组；启动时绑定一次，取值的归一化由 MultiDataSourceManager 负责。
+ *
+ * @param pooling             per-project 或 shared
+ * @param connectionTimeoutMs 借用连接超时
+ * @param drainTimeoutMs      切换 / 回收时旧连接池等待活跃连接归还的最长时间
+ */
+@ConfigurationProperties("app.project-datasource")
+public record ProjectDataSourceSettings(
+        @DefaultValue("per-project") String pooling,
+        @DefaultValue("20") int maxPoolSize,
+        @DefaultValue("5") int minIdle,
+        @DefaultValue("2000") long connectionTimeoutMs,
+        @DefaultValue("30000") long drainTimeoutMs,
+        @DefaultValue AdaptiveSizing adaptiveSizing,
+        @DefaultValue Eviction eviction,
+        @DefaultValue Warmup warmup,
+        @DefaultValue CircuitBreaker circuitBreaker,
+        @DefaultValue Replica replica) {
+
+    /**
+     * 按观测需求自适应调整连接池容量
+     */
+    public record AdaptiveSizing(
+            @DefaultValue("true") boolean enabled,
+            @DefaultValue("2") int minPoolSize,
+            @DefaultValue("1000") long sampleIntervalMs,
+            @DefaultValue("30000") long resizeIntervalMs) {}
+
+    /**
+     * 空闲连接池回收；idleTimeoutMs 为 0 表示不按空闲回收，maxPools 为 0 表示不限数量
+     */
+    public record Eviction(
+            @DefaultValue("1800000") long idleTimeoutMs,
+            @DefaultValue("0") int maxPools) {}
+
+    /**
+     * 连接池预热；schedule 为 projectId@HH:mm，逗号分隔
+     */
+    public record Warmup(
+            @DefaultValue("3") int connections,
+            @DefaultValue("300000") long afterIdleMs,
+            @DefaultValue("") String schedule) {}
+
+    /**
+     * 每项目熔断器
+     */
+    public record CircuitBreaker(
+            @DefaultValue("true") boolean enabled,
+            @DefaultValue("5") int failureThreshold,
+            @DefaultValue("10000") long openDurationMs) {}
+
+    /**
+     * 只读副本路由
+     */
+    public record Replica(
+            @DefaultValue("true") boolean enabled,
+            @DefaultValue("10") int maxPoolSize,
+            @DefaultValue("10000") long maxLagMs,
+            @DefaultValue("5000") long lagCheckIntervalMs,
+            @DefaultValue("30000") long retryAfterMs) {}
+}
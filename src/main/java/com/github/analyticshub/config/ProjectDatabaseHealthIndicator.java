@@ -0,0 +1,49 @@
+package com.github.analyticshub.config;
+
+import org.springframework.boot.health.contributor.Health;
+import org.springframework.boot.health.contributor.HealthIndicator;
+import org.springframework.stereotype.Component;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * 项目数据库熔断状态（actuator health 中的 projectDatabases）
+ * 单个项目库不可用不影响实例整体健康状态，始终为 UP，打开的熔断器在详情中列出；
+ * 使用只读副本的项目同时列出最近检测到的复制延迟（replicaLagMs，尚未检测为 -1）。
+ */
+@Component("projectDatabases")
+public class ProjectDatabaseHealthIndicator implements HealthIndicator {
+
+    private final MultiDataSourceManager dataSourceManager;
+
+    public ProjectDatabaseHealthIndicator(MultiDataSourceManager dataSourceManager) {
+        this.dataSourceManager = dataSourceManager;
+    }
+
+    @Override
+    public Health health() {
+        Map<String, Object> projects = new LinkedHashMap<>();
+        int open = 0;
+        for (Map.Entry<String, ProjectCircuitBreaker.Snapshot> entry : dataSourceManager.circuitBreakerSnapshots().entrySet()) {
+            ProjectCircuitBreaker.Snapshot snapshot = entry.getValue();
+            Map<String, Object> detail = new LinkedHashMap<>();
+            detail.put("circuit", snapshot.state());
+            detail.put("consecutiveFailures", snapshot.consecutiveFailures());
+            if (snapshot.openedAtMillis() != null) {
+                detail.put("openedAt", snapshot.openedAtMillis());
+                open++;
+            }
+            projects.put(entry.getKey(), detail);
+        }
+        for (Map.Entry<String, Long> entry : dataSourceManager.replicaLags().entrySet()) {
+            @SuppressWarnings("unchecked")
+            Map<String, Object> detail = (Map<String, Object>) projects.computeIfAbsent(entry.getKey(), key -> new LinkedHashMap<>());
+            detail.put("replicaLagMs", entry.getValue());
+        }
+        return Health.up()
+                .withDetail("openCircuits", open)
+                .withDetail("projects", projects)
+                .build();
+    }
+}
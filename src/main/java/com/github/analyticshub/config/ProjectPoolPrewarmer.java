@@ -0,0 +1,162 @@
+package com.github.analyticshub.config;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.boot.health.contributor.Health;
+import org.springframework.boot.health.contributor.HealthIndicator;
+import org.springframework.context.event.EventListener;
+import org.springframework.core.annotation.Order;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 启动预热（可选）
+ * 应用就绪后，对 analytics_projects 中所有启用的项目并发（虚拟线程，并发数受限）创建连接池、建立 min-idle 个连接，
+ * 并检查必需的业务表是否存在。
+ *
+ * 作为健康检查项 projectPrewarm 加入 readiness 组：预热完成（或超时）前为 OUT_OF_SERVICE，
+ * 滚动发布时新实例不会在连接尚未建立时接流量。单个项目失败只记录在详情中，不阻塞就绪。
+ */
+@Component("projectPrewarm")
+public class ProjectPoolPrewarmer implements HealthIndicator {
+
+    private static final System.Logger log = System.getLogger(ProjectPoolPrewarmer.class.getName());
+
+    static final List<String> REQUIRED_TABLES = List.of("devices", "events", "sessions", "traffic_metrics", "privacy_requests");
+
+    private final MultiDataSourceManager dataSourceManager;
+    private final boolean enabled;
+    private final int parallelism;
+    private final long timeoutMs;
+
+    private volatile boolean completed;
+    private volatile long durationMs;
+    private final Map<String, String> failedProjects = new ConcurrentHashMap<>();
+    private final Map<String, List<String>> missingTables = new ConcurrentHashMap<>();
+    private final AtomicInteger warmedProjects = new AtomicInteger();
+    private volatile int totalProjects;
+
+    public ProjectPoolPrewarmer(MultiDataSourceManager dataSourceManager,
+                                @Value("${app.project-datasource.prewarm.enabled:false}") boolean enabled,
+                                @Value("${app.project-datasource.prewarm.parallelism:8}") int parallelism,
+                                @Value("${app.project-datasource.prewarm.timeout-ms:60000}") long timeoutMs) {
+        this.dataSourceManager = dataSourceManager;
+        this.enabled = enabled;
+        this.parallelism = Math.max(1, parallelism);
+        this.timeoutMs = Math.max(1000, timeoutMs);
+        this.completed = !enabled;
+    }
+
+    /**
+     * 在系统库迁移（DatabaseInitializer）之后执行；在后台线程运行，不阻塞其他就绪回调
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    @Order(2)
+    public void onApplicationReady() {
+        if (!enabled) {
+            return;
+        }
+        Thread.ofPlatform().name("project-prewarm").daemon(true).start(this::prewarmAll);
+    }
+
+    void prewarmAll() {
+        long start = System.currentTimeMillis();
+        try {
+            List<String> projectIds = dataSourceManager.activeProjectIds();
+            totalProjects = projectIds.size();
+            log.log(System.Logger.Level.INFO, "开始预热项目连接池: {0} 个项目", projectIds.size());
+
+            Semaphore permits = new Semaphore(parallelism);
+            List<Map.Entry<String, Future<?>>> tasks = new ArrayList<>();
+            try (ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor()) {
+                for (String projectId : projectIds) {
+                    tasks.add(Map.entry(projectId, executor.submit(() -> {
+                        permits.acquire();
+                        try {
+                            prewarmProject(projectId);
+                        } finally {
+                            permits.release();
+                        }
+                        return null;
+                    })));
+                }
+                long deadline = start + timeoutMs;
+                for (Map.Entry<String, Future<?>> task : tasks) {
+                    try {
+                        task.getValue().get(Math.max(0, deadline - System.currentTimeMillis()), TimeUnit.MILLISECONDS);
+                    } catch (TimeoutException e) {
+                        failedProjects.put(task.getKey(), "预热超时");
+                        task.getValue().cancel(true);
+                    } catch (Exception e) {
+                        Throwable cause = e.getCause() != null ? e.getCause() : e;
+                        failedProjects.put(task.getKey(), String.valueOf(cause.getMessage()));
+                    }
+                }
+            }
+        } catch (RuntimeException e) {
+            log.log(System.Logger.Level.ERROR, "项目连接池预热失败", e);
+        } finally {
+            durationMs = System.currentTimeMillis() - start;
+            completed = true;
+            log.log(System.Logger.Level.INFO, "✓ 项目连接池预热完成: {0}/{1} 个项目，耗时 {2} ms，失败 {3} 个，缺表 {4} 个",
+                    warmedProjects.get(), totalProjects, durationMs, failedProjects.size(), missingTables.size());
+        }
+    }
+
+    private void prewarmProject(String projectId) {
+        int connections = dataSourceManager.prewarm(projectId);
+        JdbcTemplate jdbcTemplate = new JdbcTemplate(dataSourceManager.getDataSource(projectId));
+        List<String> missing = new ArrayList<>();
+        for (String table : REQUIRED_TABLES) {
+            String qualified = dataSourceManager.getTableName(projectId, table);
+            String regclass = jdbcTemplate.queryForObject("SELECT to_regclass(?)::text", String.class, qualified);
+            if (regclass == null) {
+                missing.add(table);
+            }
+        }
+        if (!missing.isEmpty()) {
+            missingTables.put(projectId, List.copyOf(missing));
+            log.log(System.Logger.Level.WARNING, "项目缺少业务表: {0} {1}", projectId, missing);
+        }
+        warmedProjects.incrementAndGet();
+        log.log(System.Logger.Level.DEBUG, "预热项目连接池: {0} ({1} 个连接)", projectId, connections);
+    }
+
+    public boolean isCompleted() {
+        return completed;
+    }
+
+    @Override
+    public Health health() {
+        if (!enabled) {
+            return Health.up().withDetail("prewarm", "disabled").build();
+        }
+        Map<String, Object> details = new LinkedHashMap<>();
+        details.put("projects", totalProjects);
+        details.put("warmed", warmedProjects.get());
+        if (!completed) {
+            return Health.outOfService().withDetails(details).build();
+        }
+        details.put("durationMs", durationMs);
+        if (!failedProjects.isEmpty()) {
+            details.put("failed", Map.copyOf(failedProjects));
+        }
+        if (!missingTables.isEmpty()) {
+            details.put("missingTables", Map.copyOf(missingTables));
+        }
+        return Health.up().withDetails(details).build();
+    }
+}
@@ -0,0 +1,136 @@
+package com.github.analyticshub.config;
+
+import org.springframework.jdbc.datasource.AbstractDataSource;
+
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Supplier;
+
+/**
+ * 只读副本路由数据源
+ * 副本可用且复制延迟不超过 maxLag 时从副本借出连接，否则回退主库：
+ * - 延迟按 lagCheckInterval 在后台检测（有访问时才检测），未检测到延迟前走主库；
+ * - 从副本获取连接失败或检测失败时，retryAfter 内全部走主库。
+ */
+final class ReplicaRoutingDataSource extends AbstractDataSource {
+
+    private static final System.Logger log = System.getLogger(ReplicaRoutingDataSource.class.getName());
+
+    // 主库（未处于恢复模式）或已回放到接收位置时延迟为 0；否则为距最近一次回放事务的时间
+    private static final String LAG_SQL = """
+            SELECT CASE
+                WHEN NOT pg_is_in_recovery() THEN 0
+                WHEN pg_last_wal_receive_lsn() = pg_last_wal_replay_lsn() THEN 0
+                ELSE COALESCE(EXTRACT(EPOCH FROM (now() - pg_last_xact_replay_timestamp())) * 1000, 0)
+            END::bigint
+            """;
+
+    private final String projectId;
+    private final ProjectConnectionPool replica;
+    private final Supplier<DataSource> primary;
+    private final long maxLagMs;
+    private final long lagCheckIntervalNanos;
+    private final long retryAfterNanos;
+
+    // 最近检测到的延迟；-1 表示尚未检测
+    private volatile long lagMs = -1;
+    private volatile long lastCheckNanos;
+    private volatile long unhealthyUntilNanos;
+    private final AtomicBoolean checking = new AtomicBoolean();
+
+    ReplicaRoutingDataSource(String projectId, ProjectConnectionPool replica, Supplier<DataSource> primary,
+                             long maxLagMs, long lagCheckIntervalMs, long retryAfterMs) {
+        this.projectId = projectId;
+        this.replica = replica;
+        this.primary = primary;
+        this.maxLagMs = maxLagMs;
+        this.lagCheckIntervalNanos = Math.max(1, lagCheckIntervalMs) * 1_000_000L;
+        this.retryAfterNanos = Math.max(1, retryAfterMs) * 1_000_000L;
+        // 首次检测立即进行
+        long now = System.nanoTime();
+        this.lastCheckNanos = now - this.lagCheckIntervalNanos;
+        this.unhealthyUntilNanos = now;
+    }
+
+    ProjectConnectionPool replica() {
+        return replica;
+    }
+
+    @Override
+    public Connection getConnection() throws SQLException {
+        long now = System.nanoTime();
+        replica.touch(now, 0);
+        checkLagIfDue(now);
+        if (isReplicaUsable(now)) {
+            try {
+                return replica.dataSource().getConnection();
+            } catch (SQLException | RuntimeException e) {
+                markUnhealthy(now, e);
+            }
+        }
+        return primary.get().getConnection();
+    }
+
+    @Override
+    public Connection getConnection(String username, String password) throws SQLException {
+        return primary.get().getConnection(username, password);
+    }
+
+    boolean isReplicaUsable(long nowNanos) {
+        long lag = lagMs;
+        return nowNanos - unhealthyUntilNanos >= 0 && lag >= 0 && lag <= maxLagMs;
+    }
+
+    /**
+     * 最近检测到的复制延迟（毫秒）；尚未检测时为 -1
+     */
+    long lagMs() {
+        return lagMs;
+    }
+
+    /**
+     * 同步检测复制延迟
+     */
+    void checkLag() {
+        lastCheckNanos = System.nanoTime();
+        try (Connection connection = replica.dataSource().getConnection();
+             PreparedStatement statement = connection.prepareStatement(LAG_SQL);
+             ResultSet resultSet = statement.executeQuery()) {
+            long lag = resultSet.next() ? resultSet.getLong(1) : 0;
+            if (lag > maxLagMs && lagMs <= maxLagMs) {
+                log.log(System.Logger.Level.WARNING, "只读副本延迟超限，回退主库: {0}（{1}ms）", projectId, lag);
+            }
+            lagMs = lag;
+        } catch (SQLException | RuntimeException e) {
+            markUnhealthy(System.nanoTime(), e);
+        }
+    }
+
+    private void checkLagIfDue(long nowNanos) {
+        if (nowNanos - lastCheckNanos < lagCheckIntervalNanos || !checking.compareAndSet(false, true)) {
+            return;
+        }
+        try {
+            Thread.ofVirtual().name("replica-lag-check").start(() -> {
+                try {
+                    checkLag();
+                } finally {
+                    checking.set(false);
+                }
+            });
+        } catch (RuntimeException e) {
+            checking.set(false);
+        }
+    }
+
+    private void markUnhealthy(long nowNanos, Exception e) {
+        if (nowNanos - unhealthyUntilNanos >= 0) {
+            log.log(System.Logger.Level.WARNING, "只读副本不可用，回退主库: {0} ({1})", projectId, e.getMessage());
+        }
+        unhealthyUntilNanos = nowNanos + retryAfterNanos;
+    }
+}
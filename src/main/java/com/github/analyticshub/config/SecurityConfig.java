@@ -4,8 +4,10 @@ import com.fasterxml.jackson.databind.ObjectMapper;
 import com.github.analyticshub.config.MultiDataSourceManager;
 import com.github.analyticshub.security.AdminApiAuthenticationFilter;
 import com.github.analyticshub.security.ApiAuthenticationFilter;
+import com.github.analyticshub.security.DeviceCredentialCache;
 import com.github.analyticshub.security.RateLimitService;
 import com.github.analyticshub.service.EmailService;
+import com.github.analyticshub.util.ByteArrayPool;
 import com.github.analyticshub.security.TwoFactorAuthService;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
@@ -28,6 +30,7 @@ public class SecurityConfig {
     private final RateLimitService rateLimitService;
     private final EmailService emailService;
     private final TwoFactorAuthService twoFactorAuthService;
+    private final DeviceCredentialCache deviceCredentialCache;
     
     @org.springframework.beans.factory.annotation.Value("${app.security.admin-token:}")
     private String adminToken;
@@ -35,16 +38,30 @@ public class SecurityConfig {
     @org.springframework.beans.factory.annotation.Value("${app.security.signature-validity-ms:300000}")
     private long signatureValidityMs;
 
+    @org.springframework.beans.factory.annotation.Value("${app.ingest.compression.max-decompressed-bytes:33554432}")
+    private long maxDecompressedBytes;
+
+    @org.springframework.beans.factory.annotation.Value("${app.ingest.body-buffer.max-bytes:10485760}")
+    private long maxBodyBytes;
+
+    @org.springframework.beans.factory.annotation.Value("${app.ingest.body-buffer.pool-max-buffer-bytes:1048576}")
+    private int bodyBufferPoolMaxBytes;
+
+    @org.springframework.beans.factory.annotation.Value("${app.ingest.body-buffer.pool-buffers-per-class:64}")
+    private int bodyBufferPoolPerClass;
+
     public SecurityConfig(ObjectMapper objectMapper,
                           MultiDataSourceManager dataSourceManager,
                           RateLimitService rateLimitService,
                           EmailService emailService,
-                          TwoFactorAuthService twoFactorAuthService) {
+                          TwoFactorAuthService twoFactorAuthService,
+                          DeviceCredentialCache deviceCredentialCache) {
         this.objectMapper = objectMapper;
         this.dataSourceManager = dataSourceManager;
         this.rateLimitService = rateLimitService;
         this.emailService = emailService;
         this.twoFactorAuthService = twoFactorAuthService;
+        this.deviceCredentialCache = deviceCredentialCache;
     }
 
     @Bean
@@ -76,7 +93,11 @@ public class SecurityConfig {
         return new ApiAuthenticationFilter(
                 dataSourceManager, 
                 objectMapper, 
-                signatureValidityMs
+                deviceCredentialCache,
+                signatureValidityMs,
+                maxDecompressedBytes,
+                new ByteArrayPool(4096, bodyBufferPoolMaxBytes, bodyBufferPoolPerClass),
+                maxBodyBytes
         );
     }
 
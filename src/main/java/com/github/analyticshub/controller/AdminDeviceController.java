@@ -1,15 +1,19 @@
 package com.github.analyticshub.controller;
 
 import com.github.analyticshub.common.dto.ApiResponse;
+import com.github.analyticshub.dto.AdminDeviceBanRequest;
 import com.github.analyticshub.dto.AdminDevicesResponse;
 import com.github.analyticshub.service.AdminDeviceQueryService;
 import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.PutMapping;
+import org.springframework.web.bind.annotation.RequestBody;
 import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
 
 /**
- * 管理端设备查询接口
+ * 管理端设备接口：查询、封禁 / 解封
  */
 @RestController
 @RequestMapping("/api/admin/devices")
@@ -35,4 +39,13 @@ public class AdminDeviceController {
                 adminDeviceQueryService.listDevices(projectId, from, to, page, pageSize, deviceId, apiKey, isBanned)
         );
     }
+
+    @PutMapping("/{deviceId}/ban")
+    public ApiResponse<Void> updateBan(@RequestParam("projectId") String projectId,
+                                       @PathVariable("deviceId") String deviceId,
+                                       @RequestBody AdminDeviceBanRequest request) {
+        boolean banned = request.banned() == null || request.banned();
+        adminDeviceQueryService.updateBan(projectId, deviceId, banned, request.reason());
+        return ApiResponse.success(null);
+    }
 }
@@ -6,6 +6,7 @@ import com.github.analyticshub.dto.AdminProjectUpdateRequest;
 import com.github.analyticshub.dto.ProjectConnectionTestResult;
 import com.github.analyticshub.dto.ProjectHealthResult;
 import com.github.analyticshub.dto.ProjectInitResult;
+import com.github.analyticshub.dto.ProjectMigrationResult;
 import com.github.analyticshub.entity.AnalyticsProject;
 import com.github.analyticshub.service.AdminProjectService;
 import jakarta.validation.Valid;
@@ -72,6 +73,27 @@ public class AdminProjectController {
         return ApiResponse.success(result);
     }
 
+    @GetMapping("/projects/{id}/migrations")
+    public ApiResponse<ProjectMigrationResult> listProjectMigrations(@PathVariable("id") Long id) {
+        ProjectMigrationResult result = adminProjectService.migrateProjectDatabase(id, true);
+        return ApiResponse.success(result);
+    }
+
+    @PostMapping("/projects/{id}/migrate")
+    public ApiResponse<ProjectMigrationResult> migrateProjectDatabase(@PathVariable("id") Long id) {
+        log.log(System.Logger.Level.INFO, "迁移项目库请求: {0}", id);
+        ProjectMigrationResult result = adminProjectService.migrateProjectDatabase(id, false);
+        return ApiResponse.success(result);
+    }
+
+    @PostMapping("/projects/migrate")
+    public ApiResponse<List<ProjectMigrationResult>> migrateAllProjectDatabases(
+            @RequestParam(value = "dryRun", defaultValue = "false") boolean dryRun) {
+        log.log(System.Logger.Level.INFO, "迁移全部项目库请求 (dryRun={0})", dryRun);
+        List<ProjectMigrationResult> results = adminProjectService.migrateAllProjectDatabases(dryRun);
+        return ApiResponse.success(results);
+    }
+
     @GetMapping("/projects/{id}/health")
     public ApiResponse<ProjectHealthResult> checkProjectHealth(@PathVariable("id") Long id) {
         ProjectHealthResult result = adminProjectService.checkProjectHealth(id);
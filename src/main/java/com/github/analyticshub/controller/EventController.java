@@ -3,11 +3,18 @@ package com.github.analyticshub.controller;
 import com.github.analyticshub.common.dto.ApiResponse;
 import com.github.analyticshub.dto.EventTrackRequest;
 import com.github.analyticshub.dto.EventTrackResponse;
+import com.github.analyticshub.security.RequestContext;
+import com.github.analyticshub.service.EventBatchStreamReader;
 import com.github.analyticshub.service.EventService;
+import com.github.analyticshub.service.NdjsonStreamIngestor;
+import jakarta.servlet.http.HttpServletRequest;
 import jakarta.validation.Valid;
 import org.springframework.http.HttpStatus;
 import org.springframework.web.bind.annotation.*;
 
+import java.io.IOException;
+import java.util.Map;
+
 /**
  * 事件追踪控制器
  * 处理事件记录相关请求
@@ -19,9 +26,15 @@ public class EventController {
     private static final System.Logger log = System.getLogger(EventController.class.getName());
 
     private final EventService eventService;
+    private final EventBatchStreamReader batchStreamReader;
+    private final NdjsonStreamIngestor streamIngestor;
 
-    public EventController(EventService eventService) {
+    public EventController(EventService eventService,
+                           EventBatchStreamReader batchStreamReader,
+                           NdjsonStreamIngestor streamIngestor) {
         this.eventService = eventService;
+        this.batchStreamReader = batchStreamReader;
+        this.streamIngestor = streamIngestor;
     }
 
     /**
@@ -45,12 +58,37 @@ public class EventController {
      */
     @PostMapping("/batch")
     @ResponseStatus(HttpStatus.CREATED)
-    public ApiResponse<Void> trackEventsBatch(
-            @Valid @RequestBody EventTrackRequest[] events) {
-        
-        log.log(System.Logger.Level.DEBUG, "批量事件追踪请求: count={0}", events.length);
-        
-        eventService.trackEventsBatch(events);
+    public ApiResponse<Void> trackEventsBatch(HttpServletRequest request) throws IOException {
+
+        // 流式解析 JSON 数组：先整体校验（条数、语法、字段约束），再按分段写入，避免整批物化
+        int count = batchStreamReader.read(request::getInputStream, request.getContentLengthLong(),
+                eventService::trackEventsBatch);
+
+        log.log(System.Logger.Level.DEBUG, "批量事件追踪请求: count={0}", count);
         return ApiResponse.success(null);
     }
+
+    /**
+     * NDJSON 流式事件上传（每行一个事件，支持 chunked 传输）
+     * POST /api/v1/events/stream
+     * 签名覆盖 X-Content-SHA256 请求头；请求体暂存并校验摘要通过后才按分段写入提交
+     */
+    @PostMapping("/stream")
+    @ResponseStatus(HttpStatus.CREATED)
+    public ApiResponse<Map<String, Long>> trackEventsStream(HttpServletRequest request) throws IOException {
+        RequestContext context = RequestContext.get();
+        NdjsonStreamIngestor.StreamIngestResult result = streamIngestor.ingest(
+                request.getInputStream(),
+                request.getHeader(NdjsonStreamIngestor.DIGEST_HEADER),
+                context.getDataSource(),
+                EventTrackRequest.class,
+                EventTrackRequest[]::new,
+                eventService::resolveEventTypes,
+                eventService::trackEventsBatch
+        );
+
+        log.log(System.Logger.Level.INFO, "NDJSON 事件流完成: received={0}, accepted={1}",
+                result.received(), result.accepted());
+        return ApiResponse.success(result.toMap());
+    }
 }
@@ -4,6 +4,8 @@ import com.github.analyticshub.common.dto.ApiResponse;
 import com.github.analyticshub.dto.TrafficMetricTrackRequest;
 import com.github.analyticshub.dto.TrafficMetricTrackResponse;
 import com.github.analyticshub.exception.BusinessException;
+import com.github.analyticshub.security.RequestContext;
+import com.github.analyticshub.service.NdjsonStreamIngestor;
 import com.github.analyticshub.service.TrafficMetricService;
 import jakarta.servlet.http.HttpServletRequest;
 import jakarta.validation.Valid;
@@ -14,6 +16,7 @@ import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.ResponseStatus;
 import org.springframework.web.bind.annotation.RestController;
 
+import java.io.IOException;
 import java.util.Map;
 
 @RestController
@@ -21,9 +24,12 @@ import java.util.Map;
 public class TrafficMetricController {
 
     private final TrafficMetricService trafficMetricService;
+    private final NdjsonStreamIngestor streamIngestor;
 
-    public TrafficMetricController(TrafficMetricService trafficMetricService) {
+    public TrafficMetricController(TrafficMetricService trafficMetricService,
+                                   NdjsonStreamIngestor streamIngestor) {
         this.trafficMetricService = trafficMetricService;
+        this.streamIngestor = streamIngestor;
     }
 
     @PostMapping("/track")
@@ -57,6 +63,27 @@ public class TrafficMetricController {
         ));
     }
 
+    /**
+     * NDJSON 流式上传（每行一条指标，支持 chunked 传输）
+     * 签名覆盖 X-Content-SHA256 请求头；请求体暂存并校验摘要通过后才按分段写入提交
+     */
+    @PostMapping("/stream")
+    @ResponseStatus(HttpStatus.CREATED)
+    public ApiResponse<Map<String, Long>> stream(HttpServletRequest httpServletRequest) throws IOException {
+        String clientIp = resolveClientIp(httpServletRequest);
+        String userAgent = httpServletRequest.getHeader("User-Agent");
+        NdjsonStreamIngestor.StreamIngestResult result = streamIngestor.ingest(
+                httpServletRequest.getInputStream(),
+                httpServletRequest.getHeader(NdjsonStreamIngestor.DIGEST_HEADER),
+                RequestContext.get().getDataSource(),
+                TrafficMetricTrackRequest.class,
+                TrafficMetricTrackRequest[]::new,
+                trafficMetricService::resolveMetricTypes,
+                items -> trafficMetricService.trackBatch(items, clientIp, userAgent)
+        );
+        return ApiResponse.success(result.toMap());
+    }
+
     private static String resolveClientIp(HttpServletRequest request) {
         String forwarded = request.getHeader("X-Forwarded-For");
         if (forwarded != null && !forwarded.isBlank()) {
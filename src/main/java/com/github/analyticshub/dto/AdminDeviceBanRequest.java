@@ -0,0 +1,9 @@
+package com.github.analyticshub.dto;
+
+/**
+ * 设备封禁请求；banned 缺省为 true
+ */
+public record AdminDeviceBanRequest(
+        Boolean banned,
+        String reason
+) {}
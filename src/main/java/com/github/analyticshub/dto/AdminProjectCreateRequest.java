@@ -30,6 +30,12 @@ public record AdminProjectCreateRequest(
         @NotBlank(message = "dbUser 不能为空")
         String dbUser,
         String dbPassword,
+        String replicaDbHost,
+        @Min(value = 1, message = "replicaDbPort 不能小于 1")
+        @Max(value = 65535, message = "replicaDbPort 不能大于 65535")
+        Integer replicaDbPort,
+        String replicaDbUser,
+        String replicaDbPassword,
         @Size(max = 40, message = "tablePrefix 长度不能超过 40")
         @Pattern(regexp = "^[a-z0-9_]*$", message = "tablePrefix 格式无效")
         String tablePrefix
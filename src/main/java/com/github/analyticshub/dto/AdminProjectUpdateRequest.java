@@ -21,8 +21,22 @@ public record AdminProjectUpdateRequest(
         String dbSchema,
         String dbUser,
         String dbPassword,
+        String replicaDbHost,
+        @Min(value = 1, message = "replicaDbPort 不能小于 1")
+        @Max(value = 65535, message = "replicaDbPort 不能大于 65535")
+        Integer replicaDbPort,
+        String replicaDbUser,
+        String replicaDbPassword,
         @Size(max = 40, message = "tablePrefix 长度不能超过 40")
         @Pattern(regexp = "^[a-z0-9_]*$", message = "tablePrefix 格式无效")
         String tablePrefix,
-        Boolean isActive
+        Boolean isActive,
+        @Min(value = 0, message = "retentionEventsDays 不能小于 0")
+        Integer retentionEventsDays,
+        @Min(value = 0, message = "retentionTrafficDays 不能小于 0")
+        Integer retentionTrafficDays,
+        @Min(value = 0, message = "retentionSessionsDays 不能小于 0")
+        Integer retentionSessionsDays,
+        @Min(value = 0, message = "retentionIdempotencyDays 不能小于 0")
+        Integer retentionIdempotencyDays
 ) {}
@@ -0,0 +1,19 @@
+package com.github.analyticshub.dto;
+
+import java.util.List;
+
+/**
+ * 项目库迁移结果
+ *
+ * @param currentVersion 已应用的最高版本（未应用任何迁移时为 null）
+ * @param applied        本次应用的迁移
+ * @param pending        尚未应用的迁移
+ * @param error          失败原因（成功时为 null）
+ */
+public record ProjectMigrationResult(
+        String projectId,
+        Integer currentVersion,
+        List<String> applied,
+        List<String> pending,
+        String error
+) {}
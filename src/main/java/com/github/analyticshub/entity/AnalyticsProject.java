@@ -42,6 +42,33 @@ public class AnalyticsProject {
     // Stored encrypted and excluded from API responses.
     private String dbPasswordEncrypted;
 
+    // 只读副本配置（可选，库名 / schema 与主库相同）
+    @TableField(value = "replica_db_host", updateStrategy = FieldStrategy.ALWAYS)
+    private String replicaDbHost;
+
+    @TableField(value = "replica_db_port", updateStrategy = FieldStrategy.ALWAYS)
+    private Integer replicaDbPort;
+
+    @TableField(value = "replica_db_user", updateStrategy = FieldStrategy.ALWAYS)
+    private String replicaDbUser;
+
+    @TableField(value = "replica_db_password_encrypted", updateStrategy = FieldStrategy.ALWAYS)
+    @JsonIgnore
+    private String replicaDbPasswordEncrypted;
+
+    // 原始数据保留期（天）：null 使用全局默认，0 表示永久保留
+    @TableField(value = "retention_events_days", updateStrategy = FieldStrategy.ALWAYS)
+    private Integer retentionEventsDays;
+
+    @TableField(value = "retention_traffic_days", updateStrategy = FieldStrategy.ALWAYS)
+    private Integer retentionTrafficDays;
+
+    @TableField(value = "retention_sessions_days", updateStrategy = FieldStrategy.ALWAYS)
+    private Integer retentionSessionsDays;
+
+    @TableField(value = "retention_idempotency_days", updateStrategy = FieldStrategy.ALWAYS)
+    private Integer retentionIdempotencyDays;
+
     // 表前缀（避免与业务表名冲突）
     @TableField("table_prefix")
     private String tablePrefix = "analytics_";
@@ -152,6 +179,70 @@ public class AnalyticsProject {
         this.dbPasswordEncrypted = dbPasswordEncrypted;
     }
 
+    public String getReplicaDbHost() {
+        return replicaDbHost;
+    }
+
+    public void setReplicaDbHost(String replicaDbHost) {
+        this.replicaDbHost = replicaDbHost;
+    }
+
+    public Integer getReplicaDbPort() {
+        return replicaDbPort;
+    }
+
+    public void setReplicaDbPort(Integer replicaDbPort) {
+        this.replicaDbPort = replicaDbPort;
+    }
+
+    public String getReplicaDbUser() {
+        return replicaDbUser;
+    }
+
+    public void setReplicaDbUser(String replicaDbUser) {
+        this.replicaDbUser = replicaDbUser;
+    }
+
+    public String getReplicaDbPasswordEncrypted() {
+        return replicaDbPasswordEncrypted;
+    }
+
+    public void setReplicaDbPasswordEncrypted(String replicaDbPasswordEncrypted) {
+        this.replicaDbPasswordEncrypted = replicaDbPasswordEncrypted;
+    }
+
+    public Integer getRetentionEventsDays() {
+        return retentionEventsDays;
+    }
+
+    public void setRetentionEventsDays(Integer retentionEventsDays) {
+        this.retentionEventsDays = retentionEventsDays;
+    }
+
+    public Integer getRetentionTrafficDays() {
+        return retentionTrafficDays;
+    }
+
+    public void setRetentionTrafficDays(Integer retentionTrafficDays) {
+        this.retentionTrafficDays = retentionTrafficDays;
+    }
+
+    public Integer getRetentionSessionsDays() {
+        return retentionSessionsDays;
+    }
+
+    public void setRetentionSessionsDays(Integer retentionSessionsDays) {
+        this.retentionSessionsDays = retentionSessionsDays;
+    }
+
+    public Integer getRetentionIdempotencyDays() {
+        return retentionIdempotencyDays;
+    }
+
+    public void setRetentionIdempotencyDays(Integer retentionIdempotencyDays) {
+        this.retentionIdempotencyDays = retentionIdempotencyDays;
+    }
+
     public String getTablePrefix() {
         return tablePrefix;
     }
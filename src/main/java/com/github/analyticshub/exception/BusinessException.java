@@ -39,13 +39,26 @@ public class BusinessException extends RuntimeException {
     }
 
     public static BusinessException projectDbUnavailable(String projectId) {
+        return new ProjectDbUnavailableException(projectId);
+    }
+
+    public static BusinessException ingestTimeout(String projectId) {
         return new BusinessException(
-                "PROJECT_DB_UNAVAILABLE",
-                "项目数据库不可用，请检查项目数据库配置: " + projectId,
+                "INGEST_TIMEOUT",
+                "事件写入排队超时，请稍后重试: " + projectId,
                 HttpStatus.SERVICE_UNAVAILABLE
         );
     }
 
+    public static BusinessException batchTooLarge(String detail) {
+        return new BusinessException("BATCH_TOO_LARGE", "批量数据过大: " + detail, HttpStatus.PAYLOAD_TOO_LARGE);
+    }
+
+    public static BusinessException typeDictionaryFull(String projectId, int maxEntries) {
+        return new BusinessException("TYPE_DICTIONARY_FULL",
+                "类型数量已达上限（" + maxEntries + "），请合并已有类型: " + projectId);
+    }
+
     public static BusinessException missingDeviceId() {
         return new BusinessException("MISSING_DEVICE_ID", "缺少设备ID");
     }
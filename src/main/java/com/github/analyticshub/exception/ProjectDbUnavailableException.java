@@ -0,0 +1,21 @@
+package com.github.analyticshub.exception;
+
+import org.springframework.http.HttpStatus;
+
+/**
+ * 项目数据库不可用（连接失败或熔断打开）
+ * 单独成类，便于落盘兜底等逻辑按连接类故障识别
+ */
+public class ProjectDbUnavailableException extends BusinessException {
+
+    private final String projectId;
+
+    public ProjectDbUnavailableException(String projectId) {
+        super("PROJECT_DB_UNAVAILABLE", "项目数据库不可用，请检查项目数据库配置: " + projectId, HttpStatus.SERVICE_UNAVAILABLE);
+        this.projectId = projectId;
+    }
+
+    public String getProjectId() {
+        return projectId;
+    }
+}
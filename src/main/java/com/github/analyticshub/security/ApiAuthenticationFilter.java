@@ -4,12 +4,14 @@ import com.fasterxml.jackson.databind.ObjectMapper;
 import com.github.analyticshub.common.dto.ApiResponse;
 import com.github.analyticshub.config.MultiDataSourceManager;
 import com.github.analyticshub.entity.Device;
+import com.github.analyticshub.exception.ProjectDbUnavailableException;
+import com.github.analyticshub.service.NdjsonStreamIngestor;
+import com.github.analyticshub.util.ByteArrayPool;
 import com.github.analyticshub.util.CryptoUtils;
 import jakarta.servlet.FilterChain;
 import jakarta.servlet.ServletException;
 import jakarta.servlet.http.HttpServletRequest;
 import jakarta.servlet.http.HttpServletResponse;
-import org.springframework.jdbc.core.JdbcTemplate;
 import org.springframework.lang.NonNull;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Component;
@@ -17,7 +19,7 @@ import org.springframework.web.filter.OncePerRequestFilter;
 
 import javax.sql.DataSource;
 import java.io.IOException;
-import java.util.UUID;
+import java.nio.charset.StandardCharsets;
 
 /**
  * API认证过滤器
@@ -30,8 +32,12 @@ public class ApiAuthenticationFilter extends OncePerRequestFilter {
 
     private final MultiDataSourceManager dataSourceManager;
     private final ObjectMapper objectMapper;
+    private final DeviceCredentialCache deviceCredentialCache;
 
     private final long signatureValidityMs;
+    private final long maxDecompressedBytes;
+    private final ByteArrayPool bodyBufferPool;
+    private final long maxBodyBytes;
 
     // 不需要 HMAC 认证的路径
     // 注意：该过滤器是 @Component，可能会被 Servlet 容器全局注册。
@@ -45,12 +51,26 @@ public class ApiAuthenticationFilter extends OncePerRequestFilter {
             "/api/admin"
     };
 
+    // NDJSON 流式上传路径：不缓存请求体，签名覆盖 X-Content-SHA256 请求头，摘要由控制器读完后校验
+    private static final String[] STREAM_PATHS = {
+            "/api/v1/events/stream",
+            "/api/v1/traffic-metrics/stream"
+    };
+
     public ApiAuthenticationFilter(MultiDataSourceManager dataSourceManager, 
                                    ObjectMapper objectMapper,
-                                   long signatureValidityMs) {
+                                   DeviceCredentialCache deviceCredentialCache,
+                                   long signatureValidityMs,
+                                   long maxDecompressedBytes,
+                                   ByteArrayPool bodyBufferPool,
+                                   long maxBodyBytes) {
         this.dataSourceManager = dataSourceManager;
         this.objectMapper = objectMapper;
+        this.deviceCredentialCache = deviceCredentialCache;
         this.signatureValidityMs = signatureValidityMs;
+        this.maxDecompressedBytes = maxDecompressedBytes;
+        this.bodyBufferPool = bodyBufferPool;
+        this.maxBodyBytes = maxBodyBytes;
     }
 
     @Override
@@ -67,16 +87,51 @@ public class ApiAuthenticationFilter extends OncePerRequestFilter {
             return;
         }
 
-        // 包装请求以支持多次读取 Body（用于签名验证）
-        CachingHttpServletRequestWrapper wrappedRequest;
+        // 压缩请求体（Content-Encoding: gzip/deflate）先流式解压；签名始终覆盖解压后的原始字节
+        HttpServletRequest decodedRequest;
         try {
-            wrappedRequest = new CachingHttpServletRequestWrapper(request);
-        } catch (Exception e) {
-            log.log(System.Logger.Level.ERROR, "无法读取请求体", e);
-            sendErrorResponse(response, "READ_ERROR", "无法读取请求数据");
+            decodedRequest = DecompressingHttpServletRequestWrapper.wrapIfEncoded(request, maxDecompressedBytes);
+        } catch (DecompressingHttpServletRequestWrapper.UnsupportedContentEncodingException e) {
+            sendErrorResponse(response, HttpServletResponse.SC_UNSUPPORTED_MEDIA_TYPE,
+                    "UNSUPPORTED_ENCODING", "不支持的 Content-Encoding，仅支持 gzip、deflate");
             return;
         }
 
+        // 包装请求以支持多次读取 Body（用于签名验证）；流式上传不缓存，以摘要请求头参与签名
+        HttpServletRequest wrappedRequest;
+        CachingHttpServletRequestWrapper cachingRequest = null;
+        byte[] signedBody;
+        int signedBodyLength;
+        if (isStreamPath(path)) {
+            String digest = decodedRequest.getHeader(NdjsonStreamIngestor.DIGEST_HEADER);
+            if (!NdjsonStreamIngestor.isValidDigest(digest)) {
+                sendErrorResponse(response, "MISSING_HEADERS", "流式上传缺少有效的 " + NdjsonStreamIngestor.DIGEST_HEADER + " 请求头");
+                return;
+            }
+            signedBody = digest.getBytes(StandardCharsets.US_ASCII);
+            signedBodyLength = signedBody.length;
+            wrappedRequest = decodedRequest;
+        } else {
+            try {
+                cachingRequest = new CachingHttpServletRequestWrapper(decodedRequest, bodyBufferPool, maxBodyBytes);
+                signedBody = cachingRequest.getBodyBuffer();
+                signedBodyLength = cachingRequest.getBodyLength();
+                wrappedRequest = cachingRequest;
+            } catch (CachingHttpServletRequestWrapper.BodyTooLargeException e) {
+                sendErrorResponse(response, HttpServletResponse.SC_REQUEST_ENTITY_TOO_LARGE,
+                        "PAYLOAD_TOO_LARGE", "请求体超过上限");
+                return;
+            } catch (DecompressingHttpServletRequestWrapper.DecompressedSizeExceededException e) {
+                sendErrorResponse(response, HttpServletResponse.SC_REQUEST_ENTITY_TOO_LARGE,
+                        "PAYLOAD_TOO_LARGE", "解压后的请求体超过上限");
+                return;
+            } catch (Exception e) {
+                log.log(System.Logger.Level.ERROR, "无法读取请求体", e);
+                sendErrorResponse(response, "READ_ERROR", "无法读取请求数据");
+                return;
+            }
+        }
+
         try {
             // 1. 提取项目ID（必须）
             String projectId = wrappedRequest.getHeader("X-Project-ID");
@@ -146,19 +201,25 @@ public class ApiAuthenticationFilter extends OncePerRequestFilter {
                 return;
             }
 
-            // 6. 从项目数据库查询设备信息
+            // 6. 查询设备信息（凭证缓存，未命中时查询项目数据库）
             DataSource dataSource = dataSourceManager.getDataSource(projectId);
-            String devicesTable = dataSourceManager.getTableName(projectId, "devices");
-            
-            JdbcTemplate jdbcTemplate = new JdbcTemplate(dataSource);
-            Device device = queryDevice(jdbcTemplate, devicesTable, apiKey, deviceId, projectId);
+            DeviceCredentialCache.DeviceCredential credential;
+            try {
+                credential = queryDevice(apiKey, deviceId, projectId);
+            } catch (ProjectDbUnavailableException e) {
+                // 熔断打开且无可用缓存凭证：快速返回 503，而不是误报凭证无效
+                sendErrorResponse(response, HttpServletResponse.SC_SERVICE_UNAVAILABLE, e.getCode(), e.getMessage());
+                return;
+            }
 
-            if (device == null) {
+            if (credential == null) {
                 log.log(System.Logger.Level.WARNING, "认证失败: 无效的API Key或设备ID - {0}/{1}", projectId, deviceId);
                 sendErrorResponse(response, "INVALID_CREDENTIALS", "无效的API Key或设备ID");
                 return;
             }
 
+            Device device = credential.device();
+
             // 7. 检查设备是否被封禁
             if (Boolean.TRUE.equals(device.getIsBanned())) {
                 log.log(System.Logger.Level.WARNING, "认证失败: 设备已被封禁 - {0}", deviceId);
@@ -166,17 +227,21 @@ public class ApiAuthenticationFilter extends OncePerRequestFilter {
                 return;
             }
 
-            // 8. 验证HMAC签名
-            String signatureData = CryptoUtils.buildSignatureData(
+            // 8. 验证HMAC签名（签名串格式见 CryptoUtils.buildSignatureData，Body 为原始字节，流式上传为请求体摘要）
+            boolean signatureValid = CryptoUtils.verifyRequestSignature(
+                    credential.signingKey(),
+                    signature,
                     wrappedRequest.getMethod(),
                     wrappedRequest.getRequestURI(),
                     timestamp,
                     deviceId,
                     userId,
-                    wrappedRequest.getBody() // 现在包含 Body 进行签名验证
+                    signedBody,
+                    0,
+                    signedBodyLength
             );
 
-            if (!CryptoUtils.verifySignature(signatureData, signature, device.getSecretKey())) {
+            if (!signatureValid) {
                 log.log(System.Logger.Level.WARNING, "认证失败: 签名验证失败 - {0}", deviceId);
                 sendErrorResponse(response, "INVALID_SIGNATURE", "签名验证失败");
                 return;
@@ -198,44 +263,37 @@ public class ApiAuthenticationFilter extends OncePerRequestFilter {
             log.log(System.Logger.Level.ERROR, "认证过滤器异常", e);
             sendErrorResponse(response, "AUTH_ERROR", "认证失败");
         } finally {
-            // 清理上下文
+            // 清理上下文，归还请求体缓冲区
             RequestContext.clear();
+            if (cachingRequest != null) {
+                cachingRequest.release();
+            }
         }
     }
 
     /**
      * 查询设备信息
      */
-    private Device queryDevice(JdbcTemplate jdbcTemplate, String tableName,
-                              String apiKey, String deviceId, String projectId) {
+    private DeviceCredentialCache.DeviceCredential queryDevice(String apiKey, String deviceId, String projectId) {
         try {
-            String sql = String.format(
-                    "SELECT * FROM %s WHERE api_key = ? AND device_id = ?::uuid AND project_id = ?",
-                    tableName
-            );
-
-            return jdbcTemplate.queryForObject(sql, (rs, rowNum) -> {
-                Device device = new Device();
-                device.setId(rs.getLong("id"));
-                device.setDeviceId(UUID.fromString(rs.getString("device_id")));
-                device.setApiKey(rs.getString("api_key"));
-                device.setSecretKey(rs.getString("secret_key"));
-                device.setDeviceModel(rs.getString("device_model"));
-                device.setOsVersion(rs.getString("os_version"));
-                device.setAppVersion(rs.getString("app_version"));
-                device.setProjectId(rs.getString("project_id"));
-                device.setIsBanned(rs.getBoolean("is_banned"));
-                device.setBanReason(rs.getString("ban_reason"));
-                device.setCreatedAt(rs.getTimestamp("created_at").toInstant());
-                device.setLastActiveAt(rs.getTimestamp("last_active_at").toInstant());
-                return device;
-            }, apiKey, deviceId, projectId);
+            return deviceCredentialCache.find(projectId, apiKey, deviceId);
+        } catch (ProjectDbUnavailableException e) {
+            throw e;
         } catch (Exception e) {
-            log.log(System.Logger.Level.DEBUG, "Device not found: {0}", deviceId);
+            log.log(System.Logger.Level.WARNING, "设备查询失败: {0}/{1} ({2})", projectId, deviceId, e.getMessage());
             return null;
         }
     }
 
+    static boolean isStreamPath(String path) {
+        for (String streamPath : STREAM_PATHS) {
+            if (path.equals(streamPath)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
     /**
      * 判断是否为公开路径
      */
@@ -257,7 +315,12 @@ public class ApiAuthenticationFilter extends OncePerRequestFilter {
      */
     private void sendErrorResponse(HttpServletResponse response, String code, String message)
             throws IOException {
-        response.setStatus(HttpServletResponse.SC_UNAUTHORIZED);
+        sendErrorResponse(response, HttpServletResponse.SC_UNAUTHORIZED, code, message);
+    }
+
+    private void sendErrorResponse(HttpServletResponse response, int status, String code, String message)
+            throws IOException {
+        response.setStatus(status);
         response.setContentType("application/json;charset=UTF-8");
         
         ApiResponse<Void> apiResponse = ApiResponse.error(code, message);
@@ -1,53 +1,174 @@
 package com.github.analyticshub.security;
 
+import com.github.analyticshub.util.ByteArrayPool;
 import jakarta.servlet.ReadListener;
 import jakarta.servlet.ServletInputStream;
 import jakarta.servlet.http.HttpServletRequest;
 import jakarta.servlet.http.HttpServletRequestWrapper;
-import org.springframework.util.StreamUtils;
 
 import java.io.BufferedReader;
 import java.io.ByteArrayInputStream;
 import java.io.IOException;
+import java.io.InputStream;
 import java.io.InputStreamReader;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Objects;
 
 /**
  * 为了能够多次读取请求体（一次用于签名验证，一次用于 Spring MVC 反序列化）
  * 对 HttpServletRequest 进行包装，将请求体缓存到内存中。
+ *
+ * 缓冲区从 ByteArrayPool 借出：声明了 Content-Length 时超过上限直接拒绝、不读取请求体；
+ * 声明的长度未经认证，不据此一次性分配，初始容量不超过池的最大等级，按实际到达的字节 2 倍扩容（至多扩到声明长度）。
+ * 分块传输（或解压后的请求体）同样按 2 倍扩容读取，累计超过上限时拒绝。请求处理完毕后须调用 release() 归还缓冲区。
  */
 public class CachingHttpServletRequestWrapper extends HttpServletRequestWrapper {
 
-    private final byte[] cachedBody;
+    private static final int INITIAL_CHUNKED_BUFFER_BYTES = 8192;
+    private static final byte[] EMPTY = new byte[0];
 
-    public CachingHttpServletRequestWrapper(HttpServletRequest request) throws IOException {
+    private final ByteArrayPool pool;
+    private byte[] buffer;
+    private final int length;
+
+    public CachingHttpServletRequestWrapper(HttpServletRequest request, ByteArrayPool pool, long maxBodyBytes)
+            throws IOException {
         super(request);
-        this.cachedBody = StreamUtils.copyToByteArray(request.getInputStream());
+        this.pool = pool;
+        int limit = (int) Math.min(maxBodyBytes > 0 ? maxBodyBytes : Integer.MAX_VALUE, Integer.MAX_VALUE - 8);
+
+        long declaredLength = request.getContentLengthLong();
+        if (declaredLength > limit) {
+            throw new BodyTooLargeException(limit);
+        }
+        if (declaredLength == 0) {
+            this.buffer = EMPTY;
+            this.length = 0;
+        } else if (declaredLength > 0) {
+            this.buffer = pool.acquire((int) Math.min(declaredLength, pool.maxBufferBytes()));
+            this.length = read(request.getInputStream(), (int) declaredLength, limit);
+        } else {
+            this.buffer = pool.acquire(Math.min(INITIAL_CHUNKED_BUFFER_BYTES, limit + 1));
+            this.length = read(request.getInputStream(), -1, limit);
+        }
+    }
+
+    /**
+     * 按需 2 倍扩容读取请求体
+     *
+     * @param declaredLength 声明的长度（读满即停止，容量不超过该值）；未声明时为 -1，读到流结束
+     * @param limit          请求体字节上限
+     */
+    private int read(InputStream in, int declaredLength, int limit) throws IOException {
+        // 未声明长度时多申请 1 字节用于探测是否超限
+        int maxCapacity = declaredLength >= 0 ? declaredLength : limit + 1;
+        int count = 0;
+        try {
+            while (count != declaredLength) {
+                if (count == buffer.length) {
+                    int capacity = (int) Math.min((long) buffer.length * 2, maxCapacity);
+                    byte[] grown = pool.acquire(capacity);
+                    System.arraycopy(buffer, 0, grown, 0, count);
+                    pool.release(buffer);
+                    buffer = grown;
+                }
+                int toRead = declaredLength >= 0 ? Math.min(buffer.length, declaredLength) - count : buffer.length - count;
+                int n = in.read(buffer, count, toRead);
+                if (n < 0) {
+                    break;
+                }
+                count += n;
+                if (count > limit) {
+                    throw new BodyTooLargeException(limit);
+                }
+            }
+            return count;
+        } catch (IOException | RuntimeException e) {
+            release();
+            throw e;
+        }
     }
 
     @Override
     public ServletInputStream getInputStream() {
-        return new CachedServletInputStream(this.cachedBody);
+        return new CachedServletInputStream(this.buffer, this.length);
     }
 
     @Override
     public BufferedReader getReader() {
-        return new BufferedReader(new InputStreamReader(new ByteArrayInputStream(this.cachedBody)));
+        return new BufferedReader(new InputStreamReader(
+                new ByteArrayInputStream(this.buffer, 0, this.length), requestCharset()));
+    }
+
+    private Charset requestCharset() {
+        String encoding = getCharacterEncoding();
+        if (encoding == null) {
+            return StandardCharsets.UTF_8;
+        }
+        try {
+            return Charset.forName(encoding);
+        } catch (IllegalArgumentException e) {
+            return StandardCharsets.UTF_8;
+        }
     }
 
     public String getBody() {
-        return new String(this.cachedBody, java.nio.charset.StandardCharsets.UTF_8);
+        return new String(this.buffer, 0, this.length, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * 请求体副本
+     */
+    public byte[] getBodyBytes() {
+        return Arrays.copyOf(this.buffer, this.length);
+    }
+
+    /**
+     * 缓存请求体的底层缓冲区（不复制，有效区段为 [0, getBodyLength())，调用方不得修改）
+     */
+    public byte[] getBodyBuffer() {
+        return this.buffer;
+    }
+
+    public int getBodyLength() {
+        return this.length;
+    }
+
+    /**
+     * 归还缓冲区；之后不得再读取请求体
+     */
+    public void release() {
+        byte[] released = this.buffer;
+        this.buffer = EMPTY;
+        if (released != EMPTY) {
+            pool.release(released);
+        }
+    }
+
+    /**
+     * 请求体超过上限
+     */
+    public static class BodyTooLargeException extends IOException {
+        public BodyTooLargeException(long limit) {
+            super("Request body exceeds " + limit + " bytes");
+        }
     }
 
     private static class CachedServletInputStream extends ServletInputStream {
-        private final ByteArrayInputStream inputStream;
+        private final byte[] buffer;
+        private final int length;
+        private int position;
 
-        public CachedServletInputStream(byte[] cachedBody) {
-            this.inputStream = new ByteArrayInputStream(cachedBody);
+        CachedServletInputStream(byte[] buffer, int length) {
+            this.buffer = buffer;
+            this.length = length;
         }
 
         @Override
         public boolean isFinished() {
-            return inputStream.available() == 0;
+            return position >= length;
         }
 
         @Override
@@ -55,14 +176,54 @@ public class CachingHttpServletRequestWrapper extends HttpServletRequestWrapper
             return true;
         }
 
+        /**
+         * 数据已全部在内存中：立即回调 onDataAvailable 与 onAllDataRead
+         */
         @Override
         public void setReadListener(ReadListener readListener) {
-            throw new UnsupportedOperationException();
+            if (readListener == null) {
+                throw new NullPointerException("readListener");
+            }
+            try {
+                if (!isFinished()) {
+                    readListener.onDataAvailable();
+                }
+                readListener.onAllDataRead();
+            } catch (IOException | RuntimeException e) {
+                readListener.onError(e);
+            }
         }
 
         @Override
         public int read() {
-            return inputStream.read();
+            return position < length ? buffer[position++] & 0xFF : -1;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) {
+            Objects.checkFromIndexSize(off, len, b.length);
+            if (len == 0) {
+                return 0;
+            }
+            if (position >= length) {
+                return -1;
+            }
+            int n = Math.min(len, length - position);
+            System.arraycopy(buffer, position, b, off, n);
+            position += n;
+            return n;
+        }
+
+        @Override
+        public long skip(long n) {
+            long skipped = Math.max(0, Math.min(n, length - position));
+            position += (int) skipped;
+            return skipped;
+        }
+
+        @Override
+        public int available() {
+            return length - position;
         }
     }
 }
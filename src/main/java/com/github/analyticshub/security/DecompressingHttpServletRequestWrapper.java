@@ -0,0 +1,206 @@
+package com.github.analyticshub.security;
+
+import jakarta.servlet.ReadListener;
+import jakarta.servlet.ServletInputStream;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletRequestWrapper;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
+import java.util.Enumeration;
+import java.util.List;
+import java.util.Locale;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.InflaterInputStream;
+
+/**
+ * 压缩请求体解压包装
+ * 按 Content-Encoding（gzip / deflate）流式解压请求体，解压后字节数超过上限立即中止；
+ * 对下游隐藏 Content-Encoding 与 Content-Length，后续签名校验与反序列化看到的都是解压后的原始 JSON。
+ */
+public class DecompressingHttpServletRequestWrapper extends HttpServletRequestWrapper {
+
+    private static final String CONTENT_ENCODING = "Content-Encoding";
+    private static final String CONTENT_LENGTH = "Content-Length";
+
+    private final String encoding;
+    private final long maxDecompressedBytes;
+    private ServletInputStream inputStream;
+
+    private DecompressingHttpServletRequestWrapper(HttpServletRequest request, String encoding, long maxDecompressedBytes) {
+        super(request);
+        this.encoding = encoding;
+        this.maxDecompressedBytes = maxDecompressedBytes;
+    }
+
+    /**
+     * 请求体带压缩编码时返回解压包装，否则原样返回
+     *
+     * @throws UnsupportedContentEncodingException 不支持的 Content-Encoding
+     */
+    public static HttpServletRequest wrapIfEncoded(HttpServletRequest request, long maxDecompressedBytes)
+            throws UnsupportedContentEncodingException {
+        String header = request.getHeader(CONTENT_ENCODING);
+        if (header == null || header.isBlank()) {
+            return request;
+        }
+        String encoding = header.trim().toLowerCase(Locale.ROOT);
+        return switch (encoding) {
+            case "identity" -> request;
+            case "gzip", "x-gzip", "deflate" -> new DecompressingHttpServletRequestWrapper(request, encoding, maxDecompressedBytes);
+            default -> throw new UnsupportedContentEncodingException(encoding);
+        };
+    }
+
+    @Override
+    public ServletInputStream getInputStream() throws IOException {
+        if (inputStream == null) {
+            InputStream raw = super.getInputStream();
+            InputStream decoded = "deflate".equals(encoding)
+                    ? new InflaterInputStream(raw)
+                    : new GZIPInputStream(raw, 8192);
+            inputStream = new DecompressedServletInputStream(decoded, maxDecompressedBytes);
+        }
+        return inputStream;
+    }
+
+    @Override
+    public BufferedReader getReader() throws IOException {
+        return new BufferedReader(new InputStreamReader(getInputStream(), StandardCharsets.UTF_8));
+    }
+
+    @Override
+    public int getContentLength() {
+        return -1;
+    }
+
+    @Override
+    public long getContentLengthLong() {
+        return -1L;
+    }
+
+    @Override
+    public String getHeader(String name) {
+        if (isHiddenHeader(name)) {
+            return null;
+        }
+        return super.getHeader(name);
+    }
+
+    @Override
+    public Enumeration<String> getHeaders(String name) {
+        if (isHiddenHeader(name)) {
+            return Collections.emptyEnumeration();
+        }
+        return super.getHeaders(name);
+    }
+
+    @Override
+    public Enumeration<String> getHeaderNames() {
+        List<String> names = Collections.list(super.getHeaderNames());
+        names.removeIf(DecompressingHttpServletRequestWrapper::isHiddenHeader);
+        return Collections.enumeration(names);
+    }
+
+    private static boolean isHiddenHeader(String name) {
+        return CONTENT_ENCODING.equalsIgnoreCase(name) || CONTENT_LENGTH.equalsIgnoreCase(name);
+    }
+
+    /**
+     * 不支持的压缩编码
+     */
+    public static class UnsupportedContentEncodingException extends Exception {
+        public UnsupportedContentEncodingException(String encoding) {
+            super("Unsupported Content-Encoding: " + encoding);
+        }
+    }
+
+    /**
+     * 解压后请求体超过上限
+     */
+    public static class DecompressedSizeExceededException extends IOException {
+        public DecompressedSizeExceededException(long limit) {
+            super("Decompressed request body exceeds " + limit + " bytes");
+        }
+    }
+
+    private static class DecompressedServletInputStream extends ServletInputStream {
+        private final InputStream delegate;
+        private final long limit;
+        private long count;
+        private boolean finished;
+
+        private DecompressedServletInputStream(InputStream delegate, long limit) {
+            this.delegate = delegate;
+            this.limit = limit;
+        }
+
+        @Override
+        public boolean isFinished() {
+            return finished;
+        }
+
+        @Override
+        public boolean isReady() {
+            return true;
+        }
+
+        /**
+         * 解压流为阻塞读取（isReady 恒为 true）：立即回调 onDataAvailable，读到末尾后回调 onAllDataRead
+         */
+        @Override
+        public void setReadListener(ReadListener readListener) {
+            if (readListener == null) {
+                throw new NullPointerException("readListener");
+            }
+            try {
+                if (!finished) {
+                    readListener.onDataAvailable();
+                }
+                if (finished) {
+                    readListener.onAllDataRead();
+                }
+            } catch (IOException | RuntimeException e) {
+                readListener.onError(e);
+            }
+        }
+
+        @Override
+        public int read() throws IOException {
+            int b = delegate.read();
+            if (b < 0) {
+                finished = true;
+            } else {
+                advance(1);
+            }
+            return b;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            int n = delegate.read(b, off, len);
+            if (n < 0) {
+                finished = true;
+            } else {
+                advance(n);
+            }
+            return n;
+        }
+
+        @Override
+        public void close() throws IOException {
+            delegate.close();
+        }
+
+        private void advance(int n) throws DecompressedSizeExceededException {
+            count += n;
+            if (limit > 0 && count > limit) {
+                throw new DecompressedSizeExceededException(limit);
+            }
+        }
+    }
+}
@@ -0,0 +1,194 @@
+package com.github.analyticshub.security;
+
+import com.github.analyticshub.config.MultiDataSourceManager;
+import com.github.analyticshub.entity.Device;
+import com.github.analyticshub.util.BoundedLruCache;
+import com.github.analyticshub.util.CryptoUtils;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.EmptyResultDataAccessException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+
+import javax.crypto.spec.SecretKeySpec;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.util.Locale;
+import java.util.UUID;
+
+/**
+ * 设备凭证缓存
+ * 采集端每个请求都要按 (项目, API Key, 设备ID) 查询设备的 secret 与封禁状态，这里将查询结果按 TTL 缓存：
+ * - 正向缓存按 (项目, 设备ID) 保存设备，API Key 在内存中比对；
+ * - 负向缓存按 (项目, 设备ID, API Key) 记录“凭证不存在”，撞库流量不再打到数据库；
+ * - 本节点重新发放凭证、封禁/解封时立即失效，其他节点的变更最多延迟一个 TTL；
+ * - 正向条目过期后若项目库连接失败，继续使用旧条目（库恢复前设备仍可上报，配合落盘兜底）。
+ */
+@Component
+public class DeviceCredentialCache {
+
+    private static final System.Logger log = System.getLogger(DeviceCredentialCache.class.getName());
+
+    private final MultiDataSourceManager dataSourceManager;
+    private final boolean enabled;
+    private final long ttlNanos;
+    private final long negativeTtlNanos;
+
+    private final BoundedLruCache<DeviceKey, CachedDevice> devices;
+    private final BoundedLruCache<CredentialKey, Long> unknownCredentials;
+
+    private final Counter hitCounter;
+    private final Counter negativeHitCounter;
+    private final Counter missCounter;
+    private final Counter staleCounter;
+
+    public DeviceCredentialCache(MultiDataSourceManager dataSourceManager,
+                                 MeterRegistry meterRegistry,
+                                 @Value("${app.security.credential-cache.enabled:true}") boolean enabled,
+                                 @Value("${app.security.credential-cache.max-size:100000}") int maxSize,
+                                 @Value("${app.security.credential-cache.ttl-ms:60000}") long ttlMs,
+                                 @Value("${app.security.credential-cache.negative-max-size:100000}") int negativeMaxSize,
+                                 @Value("${app.security.credential-cache.negative-ttl-ms:30000}") long negativeTtlMs) {
+        this.dataSourceManager = dataSourceManager;
+        this.enabled = enabled;
+        this.ttlNanos = ttlMs * 1_000_000L;
+        this.negativeTtlNanos = negativeTtlMs * 1_000_000L;
+        this.devices = new BoundedLruCache<>(Math.max(1, maxSize));
+        this.unknownCredentials = new BoundedLruCache<>(Math.max(1, negativeMaxSize));
+
+        this.hitCounter = lookupCounter(meterRegistry, "hit");
+        this.negativeHitCounter = lookupCounter(meterRegistry, "negative_hit");
+        this.missCounter = lookupCounter(meterRegistry, "miss");
+        this.staleCounter = lookupCounter(meterRegistry, "stale");
+    }
+
+    /**
+     * 按凭证查找设备，不存在返回 null
+     * 返回的设备为副本，调用方可以自由修改；签名密钥随缓存条目复用
+     */
+    public DeviceCredential find(String projectId, String apiKey, String deviceId) {
+        if (!enabled) {
+            Device device = load(projectId, apiKey, deviceId);
+            return device == null ? null : new DeviceCredential(device, CryptoUtils.hmacKey(device.getSecretKey()));
+        }
+
+        long now = System.nanoTime();
+        DeviceKey deviceKey = new DeviceKey(projectId, deviceId.toLowerCase(Locale.ROOT));
+        CachedDevice cached = devices.get(deviceKey);
+        boolean keyMatches = cached != null && apiKeyEquals(cached.device().getApiKey(), apiKey);
+        if (keyMatches && now < cached.expiresAtNanos()) {
+            hitCounter.increment();
+            return cached.toCredential();
+        }
+
+        CredentialKey credentialKey = new CredentialKey(projectId, deviceKey.deviceId(), apiKey);
+        Long unknownUntil = unknownCredentials.get(credentialKey);
+        if (unknownUntil != null && now < unknownUntil) {
+            negativeHitCounter.increment();
+            return null;
+        }
+
+        missCounter.increment();
+        Device device;
+        try {
+            device = load(projectId, apiKey, deviceId);
+        } catch (RuntimeException e) {
+            if (keyMatches) {
+                staleCounter.increment();
+                log.log(System.Logger.Level.WARNING, "设备查询失败，使用过期的缓存凭证: {0}/{1}", projectId, deviceId);
+                return cached.toCredential();
+            }
+            throw e;
+        }
+
+        long loadedAt = System.nanoTime();
+        if (device == null) {
+            unknownCredentials.put(credentialKey, loadedAt + negativeTtlNanos);
+            return null;
+        }
+        CachedDevice entry = new CachedDevice(device, CryptoUtils.hmacKey(device.getSecretKey()), loadedAt + ttlNanos);
+        devices.put(deviceKey, entry);
+        unknownCredentials.remove(credentialKey);
+        return entry.toCredential();
+    }
+
+    /**
+     * 使某设备的缓存凭证失效（重新发放凭证、封禁/解封后调用）
+     */
+    public void invalidate(String projectId, String deviceId) {
+        devices.remove(new DeviceKey(projectId, deviceId.toLowerCase(Locale.ROOT)));
+    }
+
+    public void invalidateAll() {
+        devices.clear();
+        unknownCredentials.clear();
+    }
+
+    /**
+     * 查询设备；凭证不存在返回 null，数据库故障抛出异常
+     */
+    private Device load(String projectId, String apiKey, String deviceId) {
+        JdbcTemplate jdbcTemplate = new JdbcTemplate(dataSourceManager.getDataSource(projectId));
+        String sql = String.format(
+                "SELECT * FROM %s WHERE api_key = ? AND device_id = ?::uuid AND project_id = ?",
+                dataSourceManager.getTableName(projectId, "devices")
+        );
+        try {
+            return jdbcTemplate.queryForObject(sql, (rs, rowNum) -> {
+                Device device = new Device();
+                device.setId(rs.getLong("id"));
+                device.setDeviceId(UUID.fromString(rs.getString("device_id")));
+                device.setApiKey(rs.getString("api_key"));
+                device.setSecretKey(rs.getString("secret_key"));
+                device.setDeviceModel(rs.getString("device_model"));
+                device.setOsVersion(rs.getString("os_version"));
+                device.setAppVersion(rs.getString("app_version"));
+                device.setProjectId(rs.getString("project_id"));
+                device.setIsBanned(rs.getBoolean("is_banned"));
+                device.setBanReason(rs.getString("ban_reason"));
+                device.setCreatedAt(rs.getTimestamp("created_at").toInstant());
+                device.setLastActiveAt(rs.getTimestamp("last_active_at").toInstant());
+                return device;
+            }, apiKey, deviceId, projectId);
+        } catch (EmptyResultDataAccessException e) {
+            log.log(System.Logger.Level.DEBUG, "Device not found: {0}", deviceId);
+            return null;
+        }
+    }
+
+    private static boolean apiKeyEquals(String expected, String actual) {
+        if (expected == null || actual == null) {
+            return false;
+        }
+        return MessageDigest.isEqual(expected.getBytes(StandardCharsets.UTF_8), actual.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private static Device copy(Device device) {
+        return new Device(device.getId(), device.getDeviceId(), device.getApiKey(), device.getSecretKey(),
+                device.getDeviceModel(), device.getOsVersion(), device.getAppVersion(), device.getProjectId(),
+                device.getIsBanned(), device.getBanReason(), device.getCreatedAt(), device.getLastActiveAt());
+    }
+
+    private static Counter lookupCounter(MeterRegistry meterRegistry, String result) {
+        return Counter.builder("analytics.auth.credential.lookups")
+                .description("设备凭证缓存查询次数")
+                .tag("result", result)
+                .register(meterRegistry);
+    }
+
+    private record DeviceKey(String projectId, String deviceId) {}
+
+    private record CredentialKey(String projectId, String deviceId, String apiKey) {}
+
+    private record CachedDevice(Device device, SecretKeySpec signingKey, long expiresAtNanos) {
+        DeviceCredential toCredential() {
+            return new DeviceCredential(copy(device), signingKey);
+        }
+    }
+
+    /**
+     * 查找结果：设备信息 + 已构建的 HMAC 签名密钥
+     */
+    public record DeviceCredential(Device device, SecretKeySpec signingKey) {}
+}
@@ -4,7 +4,9 @@ import com.github.analyticshub.config.MultiDataSourceManager;
 import com.github.analyticshub.dto.AdminDeviceRecord;
 import com.github.analyticshub.dto.AdminDevicesResponse;
 import com.github.analyticshub.exception.BusinessException;
+import com.github.analyticshub.security.DeviceCredentialCache;
 import com.github.analyticshub.util.CryptoUtils;
+import org.springframework.http.HttpStatus;
 import org.springframework.jdbc.core.JdbcTemplate;
 import org.springframework.stereotype.Service;
 
@@ -20,9 +22,12 @@ import java.util.List;
 public class AdminDeviceQueryService {
 
     private final MultiDataSourceManager dataSourceManager;
+    private final DeviceCredentialCache deviceCredentialCache;
 
-    public AdminDeviceQueryService(MultiDataSourceManager dataSourceManager) {
+    public AdminDeviceQueryService(MultiDataSourceManager dataSourceManager,
+                                   DeviceCredentialCache deviceCredentialCache) {
         this.dataSourceManager = dataSourceManager;
+        this.deviceCredentialCache = deviceCredentialCache;
     }
 
     public AdminDevicesResponse listDevices(String projectId, String from, String to,
@@ -100,6 +105,29 @@ public class AdminDeviceQueryService {
         );
     }
 
+    /**
+     * 封禁 / 解封设备，并使该设备的缓存凭证失效
+     */
+    public void updateBan(String projectId, String deviceId, boolean banned, String reason) {
+        String normalizedProjectId = normalizeProjectId(projectId);
+        if (deviceId == null || !CryptoUtils.isValidUUID(deviceId)) {
+            throw BusinessException.invalidDeviceId();
+        }
+        ProjectContext context = requireProject(normalizedProjectId);
+        String devicesTable = dataSourceManager.getTableName(normalizedProjectId, "devices");
+
+        String sql = String.format(
+                "UPDATE %s SET is_banned = ?, ban_reason = ? WHERE device_id = ?::uuid AND project_id = ?",
+                devicesTable
+        );
+        int updated = new JdbcTemplate(context.dataSource()).update(sql,
+                banned, banned ? reason : null, deviceId, normalizedProjectId);
+        deviceCredentialCache.invalidate(normalizedProjectId, deviceId);
+        if (updated == 0) {
+            throw new BusinessException("DEVICE_NOT_FOUND", "设备不存在", HttpStatus.NOT_FOUND);
+        }
+    }
+
     private ProjectContext requireProject(String projectId) {
         String normalizedProjectId = normalizeProjectId(projectId);
         if (normalizedProjectId.isBlank()) {
@@ -25,10 +25,13 @@ public class AdminEventQueryService {
 
     private final MultiDataSourceManager dataSourceManager;
     private final ObjectMapper objectMapper;
+    private final TypeDictionary typeDictionary;
 
-    public AdminEventQueryService(MultiDataSourceManager dataSourceManager, ObjectMapper objectMapper) {
+    public AdminEventQueryService(MultiDataSourceManager dataSourceManager, ObjectMapper objectMapper,
+                                  TypeDictionary typeDictionary) {
         this.dataSourceManager = dataSourceManager;
         this.objectMapper = objectMapper;
+        this.typeDictionary = typeDictionary;
     }
 
     public AdminEventsResponse listEvents(String projectId, String from, String to,
@@ -54,7 +57,7 @@ public class AdminEventQueryService {
 
         if (eventType != null && !eventType.isBlank()) {
             where.append(" AND event_type = ? ");
-            args.add(eventType.trim());
+            args.add(typeDictionary.encode(normalizedProjectId, TypeDictionary.Kind.EVENT, eventType.trim()));
         }
         if (userId != null && !userId.isBlank()) {
             where.append(" AND user_id = ? ");
@@ -92,7 +95,7 @@ public class AdminEventQueryService {
             }
             return new AdminEventRecord(
                     rs.getString("event_id"),
-                    rs.getString("event_type"),
+                    typeDictionary.decode(normalizedProjectId, TypeDictionary.Kind.EVENT, rs.getString("event_type")),
                     rs.getLong("event_timestamp"),
                     rs.getTimestamp("created_at").toInstant().toString(),
                     rs.getString("device_id"),
@@ -139,7 +142,7 @@ public class AdminEventQueryService {
         }
 
         try {
-            DataSource dataSource = dataSourceManager.getDataSource(normalizedProjectId);
+            DataSource dataSource = dataSourceManager.getReadDataSource(normalizedProjectId);
             return new ProjectContext(projectConfig, dataSource);
         } catch (Exception e) {
             log.log(System.Logger.Level.WARNING, "Project datasource unavailable: {0}", normalizedProjectId);
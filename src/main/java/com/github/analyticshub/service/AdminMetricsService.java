@@ -32,9 +32,11 @@ public class AdminMetricsService {
     private static final System.Logger log = System.getLogger(AdminMetricsService.class.getName());
 
     private final MultiDataSourceManager dataSourceManager;
+    private final TypeDictionary typeDictionary;
 
-    public AdminMetricsService(MultiDataSourceManager dataSourceManager) {
+    public AdminMetricsService(MultiDataSourceManager dataSourceManager, TypeDictionary typeDictionary) {
         this.dataSourceManager = dataSourceManager;
+        this.typeDictionary = typeDictionary;
     }
 
     public AdminMetricsOverviewResponse getOverview(String projectId, String from, String to) {
@@ -152,7 +154,9 @@ public class AdminMetricsService {
         );
 
         List<AdminMetricsTopEvent> items = jdbcTemplate.query(sql, (rs, rowNum) ->
-                        new AdminMetricsTopEvent(rs.getString("event_type"), rs.getLong("total")),
+                        new AdminMetricsTopEvent(
+                                typeDictionary.decode(normalizedProjectId, TypeDictionary.Kind.EVENT, rs.getString("event_type")),
+                                rs.getLong("total")),
                 normalizedProjectId, start, end
         );
 
@@ -190,7 +194,7 @@ public class AdminMetricsService {
         }
 
         try {
-            DataSource dataSource = dataSourceManager.getDataSource(normalizedProjectId);
+            DataSource dataSource = dataSourceManager.getReadDataSource(normalizedProjectId);
             return new ProjectContext(projectConfig, dataSource);
         } catch (Exception e) {
             logDebug("Project datasource unavailable", normalizedProjectId, e);
@@ -41,10 +41,13 @@ public class AdminProductAnalyticsService {
 
     private final MultiDataSourceManager dataSourceManager;
     private final ObjectMapper objectMapper;
+    private final TypeDictionary typeDictionary;
 
-    public AdminProductAnalyticsService(MultiDataSourceManager dataSourceManager, ObjectMapper objectMapper) {
+    public AdminProductAnalyticsService(MultiDataSourceManager dataSourceManager, ObjectMapper objectMapper,
+                                        TypeDictionary typeDictionary) {
         this.dataSourceManager = dataSourceManager;
         this.objectMapper = objectMapper;
+        this.typeDictionary = typeDictionary;
     }
 
     public AdminFunnelResponse getFunnel(
@@ -281,7 +284,9 @@ public class AdminProductAnalyticsService {
         args.add(projectId);
         args.add(Timestamp.from(start));
         args.add(Timestamp.from(end));
-        args.addAll(eventTypes);
+        for (String eventType : eventTypes) {
+            args.add(typeDictionary.encode(projectId, TypeDictionary.Kind.EVENT, eventType));
+        }
 
         return jdbcTemplate.query(sql, (rs, rowNum) -> {
             String properties = rs.getString("properties");
@@ -297,7 +302,7 @@ public class AdminProductAnalyticsService {
             String deviceId = rs.getString("device_id");
             String actorId = userId == null || userId.isBlank() ? deviceId : userId;
             return new EventRow(
-                    rs.getString("event_type"),
+                    typeDictionary.decode(projectId, TypeDictionary.Kind.EVENT, rs.getString("event_type")),
                     rs.getTimestamp("created_at").toInstant(),
                     actorId == null ? "" : actorId,
                     propertiesNode
@@ -324,7 +329,7 @@ public class AdminProductAnalyticsService {
             throw BusinessException.projectInactive();
         }
         try {
-            return new ProjectContext(projectConfig, dataSourceManager.getDataSource(normalizedProjectId));
+            return new ProjectContext(projectConfig, dataSourceManager.getReadDataSource(normalizedProjectId));
         } catch (Exception e) {
             throw BusinessException.projectDbUnavailable(normalizedProjectId);
         }
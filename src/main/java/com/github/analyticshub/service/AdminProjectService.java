@@ -8,6 +8,7 @@ import com.github.analyticshub.dto.AdminProjectUpdateRequest;
 import com.github.analyticshub.dto.ProjectConnectionTestResult;
 import com.github.analyticshub.dto.ProjectHealthResult;
 import com.github.analyticshub.dto.ProjectInitResult;
+import com.github.analyticshub.dto.ProjectMigrationResult;
 import com.github.analyticshub.entity.AnalyticsProject;
 import com.github.analyticshub.exception.BusinessException;
 import com.github.analyticshub.mapper.AnalyticsProjectMapper;
@@ -24,6 +25,8 @@ import org.springframework.transaction.annotation.Transactional;
 
 import java.nio.charset.StandardCharsets;
 import java.sql.Connection;
+import java.time.LocalDate;
+import java.time.ZoneOffset;
 import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
@@ -49,11 +52,21 @@ public class AdminProjectService {
 
     private final AnalyticsProjectMapper projectMapper;
     private final MultiDataSourceManager dataSourceManager;
+    private final IngestIdGenerator idGenerator;
+    private final ProjectPartitionManager partitionManager;
+    private final ProjectSchemaMigrator schemaMigrator;
+    private final TypeDictionary typeDictionary;
 
 
-    public AdminProjectService(AnalyticsProjectMapper projectMapper, MultiDataSourceManager dataSourceManager) {
+    public AdminProjectService(AnalyticsProjectMapper projectMapper, MultiDataSourceManager dataSourceManager,
+                               IngestIdGenerator idGenerator, ProjectPartitionManager partitionManager,
+                               ProjectSchemaMigrator schemaMigrator, TypeDictionary typeDictionary) {
         this.projectMapper = projectMapper;
         this.dataSourceManager = dataSourceManager;
+        this.idGenerator = idGenerator;
+        this.partitionManager = partitionManager;
+        this.schemaMigrator = schemaMigrator;
+        this.typeDictionary = typeDictionary;
     }
 
     public List<AnalyticsProject> listProjects() {
@@ -88,6 +101,8 @@ public class AdminProjectService {
         project.setDbPasswordEncrypted(CryptoUtils.encrypt(request.dbPassword()));
         project.setTablePrefix(tablePrefix);
         project.setIsActive(Boolean.TRUE);
+        applyReplica(project, request.replicaDbHost(), request.replicaDbPort(),
+                request.replicaDbUser(), request.replicaDbPassword());
 
         projectMapper.insert(project);
 
@@ -127,9 +142,25 @@ public class AdminProjectService {
         if (request.dbPassword() != null && !request.dbPassword().isBlank()) {
             project.setDbPasswordEncrypted(CryptoUtils.encrypt(request.dbPassword()));
         }
+        applyReplica(project, request.replicaDbHost(), request.replicaDbPort(),
+                request.replicaDbUser(), request.replicaDbPassword());
+        if (request.retentionEventsDays() != null) {
+            project.setRetentionEventsDays(request.retentionEventsDays());
+        }
+        if (request.retentionTrafficDays() != null) {
+            project.setRetentionTrafficDays(request.retentionTrafficDays());
+        }
+        if (request.retentionSessionsDays() != null) {
+            project.setRetentionSessionsDays(request.retentionSessionsDays());
+        }
+        if (request.retentionIdempotencyDays() != null) {
+            project.setRetentionIdempotencyDays(request.retentionIdempotencyDays());
+        }
 
         projectMapper.updateById(project);
         dataSourceManager.reloadProject(project.getProjectId());
+        typeDictionary.evict(project.getProjectId());
+        idGenerator.evict(project.getProjectId());
 
         return projectMapper.selectById(project.getId());
     }
@@ -139,6 +170,8 @@ public class AdminProjectService {
         AnalyticsProject project = requireProject(id);
         projectMapper.deleteById(id);
         dataSourceManager.reloadProject(project.getProjectId());
+        typeDictionary.evict(project.getProjectId());
+        idGenerator.evict(project.getProjectId());
         return project;
     }
 
@@ -158,11 +191,29 @@ public class AdminProjectService {
         ProjectDbConfig config = resolveProjectConfig(id);
         String schema = normalizeDbSchema(config.dbSchema());
         String prefix = normalizeTablePrefix(config.tablePrefix());
-        String sql = loadProjectInitSql(schema, prefix);
+        String sql = loadProjectInitSql("db/project-init.sql", schema, prefix);
+        // 分区布局：先建分区的事件表 / 流量指标表，基础脚本中的同名表与索引随后跳过
+        String partitionedSql = partitionManager.isPartitioned()
+                ? loadProjectInitSql("db/project-init-partitioned.sql", schema, prefix)
+                        .replace("{{PARTITION_GRANULARITY}}", partitionManager.granularityName())
+                : null;
 
         try (HikariDataSource dataSource = createDataSource(config);
              Connection connection = dataSource.getConnection()) {
+            if (partitionedSql != null) {
+                ScriptUtils.executeSqlScript(connection, new ByteArrayResource(partitionedSql.getBytes(StandardCharsets.UTF_8)));
+            }
             ScriptUtils.executeSqlScript(connection, new ByteArrayResource(sql.getBytes(StandardCharsets.UTF_8)));
+            if (partitionedSql != null) {
+                partitionManager.ensurePartitions(new JdbcTemplate(dataSource), schema, prefix, LocalDate.now(ZoneOffset.UTC));
+            }
+            // 初始化脚本已是最新结构，迁移均为 IF NOT EXISTS，这里主要写入版本记录
+            ProjectMigrationResult migration = schemaMigrator.migrate(connection, config.projectId(), schema, prefix, false);
+            if (migration.error() != null) {
+                throw new IllegalStateException(migration.error());
+            }
+            typeDictionary.evict(config.projectId());
+            idGenerator.evict(config.projectId());
         } catch (Exception e) {
             log.log(System.Logger.Level.WARNING, "初始化数据库失败: {0}", e.getMessage());
             throw new BusinessException("PROJECT_INIT_FAILED", "初始化失败: " + e.getMessage(), HttpStatus.INTERNAL_SERVER_ERROR);
@@ -174,12 +225,39 @@ public class AdminProjectService {
                 prefix + "sessions",
                 prefix + "traffic_metrics",
                 prefix + "counters",
-                prefix + "privacy_requests"
+                prefix + "privacy_requests",
+                prefix + "events_daily",
+                prefix + "traffic_daily",
+                prefix + "sessions_daily",
+                prefix + "schema_history",
+                prefix + "event_types",
+                prefix + "metric_types"
         );
 
         return new ProjectInitResult("项目 " + config.projectId() + " 数据库初始化成功", tables);
     }
 
+    /**
+     * 应用（或在 dryRun 时仅列出）项目库的待执行迁移，停用的项目同样适用
+     */
+    public ProjectMigrationResult migrateProjectDatabase(Long id, boolean dryRun) {
+        ProjectDbConfig config = resolveProjectConfig(id);
+        try (HikariDataSource dataSource = createDataSource(config);
+             Connection connection = dataSource.getConnection()) {
+            return schemaMigrator.migrate(connection, config.projectId(), config.dbSchema(), config.tablePrefix(), dryRun);
+        } catch (Exception e) {
+            log.log(System.Logger.Level.WARNING, "迁移项目库失败: {0}", e.getMessage());
+            throw new BusinessException("PROJECT_MIGRATION_FAILED", "迁移失败: " + e.getMessage(), HttpStatus.INTERNAL_SERVER_ERROR);
+        }
+    }
+
+    /**
+     * 迁移所有启用项目（并发数由 app.project-db.migration.parallelism 限制）
+     */
+    public List<ProjectMigrationResult> migrateAllProjectDatabases(boolean dryRun) {
+        return schemaMigrator.migrateAll(dryRun);
+    }
+
     public ProjectHealthResult checkProjectHealth(Long id) {
         ProjectDbConfig config = resolveProjectConfig(id);
         String prefix = normalizeTablePrefix(config.tablePrefix());
@@ -263,6 +341,31 @@ public class AdminProjectService {
         return tablePrefix;
     }
 
+    /**
+     * 更新只读副本配置：replicaDbHost 为空串时清除副本，其余字段为 null 时保持不变
+     */
+    private static void applyReplica(AnalyticsProject project, String host, Integer port, String user, String password) {
+        if (host != null && host.isBlank()) {
+            project.setReplicaDbHost(null);
+            project.setReplicaDbPort(null);
+            project.setReplicaDbUser(null);
+            project.setReplicaDbPasswordEncrypted(null);
+            return;
+        }
+        if (host != null) {
+            project.setReplicaDbHost(host.strip());
+        }
+        if (port != null) {
+            project.setReplicaDbPort(normalizeDbPort(port));
+        }
+        if (user != null) {
+            project.setReplicaDbUser(user.isBlank() ? null : user);
+        }
+        if (password != null && !password.isBlank()) {
+            project.setReplicaDbPasswordEncrypted(CryptoUtils.encrypt(password));
+        }
+    }
+
     private static int normalizeDbPort(Integer dbPort) {
         int port = dbPort == null ? DEFAULT_DB_PORT : dbPort;
         if (port < 1 || port > 65535) {
@@ -294,14 +397,18 @@ public class AdminProjectService {
         return dbSchema;
     }
 
-    private static String loadProjectInitSql(String schema, String prefix) {
+    private String loadProjectInitSql(String path, String schema, String prefix) {
         try {
-            ClassPathResource resource = new ClassPathResource("db/project-init.sql");
+            ClassPathResource resource = new ClassPathResource(path);
             String sql;
             try (var inputStream = resource.getInputStream()) {
                 sql = new String(inputStream.readAllBytes(), StandardCharsets.UTF_8);
             }
-            return sql.replace("{{SCHEMA}}", schema).replace("{{PREFIX}}", prefix);
+            return sql.replace("{{SCHEMA}}", schema)
+                    .replace("{{PREFIX}}", prefix)
+                    .replace("{{ID_COLUMN_TYPE}}", idGenerator.idColumnType())
+                    .replace("{{EVENT_TYPE_COLUMN_TYPE}}", typeDictionary.columnType(TypeDictionary.Kind.EVENT))
+                    .replace("{{METRIC_TYPE_COLUMN_TYPE}}", typeDictionary.columnType(TypeDictionary.Kind.METRIC));
         } catch (Exception e) {
             throw new BusinessException("PROJECT_INIT_TEMPLATE_MISSING", "加载初始化脚本失败", HttpStatus.INTERNAL_SERVER_ERROR);
         }
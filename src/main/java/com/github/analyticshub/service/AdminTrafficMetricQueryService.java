@@ -25,10 +25,13 @@ public class AdminTrafficMetricQueryService {
 
     private final MultiDataSourceManager dataSourceManager;
     private final ObjectMapper objectMapper;
+    private final TypeDictionary typeDictionary;
 
-    public AdminTrafficMetricQueryService(MultiDataSourceManager dataSourceManager, ObjectMapper objectMapper) {
+    public AdminTrafficMetricQueryService(MultiDataSourceManager dataSourceManager, ObjectMapper objectMapper,
+                                          TypeDictionary typeDictionary) {
         this.dataSourceManager = dataSourceManager;
         this.objectMapper = objectMapper;
+        this.typeDictionary = typeDictionary;
     }
 
     public AdminTrafficMetricsResponse listMetrics(String projectId, String from, String to,
@@ -57,7 +60,7 @@ public class AdminTrafficMetricQueryService {
 
         if (metricType != null && !metricType.isBlank()) {
             where.append(" AND metric_type = ? ");
-            args.add(metricType.trim());
+            args.add(typeDictionary.encode(normalizedProjectId, TypeDictionary.Kind.METRIC, metricType.trim()));
         }
         if (userId != null && !userId.isBlank()) {
             where.append(" AND user_id = ? ");
@@ -100,7 +103,7 @@ public class AdminTrafficMetricQueryService {
             }
             return new AdminTrafficMetricRecord(
                     rs.getString("metric_id"),
-                    rs.getString("metric_type"),
+                    typeDictionary.decode(normalizedProjectId, TypeDictionary.Kind.METRIC, rs.getString("metric_type")),
                     rs.getString("page_path"),
                     rs.getString("referrer"),
                     rs.getLong("metric_timestamp"),
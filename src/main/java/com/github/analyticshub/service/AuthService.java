@@ -5,6 +5,7 @@ import com.github.analyticshub.dto.DeviceRegisterRequest;
 import com.github.analyticshub.dto.DeviceRegisterResponse;
 import com.github.analyticshub.entity.Device;
 import com.github.analyticshub.exception.BusinessException;
+import com.github.analyticshub.security.DeviceCredentialCache;
 import com.github.analyticshub.util.CryptoUtils;
 import org.springframework.dao.EmptyResultDataAccessException;
 import org.springframework.jdbc.core.JdbcTemplate;
@@ -25,9 +26,11 @@ public class AuthService {
     private static final System.Logger log = System.getLogger(AuthService.class.getName());
 
     private final MultiDataSourceManager dataSourceManager;
+    private final DeviceCredentialCache deviceCredentialCache;
 
-    public AuthService(MultiDataSourceManager dataSourceManager) {
+    public AuthService(MultiDataSourceManager dataSourceManager, DeviceCredentialCache deviceCredentialCache) {
         this.dataSourceManager = dataSourceManager;
+        this.deviceCredentialCache = deviceCredentialCache;
     }
 
     /**
@@ -93,6 +96,8 @@ public class AuthService {
                     request.deviceId(),
                     projectId
             );
+            // 旧凭证立即失效
+            deviceCredentialCache.invalidate(projectId, request.deviceId());
             log.log(System.Logger.Level.INFO, "设备凭证已重新发放: {0}/{1}", projectId, request.deviceId());
             return new DeviceRegisterResponse(apiKey, secretKey, false);
         }
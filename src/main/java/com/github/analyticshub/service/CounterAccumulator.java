@@ -0,0 +1,233 @@
+package com.github.analyticshub.service;
+
+import com.github.analyticshub.config.MultiDataSourceManager;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PreDestroy;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.sql.PreparedStatement;
+import java.sql.Timestamp;
+import java.time.Instant;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 计数器增量内存聚合
+ * 事件触发的自增先累加到 (项目, 计数器) 对应的 LongAdder 分段单元，
+ * 后台线程每 flush-interval-ms 将每个项目的增量以一条 unnest 多行 upsert 写入，热点计数器不再逐事件争用行锁。
+ *
+ * 有界陈旧：读接口叠加本节点未落库的增量，本节点读取结果不落后于已接受的事件；
+ * 数据库中的值（其他节点可见）最多落后一个刷新周期，某项目超过 max-staleness-ms 未成功刷新时，读取前先同步刷新。
+ * 进程异常退出会丢失最后一个周期内的增量；正常停机时会先刷新。
+ */
+@Component
+public class CounterAccumulator {
+
+    private static final System.Logger log = System.getLogger(CounterAccumulator.class.getName());
+
+    private final MultiDataSourceManager dataSourceManager;
+    private final boolean enabled;
+    private final long maxStalenessMs;
+
+    private final Map<String, ProjectCells> projects = new ConcurrentHashMap<>();
+    private final ScheduledExecutorService flusher;
+
+    private final Counter flushedRows;
+    private final Counter flushFailures;
+
+    public CounterAccumulator(MultiDataSourceManager dataSourceManager,
+                              MeterRegistry meterRegistry,
+                              @Value("${app.counters.aggregation.enabled:true}") boolean enabled,
+                              @Value("${app.counters.aggregation.flush-interval-ms:1000}") long flushIntervalMs,
+                              @Value("${app.counters.aggregation.max-staleness-ms:5000}") long maxStalenessMs) {
+        this.dataSourceManager = dataSourceManager;
+        this.enabled = enabled;
+        long interval = Math.max(10, flushIntervalMs);
+        this.maxStalenessMs = Math.max(interval, maxStalenessMs);
+
+        this.flushedRows = Counter.builder("analytics.counters.flushed")
+                .description("计数器增量落库行数")
+                .register(meterRegistry);
+        this.flushFailures = Counter.builder("analytics.counters.flush.failures")
+                .description("计数器增量落库失败次数")
+                .register(meterRegistry);
+        Gauge.builder("analytics.counters.pending", projects, CounterAccumulator::countPendingCells)
+                .description("尚未落库的计数器单元数")
+                .register(meterRegistry);
+
+        if (!enabled) {
+            this.flusher = null;
+            return;
+        }
+        this.flusher = Executors.newSingleThreadScheduledExecutor(Thread.ofPlatform()
+                .name("counter-flusher").daemon(true).factory());
+        this.flusher.scheduleWithFixedDelay(this::flushAll, interval, interval, TimeUnit.MILLISECONDS);
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * 累加增量；处于事务中时（如落盘回放）在提交后才计入，回滚则丢弃
+     */
+    public void add(String projectId, String counterKey, long delta) {
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    cell(projectId, counterKey).add(delta);
+                }
+            });
+            return;
+        }
+        cell(projectId, counterKey).add(delta);
+    }
+
+    /**
+     * 本节点尚未落库的增量
+     */
+    public long pending(String projectId, String counterKey) {
+        ProjectCells cells = projects.get(projectId);
+        if (cells == null) {
+            return 0;
+        }
+        LongAdder adder = cells.adders.get(counterKey);
+        return adder == null ? 0 : adder.sum();
+    }
+
+    /**
+     * 读取前调用：该项目超过有界陈旧上限未成功刷新时同步刷新
+     */
+    public void ensureFresh(String projectId) {
+        ProjectCells cells = projects.get(projectId);
+        if (cells != null && System.currentTimeMillis() - cells.lastFlushMillis.get() > maxStalenessMs) {
+            try {
+                flush(projectId, cells);
+            } catch (RuntimeException e) {
+                flushFailures.increment();
+                log.log(System.Logger.Level.WARNING, "计数器增量同步落库失败: {0} ({1})", projectId, e.getMessage());
+            }
+        }
+    }
+
+    /**
+     * 丢弃某计数器未落库的增量（计数器被删除或被设置为绝对值时）
+     */
+    public void discard(String projectId, String counterKey) {
+        ProjectCells cells = projects.get(projectId);
+        if (cells != null) {
+            synchronized (cells) {
+                cells.adders.remove(counterKey);
+            }
+        }
+    }
+
+    void flushAll() {
+        projects.forEach((projectId, cells) -> {
+            try {
+                flush(projectId, cells);
+            } catch (RuntimeException e) {
+                flushFailures.increment();
+                log.log(System.Logger.Level.WARNING, "计数器增量落库失败: {0} ({1})", projectId, e.getMessage());
+            }
+        });
+    }
+
+    /**
+     * 写入该项目全部非零增量；先写库再从单元中扣减，写库期间新到的增量保留到下个周期
+     */
+    private void flush(String projectId, ProjectCells cells) {
+        synchronized (cells) {
+            // 按键排序，多节点并发刷新同一批计数器时加锁顺序一致，避免死锁
+            Map<String, Long> drained = new TreeMap<>();
+            cells.adders.forEach((key, adder) -> {
+                long value = adder.sum();
+                if (value != 0) {
+                    drained.put(key, value);
+                }
+            });
+            if (drained.isEmpty()) {
+                cells.lastFlushMillis.set(System.currentTimeMillis());
+                return;
+            }
+
+            String table = dataSourceManager.getTableName(projectId, "counters");
+            String[] keys = drained.keySet().toArray(String[]::new);
+            Long[] deltas = drained.values().toArray(Long[]::new);
+            Timestamp now = Timestamp.from(Instant.now());
+            String sql = String.format(
+                    "INSERT INTO %s (counter_key, counter_value, project_id, created_at, updated_at) " +
+                            "SELECT d.counter_key, d.delta, ?, ?, ? FROM unnest(?::text[], ?::bigint[]) AS d(counter_key, delta) " +
+                            "ON CONFLICT (project_id, counter_key) DO UPDATE SET " +
+                            "counter_value = %s.counter_value + EXCLUDED.counter_value, " +
+                            "updated_at = EXCLUDED.updated_at",
+                    table, table
+            );
+            new JdbcTemplate(dataSourceManager.getDataSource(projectId)).update(connection -> {
+                PreparedStatement ps = connection.prepareStatement(sql);
+                ps.setString(1, projectId);
+                ps.setTimestamp(2, now);
+                ps.setTimestamp(3, now);
+                ps.setArray(4, connection.createArrayOf("text", keys));
+                ps.setArray(5, connection.createArrayOf("bigint", deltas));
+                return ps;
+            });
+
+            drained.forEach((key, value) -> {
+                LongAdder adder = cells.adders.get(key);
+                if (adder != null) {
+                    adder.add(-value);
+                }
+            });
+            flushedRows.increment(drained.size());
+            cells.lastFlushMillis.set(System.currentTimeMillis());
+        }
+    }
+
+    private LongAdder cell(String projectId, String counterKey) {
+        return projects.computeIfAbsent(projectId, id -> new ProjectCells())
+                .adders.computeIfAbsent(counterKey, key -> new LongAdder());
+    }
+
+    private static double countPendingCells(Map<String, ProjectCells> projects) {
+        long count = 0;
+        for (ProjectCells cells : projects.values()) {
+            for (LongAdder adder : cells.adders.values()) {
+                if (adder.sum() != 0) {
+                    count++;
+                }
+            }
+        }
+        return count;
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        if (flusher == null) {
+            return;
+        }
+        flusher.shutdownNow();
+        flushAll();
+    }
+
+    /**
+     * 单项目的计数器单元；单元不随刷新移除（计数器数量由规则决定，规模有限），避免与并发累加竞争
+     */
+    private static final class ProjectCells {
+        private final Map<String, LongAdder> adders = new ConcurrentHashMap<>();
+        private final AtomicLong lastFlushMillis = new AtomicLong(System.currentTimeMillis());
+    }
+}
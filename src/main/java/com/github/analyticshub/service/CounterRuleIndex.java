@@ -0,0 +1,102 @@
+package com.github.analyticshub.service;
+
+import com.fasterxml.jackson.databind.JsonNode;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 单项目的计数器触发规则索引
+ * 规则 JSON 在构建时解析一次，按 event_type 分组；匹配事件只需一次哈希查找与条件比较，不访问数据库。
+ */
+final class CounterRuleIndex {
+
+    private final Map<String, List<CompiledRule>> rulesByEventType;
+    private final long loadedAtMillis;
+
+    private CounterRuleIndex(Map<String, List<CompiledRule>> rulesByEventType, long loadedAtMillis) {
+        this.rulesByEventType = rulesByEventType;
+        this.loadedAtMillis = loadedAtMillis;
+    }
+
+    /**
+     * @param triggers counter_key → 已解析的 event_trigger（解析失败的规则传 null，将被忽略）
+     */
+    static CounterRuleIndex build(Map<String, JsonNode> triggers) {
+        Map<String, List<CompiledRule>> byEventType = new HashMap<>();
+        triggers.forEach((counterKey, trigger) -> {
+            CompiledRule rule = CompiledRule.compile(counterKey, trigger);
+            if (rule != null) {
+                byEventType.computeIfAbsent(rule.eventType(), type -> new ArrayList<>()).add(rule);
+            }
+        });
+        byEventType.replaceAll((type, rules) -> List.copyOf(rules));
+        return new CounterRuleIndex(Map.copyOf(byEventType), System.currentTimeMillis());
+    }
+
+    /**
+     * 事件命中的计数器 key
+     */
+    List<String> match(String eventType, Map<String, Object> properties) {
+        List<CompiledRule> candidates = eventType == null ? null : rulesByEventType.get(eventType);
+        if (candidates == null) {
+            return List.of();
+        }
+        List<String> matched = new ArrayList<>(candidates.size());
+        for (CompiledRule rule : candidates) {
+            if (rule.matchesProperties(properties)) {
+                matched.add(rule.counterKey());
+            }
+        }
+        return matched;
+    }
+
+    boolean isExpired(long ttlMillis) {
+        return ttlMillis > 0 && System.currentTimeMillis() - loadedAtMillis > ttlMillis;
+    }
+
+    /**
+     * 预编译规则：event_type 精确匹配 + 属性等值条件（属性值按字符串比较）
+     *
+     * @param conditions 为 null 表示规则未声明 conditions
+     */
+    record CompiledRule(String counterKey, String eventType, Map<String, String> conditions) {
+
+        static CompiledRule compile(String counterKey, JsonNode trigger) {
+            if (trigger == null || !trigger.has("event_type")) {
+                return null;
+            }
+            Map<String, String> conditions = null;
+            if (trigger.has("conditions")) {
+                conditions = new HashMap<>();
+                for (Map.Entry<String, JsonNode> entry : (Iterable<Map.Entry<String, JsonNode>>) () -> trigger.get("conditions").fields()) {
+                    conditions.put(entry.getKey(), entry.getValue().asText());
+                }
+                conditions = Map.copyOf(conditions);
+            }
+            return new CompiledRule(counterKey, trigger.get("event_type").asText(), conditions);
+        }
+
+        boolean matches(String eventType, Map<String, Object> properties) {
+            return this.eventType.equals(eventType) && matchesProperties(properties);
+        }
+
+        boolean matchesProperties(Map<String, Object> properties) {
+            if (conditions == null) {
+                return true;
+            }
+            if (properties == null) {
+                return false;
+            }
+            for (Map.Entry<String, String> condition : conditions.entrySet()) {
+                Object val = properties.get(condition.getKey());
+                if (val == null || !val.toString().equals(condition.getValue())) {
+                    return false;
+                }
+            }
+            return true;
+        }
+    }
+}
@@ -8,25 +8,39 @@ import com.github.analyticshub.dto.CounterUpsertRequest;
 import com.github.analyticshub.dto.CountersResponse;
 import com.github.analyticshub.exception.BusinessException;
 import com.github.analyticshub.util.CryptoUtils;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.jdbc.core.JdbcTemplate;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 
 import javax.sql.DataSource;
+import java.sql.ResultSet;
+import java.sql.SQLException;
 import java.sql.Timestamp;
 import java.time.Instant;
+import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 
 @Service
 public class CounterService {
 
     private final MultiDataSourceManager dataSourceManager;
     private final ObjectMapper objectMapper;
+    private final CounterAccumulator counterAccumulator;
+    private final long ruleCacheTtlMs;
 
-    public CounterService(MultiDataSourceManager dataSourceManager, ObjectMapper objectMapper) {
+    // 项目ID → 触发规则索引；本节点 upsert/delete 时立即失效，其他节点的修改在 TTL 后生效
+    private final Map<String, CounterRuleIndex> ruleIndexes = new ConcurrentHashMap<>();
+
+    public CounterService(MultiDataSourceManager dataSourceManager, ObjectMapper objectMapper,
+                          CounterAccumulator counterAccumulator,
+                          @Value("${app.counters.rules.cache-ttl-ms:60000}") long ruleCacheTtlMs) {
         this.dataSourceManager = dataSourceManager;
         this.objectMapper = objectMapper;
+        this.counterAccumulator = counterAccumulator;
+        this.ruleCacheTtlMs = ruleCacheTtlMs;
     }
 
     public CountersResponse list(String projectId, boolean onlyPublic) {
@@ -34,7 +48,7 @@ public class CounterService {
         ProjectContext context = requireProject(normalizedProjectId);
         JdbcTemplate jdbcTemplate = new JdbcTemplate(context.dataSource());
         String table = dataSourceManager.getTableName(normalizedProjectId, "counters");
-        ensureCountersTable(jdbcTemplate, table);
+        counterAccumulator.ensureFresh(normalizedProjectId);
 
         String sql = String.format(
                 "SELECT counter_key, counter_value, display_name, unit, event_trigger, is_public, description, updated_at " +
@@ -43,17 +57,7 @@ public class CounterService {
                 onlyPublic ? "AND is_public = TRUE" : ""
         );
 
-        List<CounterRecord> items = jdbcTemplate.query(sql, (rs, rowNum) ->
-                        new CounterRecord(
-                                rs.getString("counter_key"),
-                                rs.getLong("counter_value"),
-                                parseJson(rs.getString("display_name")),
-                                parseJson(rs.getString("unit")),
-                                parseJson(rs.getString("event_trigger")),
-                                rs.getBoolean("is_public"),
-                                rs.getString("description"),
-                                rs.getTimestamp("updated_at").toInstant().toString()
-                        ),
+        List<CounterRecord> items = jdbcTemplate.query(sql, (rs, rowNum) -> mapRecord(rs, normalizedProjectId),
                 normalizedProjectId
         );
 
@@ -65,7 +69,7 @@ public class CounterService {
         ProjectContext context = requireProject(normalizedProjectId);
         JdbcTemplate jdbcTemplate = new JdbcTemplate(context.dataSource());
         String table = dataSourceManager.getTableName(normalizedProjectId, "counters");
-        ensureCountersTable(jdbcTemplate, table);
+        counterAccumulator.ensureFresh(normalizedProjectId);
 
         String sql = String.format(
                 "SELECT counter_key, counter_value, display_name, unit, event_trigger, is_public, description, updated_at " +
@@ -74,17 +78,7 @@ public class CounterService {
                 onlyPublic ? "AND is_public = TRUE" : ""
         );
 
-        List<CounterRecord> items = jdbcTemplate.query(sql, (rs, rowNum) ->
-                        new CounterRecord(
-                                rs.getString("counter_key"),
-                                rs.getLong("counter_value"),
-                                parseJson(rs.getString("display_name")),
-                                parseJson(rs.getString("unit")),
-                                parseJson(rs.getString("event_trigger")),
-                                rs.getBoolean("is_public"),
-                                rs.getString("description"),
-                                rs.getTimestamp("updated_at").toInstant().toString()
-                        ),
+        List<CounterRecord> items = jdbcTemplate.query(sql, (rs, rowNum) -> mapRecord(rs, normalizedProjectId),
                 normalizedProjectId,
                 key
         );
@@ -97,7 +91,6 @@ public class CounterService {
         ProjectContext context = requireProject(normalizedProjectId);
         JdbcTemplate jdbcTemplate = new JdbcTemplate(context.dataSource());
         String table = dataSourceManager.getTableName(normalizedProjectId, "counters");
-        ensureCountersTable(jdbcTemplate, table);
 
         Instant now = Instant.now();
         String upsertSql = String.format(
@@ -127,6 +120,11 @@ public class CounterService {
                 Timestamp.from(now),
                 Timestamp.from(now)
         );
+        ruleIndexes.remove(normalizedProjectId);
+        if (request != null && request.value() != null) {
+            // 设置绝对值：此前未落库的增量作废
+            counterAccumulator.discard(normalizedProjectId, key);
+        }
 
         return get(normalizedProjectId, key, false);
     }
@@ -137,7 +135,6 @@ public class CounterService {
         ProjectContext context = requireProject(normalizedProjectId);
         JdbcTemplate jdbcTemplate = new JdbcTemplate(context.dataSource());
         String table = dataSourceManager.getTableName(normalizedProjectId, "counters");
-        ensureCountersTable(jdbcTemplate, table);
 
         Instant now = Instant.now();
         String upsertSql = String.format(
@@ -145,12 +142,13 @@ public class CounterService {
                         "VALUES (?, ?, ?, ?, ?) " +
                         "ON CONFLICT (project_id, counter_key) DO UPDATE SET " +
                         "counter_value = %s.counter_value + EXCLUDED.counter_value, " +
-                        "updated_at = EXCLUDED.updated_at",
+                        "updated_at = EXCLUDED.updated_at " +
+                        "RETURNING counter_key, counter_value, display_name, unit, event_trigger, is_public, description, updated_at",
                 table, table
         );
 
-        jdbcTemplate.update(upsertSql, key, delta, normalizedProjectId, Timestamp.from(now), Timestamp.from(now));
-        return get(normalizedProjectId, key, false);
+        return jdbcTemplate.queryForObject(upsertSql, (rs, rowNum) -> mapRecord(rs, normalizedProjectId),
+                key, delta, normalizedProjectId, Timestamp.from(now), Timestamp.from(now));
     }
 
     @Transactional
@@ -159,53 +157,75 @@ public class CounterService {
         ProjectContext context = requireProject(normalizedProjectId);
         JdbcTemplate jdbcTemplate = new JdbcTemplate(context.dataSource());
         String table = dataSourceManager.getTableName(normalizedProjectId, "counters");
-        ensureCountersTable(jdbcTemplate, table);
 
         String sql = String.format("DELETE FROM %s WHERE project_id = ? AND counter_key = ?", table);
         jdbcTemplate.update(sql, normalizedProjectId, key);
+        ruleIndexes.remove(normalizedProjectId);
+        counterAccumulator.discard(normalizedProjectId, key);
     }
 
     /**
      * 根据事件自动增加计数器 (Lambda 引擎)
+     * 开启内存聚合时只累加增量，由 CounterAccumulator 周期性批量落库
      */
     @Transactional
     public void processEventAutoIncrements(String projectId, String eventType, Map<String, Object> properties) {
         String normalizedProjectId = normalizeProjectId(projectId);
-        ProjectContext context = requireProject(normalizedProjectId);
-        JdbcTemplate jdbcTemplate = new JdbcTemplate(context.dataSource());
-        String table = dataSourceManager.getTableName(normalizedProjectId, "counters");
-        ensureCountersTable(jdbcTemplate, table);
+        CounterRuleIndex index = ruleIndex(normalizedProjectId);
 
-        // 查找匹配此 eventType 的所有规则
-        String sql = String.format("SELECT counter_key, event_trigger FROM %s WHERE project_id = ? AND event_trigger IS NOT NULL", table);
-        List<Map<String, Object>> rules = jdbcTemplate.queryForList(sql, normalizedProjectId);
-
-        for (Map<String, Object> rule : rules) {
-            String counterKey = (String) rule.get("counter_key");
-            JsonNode trigger = parseJson((String) rule.get("event_trigger"));
-            
-            if (trigger != null && isMatch(trigger, eventType, properties)) {
+        for (String counterKey : index.match(eventType, properties)) {
+            if (counterAccumulator.isEnabled()) {
+                counterAccumulator.add(normalizedProjectId, counterKey, 1L);
+            } else {
                 increment(normalizedProjectId, counterKey, 1L);
             }
         }
     }
 
     boolean isMatch(JsonNode trigger, String eventType, Map<String, Object> properties) {
-        if (!trigger.has("event_type")) return false;
-        if (!trigger.get("event_type").asText().equals(eventType)) return false;
-
-        // 条件过滤 (可选)
-        if (trigger.has("conditions")) {
-            JsonNode conditions = trigger.get("conditions");
-            if (properties == null) return false;
-            for (Map.Entry<String, JsonNode> entry : (Iterable<Map.Entry<String, JsonNode>>) () -> conditions.fields()) {
-                Object val = properties.get(entry.getKey());
-                if (val == null || !val.toString().equals(entry.getValue().asText())) {
-                    return false;
-                }
-            }
+        CounterRuleIndex.CompiledRule rule = CounterRuleIndex.CompiledRule.compile(null, trigger);
+        return rule != null && rule.matches(eventType, properties);
+    }
+
+    /**
+     * 项目的触发规则索引，未加载或已过期时从计数器表重建
+     */
+    private CounterRuleIndex ruleIndex(String projectId) {
+        CounterRuleIndex index = ruleIndexes.get(projectId);
+        if (index != null && !index.isExpired(ruleCacheTtlMs)) {
+            return index;
         }
-        return true;
+
+        ProjectContext context = requireProject(projectId);
+        JdbcTemplate jdbcTemplate = new JdbcTemplate(context.dataSource());
+        String table = dataSourceManager.getTableName(projectId, "counters");
+
+        String sql = String.format("SELECT counter_key, event_trigger FROM %s WHERE project_id = ? AND event_trigger IS NOT NULL", table);
+        Map<String, JsonNode> triggers = new HashMap<>();
+        jdbcTemplate.query(sql, rs -> {
+            triggers.put(rs.getString("counter_key"), parseJson(rs.getString("event_trigger")));
+        }, projectId);
+
+        index = CounterRuleIndex.build(triggers);
+        ruleIndexes.put(projectId, index);
+        return index;
+    }
+
+    /**
+     * 行映射；计数值叠加本节点尚未落库的增量
+     */
+    private CounterRecord mapRecord(ResultSet rs, String projectId) throws SQLException {
+        String counterKey = rs.getString("counter_key");
+        return new CounterRecord(
+                counterKey,
+                rs.getLong("counter_value") + counterAccumulator.pending(projectId, counterKey),
+                parseJson(rs.getString("display_name")),
+                parseJson(rs.getString("unit")),
+                parseJson(rs.getString("event_trigger")),
+                rs.getBoolean("is_public"),
+                rs.getString("description"),
+                rs.getTimestamp("updated_at").toInstant().toString()
+        );
     }
 
     private JsonNode parseJson(String json) {
@@ -234,35 +254,6 @@ public class CounterService {
 
     private record ProjectContext(MultiDataSourceManager.ProjectConfig config, DataSource dataSource) {}
 
-    private static void ensureCountersTable(JdbcTemplate jdbcTemplate, String table) {
-        String constraintName = safeDbIdentifier("uq_" + table + "_project_key", 63);
-        String createSql = String.format(
-                "CREATE TABLE IF NOT EXISTS %s (" +
-                        "id BIGSERIAL PRIMARY KEY, " +
-                        "counter_key VARCHAR(100) NOT NULL, " +
-                        "counter_value BIGINT NOT NULL DEFAULT 0, " +
-                        "display_name JSONB, " +
-                        "unit JSONB, " +
-                        "event_trigger JSONB, " +
-                        "is_public BOOLEAN DEFAULT FALSE, " +
-                        "description TEXT, " +
-                        "project_id VARCHAR(50) NOT NULL, " +
-                        "created_at TIMESTAMP WITH TIME ZONE DEFAULT NOW(), " +
-                        "updated_at TIMESTAMP WITH TIME ZONE DEFAULT NOW(), " +
-                        "CONSTRAINT %s UNIQUE (project_id, counter_key)" +
-                        ")",
-                table,
-                constraintName
-        );
-        jdbcTemplate.execute(createSql);
-    }
-
-    private static String safeDbIdentifier(String value, int maxLen) {
-        String normalized = value == null ? "" : value.replaceAll("[^a-zA-Z0-9_]", "_");
-        if (normalized.length() <= maxLen) return normalized;
-        return normalized.substring(0, maxLen);
-    }
-
     private static String normalizeProjectId(String projectId) {
         return projectId == null ? "" : projectId.strip();
     }
@@ -0,0 +1,185 @@
+package com.github.analyticshub.service;
+
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.github.analyticshub.dto.EventTrackRequest;
+import com.github.analyticshub.exception.BusinessException;
+import jakarta.validation.ConstraintViolation;
+import jakarta.validation.Validator;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.io.InputStreamSource;
+import org.springframework.stereotype.Component;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.function.Consumer;
+
+/**
+ * 批量事件流式读取器
+ * 以 JsonParser 逐个读取 JSON 数组元素，按固定条数分段交给下游写入，
+ * 单次请求的堆占用上限为一个分段，与请求体总大小无关。
+ *
+ * 写入前先完整解析一遍（请求体已由签名校验缓存在内存中，重复读取只有解析开销）：
+ * 请求体字节数、事件条数、JSON 语法与每个元素的字段校验（与单事件接口相同的 Bean Validation 约束）
+ * 任一不通过即整批拒绝，不会出现部分分段已提交后才返回 413/400、客户端重试导致重复写入的情况。
+ */
+@Component
+public class EventBatchStreamReader {
+
+    private final ObjectMapper objectMapper;
+    private final Validator validator;
+    private final int chunkSize;
+    private final int maxEvents;
+    private final long maxBodyBytes;
+
+    public EventBatchStreamReader(ObjectMapper objectMapper,
+                                  Validator validator,
+                                  @Value("${app.ingest.batch.chunk-size:500}") int chunkSize,
+                                  @Value("${app.ingest.batch.max-events:10000}") int maxEvents,
+                                  @Value("${app.ingest.batch.max-body-bytes:10485760}") long maxBodyBytes) {
+        this.objectMapper = objectMapper;
+        this.validator = validator;
+        this.chunkSize = Math.max(1, chunkSize);
+        this.maxEvents = maxEvents;
+        this.maxBodyBytes = maxBodyBytes;
+    }
+
+    /**
+     * 校验整个批量事件数组后分段回调
+     *
+     * @param body          可重复读取的请求体
+     * @param contentLength 声明的请求体长度（未知时为 -1）
+     * @param chunkConsumer 分段处理（每段最多 chunkSize 条）
+     * @return 读取到的事件条数（含 null 元素）
+     */
+    public int read(InputStreamSource body, long contentLength, Consumer<EventTrackRequest[]> chunkConsumer) {
+        if (maxBodyBytes > 0 && contentLength > maxBodyBytes) {
+            throw BusinessException.batchTooLarge("请求体超过 " + maxBodyBytes + " 字节");
+        }
+
+        // 预检：任何分段写入之前发现超限与无效数据
+        int total = parse(body, event -> {});
+
+        List<EventTrackRequest> chunk = new ArrayList<>(chunkSize);
+        parse(body, event -> {
+            chunk.add(event);
+            if (chunk.size() >= chunkSize) {
+                chunkConsumer.accept(chunk.toArray(EventTrackRequest[]::new));
+                chunk.clear();
+            }
+        });
+        if (!chunk.isEmpty()) {
+            chunkConsumer.accept(chunk.toArray(EventTrackRequest[]::new));
+        }
+        return total;
+    }
+
+    private int parse(InputStreamSource body, Consumer<EventTrackRequest> eventConsumer) {
+        int total = 0;
+        try (InputStream in = body.getInputStream();
+             JsonParser parser = objectMapper.getFactory().createParser(
+                     maxBodyBytes > 0 ? new LimitedInputStream(in, maxBodyBytes) : in)) {
+            if (parser.nextToken() != JsonToken.START_ARRAY) {
+                throw new BusinessException("VALIDATION_ERROR", "批量事件必须是 JSON 数组");
+            }
+
+            JsonToken token;
+            while ((token = parser.nextToken()) != JsonToken.END_ARRAY) {
+                if (token == null) {
+                    throw new BusinessException("VALIDATION_ERROR", "批量事件 JSON 不完整");
+                }
+                int index = total;
+                if (maxEvents > 0 && ++total > maxEvents) {
+                    throw BusinessException.batchTooLarge("事件条数超过 " + maxEvents);
+                }
+                if (token == JsonToken.VALUE_NULL) {
+                    // 与原有批量语义一致：null 元素跳过
+                    continue;
+                }
+                if (token != JsonToken.START_OBJECT) {
+                    throw invalidElement(index, "必须是 JSON 对象");
+                }
+                eventConsumer.accept(readElement(parser, index));
+            }
+        } catch (BodyTooLargeException e) {
+            throw BusinessException.batchTooLarge("请求体超过 " + maxBodyBytes + " 字节");
+        } catch (IOException e) {
+            throw new BusinessException("VALIDATION_ERROR", "数据解析失败，请检查参数格式");
+        }
+        return total;
+    }
+
+    /**
+     * 读取并校验单个元素；字段类型不匹配（如非法 UUID）或违反约束时整批拒绝
+     */
+    private EventTrackRequest readElement(JsonParser parser, int index) throws IOException {
+        JsonNode node = parser.readValueAsTree();
+        EventTrackRequest event;
+        try {
+            event = objectMapper.treeToValue(node, EventTrackRequest.class);
+        } catch (IllegalArgumentException | JsonProcessingException e) {
+            throw invalidElement(index, "字段格式无效");
+        }
+        Set<ConstraintViolation<EventTrackRequest>> violations = validator.validate(event);
+        if (!violations.isEmpty()) {
+            ConstraintViolation<EventTrackRequest> violation = violations.iterator().next();
+            throw invalidElement(index, violation.getPropertyPath() + " " + violation.getMessage());
+        }
+        return event;
+    }
+
+    private static BusinessException invalidElement(int index, String detail) {
+        return new BusinessException("VALIDATION_ERROR", "参数验证失败: 第 " + (index + 1) + " 条事件" + detail);
+    }
+
+    /**
+     * 字节数超限即抛出的输入流，避免超大请求体被完整读取
+     */
+    private static final class LimitedInputStream extends FilterInputStream {
+        private final long limit;
+        private long count;
+
+        private LimitedInputStream(InputStream in, long limit) {
+            super(in);
+            this.limit = limit;
+        }
+
+        @Override
+        public int read() throws IOException {
+            int b = super.read();
+            if (b >= 0) {
+                advance(1);
+            }
+            return b;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            int n = super.read(b, off, len);
+            if (n > 0) {
+                advance(n);
+            }
+            return n;
+        }
+
+        private void advance(long n) throws BodyTooLargeException {
+            count += n;
+            if (count > limit) {
+                throw new BodyTooLargeException();
+            }
+        }
+    }
+
+    private static final class BodyTooLargeException extends IOException {
+        private BodyTooLargeException() {
+            super("request body too large");
+        }
+    }
+}
@@ -0,0 +1,136 @@
+package com.github.analyticshub.service;
+
+import com.github.analyticshub.util.PgCopyUtils;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.SqlParameterValue;
+import org.springframework.stereotype.Component;
+
+import javax.sql.DataSource;
+import java.sql.Timestamp;
+import java.sql.Types;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.function.Function;
+
+/**
+ * 事件行写入器
+ * 统一事件表的多行 INSERT 拼装，供单条、批量与合并写入链路复用。
+ * 行数达到阈值时改走 COPY 协议，小批量仍使用 VALUES 并按绑定参数上限分段。
+ */
+@Component
+public class EventRowWriter {
+
+    private static final int COLUMN_COUNT = 9;
+    // PostgreSQL 单条语句最多 65535 个绑定参数
+    private static final int MAX_ROWS_PER_STATEMENT = 65535 / COLUMN_COUNT;
+
+    private static final String COLUMNS =
+            "event_id, device_id, user_id, session_id, event_type, event_timestamp, properties, project_id, created_at";
+    private static final String ROW_PLACEHOLDER = "(?, ?::uuid, ?, ?::uuid, ?, ?, ?::jsonb, ?, ?)";
+
+    private final int copyThreshold;
+    private final TypeDictionary typeDictionary;
+
+    public EventRowWriter(@Value("${app.ingest.copy-threshold:1000}") int copyThreshold, TypeDictionary typeDictionary) {
+        this.copyThreshold = copyThreshold;
+        this.typeDictionary = typeDictionary;
+    }
+
+    /**
+     * 写入一组事件行，返回写入行数
+     */
+    public int insert(DataSource dataSource, String eventsTable, List<EventRow> rows) {
+        if (rows == null || rows.isEmpty()) {
+            return 0;
+        }
+
+        JdbcTemplate jdbcTemplate = new JdbcTemplate(dataSource);
+        Function<String, Object> typeEncoder = typeEncoder(rows);
+        if (copyThreshold > 0 && rows.size() >= copyThreshold) {
+            PgCopyUtils.copyIn(jdbcTemplate, eventsTable, COLUMNS, rows, row -> row.toFields(typeEncoder));
+            return rows.size();
+        }
+
+        for (int from = 0; from < rows.size(); from += MAX_ROWS_PER_STATEMENT) {
+            insertValues(jdbcTemplate, eventsTable, rows.subList(from, Math.min(rows.size(), from + MAX_ROWS_PER_STATEMENT)),
+                    typeEncoder);
+        }
+        return rows.size();
+    }
+
+    /**
+     * 写入一组事件行，event_id 已存在的行跳过（用于兜底回放等可能重复写入的场景）
+     * 不指定冲突目标：分区表的唯一约束为 (event_id, created_at)，重复写入的行携带相同的 created_at
+     *
+     * @return 实际写入的事件ID
+     */
+    public List<String> insertIgnoringDuplicates(DataSource dataSource, String eventsTable, List<EventRow> rows) {
+        if (rows == null || rows.isEmpty()) {
+            return List.of();
+        }
+
+        JdbcTemplate jdbcTemplate = new JdbcTemplate(dataSource);
+        Function<String, Object> typeEncoder = typeEncoder(rows);
+        List<String> inserted = new ArrayList<>(rows.size());
+        for (int from = 0; from < rows.size(); from += MAX_ROWS_PER_STATEMENT) {
+            List<EventRow> chunk = rows.subList(from, Math.min(rows.size(), from + MAX_ROWS_PER_STATEMENT));
+            List<Object> args = new ArrayList<>(chunk.size() * COLUMN_COUNT);
+            String insertSql = String.format("INSERT INTO %s (%s) VALUES %s ON CONFLICT DO NOTHING RETURNING event_id",
+                    eventsTable, COLUMNS, buildValues(chunk, args, typeEncoder));
+            inserted.addAll(jdbcTemplate.queryForList(insertSql, String.class, args.toArray()));
+        }
+        return inserted;
+    }
+
+    private void insertValues(JdbcTemplate jdbcTemplate, String eventsTable, List<EventRow> rows,
+                              Function<String, Object> typeEncoder) {
+        List<Object> args = new ArrayList<>(rows.size() * COLUMN_COUNT);
+        String insertSql = String.format("INSERT INTO %s (%s) VALUES %s", eventsTable, COLUMNS,
+                buildValues(rows, args, typeEncoder));
+        jdbcTemplate.update(insertSql, args.toArray());
+    }
+
+    private static String buildValues(List<EventRow> rows, List<Object> args, Function<String, Object> typeEncoder) {
+        StringBuilder valuesSql = new StringBuilder(rows.size() * (ROW_PLACEHOLDER.length() + 2));
+        for (EventRow row : rows) {
+            if (!args.isEmpty()) {
+                valuesSql.append(", ");
+            }
+            valuesSql.append(ROW_PLACEHOLDER);
+            Object[] fields = row.toFields(typeEncoder);
+            // ID 以未声明类型的参数绑定，由服务端按列类型（VARCHAR 或 UUID）转换
+            fields[0] = new SqlParameterValue(Types.OTHER, fields[0]);
+            args.addAll(Arrays.asList(fields));
+        }
+        return valuesSql.toString();
+    }
+
+    /**
+     * 类型列的写入值：字典编码的项目库写入字典 ID（同一批次的行属于同一项目）
+     */
+    private Function<String, Object> typeEncoder(List<EventRow> rows) {
+        return typeDictionary.writeEncoder(rows.getFirst().projectId(), TypeDictionary.Kind.EVENT);
+    }
+
+    /**
+     * 待写入的事件行（已完成校验与序列化）
+     */
+    public record EventRow(
+            String eventId,
+            String deviceId,
+            String userId,
+            String sessionId,
+            String eventType,
+            Long eventTimestamp,
+            String propertiesJson,
+            String projectId,
+            Timestamp createdAt
+    ) {
+        Object[] toFields(Function<String, Object> typeEncoder) {
+            return new Object[]{eventId, deviceId, userId, sessionId, typeEncoder.apply(eventType), eventTimestamp,
+                    propertiesJson, projectId, createdAt};
+        }
+    }
+}
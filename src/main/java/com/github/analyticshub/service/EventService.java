@@ -14,7 +14,15 @@ import org.springframework.transaction.annotation.Transactional;
 import java.sql.Timestamp;
 import java.time.Instant;
 import java.util.ArrayList;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
 
 /**
  * 事件追踪服务
@@ -28,11 +36,31 @@ public class EventService {
     private final MultiDataSourceManager dataSourceManager;
     private final ObjectMapper objectMapper;
     private final CounterService counterService;
-
-    public EventService(MultiDataSourceManager dataSourceManager, ObjectMapper objectMapper, CounterService counterService) {
+    private final EventRowWriter eventRowWriter;
+    private final EventWriteBehindPipeline writeBehindPipeline;
+    private final IdempotencyKeyStore idempotencyKeyStore;
+    private final IngestSpool ingestSpool;
+    private final IngestIdGenerator idGenerator;
+    private final TypeDictionary typeDictionary;
+
+    public EventService(MultiDataSourceManager dataSourceManager,
+                        ObjectMapper objectMapper,
+                        CounterService counterService,
+                        EventRowWriter eventRowWriter,
+                        EventWriteBehindPipeline writeBehindPipeline,
+                        IdempotencyKeyStore idempotencyKeyStore,
+                        IngestSpool ingestSpool,
+                        IngestIdGenerator idGenerator,
+                        TypeDictionary typeDictionary) {
         this.dataSourceManager = dataSourceManager;
         this.objectMapper = objectMapper;
         this.counterService = counterService;
+        this.eventRowWriter = eventRowWriter;
+        this.writeBehindPipeline = writeBehindPipeline;
+        this.idempotencyKeyStore = idempotencyKeyStore;
+        this.ingestSpool = ingestSpool;
+        this.idGenerator = idGenerator;
+        this.typeDictionary = typeDictionary;
     }
 
     /**
@@ -57,55 +85,64 @@ public class EventService {
         }
 
         // 3. 生成事件ID
-        String eventId = CryptoUtils.generateEventId();
+        String eventId = idGenerator.nextEventId(context.getProjectId());
 
-        // 4. 幂等检查：客户端提供了幂等键 → 写入幂等表，冲突则返回已有事件
+        // 4. 幂等检查：客户端提供了幂等键 → 认领幂等键（近期重试在内存命中），已被占用则返回已有事件
+        // 项目库连接故障时保留未认领的键，随事件落盘，回放时再认领
+        String claimedKeyHash = null;
+        String unclaimedKeyHash = null;
         if (request.idempotencyKey() != null && !request.idempotencyKey().isBlank()) {
             String keyHash = CryptoUtils.sha256Hex(request.idempotencyKey());
-            JdbcTemplate idempotencyJdbc = new JdbcTemplate(context.getDataSource());
-
             try {
-                idempotencyJdbc.update(
-                        "INSERT INTO analytics_idempotency_keys (project_id, key_hash, event_id) VALUES (?, ?, ?)",
-                        context.getProjectId(), keyHash, eventId
-                );
-            } catch (Exception e) {
-                // 唯一约束冲突 → 幂等命中，返回已有事件ID，不重复写入
-                String existing = idempotencyJdbc.queryForObject(
-                        "SELECT event_id FROM analytics_idempotency_keys WHERE project_id = ? AND key_hash = ?",
-                        String.class, context.getProjectId(), keyHash
-                );
-                log.log(System.Logger.Level.INFO, "事件幂等命中: {0} keyHash={1}", request.eventType(), keyHash);
-                return new EventTrackResponse(existing != null ? existing : eventId);
+                String existing = idempotencyKeyStore.claim(context.getProjectId(), context.getDataSource(), keyHash, eventId);
+                if (existing != null) {
+                    log.log(System.Logger.Level.INFO, "事件幂等命中: {0} keyHash={1}", request.eventType(), keyHash);
+                    return new EventTrackResponse(existing);
+                }
+                claimedKeyHash = keyHash;
+            } catch (RuntimeException e) {
+                if (!ingestSpool.accepts(e)) {
+                    throw e;
+                }
+                unclaimedKeyHash = keyHash;
             }
         }
 
-        // 5. 存储到项目数据库
-        JdbcTemplate jdbcTemplate = new JdbcTemplate(context.getDataSource());
-        String eventsTable = dataSourceManager.getTableName(context.getProjectId(), "events");
+        // 5. 存储到项目数据库（开启合并写入的项目先入队，由管道批量落库）
+        String propertiesJson;
+        try {
+            propertiesJson = request.properties() != null ?
+                    objectMapper.writeValueAsString(request.properties()) : null;
+        } catch (Exception e) {
+            log.log(System.Logger.Level.ERROR, "事件追踪失败", e);
+            throw new RuntimeException("Failed to track event", e);
+        }
 
-        String insertSql = String.format(
-                "INSERT INTO %s (event_id, device_id, user_id, session_id, event_type, event_timestamp, properties, project_id, created_at) " +
-                        "VALUES (?, ?::uuid, ?, ?::uuid, ?, ?, ?::jsonb, ?, ?)",
-                eventsTable
+        EventRowWriter.EventRow row = new EventRowWriter.EventRow(
+                eventId,
+                context.getDevice().getDeviceId().toString(),
+                context.getUserId(),
+                request.sessionId() != null ? request.sessionId().toString() : null,
+                request.eventType(),
+                request.timestamp(),
+                propertiesJson,
+                context.getProjectId(),
+                Timestamp.from(Instant.now())
         );
 
-        try {
-            String propertiesJson = request.properties() != null ?
-                    objectMapper.writeValueAsString(request.properties()) : null;
-            Instant now = Instant.now();
+        CompletableFuture<String> queued = unclaimedKeyHash == null
+                ? writeBehindPipeline.submit(row, request.properties(), claimedKeyHash)
+                : null;
+        if (queued != null) {
+            EventTrackResponse response = awaitQueued(context.getProjectId(), eventId, queued);
+            if (response != null) {
+                return response;
+            }
+        }
 
-            jdbcTemplate.update(insertSql,
-                    eventId,
-                    context.getDevice().getDeviceId().toString(),
-                    context.getUserId(),
-                    request.sessionId() != null ? request.sessionId().toString() : null,
-                    request.eventType(),
-                    request.timestamp(),
-                    propertiesJson,
-                    context.getProjectId(),
-                    Timestamp.from(now)
-            );
+        try {
+            String eventsTable = dataSourceManager.getTableName(context.getProjectId(), "events");
+            eventRowWriter.insert(context.getDataSource(), eventsTable, List.of(row));
 
             log.log(System.Logger.Level.INFO, "事件已记录: {0} ({1})", request.eventType(), eventId);
 
@@ -119,49 +156,87 @@ public class EventService {
             return new EventTrackResponse(eventId);
 
         } catch (Exception e) {
+            // 项目库连接故障：落盘后照常返回，由回放线程补写并维护计数器
+            if (ingestSpool.accepts(e) && ingestSpool.spoolEvents(context.getProjectId(), List.of(row),
+                    unclaimedKeyHash == null ? Map.of() : Map.of(eventId, unclaimedKeyHash))) {
+                return new EventTrackResponse(eventId);
+            }
             log.log(System.Logger.Level.ERROR, "事件追踪失败", e);
+            // 事件未写入：释放幂等键认领，客户端重试可重新写入
+            if (claimedKeyHash != null && !IngestSpool.isConnectivityFailure(e)) {
+                try {
+                    idempotencyKeyStore.release(context.getProjectId(), context.getDataSource(), claimedKeyHash, eventId);
+                } catch (RuntimeException releaseError) {
+                    log.log(System.Logger.Level.WARNING, "释放幂等键失败: {0}", releaseError.getMessage());
+                }
+            }
             throw new RuntimeException("Failed to track event", e);
         }
     }
 
+    /**
+     * 按确认模式等待合并写入结果（计数器由管道在落库后处理）
+     *
+     * @return 管道关闭前未能落库时返回 null，由调用方同步写入
+     */
+    private EventTrackResponse awaitQueued(String projectId, String eventId, CompletableFuture<String> queued) {
+        if (writeBehindPipeline.ackMode() == EventWriteBehindPipeline.AckMode.ACCEPTED) {
+            return new EventTrackResponse(eventId);
+        }
+        try {
+            return new EventTrackResponse(queued.get(writeBehindPipeline.ackTimeoutMs(), TimeUnit.MILLISECONDS));
+        } catch (TimeoutException e) {
+            throw BusinessException.ingestTimeout(projectId);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw BusinessException.ingestTimeout(projectId);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof RejectedExecutionException) {
+                log.log(System.Logger.Level.WARNING, "合并写入管道已关闭，回退同步写入: {0}", eventId);
+                return null;
+            }
+            log.log(System.Logger.Level.ERROR, "事件追踪失败", e.getCause());
+            throw new RuntimeException("Failed to track event", e.getCause());
+        }
+    }
+
+    /**
+     * 以自动提交写入批次中的新事件类型（字典编码的项目库），在项目库事务开启之前调用
+     */
+    public void resolveEventTypes(EventTrackRequest[] events) {
+        List<String> eventTypes = new ArrayList<>(events.length);
+        for (EventTrackRequest event : events) {
+            if (event != null && event.eventType() != null && !event.eventType().isBlank()) {
+                eventTypes.add(event.eventType());
+            }
+        }
+        typeDictionary.resolve(RequestContext.get().getProjectId(), TypeDictionary.Kind.EVENT, eventTypes);
+    }
+
     /**
      * 批量追踪事件
+     *
+     * @return 实际写入的事件条数（无效与幂等命中的事件不计入）
      */
     @Transactional
-    public void trackEventsBatch(EventTrackRequest[] events) {
+    public int trackEventsBatch(EventTrackRequest[] events) {
         if (events == null || events.length == 0) {
-            return;
+            return 0;
         }
 
         RequestContext context = RequestContext.get();
-        JdbcTemplate jdbcTemplate = new JdbcTemplate(context.getDataSource());
         String eventsTable = dataSourceManager.getTableName(context.getProjectId(), "events");
+        String deviceId = context.getDevice().getDeviceId().toString();
 
-        StringBuilder valuesSql = new StringBuilder();
-        List<Object> args = new ArrayList<>();
-
-        int acceptedCount = 0;
+        List<BatchCandidate> candidates = new ArrayList<>(events.length);
+        // keyHash → 本批次首个使用该键的事件ID；同批次内重复的键只保留第一条
+        Map<String, String> claims = new LinkedHashMap<>();
         // Best-effort batch: skip invalid items instead of failing the whole request.
         for (EventTrackRequest event : events) {
             if (event == null) continue;
             if (event.eventType() == null || event.eventType().isBlank()) continue;
             if (event.timestamp() == null) continue;
 
-            String eventId = CryptoUtils.generateEventId();
-
-            // 幂等检查：已存在相同幂等键 → 跳过此事件
-            if (event.idempotencyKey() != null && !event.idempotencyKey().isBlank()) {
-                String keyHash = CryptoUtils.sha256Hex(event.idempotencyKey());
-                try {
-                    jdbcTemplate.update(
-                            "INSERT INTO analytics_idempotency_keys (project_id, key_hash, event_id) VALUES (?, ?, ?)",
-                            context.getProjectId(), keyHash, eventId
-                    );
-                } catch (Exception e) {
-                    log.log(System.Logger.Level.INFO, "批量事件幂等命中: {0}", event.eventType());
-                    continue;
-                }
-            }
             String propertiesJson;
             try {
                 propertiesJson = event.properties() != null ? objectMapper.writeValueAsString(event.properties()) : null;
@@ -169,41 +244,98 @@ public class EventService {
                 continue;
             }
 
-            if (acceptedCount > 0) valuesSql.append(", ");
-            valuesSql.append("(?, ?::uuid, ?, ?::uuid, ?, ?, ?::jsonb, ?, ?)");
+            String eventId = idGenerator.nextEventId(context.getProjectId());
+            String keyHash = null;
+            if (event.idempotencyKey() != null && !event.idempotencyKey().isBlank()) {
+                keyHash = CryptoUtils.sha256Hex(event.idempotencyKey());
+                claims.putIfAbsent(keyHash, eventId);
+            }
 
-            args.add(eventId);
-            args.add(context.getDevice().getDeviceId().toString());
-            args.add(context.getUserId());
-            args.add(event.sessionId() != null ? event.sessionId().toString() : null);
-            args.add(event.eventType());
-            args.add(event.timestamp());
-            args.add(propertiesJson);
-            args.add(context.getProjectId());
-            args.add(Timestamp.from(Instant.now()));
+            candidates.add(new BatchCandidate(event, keyHash, new EventRowWriter.EventRow(
+                    eventId,
+                    deviceId,
+                    context.getUserId(),
+                    event.sessionId() != null ? event.sessionId().toString() : null,
+                    event.eventType(),
+                    event.timestamp(),
+                    propertiesJson,
+                    context.getProjectId(),
+                    Timestamp.from(Instant.now())
+            )));
+        }
 
-            acceptedCount++;
+        // 幂等检查：一条语句认领全部幂等键，仅新认领的键对应的事件继续写入
+        Set<String> claimed;
+        try {
+            claimed = idempotencyKeyStore.claimAll(context.getProjectId(), context.getDataSource(), claims);
+        } catch (RuntimeException e) {
+            if (!ingestSpool.accepts(e)) {
+                throw e;
+            }
+            return spoolUnclaimedBatch(context.getProjectId(), candidates, claims, e);
         }
 
-        if (acceptedCount == 0) return;
+        List<EventRowWriter.EventRow> rows = new ArrayList<>(candidates.size());
+        List<EventTrackRequest> accepted = new ArrayList<>(candidates.size());
+        for (BatchCandidate candidate : candidates) {
+            if (candidate.keyHash() != null
+                    && (!claimed.contains(candidate.keyHash())
+                    || !candidate.row().eventId().equals(claims.get(candidate.keyHash())))) {
+                log.log(System.Logger.Level.INFO, "批量事件幂等命中: {0}", candidate.request().eventType());
+                continue;
+            }
+            rows.add(candidate.row());
+            accepted.add(candidate.request());
+        }
 
-        String insertSql = String.format(
-                "INSERT INTO %s (event_id, device_id, user_id, session_id, event_type, event_timestamp, properties, project_id, created_at) VALUES %s",
-                eventsTable, valuesSql
-        );
-        jdbcTemplate.update(insertSql, args.toArray());
+        if (rows.isEmpty()) return 0;
 
-        // 优化：批量处理计数器，避免在循环中重复查询规则
+        // 大批量走 COPY，小批量走 VALUES（由 EventRowWriter 按阈值选择）
         try {
-            for (EventTrackRequest event : events) {
-                if (event == null || event.eventType() == null) continue;
+            eventRowWriter.insert(context.getDataSource(), eventsTable, rows);
+        } catch (RuntimeException e) {
+            if (ingestSpool.accepts(e) && ingestSpool.spoolEvents(context.getProjectId(), rows, Map.of())) {
+                return rows.size();
+            }
+            throw e;
+        }
+
+        // 仅对实际写入的事件触发计数器
+        try {
+            for (EventTrackRequest event : accepted) {
                 counterService.processEventAutoIncrements(context.getProjectId(), event.eventType(), event.properties());
             }
         } catch (Exception e) {
             log.log(System.Logger.Level.WARNING, "批量计数器自动维护异常: {0}", e.getMessage());
         }
+        return rows.size();
+    }
+
+    /**
+     * 幂等键认领阶段即遇到项目库连接故障：按批内去重规则落盘，幂等键留待回放时认领
+     */
+    private int spoolUnclaimedBatch(String projectId, List<BatchCandidate> candidates,
+                                    Map<String, String> claims, RuntimeException cause) {
+        List<EventRowWriter.EventRow> rows = new ArrayList<>(candidates.size());
+        Map<String, String> keyHashes = new LinkedHashMap<>();
+        for (BatchCandidate candidate : candidates) {
+            String eventId = candidate.row().eventId();
+            if (candidate.keyHash() != null) {
+                if (!eventId.equals(claims.get(candidate.keyHash()))) {
+                    continue;
+                }
+                keyHashes.put(eventId, candidate.keyHash());
+            }
+            rows.add(candidate.row());
+        }
+        if (rows.isEmpty() || ingestSpool.spoolEvents(projectId, rows, keyHashes)) {
+            return rows.size();
+        }
+        throw cause;
     }
 
+    private record BatchCandidate(EventTrackRequest request, String keyHash, EventRowWriter.EventRow row) {}
+
     /**
      * 获取项目下所有不重复的事件类型 (用于配置 UI)
      */
@@ -215,6 +347,8 @@ public class EventService {
         String table = dataSourceManager.getTableName(projectId, "events");
         
         String sql = String.format("SELECT DISTINCT event_type FROM %s WHERE project_id = ?", table);
-        return jdbcTemplate.queryForList(sql, String.class, projectId);
+        return jdbcTemplate.queryForList(sql, String.class, projectId).stream()
+                .map(value -> typeDictionary.decode(projectId, TypeDictionary.Kind.EVENT, value))
+                .toList();
     }
 }
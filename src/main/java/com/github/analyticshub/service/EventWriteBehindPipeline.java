@@ -0,0 +1,360 @@
+package com.github.analyticshub.service;
+
+import com.github.analyticshub.config.MultiDataSourceManager;
+import jakarta.annotation.PreDestroy;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+/**
+ * 单事件合并写入管道（Group Commit / Write-Behind）
+ *
+ * 每个项目一条有界内存队列，由独立的虚拟线程按“攒够 N 条或等待超过 T 毫秒”触发，
+ * 将多条单事件合并为一次多行 INSERT，降低启动高峰时的往返与提交次数。
+ * 默认关闭，按项目开启。
+ *
+ * 整批写入因非连接类错误失败时逐条重试，只有坏行失败：其幂等键认领被释放，客户端重试可重新写入。
+ * 入队即响应（accepted）模式下无人等待结果，无法写入的事件（以及关闭时未能排空的事件）先尝试落盘，
+ * 否则移入死信文件，不会静默丢弃。
+ */
+@Component
+public class EventWriteBehindPipeline {
+
+    private static final System.Logger log = System.getLogger(EventWriteBehindPipeline.class.getName());
+
+    private static final long IDLE_POLL_MS = 200;
+
+    private final MultiDataSourceManager dataSourceManager;
+    private final EventRowWriter eventRowWriter;
+    private final CounterService counterService;
+    private final IngestSpool ingestSpool;
+    private final IdempotencyKeyStore idempotencyKeyStore;
+
+    private final boolean enabled;
+    private final Set<String> projects;
+    private final int maxBatchSize;
+    private final long maxLatencyMs;
+    private final int queueCapacity;
+    private final AckMode ackMode;
+    private final long ackTimeoutMs;
+    private final long shutdownDrainTimeoutMs;
+
+    private final Map<String, ProjectLane> lanes = new ConcurrentHashMap<>();
+    private volatile boolean running = true;
+
+    public EventWriteBehindPipeline(MultiDataSourceManager dataSourceManager,
+                                    EventRowWriter eventRowWriter,
+                                    CounterService counterService,
+                                    IngestSpool ingestSpool,
+                                    IdempotencyKeyStore idempotencyKeyStore,
+                                    @Value("${app.ingest.write-behind.enabled:false}") boolean enabled,
+                                    @Value("${app.ingest.write-behind.projects:*}") String projects,
+                                    @Value("${app.ingest.write-behind.max-batch-size:500}") int maxBatchSize,
+                                    @Value("${app.ingest.write-behind.max-latency-ms:20}") long maxLatencyMs,
+                                    @Value("${app.ingest.write-behind.queue-capacity:10000}") int queueCapacity,
+                                    @Value("${app.ingest.write-behind.ack-mode:sync-after-flush}") String ackMode,
+                                    @Value("${app.ingest.write-behind.ack-timeout-ms:5000}") long ackTimeoutMs,
+                                    @Value("${app.ingest.write-behind.shutdown-drain-timeout-ms:10000}") long shutdownDrainTimeoutMs) {
+        this.dataSourceManager = dataSourceManager;
+        this.eventRowWriter = eventRowWriter;
+        this.counterService = counterService;
+        this.ingestSpool = ingestSpool;
+        this.idempotencyKeyStore = idempotencyKeyStore;
+        this.enabled = enabled;
+        this.projects = parseProjects(projects);
+        this.maxBatchSize = Math.max(1, maxBatchSize);
+        this.maxLatencyMs = Math.max(1, maxLatencyMs);
+        this.queueCapacity = Math.max(this.maxBatchSize, queueCapacity);
+        this.ackMode = AckMode.from(ackMode);
+        this.ackTimeoutMs = Math.max(1, ackTimeoutMs);
+        this.shutdownDrainTimeoutMs = Math.max(0, shutdownDrainTimeoutMs);
+    }
+
+    /**
+     * 该项目是否走合并写入
+     */
+    public boolean isEnabledFor(String projectId) {
+        return enabled && running && (projects.contains("*") || projects.contains(projectId));
+    }
+
+    public AckMode ackMode() {
+        return ackMode;
+    }
+
+    public long ackTimeoutMs() {
+        return ackTimeoutMs;
+    }
+
+    /**
+     * 事件入队
+     *
+     * @param keyHash 调用方已为该事件认领的幂等键哈希（无则为 null）；事件最终无法写入时释放
+     * @return 落库完成时完成的 Future；队列已满或管道已停止时返回 null，由调用方回退到同步写入。
+     * sync-after-flush 模式下，管道关闭时未能排空的事件以 {@link RejectedExecutionException} 异常完成，
+     * 等待中的调用方回退到同步写入；accepted 模式下这些事件由管道落盘或移入死信
+     */
+    public CompletableFuture<String> submit(EventRowWriter.EventRow row, Map<String, Object> properties,
+                                            String keyHash) {
+        if (!isEnabledFor(row.projectId())) {
+            return null;
+        }
+        ProjectLane lane = lanes.computeIfAbsent(row.projectId(), ProjectLane::new);
+        PendingEvent pending = new PendingEvent(row, properties, keyHash, new CompletableFuture<>());
+        if (!lane.queue.offer(pending)) {
+            log.log(System.Logger.Level.WARNING, "合并写入队列已满，回退同步写入: {0}", row.projectId());
+            return null;
+        }
+        // 与关闭并发：关闭后入队的事件可能已无线程消费（或落入关闭后新建的通道），撤回后由调用方同步写入
+        if (!running && lane.queue.remove(pending)) {
+            return null;
+        }
+        return pending.future();
+    }
+
+    /**
+     * 停止接收新事件，并在期限内把队列中剩余事件全部落库
+     */
+    @PreDestroy
+    public void shutdown() {
+        running = false;
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(shutdownDrainTimeoutMs);
+        for (ProjectLane lane : lanes.values()) {
+            long remainingMs = Math.max(0, TimeUnit.NANOSECONDS.toMillis(deadline - System.nanoTime()));
+            try {
+                if (!lane.worker.join(Duration.ofMillis(remainingMs))) {
+                    log.log(System.Logger.Level.WARNING, "合并写入队列未能在期限内排空: {0} (剩余 {1} 条)",
+                            lane.projectId, lane.queue.size());
+                    rejectRemaining(lane);
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                lanes.values().forEach(this::rejectRemaining);
+                return;
+            }
+        }
+        log.log(System.Logger.Level.INFO, "事件合并写入管道已关闭");
+    }
+
+    /**
+     * 关闭时未落库的剩余事件：sync-after-flush 模式以异常完成，等待中的调用方回退到同步写入，避免 Future 永不完成；
+     * accepted 模式下已向客户端确认，落盘（或移入死信）后完成
+     */
+    private void rejectRemaining(ProjectLane lane) {
+        List<PendingEvent> remaining = new ArrayList<>();
+        lane.queue.drainTo(remaining);
+        if (remaining.isEmpty()) {
+            return;
+        }
+        RejectedExecutionException rejected = new RejectedExecutionException("合并写入管道已关闭: " + lane.projectId);
+        if (ackMode == AckMode.ACCEPTED) {
+            List<EventRowWriter.EventRow> rows = rows(remaining);
+            if (!ingestSpool.spoolEvents(lane.projectId, rows, Map.of())) {
+                ingestSpool.deadLetterEvents(lane.projectId, rows, rejected);
+            }
+        }
+        remaining.forEach(pending -> pending.future().completeExceptionally(rejected));
+    }
+
+    private void flush(String projectId, List<PendingEvent> batch) {
+        List<EventRowWriter.EventRow> rows = rows(batch);
+        List<PendingEvent> written = batch;
+        try {
+            eventRowWriter.insert(dataSourceManager.getDataSource(projectId), eventsTable(projectId), rows);
+        } catch (Exception e) {
+            // 项目库连接故障：整批落盘（幂等键已认领，回放时按 event_id 去重），计数器由回放线程在补写后维护
+            if (ingestSpool.accepts(e) && ingestSpool.spoolEvents(projectId, rows, Map.of())) {
+                batch.forEach(pending -> pending.future().complete(pending.row().eventId()));
+                return;
+            }
+            if (IngestSpool.isConnectivityFailure(e)) {
+                log.log(System.Logger.Level.ERROR, "合并写入失败: " + projectId + " (" + batch.size() + " 条)", e);
+                fail(projectId, batch, e);
+                return;
+            }
+            // 坏行（约束、数据错误等）：逐条重试，避免一条坏行拖累整批
+            log.log(System.Logger.Level.WARNING, "合并写入失败，逐条重试: {0} ({1} 条): {2}",
+                    projectId, batch.size(), e.getMessage());
+            written = flushIndividually(projectId, batch);
+        }
+
+        log.log(System.Logger.Level.DEBUG, "合并写入完成: {0} ({1} 条)", projectId, written.size());
+        written.forEach(pending -> pending.future().complete(pending.row().eventId()));
+
+        for (PendingEvent pending : written) {
+            try {
+                counterService.processEventAutoIncrements(projectId, pending.row().eventType(), pending.properties());
+            } catch (Exception e) {
+                log.log(System.Logger.Level.WARNING, "计数器自动维护失败: {0}", e.getMessage());
+            }
+        }
+    }
+
+    /**
+     * 逐条写入；失败的行释放幂等键认领后按失败处理，连接中断时剩余行整体落盘或失败
+     *
+     * @return 成功写入的事件
+     */
+    private List<PendingEvent> flushIndividually(String projectId, List<PendingEvent> batch) {
+        List<PendingEvent> written = new ArrayList<>(batch.size());
+        for (int i = 0; i < batch.size(); i++) {
+            PendingEvent pending = batch.get(i);
+            try {
+                eventRowWriter.insert(dataSourceManager.getDataSource(projectId), eventsTable(projectId),
+                        List.of(pending.row()));
+                written.add(pending);
+            } catch (Exception e) {
+                if (IngestSpool.isConnectivityFailure(e)) {
+                    List<PendingEvent> rest = batch.subList(i, batch.size());
+                    if (ingestSpool.accepts(e) && ingestSpool.spoolEvents(projectId, rows(rest), Map.of())) {
+                        rest.forEach(p -> p.future().complete(p.row().eventId()));
+                    } else {
+                        fail(projectId, rest, e);
+                    }
+                    return written;
+                }
+                log.log(System.Logger.Level.ERROR, "事件写入失败: " + projectId + " " + pending.row().eventId(), e);
+                release(projectId, pending);
+                fail(projectId, List.of(pending), e);
+            }
+        }
+        return written;
+    }
+
+    /**
+     * 永久失败的事件释放幂等键认领，客户端重试不会命中一个从未写入的事件ID
+     */
+    private void release(String projectId, PendingEvent pending) {
+        if (pending.keyHash() == null) {
+            return;
+        }
+        try {
+            idempotencyKeyStore.release(projectId, dataSourceManager.getDataSource(projectId),
+                    pending.keyHash(), pending.row().eventId());
+        } catch (RuntimeException e) {
+            log.log(System.Logger.Level.WARNING, "释放幂等键失败: {0} ({1})", projectId, e.getMessage());
+        }
+    }
+
+    /**
+     * 无法写入的事件：等待中的调用方收到异常；accepted 模式下无人等待，移入死信文件
+     */
+    private void fail(String projectId, List<PendingEvent> pendings, Exception error) {
+        if (ackMode == AckMode.ACCEPTED) {
+            ingestSpool.deadLetterEvents(projectId, rows(pendings), error);
+        }
+        pendings.forEach(pending -> pending.future().completeExceptionally(error));
+    }
+
+    private String eventsTable(String projectId) {
+        return dataSourceManager.getTableName(projectId, "events");
+    }
+
+    private static List<EventRowWriter.EventRow> rows(List<PendingEvent> pendings) {
+        List<EventRowWriter.EventRow> rows = new ArrayList<>(pendings.size());
+        for (PendingEvent pending : pendings) {
+            rows.add(pending.row());
+        }
+        return rows;
+    }
+
+    private static Set<String> parseProjects(String value) {
+        if (value == null || value.isBlank()) {
+            return Set.of();
+        }
+        return Arrays.stream(value.split(","))
+                .map(String::strip)
+                .filter(v -> !v.isEmpty())
+                .collect(Collectors.toUnmodifiableSet());
+    }
+
+    /**
+     * 单项目写入通道：一条队列 + 一个刷写线程
+     */
+    private final class ProjectLane {
+        private final String projectId;
+        private final BlockingQueue<PendingEvent> queue;
+        private final Thread worker;
+
+        private ProjectLane(String projectId) {
+            this.projectId = projectId;
+            this.queue = new ArrayBlockingQueue<>(queueCapacity);
+            this.worker = Thread.ofVirtual().name("event-write-behind-" + projectId).start(this::run);
+        }
+
+        private void run() {
+            List<PendingEvent> batch = new ArrayList<>(maxBatchSize);
+            while (running || !queue.isEmpty()) {
+                try {
+                    PendingEvent first = queue.poll(IDLE_POLL_MS, TimeUnit.MILLISECONDS);
+                    if (first == null) {
+                        continue;
+                    }
+                    batch.add(first);
+
+                    // 攒批：直到达到批量上限或超过最大等待时间
+                    long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(maxLatencyMs);
+                    while (batch.size() < maxBatchSize) {
+                        queue.drainTo(batch, maxBatchSize - batch.size());
+                        long remaining = deadline - System.nanoTime();
+                        if (batch.size() >= maxBatchSize || remaining <= 0 || !running) {
+                            break;
+                        }
+                        PendingEvent next = queue.poll(remaining, TimeUnit.NANOSECONDS);
+                        if (next != null) {
+                            batch.add(next);
+                        }
+                    }
+
+                    flush(projectId, batch);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    break;
+                } catch (Exception e) {
+                    log.log(System.Logger.Level.ERROR, "合并写入线程异常: " + projectId, e);
+                } finally {
+                    batch.clear();
+                }
+            }
+        }
+    }
+
+    private record PendingEvent(EventRowWriter.EventRow row,
+                                Map<String, Object> properties,
+                                String keyHash,
+                                CompletableFuture<String> future) {}
+
+    /**
+     * 响应确认模式
+     */
+    public enum AckMode {
+        /** 等待所在批次落库后再响应 */
+        SYNC_AFTER_FLUSH,
+        /** 入队即响应（进程崩溃时队列中的事件会丢失） */
+        ACCEPTED;
+
+        static AckMode from(String value) {
+            if (value == null || value.isBlank()) {
+                return SYNC_AFTER_FLUSH;
+            }
+            return switch (value.trim().toLowerCase(Locale.ROOT)) {
+                case "sync-after-flush", "sync_after_flush", "sync" -> SYNC_AFTER_FLUSH;
+                case "accepted", "async" -> ACCEPTED;
+                default -> throw new IllegalArgumentException("app.ingest.write-behind.ack-mode 仅支持 sync-after-flush/accepted");
+            };
+        }
+    }
+}
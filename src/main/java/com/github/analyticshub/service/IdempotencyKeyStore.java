@@ -0,0 +1,237 @@
+package com.github.analyticshub.service;
+
+import com.github.analyticshub.config.MultiDataSourceManager;
+import com.github.analyticshub.util.BoundedLruCache;
+import com.github.analyticshub.util.TransactionUtils;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import javax.sql.DataSource;
+import java.sql.PreparedStatement;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * 幂等键存储
+ * 基于 analytics_idempotency_keys 的 ON CONFLICT DO NOTHING 语义认领幂等键，
+ * 冲突不会抛异常，也不会中止所在事务。
+ * 前置每项目的近期键 LRU（keyHash → eventId）：近期重试直接在内存返回原事件ID，其余键直接
+ * INSERT ... ON CONFLICT ... RETURNING，一次往返即可区分认领成功与重复。
+ * 缓存只记录已提交的认领：认领所用的项目数据源绑定了事务时推迟到该事务提交之后写入；
+ * 未绑定时认领以自动提交执行、立即生效，事件最终未写入的由调用方 release() 释放并移出缓存。
+ */
+@Component
+public class IdempotencyKeyStore {
+
+    private static final String TABLE = "analytics_idempotency_keys";
+
+    // %s 为项目 schema 中的幂等键表（共享连接池下带 schema 限定）
+    private static final String CLAIM_SQL =
+            "INSERT INTO %s (project_id, key_hash, event_id) VALUES (?, ?, ?) " +
+                    "ON CONFLICT (project_id, key_hash) DO NOTHING " +
+                    "RETURNING event_id";
+
+    private static final String CLAIM_ALL_SQL =
+            "INSERT INTO %s (project_id, key_hash, event_id) " +
+                    "SELECT ?, t.key_hash, t.event_id FROM unnest(?::text[], ?::text[]) AS t(key_hash, event_id) " +
+                    "ON CONFLICT (project_id, key_hash) DO NOTHING " +
+                    "RETURNING key_hash";
+
+    private static final String SELECT_SQL =
+            "SELECT event_id FROM %s WHERE project_id = ? AND key_hash = ?";
+
+    private static final String RELEASE_SQL =
+            "DELETE FROM %s WHERE project_id = ? AND key_hash = ? AND event_id = ?";
+
+    private final MultiDataSourceManager dataSourceManager;
+    private final boolean cacheEnabled;
+    private final int recentSize;
+
+    private final Map<String, BoundedLruCache<String, String>> caches = new ConcurrentHashMap<>();
+
+    // 每个键只计入以下一种结果
+    // 内存命中（近期键缓存直接返回）
+    private final Counter hitCounter;
+    // 数据库认领成功
+    private final Counter missCounter;
+    // 数据库确认重复（近期缓存已淘汰，或已被其他节点、重启前、并发请求认领）
+    private final Counter conflictCounter;
+
+    public IdempotencyKeyStore(MultiDataSourceManager dataSourceManager,
+                               MeterRegistry meterRegistry,
+                               @Value("${app.ingest.idempotency.cache.enabled:true}") boolean cacheEnabled,
+                               @Value("${app.ingest.idempotency.cache.recent-size:10000}") int recentSize) {
+        this.dataSourceManager = dataSourceManager;
+        this.cacheEnabled = cacheEnabled;
+        this.recentSize = recentSize;
+        this.hitCounter = lookupCounter(meterRegistry, "hit");
+        this.missCounter = lookupCounter(meterRegistry, "miss");
+        this.conflictCounter = lookupCounter(meterRegistry, "conflict");
+        meterRegistry.gauge("analytics.idempotency.cache.size", caches,
+                map -> map.values().stream().mapToInt(BoundedLruCache::size).sum());
+    }
+
+    private static Counter lookupCounter(MeterRegistry meterRegistry, String result) {
+        return Counter.builder("analytics.idempotency.lookups")
+                .description("幂等键前置缓存查询结果")
+                .tag("result", result)
+                .register(meterRegistry);
+    }
+
+    /**
+     * 认领单个幂等键
+     *
+     * @return null 表示本次认领成功；否则为先前占用该键的事件ID
+     */
+    public String claim(String projectId, DataSource dataSource, String keyHash, String eventId) {
+        BoundedLruCache<String, String> cache = cacheFor(projectId);
+        if (cache != null) {
+            String existing = cache.get(keyHash);
+            if (existing != null) {
+                hitCounter.increment();
+                return existing;
+            }
+        }
+
+        JdbcTemplate jdbcTemplate = new JdbcTemplate(dataSource);
+        String table = dataSourceManager.getSchemaTableName(projectId, TABLE);
+        List<String> inserted = jdbcTemplate.queryForList(String.format(CLAIM_SQL, table), String.class,
+                projectId, keyHash, eventId);
+        if (!inserted.isEmpty()) {
+            if (cache != null) {
+                missCounter.increment();
+                remember(cache, dataSource, Map.of(keyHash, eventId));
+            }
+            return null;
+        }
+
+        // 冲突：之前的请求（或其他节点、重启前）已认领该键
+        if (cache != null) {
+            conflictCounter.increment();
+        }
+        String existing = selectEventId(jdbcTemplate, table, projectId, keyHash);
+        if (existing == null) {
+            existing = eventId;
+        }
+        if (cache != null) {
+            remember(cache, dataSource, Map.of(keyHash, existing));
+        }
+        return existing;
+    }
+
+    /**
+     * 一次往返批量认领幂等键
+     *
+     * @param claims keyHash → 本次生成的 eventId（调用方需保证 keyHash 不重复）
+     * @return 本次新认领成功的 keyHash；未返回的键已被之前的请求占用
+     */
+    public Set<String> claimAll(String projectId, DataSource dataSource, Map<String, String> claims) {
+        if (claims == null || claims.isEmpty()) {
+            return Set.of();
+        }
+
+        // 近期缓存命中的键必然已被占用，不再送往数据库
+        BoundedLruCache<String, String> cache = cacheFor(projectId);
+        Map<String, String> pending = claims;
+        if (cache != null) {
+            pending = new LinkedHashMap<>(claims.size() * 2);
+            for (Map.Entry<String, String> entry : claims.entrySet()) {
+                if (cache.get(entry.getKey()) != null) {
+                    hitCounter.increment();
+                } else {
+                    pending.put(entry.getKey(), entry.getValue());
+                }
+            }
+            if (pending.isEmpty()) {
+                return Set.of();
+            }
+        }
+
+        String[] keyHashes = pending.keySet().toArray(String[]::new);
+        String[] eventIds = new String[keyHashes.length];
+        for (int i = 0; i < keyHashes.length; i++) {
+            eventIds[i] = pending.get(keyHashes[i]);
+        }
+
+        Set<String> claimed = new HashSet<>(keyHashes.length * 2);
+        String claimAllSql = String.format(CLAIM_ALL_SQL, dataSourceManager.getSchemaTableName(projectId, TABLE));
+        new JdbcTemplate(dataSource).query(connection -> {
+            PreparedStatement ps = connection.prepareStatement(claimAllSql);
+            ps.setString(1, projectId);
+            ps.setArray(2, connection.createArrayOf("text", keyHashes));
+            ps.setArray(3, connection.createArrayOf("text", eventIds));
+            return ps;
+        }, rs -> {
+            claimed.add(rs.getString("key_hash"));
+        });
+
+        if (cache != null) {
+            Map<String, String> remembered = new LinkedHashMap<>(claimed.size() * 2);
+            for (String keyHash : keyHashes) {
+                if (claimed.contains(keyHash)) {
+                    missCounter.increment();
+                    remembered.put(keyHash, pending.get(keyHash));
+                } else {
+                    conflictCounter.increment();
+                }
+            }
+            remember(cache, dataSource, remembered);
+        }
+        return claimed;
+    }
+
+    /**
+     * 释放认领：认领后事件最终未能写入时调用，客户端重试可重新认领；只删除仍指向该事件的认领
+     */
+    public void release(String projectId, DataSource dataSource, String keyHash, String eventId) {
+        new JdbcTemplate(dataSource).update(String.format(RELEASE_SQL, dataSourceManager.getSchemaTableName(projectId, TABLE)),
+                projectId, keyHash, eventId);
+        BoundedLruCache<String, String> cache = cacheFor(projectId);
+        if (cache != null) {
+            cache.remove(keyHash);
+        }
+    }
+
+    private static String selectEventId(JdbcTemplate jdbcTemplate, String table, String projectId, String keyHash) {
+        return jdbcTemplate.queryForList(String.format(SELECT_SQL, table), String.class, projectId, keyHash)
+                .stream().findFirst().orElse(null);
+    }
+
+    /**
+     * 写入近期缓存
+     * 只有项目数据源本身绑定了事务（认领随该事务提交或回滚）时才推迟到提交之后；
+     * 其他数据源上的事务（如系统库 @Transactional）与认领无关，认领已自动提交，立即写入。
+     */
+    private static void remember(BoundedLruCache<String, String> cache, DataSource dataSource,
+                                 Map<String, String> entries) {
+        if (entries.isEmpty()) {
+            return;
+        }
+        if (TransactionUtils.inTransaction(dataSource)) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    entries.forEach(cache::put);
+                }
+            });
+            return;
+        }
+        entries.forEach(cache::put);
+    }
+
+    private BoundedLruCache<String, String> cacheFor(String projectId) {
+        if (!cacheEnabled || recentSize <= 0) {
+            return null;
+        }
+        return caches.computeIfAbsent(projectId, id -> new BoundedLruCache<>(recentSize));
+    }
+}
@@ -0,0 +1,123 @@
+package com.github.analyticshub.service;
+
+import com.github.analyticshub.config.MultiDataSourceManager;
+import com.github.analyticshub.util.CryptoUtils;
+import com.github.analyticshub.util.TimeOrderedIds;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * 事件 / 流量指标 ID 生成
+ * text：带前缀的 26 位时间有序文本（VARCHAR 列）；
+ * uuid：标准 UUIDv7 字符串，新建项目的 event_id / metric_id 列使用 PostgreSQL UUID 类型（16 字节），
+ * 已有 VARCHAR 列的项目同样可以写入。
+ * app.project-db.id-type 只决定新初始化项目的列类型；UUID 列的项目按实际列类型（按项目检测并缓存）
+ * 始终生成 UUIDv7，配置切回 text 不影响已用 UUID 列初始化的项目。
+ * 项目库不可用时（熔断器未关闭或检测失败）不检测、直接生成两种列类型都能写入的 UUIDv7；
+ * 检测失败按项目短暂记录，避免故障期间每个 ID 都访问数据库、占用熔断器的试探名额。
+ */
+@Component
+public class IngestIdGenerator {
+
+    private static final System.Logger log = System.getLogger(IngestIdGenerator.class.getName());
+
+    // 检测失败后在该时间内不再检测
+    private static final long FAILED_PROBE_BACKOFF_NANOS = 5_000_000_000L;
+
+    private final MultiDataSourceManager dataSourceManager;
+    private final boolean uuidColumns;
+    // 项目ID:表 → ID 列是否为 UUID；项目库尚未初始化或暂不可用时不缓存
+    private final Map<String, Boolean> uuidColumnTables = new ConcurrentHashMap<>();
+    // 项目ID → 可再次检测的时间（System.nanoTime）
+    private final Map<String, Long> failedProbes = new ConcurrentHashMap<>();
+
+    public IngestIdGenerator(MultiDataSourceManager dataSourceManager,
+                             @Value("${app.project-db.id-type:text}") String idType) {
+        this.dataSourceManager = dataSourceManager;
+        String normalized = idType == null ? "" : idType.trim().toLowerCase(Locale.ROOT);
+        this.uuidColumns = switch (normalized) {
+            case "", "text" -> false;
+            case "uuid" -> true;
+            default -> throw new IllegalArgumentException("app.project-db.id-type 仅支持 text 或 uuid: " + idType);
+        };
+    }
+
+    public String nextEventId(String projectId) {
+        return usesUuid(projectId, "events", "event_id")
+                ? TimeOrderedIds.nextUuid().toString()
+                : CryptoUtils.generateEventId();
+    }
+
+    public String nextTrafficMetricId(String projectId) {
+        return usesUuid(projectId, "traffic_metrics", "metric_id")
+                ? TimeOrderedIds.nextUuid().toString()
+                : CryptoUtils.generateTrafficMetricId();
+    }
+
+    /**
+     * 项目初始化脚本中 event_id / metric_id 的列类型
+     */
+    public String idColumnType() {
+        return uuidColumns ? "UUID" : "VARCHAR(64)";
+    }
+
+    /**
+     * 项目库重新初始化或连接配置变更后重新检测
+     */
+    public void evict(String projectId) {
+        uuidColumnTables.remove(projectId + ":events");
+        uuidColumnTables.remove(projectId + ":traffic_metrics");
+        failedProbes.remove(projectId);
+    }
+
+    private boolean usesUuid(String projectId, String table, String column) {
+        // UUIDv7 字符串可同时写入 UUID 与 VARCHAR(64) 列，无需检测
+        if (uuidColumns) {
+            return true;
+        }
+        String key = projectId + ":" + table;
+        Boolean cached = uuidColumnTables.get(key);
+        if (cached != null) {
+            return cached;
+        }
+
+        // 项目库暂不可用（写入可能转入落盘）：生成两种列类型都能写入的 UUIDv7，且不缓存
+        if (probeSuppressed(projectId)) {
+            return true;
+        }
+
+        List<String> types;
+        try {
+            types = new JdbcTemplate(dataSourceManager.getDataSource(projectId)).queryForList(
+                    "SELECT format_type(a.atttypid, a.atttypmod) FROM pg_attribute a " +
+                            "WHERE a.attrelid = to_regclass(?) AND a.attname = ? AND NOT a.attisdropped",
+                    String.class, dataSourceManager.getTableName(projectId, table), column);
+        } catch (RuntimeException e) {
+            failedProbes.put(projectId, System.nanoTime() + FAILED_PROBE_BACKOFF_NANOS);
+            log.log(System.Logger.Level.DEBUG, "ID 列类型检测失败: {0} {1}", projectId, e.getMessage());
+            return true;
+        }
+        failedProbes.remove(projectId);
+        if (types.isEmpty()) {
+            // 表尚不存在（项目库未初始化）
+            return false;
+        }
+        boolean uuid = "uuid".equals(types.getFirst());
+        uuidColumnTables.putIfAbsent(key, uuid);
+        return uuid;
+    }
+
+    private boolean probeSuppressed(String projectId) {
+        Long retryAt = failedProbes.get(projectId);
+        if (retryAt != null && System.nanoTime() - retryAt < 0) {
+            return true;
+        }
+        return dataSourceManager.isCircuitOpen(projectId);
+    }
+}
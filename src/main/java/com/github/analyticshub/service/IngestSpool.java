@@ -0,0 +1,535 @@
+package com.github.analyticshub.service;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.DeserializationFeature;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.github.analyticshub.config.MultiDataSourceManager;
+import com.github.analyticshub.exception.ProjectDbUnavailableException;
+import com.github.analyticshub.util.MappedSegmentLog;
+import com.zaxxer.hikari.pool.HikariPool;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PreDestroy;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DataAccessResourceFailureException;
+import org.springframework.jdbc.datasource.DataSourceTransactionManager;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import javax.sql.DataSource;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.net.ConnectException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.SQLTransientConnectionException;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+/**
+ * 采集兜底落盘（Spool）
+ *
+ * 项目数据库连接类故障时，把已校验、已序列化的事件/流量指标行追加到本地内存映射段文件（每项目一个目录），
+ * 请求照常返回成功；后台回放线程在项目库恢复连接后按写入顺序回放。
+ * 回放在项目库单事务内完成幂等键认领、ON CONFLICT DO NOTHING 写入（event_id / metric_id 唯一）与计数器维护，
+ * 提交后才推进游标，因此重复回放不会产生重复数据。默认关闭。
+ * 一批记录因非连接类错误连续失败 max-replay-attempts 次后逐条回放，仍失败的记录（以及无法解码的记录）
+ * 移入项目目录下的死信文件并跳过，避免单条坏记录永久阻塞该项目的回放。
+ */
+@Component
+public class IngestSpool {
+
+    private static final System.Logger log = System.getLogger(IngestSpool.class.getName());
+
+    private static final String TYPE_EVENT = "event";
+    private static final String TYPE_TRAFFIC_METRIC = "traffic_metric";
+    private static final String DEAD_LETTER_FILE = "dead-letter.jsonl";
+
+    private final MultiDataSourceManager dataSourceManager;
+    private final EventRowWriter eventRowWriter;
+    private final TrafficMetricRowWriter trafficMetricRowWriter;
+    private final IdempotencyKeyStore idempotencyKeyStore;
+    private final TypeDictionary typeDictionary;
+    private final CounterService counterService;
+    private final MeterRegistry meterRegistry;
+
+    private final boolean enabled;
+    private final Path dir;
+    private final int segmentBytes;
+    private final int maxSegments;
+    private final boolean forceOnWrite;
+    private final int replayBatchSize;
+    private final int maxReplayAttempts;
+
+    // 落盘格式与应用的 ObjectMapper 配置解耦，保证升级后仍可读取旧记录
+    private final ObjectMapper codec = new ObjectMapper()
+            .setSerializationInclusion(JsonInclude.Include.NON_NULL)
+            .configure(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES, false);
+
+    private final Map<String, SpoolLane> lanes = new ConcurrentHashMap<>();
+    private final ScheduledExecutorService replayer;
+
+    public IngestSpool(MultiDataSourceManager dataSourceManager,
+                       EventRowWriter eventRowWriter,
+                       TrafficMetricRowWriter trafficMetricRowWriter,
+                       IdempotencyKeyStore idempotencyKeyStore,
+                       TypeDictionary typeDictionary,
+                       CounterService counterService,
+                       MeterRegistry meterRegistry,
+                       @Value("${app.ingest.spool.enabled:false}") boolean enabled,
+                       @Value("${app.ingest.spool.dir:./data/spool}") String dir,
+                       @Value("${app.ingest.spool.segment-bytes:67108864}") int segmentBytes,
+                       @Value("${app.ingest.spool.max-bytes-per-project:1073741824}") long maxBytesPerProject,
+                       @Value("${app.ingest.spool.force-on-write:false}") boolean forceOnWrite,
+                       @Value("${app.ingest.spool.replay-interval-ms:5000}") long replayIntervalMs,
+                       @Value("${app.ingest.spool.replay-batch-size:500}") int replayBatchSize,
+                       @Value("${app.ingest.spool.max-replay-attempts:5}") int maxReplayAttempts) {
+        this.dataSourceManager = dataSourceManager;
+        this.eventRowWriter = eventRowWriter;
+        this.trafficMetricRowWriter = trafficMetricRowWriter;
+        this.idempotencyKeyStore = idempotencyKeyStore;
+        this.typeDictionary = typeDictionary;
+        this.counterService = counterService;
+        this.meterRegistry = meterRegistry;
+        this.enabled = enabled;
+        this.dir = Path.of(dir);
+        this.segmentBytes = segmentBytes;
+        this.maxSegments = (int) Math.max(1, maxBytesPerProject / Math.max(1, segmentBytes));
+        this.forceOnWrite = forceOnWrite;
+        this.replayBatchSize = Math.max(1, replayBatchSize);
+        this.maxReplayAttempts = Math.max(1, maxReplayAttempts);
+
+        if (!enabled) {
+            this.replayer = null;
+            return;
+        }
+        openExistingLanes();
+        this.replayer = Executors.newSingleThreadScheduledExecutor(Thread.ofPlatform()
+                .name("ingest-spool-replay").daemon(true).factory());
+        long interval = Math.max(100, replayIntervalMs);
+        this.replayer.scheduleWithFixedDelay(this::replayAll, interval, interval, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * 该异常是否应转入落盘（仅连接类故障；SQL 语法、约束等错误仍直接抛出）
+     */
+    public boolean accepts(Throwable error) {
+        return enabled && isConnectivityFailure(error);
+    }
+
+    static boolean isConnectivityFailure(Throwable error) {
+        for (Throwable t = error; t != null; t = t.getCause()) {
+            if (t instanceof DataAccessResourceFailureException
+                    || t instanceof ProjectDbUnavailableException
+                    || t instanceof HikariPool.PoolInitializationException
+                    || t instanceof SQLTransientConnectionException
+                    || t instanceof ConnectException) {
+                return true;
+            }
+            // SQLSTATE 08xxx：连接异常
+            if (t instanceof SQLException sql && sql.getSQLState() != null && sql.getSQLState().startsWith("08")) {
+                return true;
+            }
+            if (t.getCause() == t) {
+                break;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * 落盘事件行
+     *
+     * @param keyHashes eventId → 尚未认领的幂等键哈希（回放时再认领）；已认领或无幂等键的事件不在其中
+     * @return false 表示落盘失败（未开启、处于项目库事务中、超出容量或磁盘错误），调用方应按原逻辑报错
+     */
+    public boolean spoolEvents(String projectId, List<EventRowWriter.EventRow> rows, Map<String, String> keyHashes) {
+        List<SpoolRecord> records = new ArrayList<>(rows.size());
+        for (EventRowWriter.EventRow row : rows) {
+            records.add(new SpoolRecord(TYPE_EVENT, row, keyHashes.get(row.eventId()), null));
+        }
+        return append(projectId, records);
+    }
+
+    /**
+     * 落盘流量指标行
+     */
+    public boolean spoolTrafficMetrics(String projectId, List<TrafficMetricRowWriter.TrafficMetricRow> rows) {
+        List<SpoolRecord> records = new ArrayList<>(rows.size());
+        for (TrafficMetricRowWriter.TrafficMetricRow row : rows) {
+            records.add(new SpoolRecord(TYPE_TRAFFIC_METRIC, null, null, row));
+        }
+        return append(projectId, records);
+    }
+
+    private boolean append(String projectId, List<SpoolRecord> records) {
+        if (!enabled || records.isEmpty()) {
+            return false;
+        }
+        // 处于项目库事务中（如 NDJSON 流分段）：落盘的行不会随事务回滚，改为让事务回滚、由客户端重传
+        if (inProjectTransaction(projectId)) {
+            log.log(System.Logger.Level.DEBUG, "项目库事务中不落盘: {0}", projectId);
+            return false;
+        }
+        try {
+            SpoolLane lane = lane(projectId);
+            List<byte[]> payloads = new ArrayList<>(records.size());
+            for (SpoolRecord record : records) {
+                payloads.add(codec.writeValueAsBytes(record));
+            }
+            // 整批预留空间：放不下时一条都不写，避免调用方报错重试后已落盘的部分重复
+            if (!lane.segmentLog.appendAll(payloads)) {
+                log.log(System.Logger.Level.ERROR, "落盘空间已满，拒绝写入: {0}", projectId);
+                return false;
+            }
+            lane.appended.increment(records.size());
+            log.log(System.Logger.Level.WARNING, "项目数据库不可用，已落盘 {0} 条: {1}", records.size(), projectId);
+            return true;
+        } catch (IOException | RuntimeException e) {
+            log.log(System.Logger.Level.ERROR, "落盘失败: " + projectId, e);
+            return false;
+        }
+    }
+
+    private boolean inProjectTransaction(String projectId) {
+        if (!TransactionSynchronizationManager.isActualTransactionActive()) {
+            return false;
+        }
+        try {
+            return TransactionSynchronizationManager.hasResource(dataSourceManager.getDataSource(projectId));
+        } catch (RuntimeException e) {
+            return false;
+        }
+    }
+
+    /**
+     * 回放全部项目（由回放线程定时调用）
+     */
+    void replayAll() {
+        for (SpoolLane lane : lanes.values()) {
+            if (lane.segmentLog.pendingRecords() == 0) {
+                continue;
+            }
+            try {
+                replay(lane);
+            } catch (Exception e) {
+                if (isConnectivityFailure(e)) {
+                    log.log(System.Logger.Level.DEBUG, "项目数据库仍不可用，稍后重试回放: {0}", lane.projectId);
+                } else {
+                    log.log(System.Logger.Level.ERROR, "落盘回放失败: " + lane.projectId, e);
+                }
+            }
+        }
+    }
+
+    private void replay(SpoolLane lane) throws IOException, SQLException {
+        DataSource dataSource = dataSourceManager.getDataSource(lane.projectId);
+        try (Connection connection = dataSource.getConnection()) {
+            if (!connection.isValid(2)) {
+                return;
+            }
+        }
+
+        TransactionTemplate transactionTemplate = new TransactionTemplate(new DataSourceTransactionManager(dataSource));
+        MappedSegmentLog.Batch batch;
+        while (!(batch = lane.segmentLog.read(replayBatchSize)).records().isEmpty()) {
+            List<byte[]> payloads = new ArrayList<>(batch.records().size());
+            List<SpoolRecord> records = new ArrayList<>(batch.records().size());
+            for (byte[] bytes : batch.records()) {
+                SpoolRecord record = decode(lane, bytes);
+                if (record != null) {
+                    payloads.add(bytes);
+                    records.add(record);
+                }
+            }
+
+            int replayed = records.size();
+            resolveTypes(lane.projectId, records);
+            try {
+                transactionTemplate.executeWithoutResult(status -> replayRecords(lane.projectId, dataSource, records));
+                lane.failedAttempts = 0;
+            } catch (RuntimeException e) {
+                if (isConnectivityFailure(e) || ++lane.failedAttempts < maxReplayAttempts) {
+                    throw e;
+                }
+                log.log(System.Logger.Level.WARNING, "落盘回放连续失败 {0} 次，逐条回放以隔离坏记录: {1}",
+                        lane.failedAttempts, lane.projectId);
+                replayed = replayIndividually(lane, transactionTemplate, dataSource, records, payloads);
+                lane.failedAttempts = 0;
+            }
+            lane.segmentLog.commit(batch);
+            lane.replayed.increment(replayed);
+            log.log(System.Logger.Level.INFO, "落盘回放 {0} 条: {1} (剩余 {2})",
+                    replayed, lane.projectId, lane.segmentLog.pendingRecords());
+        }
+    }
+
+    /**
+     * 在回放事务开启之前以自动提交写入新类型字典项
+     * 连接故障照常中止本轮回放；其他失败（如字典已满）留给事务内写入，按失败次数逐条隔离
+     */
+    private void resolveTypes(String projectId, List<SpoolRecord> records) {
+        List<String> eventTypes = new ArrayList<>();
+        List<String> metricTypes = new ArrayList<>();
+        for (SpoolRecord record : records) {
+            if (record.event() != null) {
+                eventTypes.add(record.event().eventType());
+            } else if (record.metric() != null) {
+                metricTypes.add(record.metric().metricType());
+            }
+        }
+        try {
+            typeDictionary.resolve(projectId, TypeDictionary.Kind.EVENT, eventTypes);
+            typeDictionary.resolve(projectId, TypeDictionary.Kind.METRIC, metricTypes);
+        } catch (RuntimeException e) {
+            if (isConnectivityFailure(e)) {
+                throw e;
+            }
+            log.log(System.Logger.Level.DEBUG, "回放前写入类型字典失败: {0} {1}", projectId, e.getMessage());
+        }
+    }
+
+    private SpoolRecord decode(SpoolLane lane, byte[] bytes) {
+        try {
+            return codec.readValue(bytes, SpoolRecord.class);
+        } catch (IOException | RuntimeException e) {
+            // 无法解码的记录重试也不会成功，直接移入死信
+            deadLetter(lane, bytes, e);
+            return null;
+        }
+    }
+
+    /**
+     * 逐条回放：非连接类错误的记录移入死信，连接故障时整批留待下次回放（已回放的记录重复回放是幂等的）
+     *
+     * @return 成功回放的记录数
+     */
+    private int replayIndividually(SpoolLane lane, TransactionTemplate transactionTemplate, DataSource dataSource,
+                                   List<SpoolRecord> records, List<byte[]> payloads) throws IOException {
+        int replayed = 0;
+        for (int i = 0; i < records.size(); i++) {
+            List<SpoolRecord> single = List.of(records.get(i));
+            try {
+                transactionTemplate.executeWithoutResult(status -> replayRecords(lane.projectId, dataSource, single));
+                replayed++;
+            } catch (RuntimeException e) {
+                if (isConnectivityFailure(e)) {
+                    throw e;
+                }
+                deadLetter(lane, payloads.get(i), e);
+            }
+        }
+        return replayed;
+    }
+
+    /**
+     * 追加到项目目录下的死信文件（每行一条原始记录），供人工排查后补录
+     */
+    private void deadLetter(SpoolLane lane, byte[] payload, Exception error) {
+        writeDeadLetter(lane.projectId, List.of(payload));
+        log.log(System.Logger.Level.ERROR, "落盘记录无法回放，已移入死信: " + lane.projectId, error);
+    }
+
+    /**
+     * 已确认给客户端、但无法写入也无法落盘的事件行直接移入死信文件（不要求开启落盘）
+     *
+     * @return false 表示死信也写入失败（事件丢失，已记录错误日志）
+     */
+    public boolean deadLetterEvents(String projectId, List<EventRowWriter.EventRow> rows, Throwable error) {
+        if (rows.isEmpty()) {
+            return true;
+        }
+        try {
+            List<byte[]> payloads = new ArrayList<>(rows.size());
+            for (EventRowWriter.EventRow row : rows) {
+                payloads.add(codec.writeValueAsBytes(new SpoolRecord(TYPE_EVENT, row, null, null)));
+            }
+            writeDeadLetter(projectId, payloads);
+            log.log(System.Logger.Level.ERROR, "事件无法写入，已移入死信: " + projectId + " (" + rows.size() + " 条)", error);
+            return true;
+        } catch (IOException | RuntimeException e) {
+            log.log(System.Logger.Level.ERROR, "事件无法写入且死信写入失败，丢失 " + rows.size() + " 条: " + projectId, e);
+            return false;
+        }
+    }
+
+    private void writeDeadLetter(String projectId, List<byte[]> payloads) {
+        ByteArrayOutputStream lines = new ByteArrayOutputStream();
+        for (byte[] payload : payloads) {
+            lines.writeBytes(payload);
+            lines.write('\n');
+        }
+        try {
+            Path projectDir = Files.createDirectories(dir.resolve(projectId));
+            Files.write(projectDir.resolve(DEAD_LETTER_FILE), lines.toByteArray(),
+                    StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+        } catch (IOException e) {
+            throw new UncheckedIOException("死信写入失败: " + projectId, e);
+        }
+        deadLetterCounter(projectId).increment(payloads.size());
+    }
+
+    private Counter deadLetterCounter(String projectId) {
+        return Counter.builder("analytics.ingest.spool.dead_lettered")
+                .description("无法写入或回放、移入死信文件的记录数")
+                .tag("project", projectId)
+                .register(meterRegistry);
+    }
+
+    private void replayRecords(String projectId, DataSource dataSource, List<SpoolRecord> records) {
+        List<EventRowWriter.EventRow> events = new ArrayList<>();
+        List<TrafficMetricRowWriter.TrafficMetricRow> metrics = new ArrayList<>();
+        Map<String, String> claims = new LinkedHashMap<>();
+        for (SpoolRecord record : records) {
+            if (TYPE_EVENT.equals(record.type()) && record.event() != null) {
+                events.add(record.event());
+                if (record.keyHash() != null) {
+                    claims.putIfAbsent(record.keyHash(), record.event().eventId());
+                }
+            } else if (TYPE_TRAFFIC_METRIC.equals(record.type()) && record.metric() != null) {
+                metrics.add(record.metric());
+            }
+        }
+
+        if (!events.isEmpty()) {
+            // 落盘时未能认领的幂等键在回放时认领，已被占用的事件跳过
+            Set<String> claimed = idempotencyKeyStore.claimAll(projectId, dataSource, claims);
+            Set<String> skipped = new HashSet<>();
+            for (SpoolRecord record : records) {
+                if (record.event() != null && record.keyHash() != null
+                        && (!claimed.contains(record.keyHash())
+                        || !record.event().eventId().equals(claims.get(record.keyHash())))) {
+                    skipped.add(record.event().eventId());
+                }
+            }
+            events.removeIf(row -> skipped.contains(row.eventId()));
+
+            String eventsTable = dataSourceManager.getTableName(projectId, "events");
+            Set<String> inserted = new HashSet<>(eventRowWriter.insertIgnoringDuplicates(dataSource, eventsTable, events));
+            for (EventRowWriter.EventRow row : events) {
+                if (!inserted.contains(row.eventId())) {
+                    continue;
+                }
+                try {
+                    counterService.processEventAutoIncrements(projectId, row.eventType(), parseProperties(row.propertiesJson()));
+                } catch (Exception e) {
+                    log.log(System.Logger.Level.WARNING, "回放计数器自动维护失败: {0}", e.getMessage());
+                }
+            }
+        }
+
+        if (!metrics.isEmpty()) {
+            String table = dataSourceManager.getTableName(projectId, "traffic_metrics");
+            trafficMetricRowWriter.insertIgnoringDuplicates(dataSource, table, metrics);
+        }
+    }
+
+    private Map<String, Object> parseProperties(String json) {
+        if (json == null) {
+            return null;
+        }
+        try {
+            return codec.readValue(json, new TypeReference<Map<String, Object>>() {});
+        } catch (IOException e) {
+            return null;
+        }
+    }
+
+    private SpoolLane lane(String projectId) {
+        return lanes.computeIfAbsent(projectId, id -> {
+            try {
+                return new SpoolLane(id, new MappedSegmentLog(dir.resolve(id), segmentBytes, maxSegments, forceOnWrite));
+            } catch (IOException e) {
+                throw new IllegalStateException("无法打开落盘目录: " + id, e);
+            }
+        });
+    }
+
+    /**
+     * 启动时接管上次运行遗留的落盘数据
+     */
+    private void openExistingLanes() {
+        if (!Files.isDirectory(dir)) {
+            return;
+        }
+        try (Stream<Path> children = Files.list(dir)) {
+            children.filter(Files::isDirectory).forEach(child -> {
+                String projectId = child.getFileName().toString();
+                try {
+                    SpoolLane lane = lane(projectId);
+                    if (lane.segmentLog.pendingRecords() > 0) {
+                        log.log(System.Logger.Level.INFO, "发现待回放落盘数据: {0} ({1} 条)",
+                                projectId, lane.segmentLog.pendingRecords());
+                    }
+                } catch (RuntimeException e) {
+                    log.log(System.Logger.Level.ERROR, "落盘目录加载失败: " + projectId, e);
+                }
+            });
+        } catch (IOException e) {
+            log.log(System.Logger.Level.ERROR, "落盘目录扫描失败", e);
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        if (replayer != null) {
+            replayer.shutdownNow();
+        }
+        lanes.values().forEach(lane -> lane.segmentLog.close());
+    }
+
+    /**
+     * 单项目落盘通道：一份段日志 + 指标
+     */
+    private final class SpoolLane {
+        private final String projectId;
+        private final MappedSegmentLog segmentLog;
+        private final Counter appended;
+        private final Counter replayed;
+        // 当前批次连续失败（非连接类错误）次数，仅回放线程访问
+        private int failedAttempts;
+
+        private SpoolLane(String projectId, MappedSegmentLog segmentLog) {
+            this.projectId = projectId;
+            this.segmentLog = segmentLog;
+            this.appended = Counter.builder("analytics.ingest.spool.appended")
+                    .description("落盘记录数")
+                    .tag("project", projectId)
+                    .register(meterRegistry);
+            this.replayed = Counter.builder("analytics.ingest.spool.replayed")
+                    .description("已回放记录数（回放速率取其 rate）")
+                    .tag("project", projectId)
+                    .register(meterRegistry);
+            Gauge.builder("analytics.ingest.spool.depth", segmentLog, MappedSegmentLog::pendingRecords)
+                    .description("待回放记录数")
+                    .tag("project", projectId)
+                    .register(meterRegistry);
+            Gauge.builder("analytics.ingest.spool.segments", segmentLog, MappedSegmentLog::segmentCount)
+                    .description("落盘段文件数")
+                    .tag("project", projectId)
+                    .register(meterRegistry);
+        }
+    }
+
+    /**
+     * 落盘记录：type 决定 event / metric 哪个字段有效
+     */
+    record SpoolRecord(String type, EventRowWriter.EventRow event, String keyHash,
+                       TrafficMetricRowWriter.TrafficMetricRow metric) {}
+}
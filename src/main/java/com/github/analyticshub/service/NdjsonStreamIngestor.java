@@ -0,0 +1,284 @@
+package com.github.analyticshub.service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.github.analyticshub.exception.BusinessException;
+import com.github.analyticshub.security.DecompressingHttpServletRequestWrapper;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpStatus;
+import org.springframework.jdbc.datasource.DataSourceTransactionManager;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import javax.sql.DataSource;
+import java.io.BufferedInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.DigestInputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Consumer;
+import java.util.function.IntFunction;
+import java.util.function.ToIntFunction;
+
+/**
+ * NDJSON 流式采集
+ * 请求体（支持 chunked 传输）先暂存到本地临时文件并计算 SHA-256，与签名覆盖的 X-Content-SHA256 一致后
+ * 才逐行解析写入：签名只覆盖请求头，摘要校验通过前任何数据都不入库。
+ * 每个分段在项目库的独立短事务中写入并提交，上传期间不占用连接与事务；
+ * 写入中途失败时错误信息给出已提交的行数，客户端从下一行续传。
+ */
+@Component
+public class NdjsonStreamIngestor {
+
+    /**
+     * 流式请求体摘要请求头（小写十六进制 SHA-256），签名以其代替请求体
+     */
+    public static final String DIGEST_HEADER = "X-Content-SHA256";
+
+    private static final System.Logger log = System.getLogger(NdjsonStreamIngestor.class.getName());
+
+    private final ObjectMapper objectMapper;
+    private final int chunkSize;
+    private final int maxLineBytes;
+    private final long maxLines;
+    private final long maxBodyBytes;
+
+    public NdjsonStreamIngestor(ObjectMapper objectMapper,
+                                @Value("${app.ingest.stream.chunk-size:500}") int chunkSize,
+                                @Value("${app.ingest.stream.max-line-bytes:1048576}") int maxLineBytes,
+                                @Value("${app.ingest.stream.max-lines:1000000}") long maxLines,
+                                @Value("${app.ingest.stream.max-body-bytes:268435456}") long maxBodyBytes) {
+        this.objectMapper = objectMapper;
+        this.chunkSize = Math.max(1, chunkSize);
+        this.maxLineBytes = maxLineBytes;
+        this.maxLines = maxLines;
+        this.maxBodyBytes = maxBodyBytes;
+    }
+
+    /**
+     * 读取 NDJSON 流并写入项目库
+     *
+     * @param expectedDigest 请求头声明的请求体 SHA-256（已由认证过滤器纳入签名）
+     * @param chunkWriter    分段写入，返回实际写入条数
+     */
+    public <T> StreamIngestResult ingest(InputStream body, String expectedDigest, DataSource dataSource,
+                                         Class<T> type, IntFunction<T[]> arrayFactory,
+                                         ToIntFunction<T[]> chunkWriter) {
+        return ingest(body, expectedDigest, dataSource, type, arrayFactory, chunk -> {}, chunkWriter);
+    }
+
+    /**
+     * 读取 NDJSON 流并写入项目库
+     *
+     * @param beforeChunk 每个分段的事务开启之前调用（如以自动提交写入新类型字典项，避免事务内再借连接）
+     */
+    public <T> StreamIngestResult ingest(InputStream body, String expectedDigest, DataSource dataSource,
+                                         Class<T> type, IntFunction<T[]> arrayFactory,
+                                         Consumer<T[]> beforeChunk, ToIntFunction<T[]> chunkWriter) {
+        TransactionTemplate transactionTemplate = new TransactionTemplate(new DataSourceTransactionManager(dataSource));
+        ToIntFunction<T[]> committingWriter = chunk -> {
+            beforeChunk.accept(chunk);
+            Integer written = transactionTemplate.execute(status -> chunkWriter.applyAsInt(chunk));
+            return written != null ? written : 0;
+        };
+
+        byte[] expected = parseDigest(expectedDigest);
+        Progress progress = new Progress();
+        Path staged = null;
+        try {
+            staged = Files.createTempFile("ndjson-stream-", ".ndjson");
+            stage(body, expected, staged);
+            try (InputStream in = new BufferedInputStream(Files.newInputStream(staged), 64 * 1024)) {
+                return write(in, type, arrayFactory, committingWriter, progress);
+            }
+        } catch (DecompressingHttpServletRequestWrapper.DecompressedSizeExceededException e) {
+            throw interrupted(BusinessException.batchTooLarge("解压后的请求体超过上限"), progress);
+        } catch (IOException e) {
+            throw interrupted(new UncheckedIOException(e), progress);
+        } catch (RuntimeException e) {
+            throw interrupted(e, progress);
+        } finally {
+            if (staged != null) {
+                try {
+                    Files.deleteIfExists(staged);
+                } catch (IOException e) {
+                    log.log(System.Logger.Level.WARNING, "删除 NDJSON 暂存文件失败: {0} ({1})", staged, e.getMessage());
+                }
+            }
+        }
+    }
+
+    /**
+     * 暂存请求体并校验摘要与行数；不一致（截断或篡改）或超限时不写入任何数据
+     */
+    private void stage(InputStream body, byte[] expectedDigest, Path staged) throws IOException {
+        MessageDigest digest = newSha256();
+        long total = 0;
+        long lines = 0;
+        boolean content = false;
+        byte[] buffer = new byte[64 * 1024];
+        InputStream in = new DigestInputStream(body, digest);
+        try (OutputStream out = Files.newOutputStream(staged)) {
+            int n;
+            while ((n = in.read(buffer)) != -1) {
+                total += n;
+                if (maxBodyBytes > 0 && total > maxBodyBytes) {
+                    throw BusinessException.batchTooLarge("请求体超过 " + maxBodyBytes + " 字节");
+                }
+                for (int i = 0; i < n; i++) {
+                    byte b = buffer[i];
+                    if (b == '\n') {
+                        lines += content ? 1 : 0;
+                        content = false;
+                    } else if (b != ' ' && b != '\t' && b != '\r') {
+                        content = true;
+                    }
+                }
+                if (maxLines > 0 && lines + (content ? 1 : 0) > maxLines) {
+                    throw BusinessException.batchTooLarge("行数超过 " + maxLines);
+                }
+                out.write(buffer, 0, n);
+            }
+        }
+        if (!MessageDigest.isEqual(digest.digest(), expectedDigest)) {
+            log.log(System.Logger.Level.WARNING, "NDJSON 流摘要不一致，未写入: {0} 字节", total);
+            throw new BusinessException("DIGEST_MISMATCH", "请求体摘要与 " + DIGEST_HEADER + " 不一致");
+        }
+    }
+
+    private <T> StreamIngestResult write(InputStream in, Class<T> type, IntFunction<T[]> arrayFactory,
+                                         ToIntFunction<T[]> chunkWriter, Progress progress) throws IOException {
+
+        long received = 0;
+        long accepted = 0;
+        List<T> chunk = new ArrayList<>(chunkSize);
+        ByteArrayOutputStream line = new ByteArrayOutputStream(1024);
+        boolean overflow = false;
+        int b;
+        do {
+            b = in.read();
+            if (b != '\n' && b != -1) {
+                if (line.size() < maxLineBytes) {
+                    line.write(b);
+                } else {
+                    overflow = true;
+                }
+                continue;
+            }
+
+            byte[] bytes = line.toByteArray();
+            if (overflow || !isBlank(bytes)) {
+                received++;
+                T item = overflow ? null : parseLine(bytes, type);
+                if (item != null) {
+                    chunk.add(item);
+                }
+            }
+            line.reset();
+            overflow = false;
+
+            if (chunk.size() >= chunkSize) {
+                accepted += chunkWriter.applyAsInt(chunk.toArray(arrayFactory));
+                chunk.clear();
+                progress.committedLines = received;
+            }
+        } while (b != -1);
+
+        if (!chunk.isEmpty()) {
+            accepted += chunkWriter.applyAsInt(chunk.toArray(arrayFactory));
+            progress.committedLines = received;
+        }
+
+        return new StreamIngestResult(received, accepted, received - accepted);
+    }
+
+    /**
+     * 已有分段提交后中途失败：错误信息附带已提交行数（含解析失败跳过的行），客户端从下一行续传
+     */
+    private static RuntimeException interrupted(RuntimeException e, Progress progress) {
+        long committed = progress.committedLines;
+        if (committed == 0) {
+            return e;
+        }
+        String detail = "，已提交前 " + committed + " 行，请从第 " + (committed + 1) + " 行续传";
+        log.log(System.Logger.Level.WARNING, "NDJSON 流中断，已提交前 {0} 行: {1}", committed, e.getMessage());
+        BusinessException interrupted = e instanceof BusinessException business
+                ? new BusinessException(business.getCode(), business.getMessage() + detail, business.getHttpStatus())
+                : new BusinessException("STREAM_INTERRUPTED", "流写入中断" + detail, HttpStatus.SERVICE_UNAVAILABLE);
+        interrupted.initCause(e);
+        return interrupted;
+    }
+
+    private <T> T parseLine(byte[] line, Class<T> type) {
+        try {
+            return objectMapper.readValue(line, type);
+        } catch (IOException | IllegalArgumentException e) {
+            log.log(System.Logger.Level.DEBUG, "NDJSON 行解析失败，已跳过: {0}", e.getMessage());
+            return null;
+        }
+    }
+
+    private static boolean isBlank(byte[] bytes) {
+        for (byte value : bytes) {
+            if (value != ' ' && value != '\t' && value != '\r') {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * 校验摘要请求头格式：64 位十六进制
+     */
+    public static boolean isValidDigest(String digest) {
+        if (digest == null || digest.length() != 64) {
+            return false;
+        }
+        for (int i = 0; i < digest.length(); i++) {
+            if (Character.digit(digest.charAt(i), 16) < 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static byte[] parseDigest(String digest) {
+        if (!isValidDigest(digest)) {
+            throw new BusinessException("INVALID_DIGEST", DIGEST_HEADER + " 必须是 SHA-256 十六进制摘要");
+        }
+        return HexFormat.of().parseHex(digest.toLowerCase());
+    }
+
+    private static MessageDigest newSha256() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 not available", e);
+        }
+    }
+
+    /**
+     * 已提交进度：最后一个已提交分段结束时读到的行数
+     */
+    private static final class Progress {
+        private long committedLines;
+    }
+
+    /**
+     * 流式采集结果
+     */
+    public record StreamIngestResult(long received, long accepted, long rejected) {
+        public Map<String, Long> toMap() {
+            return Map.of("received", received, "accepted", accepted, "rejected", rejected);
+        }
+    }
+}
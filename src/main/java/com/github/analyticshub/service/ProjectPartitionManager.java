@@ -0,0 +1,298 @@
+package com.github.analyticshub.service;
+
+import com.github.analyticshub.config.MultiDataSourceManager;
+import jakarta.annotation.PreDestroy;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.core.annotation.Order;
+import org.springframework.dao.DataAccessException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+
+import java.time.LocalDate;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Pattern;
+
+/**
+ * 项目库分区维护
+ * app.project-db.partitioning 为 month / day 时，新初始化的项目库中事件表与流量指标表按 created_at 范围分区
+ * （db/project-init-partitioned.sql），写入由 PostgreSQL 按分区键自动路由，带 created_at 范围条件的查询只扫描相关分区。
+ *
+ * 本组件按 maintain-interval 为所有启用项目的分区表预先创建当前及之后 premake 个周期的分区（UTC），
+ * 周期粒度取自表注释（partition-granularity=month|day），已有的非分区表不受影响。
+ */
+@Component
+public class ProjectPartitionManager {
+
+    private static final System.Logger log = System.getLogger(ProjectPartitionManager.class.getName());
+
+    static final List<String> PARTITIONED_TABLES = List.of("events", "traffic_metrics");
+
+    private static final int MAX_IDENTIFIER_LENGTH = 63;
+    private static final Pattern IDENTIFIER_PATTERN = Pattern.compile("^[a-z0-9_]+$");
+    private static final String GRANULARITY_COMMENT_PREFIX = "partition-granularity=";
+
+    private final MultiDataSourceManager dataSourceManager;
+    // 新建项目的分区粒度；null 表示不分区
+    private final Granularity granularity;
+    private final int premake;
+    private final long maintainIntervalMs;
+    private final ScheduledExecutorService maintainer;
+
+    public ProjectPartitionManager(MultiDataSourceManager dataSourceManager,
+                                   @Value("${app.project-db.partitioning:none}") String partitioning,
+                                   @Value("${app.project-db.partition.premake:3}") int premake,
+                                   @Value("${app.project-db.partition.maintain-interval-ms:3600000}") long maintainIntervalMs) {
+        this.dataSourceManager = dataSourceManager;
+        String normalized = partitioning == null ? "" : partitioning.trim().toLowerCase(Locale.ROOT);
+        this.granularity = switch (normalized) {
+            case "", "none" -> null;
+            case "month" -> Granularity.MONTH;
+            case "day" -> Granularity.DAY;
+            default -> throw new IllegalArgumentException("app.project-db.partitioning 仅支持 none、month 或 day: " + partitioning);
+        };
+        this.premake = Math.max(1, premake);
+        this.maintainIntervalMs = maintainIntervalMs;
+        this.maintainer = Executors.newSingleThreadScheduledExecutor(Thread.ofPlatform()
+                .name("project-partition-maintainer").daemon(true).factory());
+    }
+
+    /**
+     * 新初始化的项目库是否使用分区表
+     */
+    public boolean isPartitioned() {
+        return granularity != null;
+    }
+
+    /**
+     * 新建项目的分区粒度（month / day）；不分区时为 null
+     */
+    public String granularityName() {
+        return granularity == null ? null : granularity.name().toLowerCase(Locale.ROOT);
+    }
+
+    /**
+     * 就绪后开始定期维护（已分区的项目即使之后关闭了 partitioning 配置也继续维护）
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    @Order(3)
+    public void onApplicationReady() {
+        if (maintainIntervalMs <= 0) {
+            return;
+        }
+        maintainer.scheduleWithFixedDelay(this::maintainAllQuietly, 0, maintainIntervalMs, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * 为所有启用项目补齐分区
+     *
+     * @return 新建的分区数
+     */
+    public int maintainAll() {
+        int created = 0;
+        LocalDate today = LocalDate.now(ZoneOffset.UTC);
+        for (String projectId : dataSourceManager.activeProjectIds()) {
+            try {
+                MultiDataSourceManager.ProjectConfig config = dataSourceManager.getProjectConfig(projectId);
+                if (config == null) {
+                    continue;
+                }
+                created += ensurePartitions(new JdbcTemplate(dataSourceManager.getDataSource(projectId)),
+                        config.dbSchema(), config.tablePrefix(), today);
+            } catch (RuntimeException e) {
+                log.log(System.Logger.Level.WARNING, "维护项目分区失败: {0} ({1})", projectId, e.getMessage());
+            }
+        }
+        return created;
+    }
+
+    private void maintainAllQuietly() {
+        try {
+            int created = maintainAll();
+            if (created > 0) {
+                log.log(System.Logger.Level.INFO, "Created {0} partitions", created);
+            }
+        } catch (RuntimeException e) {
+            log.log(System.Logger.Level.WARNING, "维护项目分区失败: {0}", e.getMessage());
+        }
+    }
+
+    /**
+     * 为项目库中的分区表创建当前及之后 premake 个周期的分区（已存在则跳过）
+     *
+     * @return 新建的分区数
+     */
+    public int ensurePartitions(JdbcTemplate jdbcTemplate, String schema, String tablePrefix, LocalDate today) {
+        validateIdentifier(schema, "database schema");
+        validateIdentifier(tablePrefix, "table prefix");
+
+        int created = 0;
+        for (String baseName : PARTITIONED_TABLES) {
+            String parent = tablePrefix + baseName;
+            List<Map<String, Object>> rows = jdbcTemplate.queryForList(
+                    "SELECT c.relkind::text AS kind, obj_description(c.oid, 'pg_class') AS description " +
+                            "FROM pg_class c JOIN pg_namespace n ON n.oid = c.relnamespace " +
+                            "WHERE n.nspname = ? AND c.relname = ?",
+                    schema, parent);
+            if (rows.isEmpty() || !"p".equals(rows.getFirst().get("kind"))) {
+                continue;
+            }
+            Granularity tableGranularity = Granularity.fromDescription(
+                    (String) rows.getFirst().get("description"), granularity == null ? Granularity.MONTH : granularity);
+
+            LocalDate from = tableGranularity.periodStart(today);
+            for (int i = 0; i <= premake; i++) {
+                LocalDate to = tableGranularity.next(from);
+                String partition = parent + "_p" + tableGranularity.suffix(from);
+                if (partition.length() > MAX_IDENTIFIER_LENGTH) {
+                    log.log(System.Logger.Level.WARNING, "分区表名超长，跳过: {0}", partition);
+                    break;
+                }
+                if (createPartition(jdbcTemplate, schema, parent, partition, from, to)) {
+                    created++;
+                }
+                from = to;
+            }
+        }
+        return created;
+    }
+
+    /**
+     * 删除范围整体早于 before 的周期分区（仅识别本组件创建的 _pYYYYMM / _pYYYYMMDD 分区，DEFAULT 分区不动）
+     *
+     * @return 删除的分区名
+     */
+    public List<String> dropPartitionsBefore(JdbcTemplate jdbcTemplate, String schema, String tablePrefix,
+                                             String baseName, LocalDate before) {
+        validateIdentifier(schema, "database schema");
+        validateIdentifier(tablePrefix, "table prefix");
+        String parent = tablePrefix + baseName;
+        validateIdentifier(parent, "table name");
+
+        List<String> partitions = jdbcTemplate.queryForList(
+                "SELECT c.relname FROM pg_inherits i " +
+                        "JOIN pg_class c ON c.oid = i.inhrelid " +
+                        "JOIN pg_class p ON p.oid = i.inhparent " +
+                        "JOIN pg_namespace n ON n.oid = p.relnamespace " +
+                        "WHERE n.nspname = ? AND p.relname = ? ORDER BY c.relname",
+                String.class, schema, parent);
+        List<String> dropped = new ArrayList<>();
+        for (String partition : partitions) {
+            LocalDate end = periodEnd(parent, partition);
+            if (end == null || end.isAfter(before)) {
+                continue;
+            }
+            jdbcTemplate.execute("DROP TABLE IF EXISTS " + quoteIdentifier(schema) + "." + quoteIdentifier(partition));
+            log.log(System.Logger.Level.INFO, "Dropped partition {0}.{1}", schema, partition);
+            dropped.add(partition);
+        }
+        return dropped;
+    }
+
+    /**
+     * 由分区名推出其范围的结束日期（不含）；非本组件命名的分区返回 null
+     */
+    static LocalDate periodEnd(String parent, String partition) {
+        String marker = parent + "_p";
+        if (!partition.startsWith(marker)) {
+            return null;
+        }
+        String suffix = partition.substring(marker.length());
+        try {
+            return switch (suffix.length()) {
+                case 6 -> Granularity.MONTH.next(LocalDate.parse(suffix + "01", DateTimeFormatter.BASIC_ISO_DATE));
+                case 8 -> Granularity.DAY.next(LocalDate.parse(suffix, DateTimeFormatter.BASIC_ISO_DATE));
+                default -> null;
+            };
+        } catch (DateTimeParseException e) {
+            return null;
+        }
+    }
+
+    private static boolean createPartition(JdbcTemplate jdbcTemplate, String schema, String parent, String partition,
+                                           LocalDate from, LocalDate to) {
+        Integer exists = jdbcTemplate.queryForObject(
+                "SELECT count(*) FROM pg_class c JOIN pg_namespace n ON n.oid = c.relnamespace " +
+                        "WHERE n.nspname = ? AND c.relname = ?",
+                Integer.class, schema, partition);
+        if (exists != null && exists > 0) {
+            return false;
+        }
+        // 标识符已校验；范围边界为日期常量
+        String sql = String.format("CREATE TABLE IF NOT EXISTS %s.%s PARTITION OF %s.%s FOR VALUES FROM ('%s 00:00:00+00') TO ('%s 00:00:00+00')",
+                quoteIdentifier(schema), quoteIdentifier(partition), quoteIdentifier(schema), quoteIdentifier(parent),
+                from, to);
+        try {
+            jdbcTemplate.execute(sql);
+            log.log(System.Logger.Level.INFO, "Created partition {0}.{1} [{2}, {3})", schema, partition, from, to);
+            return true;
+        } catch (DataAccessException e) {
+            // 常见原因：DEFAULT 分区中已有落在该范围内的数据，需要人工迁移后重试
+            log.log(System.Logger.Level.WARNING, "创建分区失败: {0}.{1} ({2})", schema, partition, e.getMessage());
+            return false;
+        }
+    }
+
+    private static void validateIdentifier(String identifier, String type) {
+        if (identifier == null || identifier.isBlank() || identifier.length() > MAX_IDENTIFIER_LENGTH
+                || !IDENTIFIER_PATTERN.matcher(identifier).matches()) {
+            throw new IllegalArgumentException("Invalid " + type);
+        }
+    }
+
+    private static String quoteIdentifier(String identifier) {
+        return "\"" + identifier + "\"";
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        maintainer.shutdownNow();
+    }
+
+    /**
+     * 分区周期粒度（UTC 日期边界）
+     */
+    enum Granularity {
+        MONTH(DateTimeFormatter.ofPattern("yyyyMM")),
+        DAY(DateTimeFormatter.ofPattern("yyyyMMdd"));
+
+        private final DateTimeFormatter suffixFormat;
+
+        Granularity(DateTimeFormatter suffixFormat) {
+            this.suffixFormat = suffixFormat;
+        }
+
+        LocalDate periodStart(LocalDate date) {
+            return this == MONTH ? date.withDayOfMonth(1) : date;
+        }
+
+        LocalDate next(LocalDate periodStart) {
+            return this == MONTH ? periodStart.plusMonths(1) : periodStart.plusDays(1);
+        }
+
+        String suffix(LocalDate periodStart) {
+            return suffixFormat.format(periodStart);
+        }
+
+        static Granularity fromDescription(String description, Granularity fallback) {
+            if (description == null || !description.startsWith(GRANULARITY_COMMENT_PREFIX)) {
+                return fallback;
+            }
+            return switch (description.substring(GRANULARITY_COMMENT_PREFIX.length()).strip()) {
+                case "month" -> MONTH;
+                case "day" -> DAY;
+                default -> fallback;
+            };
+        }
+    }
+}
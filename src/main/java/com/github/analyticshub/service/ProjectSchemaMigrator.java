@@ -0,0 +1,557 @@
+package com.github.analyticshub.service;
+
+import com.github.analyticshub.config.MultiDataSourceManager;
+import com.github.analyticshub.dto.ProjectMigrationResult;
+import com.github.analyticshub.exception.BusinessException;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.boot.health.contributor.Health;
+import org.springframework.boot.health.contributor.HealthIndicator;
+import org.springframework.context.event.EventListener;
+import org.springframework.core.annotation.Order;
+import org.springframework.core.io.Resource;
+import org.springframework.core.io.support.PathMatchingResourcePatternResolver;
+import org.springframework.dao.DataAccessException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.SingleConnectionDataSource;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
+import java.util.function.Predicate;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.zip.CRC32;
+
+/**
+ * 项目库版本化迁移
+ * db/project-migration/V{版本}__{说明}.sql 按版本顺序应用到每个项目库，脚本支持与 project-init.sql 相同的
+ * {{SCHEMA}} / {{PREFIX}} / {{ID_COLUMN_TYPE}} 占位符。已应用的版本及模板校验和记录在项目 schema 下的
+ * {prefix}schema_history 表，已应用脚本的内容被修改时拒绝继续迁移。
+ *
+ * 包含 CONCURRENTLY 的脚本不在事务中执行（PostgreSQL 不允许），逐条语句自动提交，因此必须写成可重入的
+ * （IF NOT EXISTS），执行前会清理上次中断留下的无效索引。分区表不支持 CREATE INDEX CONCURRENTLY，
+ * 展开为父表 ON ONLY 建索引、逐个分区并发建索引再 ATTACH PARTITION，整个过程不阻塞写入。
+ *
+ * 同一项目库的迁移由 advisory lock 互斥，多节点同时启动时只有一个节点执行；
+ * 全量迁移按 parallelism 限制并发（虚拟线程），单个项目失败不影响其他项目。
+ *
+ * 启动迁移分两个阶段：先应用事务性迁移（建表等，业务代码依赖），再应用 CONCURRENTLY 迁移（建索引，可能耗时较长）。
+ * 作为健康检查项 projectMigration 加入 readiness 组：事务性阶段完成（或超过 readiness-timeout-ms）前为 OUT_OF_SERVICE，
+ * 并发建索引阶段在后台继续，不阻塞就绪。
+ */
+@Component("projectMigration")
+public class ProjectSchemaMigrator implements HealthIndicator {
+
+    private static final System.Logger log = System.getLogger(ProjectSchemaMigrator.class.getName());
+
+    static final String MIGRATION_LOCATION = "db/project-migration";
+
+    private static final int DEFAULT_DB_PORT = 5432;
+    private static final int MAX_IDENTIFIER_LENGTH = 63;
+    private static final Pattern IDENTIFIER_PATTERN = Pattern.compile("^[a-z0-9_]+$");
+    private static final Pattern FILE_NAME_PATTERN = Pattern.compile("^V(\\d+)__(\\w+)\\.sql$");
+    private static final Pattern DOLLAR_TAG_PATTERN = Pattern.compile("\\$[A-Za-z_]*\\$");
+    private static final Pattern CONCURRENTLY_PATTERN = Pattern.compile("\\bCONCURRENTLY\\b", Pattern.CASE_INSENSITIVE);
+    private static final Pattern CONCURRENT_INDEX_PATTERN = Pattern.compile(
+            "^CREATE\\s+(UNIQUE\\s+)?INDEX\\s+CONCURRENTLY\\s+(?:IF\\s+NOT\\s+EXISTS\\s+)?(\\w+)\\s+ON\\s+(?!ONLY\\b)(\\w+)\\s*(.*)$",
+            Pattern.CASE_INSENSITIVE | Pattern.DOTALL);
+
+    private final MultiDataSourceManager dataSourceManager;
+    private final IngestIdGenerator idGenerator;
+    private final List<Migration> migrations;
+    private final boolean migrateOnStartup;
+    private final int parallelism;
+    private final long lockTimeoutMs;
+    private final long readinessTimeoutMs;
+
+    private volatile boolean transactionalCompleted;
+    private volatile long startedAtMillis;
+    private final Map<String, String> failedProjects = new ConcurrentHashMap<>();
+
+    public ProjectSchemaMigrator(MultiDataSourceManager dataSourceManager,
+                                 IngestIdGenerator idGenerator,
+                                 @Value("${app.project-db.migration.on-startup:true}") boolean migrateOnStartup,
+                                 @Value("${app.project-db.migration.parallelism:4}") int parallelism,
+                                 @Value("${app.project-db.migration.lock-timeout-ms:5000}") long lockTimeoutMs,
+                                 @Value("${app.project-db.migration.readiness-timeout-ms:120000}") long readinessTimeoutMs) {
+        this.dataSourceManager = dataSourceManager;
+        this.idGenerator = idGenerator;
+        this.migrations = loadMigrations(MIGRATION_LOCATION);
+        this.migrateOnStartup = migrateOnStartup;
+        this.parallelism = Math.max(1, parallelism);
+        this.lockTimeoutMs = Math.max(0, lockTimeoutMs);
+        this.readinessTimeoutMs = Math.max(1000, readinessTimeoutMs);
+        this.transactionalCompleted = !migrateOnStartup || migrations.isEmpty();
+        this.startedAtMillis = System.currentTimeMillis();
+    }
+
+    /**
+     * 就绪后在后台迁移所有启用项目：事务性迁移完成前 readiness 为 OUT_OF_SERVICE，并发建索引不阻塞就绪
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    @Order(5)
+    public void onApplicationReady() {
+        if (transactionalCompleted) {
+            return;
+        }
+        startedAtMillis = System.currentTimeMillis();
+        Thread.ofPlatform().name("project-schema-migrator").daemon(true).start(this::migrateOnStartup);
+    }
+
+    void migrateOnStartup() {
+        try {
+            List<ProjectMigrationResult> results = migrateAll(false, Migration::transactional);
+            results.stream().filter(result -> result.error() != null)
+                    .forEach(result -> failedProjects.put(result.projectId(), result.error()));
+            logCompleted("事务性迁移", results);
+        } catch (RuntimeException e) {
+            log.log(System.Logger.Level.ERROR, "项目库事务性迁移失败", e);
+        } finally {
+            transactionalCompleted = true;
+        }
+        try {
+            logCompleted("迁移", migrateAll(false));
+        } catch (RuntimeException e) {
+            log.log(System.Logger.Level.ERROR, "项目库迁移失败", e);
+        }
+    }
+
+    private static void logCompleted(String phase, List<ProjectMigrationResult> results) {
+        long failed = results.stream().filter(result -> result.error() != null).count();
+        long applied = results.stream().mapToLong(result -> result.applied().size()).sum();
+        log.log(System.Logger.Level.INFO, "✓ 项目库{0}完成: {1} 个项目，应用 {2} 个迁移，失败 {3} 个",
+                phase, results.size(), applied, failed);
+    }
+
+    @Override
+    public Health health() {
+        if (!migrateOnStartup) {
+            return Health.up().withDetail("migration", "disabled").build();
+        }
+        Map<String, Object> details = new LinkedHashMap<>();
+        if (!transactionalCompleted) {
+            // 项目库长时间不可达时不无限阻塞就绪
+            if (System.currentTimeMillis() - startedAtMillis < readinessTimeoutMs) {
+                return Health.outOfService().withDetails(details).build();
+            }
+            details.put("timedOut", true);
+        }
+        if (!failedProjects.isEmpty()) {
+            details.put("failed", Map.copyOf(failedProjects));
+        }
+        return Health.up().withDetails(details).build();
+    }
+
+    /**
+     * 迁移所有启用项目（并发数受 parallelism 限制）
+     *
+     * @param dryRun 为 true 时只返回待应用的迁移
+     */
+    public List<ProjectMigrationResult> migrateAll(boolean dryRun) {
+        return migrateAll(dryRun, migration -> true);
+    }
+
+    private List<ProjectMigrationResult> migrateAll(boolean dryRun, Predicate<Migration> filter) {
+        List<String> projectIds = dataSourceManager.activeProjectIds();
+        Semaphore permits = new Semaphore(parallelism);
+        List<Future<ProjectMigrationResult>> tasks = new ArrayList<>();
+        try (ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor()) {
+            for (String projectId : projectIds) {
+                tasks.add(executor.submit(() -> {
+                    permits.acquire();
+                    try {
+                        return migrateProject(projectId, dryRun, filter);
+                    } finally {
+                        permits.release();
+                    }
+                }));
+            }
+        }
+
+        List<ProjectMigrationResult> results = new ArrayList<>();
+        for (int i = 0; i < tasks.size(); i++) {
+            Future<ProjectMigrationResult> task = tasks.get(i);
+            results.add(task.state() == Future.State.SUCCESS
+                    ? task.resultNow()
+                    : failed(projectIds.get(i), null, List.of(), String.valueOf(task.exceptionNow().getMessage())));
+        }
+        return results;
+    }
+
+    /**
+     * 迁移单个启用项目（使用独立连接，不占用业务连接池）
+     */
+    public ProjectMigrationResult migrateProject(String projectId, boolean dryRun) {
+        return migrateProject(projectId, dryRun, migration -> true);
+    }
+
+    private ProjectMigrationResult migrateProject(String projectId, boolean dryRun, Predicate<Migration> filter) {
+        MultiDataSourceManager.ProjectConfig config = dataSourceManager.getProjectConfig(projectId);
+        if (config == null) {
+            throw BusinessException.invalidProject(projectId);
+        }
+        String url = String.format("jdbc:postgresql://%s:%d/%s", config.dbHost(),
+                config.dbPort() == null ? DEFAULT_DB_PORT : config.dbPort(), config.dbName());
+        try (Connection connection = DriverManager.getConnection(url, config.dbUser(), config.dbPassword())) {
+            return migrate(connection, projectId, config.dbSchema(), config.tablePrefix(), dryRun, filter);
+        } catch (SQLException e) {
+            log.log(System.Logger.Level.WARNING, "连接项目库失败: {0} ({1})", projectId, e.getMessage());
+            return failed(projectId, null, List.of(), e.getMessage());
+        }
+    }
+
+    /**
+     * 在给定连接上应用待执行的迁移；连接的 search_path 与会话参数会被修改，调用方应使用独立连接
+     */
+    public ProjectMigrationResult migrate(Connection connection, String projectId, String schema, String tablePrefix,
+                                          boolean dryRun) {
+        return migrate(connection, projectId, schema, tablePrefix, dryRun, migration -> true);
+    }
+
+    private ProjectMigrationResult migrate(Connection connection, String projectId, String schema, String tablePrefix,
+                                           boolean dryRun, Predicate<Migration> filter) {
+        validateIdentifier(schema, "database schema");
+        validateIdentifier(tablePrefix, "table prefix");
+        JdbcTemplate jdbcTemplate = new JdbcTemplate(new SingleConnectionDataSource(connection, true));
+        String historyTable = quoteIdentifier(schema) + "." + quoteIdentifier(tablePrefix + "schema_history");
+        String lockKey = schema + "." + tablePrefix + "schema_history";
+
+        boolean locked = false;
+        Integer currentVersion = null;
+        List<String> applied = new ArrayList<>();
+        try {
+            if (!dryRun) {
+                locked = Boolean.TRUE.equals(jdbcTemplate.queryForObject(
+                        "SELECT pg_try_advisory_lock(hashtext(?))", Boolean.class, lockKey));
+                if (!locked) {
+                    return failed(projectId, null, List.of(), "其他节点正在迁移该项目库");
+                }
+                jdbcTemplate.execute("SET search_path TO " + quoteIdentifier(schema) + ", public");
+                jdbcTemplate.execute("SET lock_timeout = " + lockTimeoutMs);
+                jdbcTemplate.execute("SET statement_timeout = 0");
+                jdbcTemplate.execute("CREATE TABLE IF NOT EXISTS " + historyTable + " (" +
+                        "version INTEGER PRIMARY KEY, " +
+                        "description VARCHAR(200) NOT NULL, " +
+                        "checksum INTEGER NOT NULL, " +
+                        "execution_ms BIGINT NOT NULL, " +
+                        "installed_at TIMESTAMP WITH TIME ZONE NOT NULL DEFAULT NOW())");
+            }
+
+            Map<Integer, Integer> appliedChecksums = new HashMap<>();
+            String exists = jdbcTemplate.queryForObject("SELECT to_regclass(?)::text", String.class, historyTable);
+            if (exists != null) {
+                jdbcTemplate.query("SELECT version, checksum FROM " + historyTable,
+                        rs -> { appliedChecksums.put(rs.getInt("version"), rs.getInt("checksum")); });
+            }
+            currentVersion = appliedChecksums.keySet().stream().max(Integer::compare).orElse(null);
+            List<Migration> pending = pendingMigrations(appliedChecksums).stream().filter(filter).toList();
+            if (dryRun) {
+                return new ProjectMigrationResult(projectId, currentVersion, List.of(), names(pending), null);
+            }
+
+            for (int i = 0; i < pending.size(); i++) {
+                Migration migration = pending.get(i);
+                try {
+                    apply(connection, jdbcTemplate, schema, tablePrefix, historyTable, migration);
+                } catch (SQLException | RuntimeException e) {
+                    log.log(System.Logger.Level.WARNING, "项目库迁移失败: {0} {1} ({2})",
+                            projectId, migration.name(), e.getMessage());
+                    return failed(projectId, currentVersion, applied,
+                            migration.name() + ": " + e.getMessage(), names(pending.subList(i, pending.size())));
+                }
+                applied.add(migration.name());
+                currentVersion = currentVersion == null ? migration.version() : Math.max(currentVersion, migration.version());
+            }
+            return new ProjectMigrationResult(projectId, currentVersion, List.copyOf(applied), List.of(), null);
+        } catch (DataAccessException | IllegalStateException e) {
+            log.log(System.Logger.Level.WARNING, "项目库迁移失败: {0} ({1})", projectId, e.getMessage());
+            return failed(projectId, currentVersion, applied, e.getMessage());
+        } finally {
+            if (locked) {
+                try {
+                    jdbcTemplate.queryForObject("SELECT pg_advisory_unlock(hashtext(?))", Boolean.class, lockKey);
+                } catch (DataAccessException e) {
+                    log.log(System.Logger.Level.WARNING, "释放迁移锁失败: {0} ({1})", projectId, e.getMessage());
+                }
+            }
+        }
+    }
+
+    private void apply(Connection connection, JdbcTemplate jdbcTemplate, String schema, String tablePrefix,
+                       String historyTable, Migration migration) throws SQLException {
+        List<String> statements = splitStatements(migration.render(schema, tablePrefix, idGenerator.idColumnType()));
+        String recordSql = "INSERT INTO " + historyTable + " (version, description, checksum, execution_ms) VALUES (?, ?, ?, ?)";
+        long start = System.nanoTime();
+        if (migration.transactional()) {
+            connection.setAutoCommit(false);
+            try {
+                for (String statement : statements) {
+                    jdbcTemplate.execute(statement);
+                }
+                jdbcTemplate.update(recordSql, migration.version(), migration.description(), migration.checksum(),
+                        (System.nanoTime() - start) / 1_000_000);
+                connection.commit();
+            } catch (SQLException | RuntimeException e) {
+                connection.rollback();
+                throw e;
+            } finally {
+                connection.setAutoCommit(true);
+            }
+        } else {
+            for (String statement : statements) {
+                executeStatement(jdbcTemplate, schema, statement);
+            }
+            jdbcTemplate.update(recordSql, migration.version(), migration.description(), migration.checksum(),
+                    (System.nanoTime() - start) / 1_000_000);
+        }
+        log.log(System.Logger.Level.INFO, "Applied project migration {0} to {1} in {2} ms",
+                migration.name(), schema + "." + tablePrefix, (System.nanoTime() - start) / 1_000_000);
+    }
+
+    /**
+     * 执行非事务迁移中的一条语句；CREATE INDEX CONCURRENTLY 先清理同名无效索引，分区表按分区展开
+     */
+    void executeStatement(JdbcTemplate jdbcTemplate, String schema, String statement) {
+        Matcher matcher = CONCURRENT_INDEX_PATTERN.matcher(statement.strip());
+        if (!matcher.matches()) {
+            jdbcTemplate.execute(statement);
+            return;
+        }
+        String unique = matcher.group(1) == null ? "" : "UNIQUE ";
+        String index = matcher.group(2).toLowerCase(Locale.ROOT);
+        String table = matcher.group(3).toLowerCase(Locale.ROOT);
+        String definition = matcher.group(4);
+
+        List<String> kinds = jdbcTemplate.queryForList(
+                "SELECT c.relkind::text FROM pg_class c JOIN pg_namespace n ON n.oid = c.relnamespace " +
+                        "WHERE n.nspname = ? AND c.relname = ?",
+                String.class, schema, table);
+        if (kinds.isEmpty() || !"p".equals(kinds.getFirst())) {
+            dropInvalidIndex(jdbcTemplate, schema, index);
+            jdbcTemplate.execute(statement);
+            return;
+        }
+
+        // 父表上的 ON ONLY 索引在所有分区索引挂载完成后自动生效；之后新建的分区自动继承该索引
+        String parentIndex = quoteIdentifier(schema) + "." + quoteIdentifier(index);
+        jdbcTemplate.execute("CREATE " + unique + "INDEX IF NOT EXISTS " + quoteIdentifier(index)
+                + " ON ONLY " + quoteIdentifier(schema) + "." + quoteIdentifier(table) + " " + definition);
+        List<String> partitions = jdbcTemplate.queryForList(
+                "SELECT c.relname FROM pg_inherits i " +
+                        "JOIN pg_class c ON c.oid = i.inhrelid " +
+                        "JOIN pg_class p ON p.oid = i.inhparent " +
+                        "JOIN pg_namespace n ON n.oid = p.relnamespace " +
+                        "WHERE n.nspname = ? AND p.relname = ? ORDER BY c.relname",
+                String.class, schema, table);
+        for (String partition : partitions) {
+            String childIndex = childIndexName(partition, index);
+            dropInvalidIndex(jdbcTemplate, schema, childIndex);
+            jdbcTemplate.execute("CREATE " + unique + "INDEX CONCURRENTLY IF NOT EXISTS " + quoteIdentifier(childIndex)
+                    + " ON " + quoteIdentifier(schema) + "." + quoteIdentifier(partition) + " " + definition);
+            jdbcTemplate.execute("ALTER INDEX " + parentIndex + " ATTACH PARTITION "
+                    + quoteIdentifier(schema) + "." + quoteIdentifier(childIndex));
+        }
+    }
+
+    /**
+     * 并发建索引中断后会留下 indisvalid = false 的索引，IF NOT EXISTS 会跳过它，需要先删除
+     */
+    private static void dropInvalidIndex(JdbcTemplate jdbcTemplate, String schema, String index) {
+        List<String> kinds = jdbcTemplate.queryForList(
+                "SELECT c.relkind::text FROM pg_index i " +
+                        "JOIN pg_class c ON c.oid = i.indexrelid " +
+                        "JOIN pg_namespace n ON n.oid = c.relnamespace " +
+                        "WHERE n.nspname = ? AND c.relname = ? AND NOT i.indisvalid",
+                String.class, schema, index);
+        // 分区父表上的索引（relkind = I）在挂载完成前本就无效，不删除
+        if (!kinds.isEmpty() && "i".equals(kinds.getFirst())) {
+            jdbcTemplate.execute("DROP INDEX CONCURRENTLY IF EXISTS " + quoteIdentifier(schema) + "." + quoteIdentifier(index));
+            log.log(System.Logger.Level.INFO, "Dropped invalid index {0}.{1}", schema, index);
+        }
+    }
+
+    List<Migration> pendingMigrations(Map<Integer, Integer> appliedChecksums) {
+        List<Migration> pending = new ArrayList<>();
+        for (Migration migration : migrations) {
+            Integer checksum = appliedChecksums.get(migration.version());
+            if (checksum == null) {
+                pending.add(migration);
+            } else if (checksum != migration.checksum()) {
+                throw new IllegalStateException("已应用的迁移脚本被修改: " + migration.name());
+            }
+        }
+        // 历史表中存在本节点没有的更高版本时忽略（滚动发布期间新版本节点已先行迁移）
+        return pending;
+    }
+
+    List<Migration> migrations() {
+        return migrations;
+    }
+
+    static List<Migration> loadMigrations(String location) {
+        try {
+            Resource[] resources = new PathMatchingResourcePatternResolver()
+                    .getResources("classpath*:" + location + "/V*__*.sql");
+            Map<Integer, Migration> byVersion = new TreeMap<>();
+            for (Resource resource : resources) {
+                Matcher matcher = FILE_NAME_PATTERN.matcher(String.valueOf(resource.getFilename()));
+                if (!matcher.matches()) {
+                    throw new IllegalStateException("项目迁移脚本命名无效: " + resource.getFilename());
+                }
+                byte[] bytes;
+                try (var inputStream = resource.getInputStream()) {
+                    bytes = inputStream.readAllBytes();
+                }
+                CRC32 crc = new CRC32();
+                crc.update(bytes);
+                Migration migration = new Migration(Integer.parseInt(matcher.group(1)), matcher.group(2),
+                        new String(bytes, StandardCharsets.UTF_8), (int) crc.getValue());
+                if (byVersion.put(migration.version(), migration) != null) {
+                    throw new IllegalStateException("项目迁移版本重复: V" + migration.version());
+                }
+            }
+            return List.copyOf(byVersion.values());
+        } catch (IOException e) {
+            throw new UncheckedIOException("加载项目迁移脚本失败", e);
+        }
+    }
+
+    /**
+     * 按分号拆分脚本，跳过注释、单引号字符串与 $$ 块中的分号
+     */
+    static List<String> splitStatements(String sql) {
+        List<String> statements = new ArrayList<>();
+        StringBuilder current = new StringBuilder();
+        int length = sql.length();
+        int i = 0;
+        while (i < length) {
+            char c = sql.charAt(i);
+            char next = i + 1 < length ? sql.charAt(i + 1) : '\0';
+            if (c == '-' && next == '-') {
+                int end = sql.indexOf('\n', i);
+                i = end < 0 ? length : end;
+            } else if (c == '/' && next == '*') {
+                int end = sql.indexOf("*/", i + 2);
+                i = end < 0 ? length : end + 2;
+                current.append(' ');
+            } else if (c == '\'') {
+                int end = i + 1;
+                while (end < length) {
+                    if (sql.charAt(end) == '\'') {
+                        if (end + 1 < length && sql.charAt(end + 1) == '\'') {
+                            end += 2;
+                            continue;
+                        }
+                        break;
+                    }
+                    end++;
+                }
+                end = Math.min(end + 1, length);
+                current.append(sql, i, end);
+                i = end;
+            } else if (c == '$' && DOLLAR_TAG_PATTERN.matcher(sql).region(i, length).lookingAt()) {
+                Matcher tag = DOLLAR_TAG_PATTERN.matcher(sql).region(i, length);
+                tag.lookingAt();
+                int end = sql.indexOf(tag.group(), tag.end());
+                end = end < 0 ? length : end + tag.group().length();
+                current.append(sql, i, end);
+                i = end;
+            } else if (c == ';') {
+                addStatement(statements, current);
+                i++;
+            } else {
+                current.append(c);
+                i++;
+            }
+        }
+        addStatement(statements, current);
+        return statements;
+    }
+
+    private static void addStatement(List<String> statements, StringBuilder current) {
+        String statement = current.toString().strip();
+        if (!statement.isEmpty()) {
+            statements.add(statement);
+        }
+        current.setLength(0);
+    }
+
+    /**
+     * 分区索引名：分区名 + 父索引名，超过 63 字节时截断并附加哈希避免冲突
+     */
+    static String childIndexName(String partition, String index) {
+        String name = partition + "_" + index;
+        if (name.length() <= MAX_IDENTIFIER_LENGTH) {
+            return name;
+        }
+        String hash = Integer.toHexString(name.hashCode());
+        return name.substring(0, MAX_IDENTIFIER_LENGTH - hash.length() - 1) + "_" + hash;
+    }
+
+    private static List<String> names(List<Migration> migrations) {
+        return migrations.stream().map(Migration::name).toList();
+    }
+
+    private static ProjectMigrationResult failed(String projectId, Integer currentVersion, List<String> applied,
+                                                 String error) {
+        return failed(projectId, currentVersion, applied, error, List.of());
+    }
+
+    private static ProjectMigrationResult failed(String projectId, Integer currentVersion, List<String> applied,
+                                                 String error, List<String> pending) {
+        return new ProjectMigrationResult(projectId, currentVersion, List.copyOf(applied), pending, error);
+    }
+
+    private static void validateIdentifier(String identifier, String type) {
+        if (identifier == null || identifier.isBlank() || identifier.length() > MAX_IDENTIFIER_LENGTH
+                || !IDENTIFIER_PATTERN.matcher(identifier).matches()) {
+            throw new IllegalArgumentException("Invalid " + type);
+        }
+    }
+
+    private static String quoteIdentifier(String identifier) {
+        return "\"" + identifier + "\"";
+    }
+
+    /**
+     * 一个版本的迁移脚本
+     *
+     * @param checksum 模板（替换占位符之前）的 CRC32
+     */
+    record Migration(int version, String description, String template, int checksum) {
+
+        String name() {
+            return "V" + version + "__" + description;
+        }
+
+        /**
+         * 包含 CONCURRENTLY 的脚本不能在事务中执行
+         */
+        boolean transactional() {
+            return splitStatements(template).stream().noneMatch(s -> CONCURRENTLY_PATTERN.matcher(s).find());
+        }
+
+        String render(String schema, String tablePrefix, String idColumnType) {
+            return template.replace("{{SCHEMA}}", schema)
+                    .replace("{{PREFIX}}", tablePrefix)
+                    .replace("{{ID_COLUMN_TYPE}}", idColumnType);
+        }
+    }
+}
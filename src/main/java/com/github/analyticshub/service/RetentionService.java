@@ -0,0 +1,276 @@
+package com.github.analyticshub.service;
+
+import com.baomidou.mybatisplus.core.conditions.query.LambdaQueryWrapper;
+import com.github.analyticshub.config.MultiDataSourceManager;
+import com.github.analyticshub.entity.AnalyticsProject;
+import com.github.analyticshub.mapper.AnalyticsProjectMapper;
+import jakarta.annotation.PreDestroy;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.core.annotation.Order;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+
+import java.sql.Date;
+import java.sql.Timestamp;
+import java.time.LocalDate;
+import java.time.ZoneOffset;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 原始数据保留期（默认关闭）
+ * 按项目的保留天数（analytics_projects.retention_*_days，为空时取 app.retention.defaults，0 表示永久保留）
+ * 定期清理到期的事件、流量指标、会话与幂等键：
+ * 1. 先把到期日期（UTC）的数据按天汇总到 {prefix}events_daily / traffic_daily / sessions_daily（已汇总的日期跳过，
+ *    已有项目库的聚合表由项目库迁移 V2 创建）；
+ * 2. 分区表整体到期的周期分区直接删除；
+ * 3. 其余到期行按 batch-size 分批删除，批次之间暂停 batch-pause-ms，避免长事务与 WAL 突增。
+ * 每次每张表最多处理 max-days-per-run 天，积压的历史数据分多次清理。
+ */
+@Component
+public class RetentionService {
+
+    private static final System.Logger log = System.getLogger(RetentionService.class.getName());
+
+    private static final String IDEMPOTENCY_TABLE = "analytics_idempotency_keys";
+
+    private static final List<RollupSpec> ROLLUPS = List.of(
+            new RollupSpec("events", "events_daily", TypeDictionary.Kind.EVENT,
+                    "INSERT INTO %s (day, event_type, events, users, devices) " +
+                            "SELECT ?, event_type, COUNT(*), COUNT(DISTINCT user_id), COUNT(DISTINCT device_id) " +
+                            "FROM %s WHERE created_at >= ? AND created_at < ? GROUP BY event_type " +
+                            "ON CONFLICT (day, event_type) DO NOTHING",
+                    "INSERT INTO %s (day, event_type, events, users, devices) " +
+                            "SELECT ?, d.name, COUNT(*), COUNT(DISTINCT e.user_id), COUNT(DISTINCT e.device_id) " +
+                            "FROM %s e JOIN %s d ON d.id = e.event_type " +
+                            "WHERE e.created_at >= ? AND e.created_at < ? GROUP BY d.name " +
+                            "ON CONFLICT (day, event_type) DO NOTHING"),
+            new RollupSpec("traffic_metrics", "traffic_daily", TypeDictionary.Kind.METRIC,
+                    "INSERT INTO %s (day, metric_type, page_path, metrics, devices) " +
+                            "SELECT ?, metric_type, COALESCE(page_path, ''), COUNT(*), COUNT(DISTINCT device_id) " +
+                            "FROM %s WHERE created_at >= ? AND created_at < ? GROUP BY metric_type, COALESCE(page_path, '') " +
+                            "ON CONFLICT (day, metric_type, page_path) DO NOTHING",
+                    "INSERT INTO %s (day, metric_type, page_path, metrics, devices) " +
+                            "SELECT ?, d.name, COALESCE(m.page_path, ''), COUNT(*), COUNT(DISTINCT m.device_id) " +
+                            "FROM %s m JOIN %s d ON d.id = m.metric_type " +
+                            "WHERE m.created_at >= ? AND m.created_at < ? GROUP BY d.name, COALESCE(m.page_path, '') " +
+                            "ON CONFLICT (day, metric_type, page_path) DO NOTHING"),
+            new RollupSpec("sessions", "sessions_daily", null,
+                    "INSERT INTO %s (day, sessions, users, devices, total_duration_ms) " +
+                            "SELECT ?, COUNT(*), COUNT(DISTINCT user_id), COUNT(DISTINCT device_id), COALESCE(SUM(session_duration_ms), 0) " +
+                            "FROM %s WHERE created_at >= ? AND created_at < ? HAVING COUNT(*) > 0 " +
+                            "ON CONFLICT (day) DO NOTHING",
+                    null)
+    );
+
+    private final AnalyticsProjectMapper projectMapper;
+    private final MultiDataSourceManager dataSourceManager;
+    private final ProjectPartitionManager partitionManager;
+    private final TypeDictionary typeDictionary;
+    private final boolean enabled;
+    private final long intervalMs;
+    private final int defaultEventsDays;
+    private final int defaultTrafficDays;
+    private final int defaultSessionsDays;
+    private final int defaultIdempotencyDays;
+    private final int batchSize;
+    private final long batchPauseMs;
+    private final int maxDaysPerRun;
+    private final ScheduledExecutorService scheduler;
+
+    public RetentionService(AnalyticsProjectMapper projectMapper,
+                            MultiDataSourceManager dataSourceManager,
+                            ProjectPartitionManager partitionManager,
+                            TypeDictionary typeDictionary,
+                            @Value("${app.retention.enabled:false}") boolean enabled,
+                            @Value("${app.retention.interval-ms:3600000}") long intervalMs,
+                            @Value("${app.retention.defaults.events-days:0}") int defaultEventsDays,
+                            @Value("${app.retention.defaults.traffic-days:0}") int defaultTrafficDays,
+                            @Value("${app.retention.defaults.sessions-days:0}") int defaultSessionsDays,
+                            @Value("${app.retention.defaults.idempotency-days:0}") int defaultIdempotencyDays,
+                            @Value("${app.retention.batch-size:5000}") int batchSize,
+                            @Value("${app.retention.batch-pause-ms:100}") long batchPauseMs,
+                            @Value("${app.retention.max-days-per-run:31}") int maxDaysPerRun) {
+        this.projectMapper = projectMapper;
+        this.dataSourceManager = dataSourceManager;
+        this.partitionManager = partitionManager;
+        this.typeDictionary = typeDictionary;
+        this.enabled = enabled;
+        this.intervalMs = intervalMs;
+        this.defaultEventsDays = defaultEventsDays;
+        this.defaultTrafficDays = defaultTrafficDays;
+        this.defaultSessionsDays = defaultSessionsDays;
+        this.defaultIdempotencyDays = defaultIdempotencyDays;
+        this.batchSize = Math.max(1, batchSize);
+        this.batchPauseMs = Math.max(0, batchPauseMs);
+        this.maxDaysPerRun = Math.max(1, maxDaysPerRun);
+        this.scheduler = Executors.newSingleThreadScheduledExecutor(Thread.ofPlatform()
+                .name("retention-worker").daemon(true).factory());
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    @Order(4)
+    public void onApplicationReady() {
+        if (!enabled || intervalMs <= 0) {
+            return;
+        }
+        scheduler.scheduleWithFixedDelay(this::runAllQuietly, Math.min(intervalMs, 60_000), intervalMs, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * 对所有启用项目执行一次保留期清理
+     */
+    public void runAll() {
+        LocalDate today = LocalDate.now(ZoneOffset.UTC);
+        List<AnalyticsProject> projects = projectMapper.selectList(
+                new LambdaQueryWrapper<AnalyticsProject>().eq(AnalyticsProject::getIsActive, Boolean.TRUE));
+        for (AnalyticsProject project : projects) {
+            try {
+                Map<String, Long> deleted = applyRetention(project, today);
+                if (deleted.values().stream().anyMatch(count -> count > 0)) {
+                    log.log(System.Logger.Level.INFO, "Retention applied for project {0}: {1}", project.getProjectId(), deleted);
+                }
+            } catch (RuntimeException e) {
+                log.log(System.Logger.Level.WARNING, "保留期清理失败: {0} ({1})", project.getProjectId(), e.getMessage());
+            }
+        }
+    }
+
+    private void runAllQuietly() {
+        try {
+            runAll();
+        } catch (RuntimeException e) {
+            log.log(System.Logger.Level.WARNING, "保留期清理失败: {0}", e.getMessage());
+        }
+    }
+
+    /**
+     * 对单个项目执行保留期清理
+     *
+     * @return 各表删除的行数（整体删除的分区不计行数）
+     */
+    Map<String, Long> applyRetention(AnalyticsProject project, LocalDate today) {
+        String projectId = project.getProjectId();
+        MultiDataSourceManager.ProjectConfig config = dataSourceManager.getProjectConfig(projectId);
+        if (config == null || !Boolean.TRUE.equals(config.isActive())) {
+            return Map.of();
+        }
+        JdbcTemplate jdbcTemplate = new JdbcTemplate(dataSourceManager.getDataSource(projectId));
+
+        Map<String, Long> deleted = new LinkedHashMap<>();
+        int[] days = {
+                retentionDays(project.getRetentionEventsDays(), defaultEventsDays),
+                retentionDays(project.getRetentionTrafficDays(), defaultTrafficDays),
+                retentionDays(project.getRetentionSessionsDays(), defaultSessionsDays)
+        };
+        for (int i = 0; i < ROLLUPS.size(); i++) {
+            if (days[i] > 0) {
+                RollupSpec spec = ROLLUPS.get(i);
+                deleted.put(spec.baseName(), expire(jdbcTemplate, config, spec, today.minusDays(days[i])));
+            }
+        }
+
+        int idempotencyDays = retentionDays(project.getRetentionIdempotencyDays(), defaultIdempotencyDays);
+        if (idempotencyDays > 0) {
+            Timestamp cutoff = startOf(today.minusDays(idempotencyDays));
+            // 幂等键表不带项目前缀（共享连接池下需 schema 限定），无自增主键，按 ctid 分批
+            String table = dataSourceManager.getSchemaTableName(projectId, IDEMPOTENCY_TABLE);
+            deleted.put("idempotency_keys", deleteInBatches(jdbcTemplate,
+                    "DELETE FROM " + table + " WHERE ctid = ANY(ARRAY(" +
+                            "SELECT ctid FROM " + table + " WHERE project_id = ? AND created_at < ? LIMIT ?))",
+                    projectId, cutoff));
+        }
+        return deleted;
+    }
+
+    /**
+     * 汇总并删除 cutoff（UTC 日期，不含）之前的数据
+     */
+    private long expire(JdbcTemplate jdbcTemplate, MultiDataSourceManager.ProjectConfig config, RollupSpec spec, LocalDate cutoff) {
+        String projectId = config.projectId();
+        String table = dataSourceManager.getTableName(projectId, spec.baseName());
+        String rollupTable = dataSourceManager.getTableName(projectId, spec.rollupName());
+
+        Timestamp oldest = jdbcTemplate.queryForObject(
+                String.format("SELECT MIN(created_at) FROM %s WHERE created_at < ?", table),
+                Timestamp.class, startOf(cutoff));
+        if (oldest == null) {
+            return 0;
+        }
+
+        LocalDate from = oldest.toInstant().atZone(ZoneOffset.UTC).toLocalDate();
+        LocalDate until = from.plusDays(maxDaysPerRun).isBefore(cutoff) ? from.plusDays(maxDaysPerRun) : cutoff;
+        // 字典编码的类型列汇总时换回名称，聚合表始终保存类型名称
+        String rollupSql = spec.typeKind() != null && typeDictionary.isEncoded(projectId, spec.typeKind())
+                ? String.format(spec.encodedRollupSql(), rollupTable, table,
+                        dataSourceManager.getTableName(projectId, spec.typeKind().dictionaryTable()))
+                : String.format(spec.rollupSql(), rollupTable, table);
+        for (LocalDate day = from; day.isBefore(until); day = day.plusDays(1)) {
+            jdbcTemplate.update(rollupSql, Date.valueOf(day), startOf(day), startOf(day.plusDays(1)));
+        }
+
+        List<String> dropped = partitionManager.dropPartitionsBefore(
+                jdbcTemplate, config.dbSchema(), config.tablePrefix(), spec.baseName(), until);
+        if (!dropped.isEmpty()) {
+            log.log(System.Logger.Level.INFO, "Dropped expired partitions for project {0}: {1}", projectId, dropped);
+        }
+        return deleteInBatches(jdbcTemplate,
+                String.format("DELETE FROM %s WHERE id IN (SELECT id FROM %s WHERE created_at < ? LIMIT ?)", table, table),
+                startOf(until));
+    }
+
+    /**
+     * 分批删除直到没有匹配行；sql 的最后一个参数为批大小
+     */
+    private long deleteInBatches(JdbcTemplate jdbcTemplate, String sql, Object... args) {
+        Object[] batchArgs = new Object[args.length + 1];
+        System.arraycopy(args, 0, batchArgs, 0, args.length);
+        batchArgs[args.length] = batchSize;
+
+        long total = 0;
+        while (true) {
+            int deleted = jdbcTemplate.update(sql, batchArgs);
+            total += deleted;
+            if (deleted < batchSize) {
+                return total;
+            }
+            if (batchPauseMs > 0) {
+                try {
+                    Thread.sleep(batchPauseMs);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    return total;
+                }
+            }
+        }
+    }
+
+    private static int retentionDays(Integer projectDays, int defaultDays) {
+        return projectDays != null ? projectDays : defaultDays;
+    }
+
+    private static Timestamp startOf(LocalDate day) {
+        return Timestamp.from(day.atStartOfDay(ZoneOffset.UTC).toInstant());
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        scheduler.shutdownNow();
+    }
+
+    /**
+     * 原始表与其按天聚合表
+     *
+     * @param typeKind         可能字典编码的类型列（无则为 null）
+     * @param rollupSql        汇总一天数据的语句，参数为 (day, from, to)
+     * @param encodedRollupSql 类型列为字典编码时的汇总语句（关联字典表取名称）
+     */
+    private record RollupSpec(String baseName, String rollupName, TypeDictionary.Kind typeKind,
+                              String rollupSql, String encodedRollupSql) {}
+}
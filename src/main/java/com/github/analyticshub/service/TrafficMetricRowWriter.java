@@ -0,0 +1,137 @@
+package com.github.analyticshub.service;
+
+import com.github.analyticshub.util.PgCopyUtils;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.SqlParameterValue;
+import org.springframework.stereotype.Component;
+
+import javax.sql.DataSource;
+import java.sql.Timestamp;
+import java.sql.Types;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.function.Function;
+
+/**
+ * 流量指标行写入器
+ * 与 EventRowWriter 相同的策略：行数达到阈值走 COPY，否则 VALUES 分段写入
+ */
+@Component
+public class TrafficMetricRowWriter {
+
+    private static final int COLUMN_COUNT = 11;
+    // PostgreSQL 单条语句最多 65535 个绑定参数
+    private static final int MAX_ROWS_PER_STATEMENT = 65535 / COLUMN_COUNT;
+
+    private static final String COLUMNS =
+            "metric_id, device_id, user_id, session_id, metric_type, page_path, referrer, metric_timestamp, metadata, project_id, created_at";
+    private static final String ROW_PLACEHOLDER = "(?, ?::uuid, ?, ?::uuid, ?, ?, ?, ?, ?::jsonb, ?, ?)";
+
+    private final int copyThreshold;
+    private final TypeDictionary typeDictionary;
+
+    public TrafficMetricRowWriter(@Value("${app.ingest.copy-threshold:1000}") int copyThreshold, TypeDictionary typeDictionary) {
+        this.copyThreshold = copyThreshold;
+        this.typeDictionary = typeDictionary;
+    }
+
+    /**
+     * 写入一组流量指标行，返回写入行数
+     */
+    public int insert(DataSource dataSource, String table, List<TrafficMetricRow> rows) {
+        if (rows == null || rows.isEmpty()) {
+            return 0;
+        }
+
+        JdbcTemplate jdbcTemplate = new JdbcTemplate(dataSource);
+        Function<String, Object> typeEncoder = typeEncoder(rows);
+        if (copyThreshold > 0 && rows.size() >= copyThreshold) {
+            PgCopyUtils.copyIn(jdbcTemplate, table, COLUMNS, rows, row -> row.toFields(typeEncoder));
+            return rows.size();
+        }
+
+        for (int from = 0; from < rows.size(); from += MAX_ROWS_PER_STATEMENT) {
+            insertValues(jdbcTemplate, table, rows.subList(from, Math.min(rows.size(), from + MAX_ROWS_PER_STATEMENT)),
+                    typeEncoder);
+        }
+        return rows.size();
+    }
+
+    /**
+     * 写入一组流量指标行，metric_id 已存在的行跳过（用于兜底回放）
+     * 不指定冲突目标，兼容分区表的 (metric_id, created_at) 唯一约束
+     *
+     * @return 实际写入行数
+     */
+    public int insertIgnoringDuplicates(DataSource dataSource, String table, List<TrafficMetricRow> rows) {
+        if (rows == null || rows.isEmpty()) {
+            return 0;
+        }
+
+        JdbcTemplate jdbcTemplate = new JdbcTemplate(dataSource);
+        Function<String, Object> typeEncoder = typeEncoder(rows);
+        int inserted = 0;
+        for (int from = 0; from < rows.size(); from += MAX_ROWS_PER_STATEMENT) {
+            List<TrafficMetricRow> chunk = rows.subList(from, Math.min(rows.size(), from + MAX_ROWS_PER_STATEMENT));
+            List<Object> args = new ArrayList<>(chunk.size() * COLUMN_COUNT);
+            String insertSql = String.format("INSERT INTO %s (%s) VALUES %s ON CONFLICT DO NOTHING",
+                    table, COLUMNS, buildValues(chunk, args, typeEncoder));
+            inserted += jdbcTemplate.update(insertSql, args.toArray());
+        }
+        return inserted;
+    }
+
+    private void insertValues(JdbcTemplate jdbcTemplate, String table, List<TrafficMetricRow> rows,
+                              Function<String, Object> typeEncoder) {
+        List<Object> args = new ArrayList<>(rows.size() * COLUMN_COUNT);
+        String insertSql = String.format("INSERT INTO %s (%s) VALUES %s", table, COLUMNS,
+                buildValues(rows, args, typeEncoder));
+        jdbcTemplate.update(insertSql, args.toArray());
+    }
+
+    private static String buildValues(List<TrafficMetricRow> rows, List<Object> args, Function<String, Object> typeEncoder) {
+        StringBuilder valuesSql = new StringBuilder(rows.size() * (ROW_PLACEHOLDER.length() + 2));
+        for (TrafficMetricRow row : rows) {
+            if (!args.isEmpty()) {
+                valuesSql.append(", ");
+            }
+            valuesSql.append(ROW_PLACEHOLDER);
+            Object[] fields = row.toFields(typeEncoder);
+            // ID 以未声明类型的参数绑定，由服务端按列类型（VARCHAR 或 UUID）转换
+            fields[0] = new SqlParameterValue(Types.OTHER, fields[0]);
+            args.addAll(Arrays.asList(fields));
+        }
+        return valuesSql.toString();
+    }
+
+    /**
+     * 类型列的写入值：字典编码的项目库写入字典 ID（同一批次的行属于同一项目）
+     */
+    private Function<String, Object> typeEncoder(List<TrafficMetricRow> rows) {
+        return typeDictionary.writeEncoder(rows.getFirst().projectId(), TypeDictionary.Kind.METRIC);
+    }
+
+    /**
+     * 待写入的流量指标行（已完成归一化与序列化）
+     */
+    public record TrafficMetricRow(
+            String metricId,
+            String deviceId,
+            String userId,
+            String sessionId,
+            String metricType,
+            String pagePath,
+            String referrer,
+            Long metricTimestamp,
+            String metadataJson,
+            String projectId,
+            Timestamp createdAt
+    ) {
+        Object[] toFields(Function<String, Object> typeEncoder) {
+            return new Object[]{metricId, deviceId, userId, sessionId, typeEncoder.apply(metricType), pagePath, referrer,
+                    metricTimestamp, metadataJson, projectId, createdAt};
+        }
+    }
+}
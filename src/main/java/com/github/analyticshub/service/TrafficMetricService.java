@@ -11,7 +11,6 @@ import com.github.analyticshub.security.RequestContext;
 import com.github.analyticshub.util.CryptoUtils;
 import org.springframework.dao.DataAccessException;
 import org.springframework.beans.factory.annotation.Value;
-import org.springframework.jdbc.core.JdbcTemplate;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 
@@ -30,13 +29,25 @@ public class TrafficMetricService {
 
     private final MultiDataSourceManager dataSourceManager;
     private final ObjectMapper objectMapper;
+    private final TrafficMetricRowWriter rowWriter;
+    private final IngestSpool ingestSpool;
+    private final IngestIdGenerator idGenerator;
+    private final TypeDictionary typeDictionary;
     private final String ipHashSalt;
 
     public TrafficMetricService(MultiDataSourceManager dataSourceManager,
                                 ObjectMapper objectMapper,
+                                TrafficMetricRowWriter rowWriter,
+                                IngestSpool ingestSpool,
+                                IngestIdGenerator idGenerator,
+                                TypeDictionary typeDictionary,
                                 @Value("${app.traffic.ip-hash-salt:}") String ipHashSalt) {
         this.dataSourceManager = dataSourceManager;
         this.objectMapper = objectMapper;
+        this.rowWriter = rowWriter;
+        this.ingestSpool = ingestSpool;
+        this.idGenerator = idGenerator;
+        this.typeDictionary = typeDictionary;
         this.ipHashSalt = ipHashSalt == null ? "" : ipHashSalt;
     }
 
@@ -54,6 +65,19 @@ public class TrafficMetricService {
         );
     }
 
+    /**
+     * 以自动提交写入批次中的新指标类型（字典编码的项目库），在项目库事务开启之前调用
+     */
+    public void resolveMetricTypes(TrafficMetricTrackRequest[] items) {
+        List<String> metricTypes = new ArrayList<>(items.length);
+        for (TrafficMetricTrackRequest item : items) {
+            if (item != null && item.metricType() != null && !item.metricType().isBlank()) {
+                metricTypes.add(normalizeMetricType(item.metricType()));
+            }
+        }
+        typeDictionary.resolve(RequestContext.get().getProjectId(), TypeDictionary.Kind.METRIC, metricTypes);
+    }
+
     @Transactional
     public int trackBatch(TrafficMetricTrackRequest[] items, String clientIp, String userAgent) {
         if (items == null || items.length == 0) {
@@ -114,20 +138,13 @@ public class TrafficMetricService {
             throw new BusinessException("MISSING_METRIC_TYPE", "缺少 metricType");
         }
 
-        String metricId = CryptoUtils.generateTrafficMetricId();
+        String metricId = idGenerator.nextTrafficMetricId(projectId);
         long timestamp = (request.timestamp() == null || request.timestamp() <= 0)
                 ? System.currentTimeMillis()
                 : request.timestamp();
 
-        JdbcTemplate jdbcTemplate = new JdbcTemplate(dataSource);
         String table = dataSourceManager.getTableName(projectId, "traffic_metrics");
 
-        String insertSql = String.format(
-                "INSERT INTO %s (metric_id, device_id, user_id, session_id, metric_type, page_path, referrer, metric_timestamp, metadata, project_id, created_at) " +
-                        "VALUES (?, ?::uuid, ?, ?::uuid, ?, ?, ?, ?, ?::jsonb, ?, ?)",
-                table
-        );
-
         String metadataJson = null;
         try {
             JsonNode enriched = enrichMetadata(projectId, request.metadata(), clientIp, userAgent);
@@ -136,24 +153,26 @@ public class TrafficMetricService {
             log.log(System.Logger.Level.DEBUG, "Failed to serialize metadata", e);
         }
 
-        Instant now = Instant.now();
+        TrafficMetricRowWriter.TrafficMetricRow row = new TrafficMetricRowWriter.TrafficMetricRow(
+                metricId,
+                deviceId.toString(),
+                userId,
+                request.sessionId() == null ? null : request.sessionId().toString(),
+                metricType,
+                trimToNull(request.pagePath()),
+                trimToNull(request.referrer()),
+                timestamp,
+                metadataJson,
+                projectId,
+                Timestamp.from(Instant.now())
+        );
         try {
-            jdbcTemplate.update(
-                    insertSql,
-                    metricId,
-                    deviceId.toString(),
-                    userId,
-                    request.sessionId() == null ? null : request.sessionId().toString(),
-                    metricType,
-                    trimToNull(request.pagePath()),
-                    trimToNull(request.referrer()),
-                    timestamp,
-                    metadataJson,
-                    projectId,
-                    Timestamp.from(now)
-            );
+            rowWriter.insert(dataSource, table, List.of(row));
         } catch (DataAccessException e) {
-            throw BusinessException.projectDbUnavailable(projectId);
+            // 连接类故障先落盘，由回放线程补写；落盘不可用时按原逻辑报错
+            if (!ingestSpool.accepts(e) || !ingestSpool.spoolTrafficMetrics(projectId, List.of(row))) {
+                throw BusinessException.projectDbUnavailable(projectId);
+            }
         }
 
         return new TrafficMetricTrackResponse(metricId);
@@ -166,12 +185,9 @@ public class TrafficMetricService {
                                    TrafficMetricTrackRequest[] items,
                                    String clientIp,
                                    String userAgent) {
-        JdbcTemplate jdbcTemplate = new JdbcTemplate(dataSource);
         String table = dataSourceManager.getTableName(projectId, "traffic_metrics");
-
-        StringBuilder valuesSql = new StringBuilder();
-        List<Object> args = new ArrayList<>();
-        int accepted = 0;
+        String deviceIdValue = deviceId.toString();
+        List<TrafficMetricRowWriter.TrafficMetricRow> rows = new ArrayList<>(items.length);
 
         for (TrafficMetricTrackRequest request : items) {
             if (request == null || request.metricType() == null || request.metricType().isBlank()) {
@@ -182,7 +198,7 @@ public class TrafficMetricService {
                 continue;
             }
 
-            String metricId = CryptoUtils.generateTrafficMetricId();
+            String metricId = idGenerator.nextTrafficMetricId(projectId);
             long timestamp = (request.timestamp() == null || request.timestamp() <= 0)
                     ? System.currentTimeMillis()
                     : request.timestamp();
@@ -195,40 +211,34 @@ public class TrafficMetricService {
                 continue;
             }
 
-            if (accepted > 0) {
-                valuesSql.append(", ");
-            }
-            valuesSql.append("(?, ?::uuid, ?, ?::uuid, ?, ?, ?, ?, ?::jsonb, ?, ?)");
-
-            args.add(metricId);
-            args.add(deviceId.toString());
-            args.add(userId);
-            args.add(request.sessionId() == null ? null : request.sessionId().toString());
-            args.add(metricType);
-            args.add(trimToNull(request.pagePath()));
-            args.add(trimToNull(request.referrer()));
-            args.add(timestamp);
-            args.add(metadataJson);
-            args.add(projectId);
-            args.add(Timestamp.from(Instant.now()));
-            accepted++;
+            rows.add(new TrafficMetricRowWriter.TrafficMetricRow(
+                    metricId,
+                    deviceIdValue,
+                    userId,
+                    request.sessionId() == null ? null : request.sessionId().toString(),
+                    metricType,
+                    trimToNull(request.pagePath()),
+                    trimToNull(request.referrer()),
+                    timestamp,
+                    metadataJson,
+                    projectId,
+                    Timestamp.from(Instant.now())
+            ));
         }
 
-        if (accepted == 0) {
+        if (rows.isEmpty()) {
             return 0;
         }
 
-        String insertSql = String.format(
-                "INSERT INTO %s (metric_id, device_id, user_id, session_id, metric_type, page_path, referrer, metric_timestamp, metadata, project_id, created_at) VALUES %s",
-                table,
-                valuesSql
-        );
+        // 大批量走 COPY，小批量走 VALUES（由 TrafficMetricRowWriter 按阈值选择）
         try {
-            jdbcTemplate.update(insertSql, args.toArray());
+            rowWriter.insert(dataSource, table, rows);
         } catch (DataAccessException e) {
-            throw BusinessException.projectDbUnavailable(projectId);
+            if (!ingestSpool.accepts(e) || !ingestSpool.spoolTrafficMetrics(projectId, rows)) {
+                throw BusinessException.projectDbUnavailable(projectId);
+            }
         }
-        return accepted;
+        return rows.size();
     }
 
     private JsonNode enrichMetadata(String projectId, JsonNode metadata, String clientIp, String userAgent) {
@@ -17,10 +17,14 @@ import java.time.Instant;
 @Service
 public class TrafficMetricStatsService {
 
+    private static final String PAGE_VIEW = "page_view";
+
     private final MultiDataSourceManager dataSourceManager;
+    private final TypeDictionary typeDictionary;
 
-    public TrafficMetricStatsService(MultiDataSourceManager dataSourceManager) {
+    public TrafficMetricStatsService(MultiDataSourceManager dataSourceManager, TypeDictionary typeDictionary) {
         this.dataSourceManager = dataSourceManager;
+        this.typeDictionary = typeDictionary;
     }
 
     public TrafficMetricSummaryResponse getSummary(String projectId, String from, String to) {
@@ -32,11 +36,12 @@ public class TrafficMetricStatsService {
         String table = dataSourceManager.getTableName(normalizedProjectId, "traffic_metrics");
         Timestamp start = Timestamp.from(range.start());
         Timestamp end = Timestamp.from(range.end());
+        Object pageView = typeDictionary.encode(normalizedProjectId, TypeDictionary.Kind.METRIC, PAGE_VIEW);
 
         String sql = String.format(
                 "SELECT " +
-                        "SUM(CASE WHEN metric_type = 'page_view' THEN 1 ELSE 0 END) AS page_views, " +
-                        "COUNT(DISTINCT CASE WHEN metric_type = 'page_view' THEN device_id::text ELSE NULL END) AS visitors " +
+                        "SUM(CASE WHEN metric_type = ? THEN 1 ELSE 0 END) AS page_views, " +
+                        "COUNT(DISTINCT CASE WHEN metric_type = ? THEN device_id::text ELSE NULL END) AS visitors " +
                         "FROM %s WHERE project_id = ? AND created_at >= ? AND created_at < ? " +
                         "AND (metadata->>'isBot' IS NULL OR metadata->>'isBot' != 'true')",
                 table
@@ -56,7 +61,7 @@ public class TrafficMetricStatsService {
                     pageViews,
                     visitors
             );
-        }, normalizedProjectId, start, end);
+        }, pageView, pageView, normalizedProjectId, start, end);
     }
 
     public TrafficMetricTrendResponse getTrends(String projectId, String from, String to, String granularity) {
@@ -69,10 +74,11 @@ public class TrafficMetricStatsService {
         String table = dataSourceManager.getTableName(normalizedProjectId, "traffic_metrics");
         Timestamp start = Timestamp.from(range.start());
         Timestamp end = Timestamp.from(range.end());
+        Object pageView = typeDictionary.encode(normalizedProjectId, TypeDictionary.Kind.METRIC, PAGE_VIEW);
 
         String sql = String.format(
                 "SELECT date_trunc(?, created_at) AS bucket, " +
-                        "SUM(CASE WHEN metric_type = 'page_view' THEN 1 ELSE 0 END) AS pv, " +
+                        "SUM(CASE WHEN metric_type = ? THEN 1 ELSE 0 END) AS pv, " +
                         "COUNT(DISTINCT device_id) AS uv " +
                         "FROM %s WHERE project_id = ? AND created_at >= ? AND created_at < ? " +
                         "AND (metadata->>'isBot' IS NULL OR metadata->>'isBot' != 'true') " +
@@ -94,7 +100,7 @@ public class TrafficMetricStatsService {
                 String key = bucket.format(time);
                 dataMap.put(key, new TrafficMetricTrendPoint(time.toString(), rs.getLong("pv"), rs.getLong("uv")));
             }
-        }, bucket.value(), normalizedProjectId, start, end);
+        }, bucket.value(), pageView, normalizedProjectId, start, end);
 
         java.util.List<TrafficMetricTrendPoint> points = new java.util.ArrayList<>();
         java.time.ZonedDateTime cursor = bucket.truncate(range.start());
@@ -127,11 +133,12 @@ public class TrafficMetricStatsService {
         Timestamp start = Timestamp.from(range.start());
         Timestamp end = Timestamp.from(range.end());
         int topN = (limit == null || limit < 1) ? 10 : Math.min(limit, 100);
+        Object pageView = typeDictionary.encode(normalizedProjectId, TypeDictionary.Kind.METRIC, PAGE_VIEW);
 
         String sql = String.format(
                 "SELECT %s AS item_key, COUNT(*) AS total FROM %s " +
                         "WHERE project_id = ? AND created_at >= ? AND created_at < ? " +
-                        "AND metric_type = 'page_view' AND %s IS NOT NULL " +
+                        "AND metric_type = ? AND %s IS NOT NULL " +
                         "AND (metadata->>'isBot' IS NULL OR metadata->>'isBot' != 'true') " +
                         "GROUP BY item_key ORDER BY total DESC LIMIT %d",
                 column, table, column, topN
@@ -139,7 +146,7 @@ public class TrafficMetricStatsService {
 
         java.util.List<com.github.analyticshub.dto.TrafficMetricTopItem> items = jdbcTemplate.query(sql, (rs, rowNum) ->
                         new com.github.analyticshub.dto.TrafficMetricTopItem(rs.getString("item_key"), rs.getLong("total")),
-                normalizedProjectId, start, end
+                normalizedProjectId, start, end, pageView
         );
 
         return new TrafficMetricTopResponse(normalizedProjectId, range.start().toString(), range.end().toString(), items);
@@ -175,7 +182,7 @@ public class TrafficMetricStatsService {
         }
 
         try {
-            DataSource dataSource = dataSourceManager.getDataSource(normalizedProjectId);
+            DataSource dataSource = dataSourceManager.getReadDataSource(normalizedProjectId);
             return new ProjectContext(projectConfig, dataSource);
         } catch (Exception e) {
             throw BusinessException.projectDbUnavailable(normalizedProjectId);
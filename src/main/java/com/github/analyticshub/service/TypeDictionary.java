@@ -0,0 +1,260 @@
+package com.github.analyticshub.service;
+
+import com.github.analyticshub.config.MultiDataSourceManager;
+import com.github.analyticshub.exception.BusinessException;
+import com.github.analyticshub.util.BoundedLruCache;
+import com.github.analyticshub.util.TransactionUtils;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import javax.sql.DataSource;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Function;
+
+/**
+ * 事件类型 / 流量指标类型字典
+ * app.project-db.type-encoding 为 dictionary 时，新初始化的项目库中 events.event_type 与 traffic_metrics.metric_type
+ * 存为 SMALLINT，类型名称保存在 {prefix}event_types / {prefix}metric_types 字典表中：行与类型索引更小，
+ * 按类型分组只比较 2 字节整数。
+ *
+ * 是否编码以项目库中的实际列类型为准（按项目检测并缓存），已有的 VARCHAR 项目库照常读写。
+ * 写入时按名称取 ID（缓存未命中时查字典表，不存在则插入），查询参数与结果在服务边界处转换。
+ * 新类型应在项目库事务开启之前通过 resolve() 以自动提交写入字典；仍在事务中遇到的新类型直接在调用方连接上插入
+ * （不另借连接，避免连接池较小时嵌套借用互相等待），提交之后才进入缓存，回滚的字典项不会被缓存。
+ * 字典只增不删，每个项目每种类型最多 max-entries 个，达到上限后拒绝新类型；该上限是软限制：
+ * 条数检查与插入不是原子的，多节点同时新增类型时可能略微超出，硬上限为 SMALLINT 的 32767。
+ * 名称与 ID 双向缓存按 max-entries 限制容量。
+ */
+@Component
+public class TypeDictionary {
+
+    private static final System.Logger log = System.getLogger(TypeDictionary.class.getName());
+
+    // 字典 ID 从 1 开始；按字典中不存在的类型过滤时以 0 作为参数，不匹配任何行
+    static final short UNKNOWN_ID = 0;
+
+    private static final Dictionary TEXT = new Dictionary(null, 1);
+
+    private final MultiDataSourceManager dataSourceManager;
+    // 新初始化的项目库是否使用字典编码
+    private final boolean encodeNewProjects;
+    // 每个字典的条目上限
+    private final int maxEntries;
+    // 项目ID:类型 → 字典；项目库尚未初始化时不缓存
+    private final Map<String, Dictionary> dictionaries = new ConcurrentHashMap<>();
+
+    public TypeDictionary(MultiDataSourceManager dataSourceManager,
+                          @Value("${app.project-db.type-encoding:text}") String typeEncoding,
+                          @Value("${app.project-db.type-dictionary.max-entries:1000}") int maxEntries) {
+        this.dataSourceManager = dataSourceManager;
+        this.maxEntries = Math.max(1, Math.min(Short.MAX_VALUE, maxEntries));
+        String normalized = typeEncoding == null ? "" : typeEncoding.trim().toLowerCase(Locale.ROOT);
+        this.encodeNewProjects = switch (normalized) {
+            case "", "text" -> false;
+            case "dictionary" -> true;
+            default -> throw new IllegalArgumentException("app.project-db.type-encoding 仅支持 text 或 dictionary: " + typeEncoding);
+        };
+    }
+
+    /**
+     * 新初始化项目库中类型列的列类型
+     */
+    public String columnType(Kind kind) {
+        return encodeNewProjects ? "SMALLINT" : kind.textColumnType;
+    }
+
+    /**
+     * 项目库中该类型列是否为字典编码
+     */
+    public boolean isEncoded(String projectId, Kind kind) {
+        return dictionary(projectId, kind).isEncoded();
+    }
+
+    /**
+     * 在项目库事务开启之前写入新类型（自动提交），使随后事务内的写入只读取字典
+     */
+    public void resolve(String projectId, Kind kind, Collection<String> names) {
+        Dictionary dictionary = dictionary(projectId, kind);
+        if (!dictionary.isEncoded()) {
+            return;
+        }
+        for (String name : names) {
+            if (name != null && dictionary.ids.get(name) == null) {
+                idOf(projectId, dictionary, name, true);
+            }
+        }
+    }
+
+    /**
+     * 写入用的转换函数：文本列原样写入名称，字典列写入 ID（新名称先写入字典）
+     */
+    public Function<String, Object> writeEncoder(String projectId, Kind kind) {
+        Dictionary dictionary = dictionary(projectId, kind);
+        if (!dictionary.isEncoded()) {
+            return name -> name;
+        }
+        // 事务中新增的字典项提交前不进入共享缓存，同一批次内按名称复用
+        Map<String, Short> batchIds = new HashMap<>();
+        return name -> name == null ? null : batchIds.computeIfAbsent(name, key -> idOf(projectId, dictionary, key, true));
+    }
+
+    /**
+     * 查询参数：文本列返回名称，字典列返回 ID（字典中不存在时返回不匹配任何行的 ID）
+     */
+    public Object encode(String projectId, Kind kind, String name) {
+        Dictionary dictionary = dictionary(projectId, kind);
+        if (!dictionary.isEncoded() || name == null) {
+            return name;
+        }
+        Short id = idOf(projectId, dictionary, name, false);
+        return id != null ? id : UNKNOWN_ID;
+    }
+
+    /**
+     * 查询结果：列值（文本列为名称，字典列为 ID 的字符串形式）转换为类型名称
+     */
+    public String decode(String projectId, Kind kind, String value) {
+        Dictionary dictionary = dictionary(projectId, kind);
+        if (!dictionary.isEncoded() || value == null) {
+            return value;
+        }
+        short id = Short.parseShort(value);
+        String name = dictionary.names.get(id);
+        if (name == null) {
+            // 其他节点写入的新类型：重新加载整个字典（字典很小）
+            JdbcTemplate jdbcTemplate = new JdbcTemplate(dataSourceManager.getDataSource(projectId));
+            jdbcTemplate.query("SELECT id, name FROM " + dictionary.table,
+                    rs -> { dictionary.put(rs.getShort("id"), rs.getString("name")); });
+            name = dictionary.names.get(id);
+        }
+        return name != null ? name : value;
+    }
+
+    /**
+     * 项目库重新初始化或连接配置变更后重新检测
+     */
+    public void evict(String projectId) {
+        for (Kind kind : Kind.values()) {
+            dictionaries.remove(projectId + ":" + kind.name());
+        }
+    }
+
+    private Dictionary dictionary(String projectId, Kind kind) {
+        String key = projectId + ":" + kind.name();
+        Dictionary dictionary = dictionaries.get(key);
+        if (dictionary != null) {
+            return dictionary;
+        }
+
+        JdbcTemplate jdbcTemplate = new JdbcTemplate(dataSourceManager.getDataSource(projectId));
+        List<String> types = jdbcTemplate.queryForList(
+                "SELECT format_type(a.atttypid, a.atttypmod) FROM pg_attribute a " +
+                        "WHERE a.attrelid = to_regclass(?) AND a.attname = ? AND NOT a.attisdropped",
+                String.class, dataSourceManager.getTableName(projectId, kind.table), kind.column);
+        if (types.isEmpty()) {
+            // 表尚不存在（项目库未初始化），按文本处理且不缓存
+            return TEXT;
+        }
+        dictionary = "smallint".equals(types.getFirst())
+                ? new Dictionary(dataSourceManager.getTableName(projectId, kind.dictionaryTable), maxEntries)
+                : TEXT;
+        Dictionary existing = dictionaries.putIfAbsent(key, dictionary);
+        return existing != null ? existing : dictionary;
+    }
+
+    private Short idOf(String projectId, Dictionary dictionary, String name, boolean create) {
+        Short id = dictionary.ids.get(name);
+        if (id != null) {
+            return id;
+        }
+
+        DataSource dataSource = dataSourceManager.getDataSource(projectId);
+        JdbcTemplate jdbcTemplate = new JdbcTemplate(dataSource);
+        String selectSql = "SELECT id FROM " + dictionary.table + " WHERE name = ?";
+        List<Short> ids = jdbcTemplate.queryForList(selectSql, Short.class, name);
+        if (ids.isEmpty() && create) {
+            // 先查后插（ON CONFLICT 跳过的插入同样会消耗 SMALLINT 序列值）；条目数达到上限时不插入
+            jdbcTemplate.update("INSERT INTO " + dictionary.table + " (name) SELECT ? " +
+                    "WHERE (SELECT count(*) FROM " + dictionary.table + ") < ? ON CONFLICT (name) DO NOTHING",
+                    name, maxEntries);
+            ids = jdbcTemplate.queryForList(selectSql, Short.class, name);
+            if (ids.isEmpty()) {
+                throw BusinessException.typeDictionaryFull(projectId, maxEntries);
+            }
+            log.log(System.Logger.Level.DEBUG, "新增类型字典项: {0} {1}", projectId, name);
+        }
+        if (ids.isEmpty()) {
+            return null;
+        }
+        short found = ids.getFirst();
+        if (TransactionUtils.inTransaction(dataSource)) {
+            // 可能是本事务（或同一事务中先前的写入）新增、尚未提交的字典项：回滚后该 ID 不存在，提交后再缓存
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    dictionary.put(found, name);
+                }
+            });
+        } else {
+            dictionary.put(found, name);
+        }
+        return found;
+    }
+
+    /**
+     * 字典编码的类型列
+     */
+    public enum Kind {
+        EVENT("events", "event_type", "event_types", "VARCHAR(100)"),
+        METRIC("traffic_metrics", "metric_type", "metric_types", "VARCHAR(50)");
+
+        private final String table;
+        private final String column;
+        private final String dictionaryTable;
+        private final String textColumnType;
+
+        Kind(String table, String column, String dictionaryTable, String textColumnType) {
+            this.table = table;
+            this.column = column;
+            this.dictionaryTable = dictionaryTable;
+            this.textColumnType = textColumnType;
+        }
+
+        public String dictionaryTable() {
+            return dictionaryTable;
+        }
+    }
+
+    /**
+     * 单个项目单个类型列的双向缓存；table 为空表示文本列
+     */
+    private static final class Dictionary {
+
+        private final String table;
+        private final BoundedLruCache<String, Short> ids;
+        private final BoundedLruCache<Short, String> names;
+
+        private Dictionary(String table, int maxEntries) {
+            this.table = table;
+            this.ids = new BoundedLruCache<>(maxEntries);
+            this.names = new BoundedLruCache<>(maxEntries);
+        }
+
+        private boolean isEncoded() {
+            return table != null;
+        }
+
+        private void put(short id, String name) {
+            ids.put(name, id);
+            names.put(id, name);
+        }
+    }
+}
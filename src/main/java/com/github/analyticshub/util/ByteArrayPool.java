@@ -0,0 +1,75 @@
+package com.github.analyticshub.util;
+
+import java.util.concurrent.ArrayBlockingQueue;
+
+/**
+ * 分级字节数组池
+ * 按 2 的幂划分容量等级（minBufferBytes ~ maxBufferBytes），每级最多保留 buffersPerClass 个数组；
+ * 超过最大等级的请求直接分配、归还时丢弃。归还的数组不清零，使用方需自行记录有效长度。
+ */
+public final class ByteArrayPool {
+
+    private final int minBufferBytes;
+    private final int maxBufferBytes;
+    private final ArrayBlockingQueue<byte[]>[] classes;
+
+    @SuppressWarnings("unchecked")
+    public ByteArrayPool(int minBufferBytes, int maxBufferBytes, int buffersPerClass) {
+        if (minBufferBytes <= 0 || Integer.bitCount(minBufferBytes) != 1) {
+            throw new IllegalArgumentException("minBufferBytes must be a power of two");
+        }
+        this.minBufferBytes = minBufferBytes;
+        this.maxBufferBytes = Integer.highestOneBit(Math.max(minBufferBytes, maxBufferBytes));
+        int classCount = classIndex(this.maxBufferBytes) + 1;
+        this.classes = new ArrayBlockingQueue[classCount];
+        for (int i = 0; i < classCount; i++) {
+            classes[i] = new ArrayBlockingQueue<>(Math.max(1, buffersPerClass));
+        }
+    }
+
+    /**
+     * 借出容量不小于 minSize 的数组
+     */
+    public byte[] acquire(int minSize) {
+        if (minSize > maxBufferBytes) {
+            return new byte[minSize];
+        }
+        int index = classIndex(Math.max(minSize, 1));
+        byte[] buffer = classes[index].poll();
+        return buffer != null ? buffer : new byte[minBufferBytes << index];
+    }
+
+    /**
+     * 归还数组；非本池等级容量的数组直接丢弃
+     */
+    public void release(byte[] buffer) {
+        if (buffer == null || buffer.length > maxBufferBytes || buffer.length < minBufferBytes
+                || Integer.bitCount(buffer.length) != 1) {
+            return;
+        }
+        classes[classIndex(buffer.length)].offer(buffer);
+    }
+
+    public int maxBufferBytes() {
+        return maxBufferBytes;
+    }
+
+    /**
+     * 当前池中空闲数组数量
+     */
+    public int idleCount() {
+        int count = 0;
+        for (ArrayBlockingQueue<byte[]> queue : classes) {
+            count += queue.size();
+        }
+        return count;
+    }
+
+    private int classIndex(int size) {
+        if (size <= minBufferBytes) {
+            return 0;
+        }
+        // 向上取整到 2 的幂后相对最小等级的位移
+        return 32 - Integer.numberOfLeadingZeros(size - 1) - Integer.numberOfTrailingZeros(minBufferBytes);
+    }
+}
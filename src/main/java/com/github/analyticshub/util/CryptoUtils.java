@@ -3,6 +3,7 @@ package com.github.analyticshub.util;
 import org.apache.commons.codec.binary.Hex;
 
 import javax.crypto.Mac;
+import javax.crypto.ShortBufferException;
 import javax.crypto.spec.SecretKeySpec;
 import java.nio.charset.StandardCharsets;
 import java.security.InvalidKeyException;
@@ -25,6 +26,20 @@ public final class CryptoUtils {
     private static final SecureRandom SECURE_RANDOM = new SecureRandom();
     private static final String API_KEY_PREFIX = "ak_";
     private static final String SECRET_KEY_PREFIX = "sk_";
+    private static final int HMAC_LENGTH = 32;
+    private static final byte[] SIGNATURE_SEPARATOR = {'|'};
+
+    // Mac 非线程安全，按线程复用，避免每次 Mac.getInstance 的 Provider 查找
+    private static final ThreadLocal<Mac> HMAC = ThreadLocal.withInitial(() -> {
+        try {
+            return Mac.getInstance(HMAC_ALGORITHM);
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("HmacSHA256 unavailable", e);
+        }
+    });
+    private static final ThreadLocal<byte[]> DIGEST_BUFFER = ThreadLocal.withInitial(() -> new byte[HMAC_LENGTH]);
+    private static final ThreadLocal<byte[]> SIGNATURE_BUFFER = ThreadLocal.withInitial(() -> new byte[HMAC_LENGTH]);
+    private static final ThreadLocal<byte[]> FIELD_BUFFER = ThreadLocal.withInitial(() -> new byte[256]);
 
     private CryptoUtils() {
         throw new UnsupportedOperationException("Utility class");
@@ -54,18 +69,18 @@ public final class CryptoUtils {
 
     /**
      * 生成事件ID
-     * 格式: evt_<timestamp>_<random>
+     * 格式: evt_<26位时间有序 Crockford Base32>
      */
     public static String generateEventId() {
-        long timestamp = System.currentTimeMillis();
-        String randomPart = UUID.randomUUID().toString().replace("-", "").substring(0, 8);
-        return "evt_" + timestamp + "_" + randomPart;
+        return TimeOrderedIds.nextId("evt_");
     }
 
+    /**
+     * 生成流量指标ID
+     * 格式: tm_<26位时间有序 Crockford Base32>
+     */
     public static String generateTrafficMetricId() {
-        long timestamp = System.currentTimeMillis();
-        String randomPart = UUID.randomUUID().toString().replace("-", "").substring(0, 8);
-        return "tm_" + timestamp + "_" + randomPart;
+        return TimeOrderedIds.nextId("tm_");
     }
 
     /**
@@ -106,15 +121,11 @@ public final class CryptoUtils {
      */
     public static String generateSignature(String data, String secretKey) {
         try {
-            Mac mac = Mac.getInstance(HMAC_ALGORITHM);
-            SecretKeySpec secretKeySpec = new SecretKeySpec(
-                    secretKey.getBytes(StandardCharsets.UTF_8),
-                    HMAC_ALGORITHM
-            );
-            mac.init(secretKeySpec);
+            Mac mac = HMAC.get();
+            mac.init(hmacKey(secretKey));
             byte[] hmacBytes = mac.doFinal(data.getBytes(StandardCharsets.UTF_8));
             return Hex.encodeHexString(hmacBytes);
-        } catch (NoSuchAlgorithmException | InvalidKeyException e) {
+        } catch (InvalidKeyException e) {
             log.log(System.Logger.Level.ERROR, "Failed to generate HMAC signature", e);
             throw new RuntimeException("Signature generation failed", e);
         }
@@ -129,29 +140,131 @@ public final class CryptoUtils {
      * @return 签名是否有效
      */
     public static boolean verifySignature(String data, String signature, String secretKey) {
-        String expectedSignature = generateSignature(data, secretKey);
-        return constantTimeEquals(expectedSignature, signature);
+        return verifySignature(hmacKey(secretKey), signature, data.getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * 构建 HMAC 密钥（可按设备缓存复用）
+     */
+    public static SecretKeySpec hmacKey(String secretKey) {
+        return new SecretKeySpec(secretKey.getBytes(StandardCharsets.UTF_8), HMAC_ALGORITHM);
     }
 
     /**
-     * 常量时间字符串比较（防止时序攻击）
-     * 使用JDK 25的改进
+     * 验证请求签名
+     * 与 verifySignature(buildSignatureData(...), signature, secretKey) 等价，但不拼接签名串：
+     * 各字段与分隔符依次写入线程复用的 Mac，请求体直接使用缓存的原始字节，签名按字节常量时间比较。
      */
-    private static boolean constantTimeEquals(String a, String b) {
-        if (a == null || b == null) {
+    public static boolean verifyRequestSignature(SecretKeySpec key, String signature,
+                                                 String method, String path, String timestamp,
+                                                 String deviceId, String userId, byte[] body) {
+        return verifyRequestSignature(key, signature, method, path, timestamp, deviceId, userId,
+                body, 0, body == null ? 0 : body.length);
+    }
+
+    /**
+     * 验证请求签名，请求体为 body[offset, offset + length)（池化缓冲区的有效区段）
+     */
+    public static boolean verifyRequestSignature(SecretKeySpec key, String signature,
+                                                 String method, String path, String timestamp,
+                                                 String deviceId, String userId,
+                                                 byte[] body, int offset, int length) {
+        byte[] expected = SIGNATURE_BUFFER.get();
+        if (!decodeHex(signature, expected)) {
+            return false;
+        }
+        try {
+            Mac mac = HMAC.get();
+            mac.init(key);
+            updateField(mac, method);
+            mac.update(SIGNATURE_SEPARATOR);
+            updateField(mac, path);
+            mac.update(SIGNATURE_SEPARATOR);
+            updateField(mac, timestamp);
+            mac.update(SIGNATURE_SEPARATOR);
+            updateField(mac, deviceId);
+            mac.update(SIGNATURE_SEPARATOR);
+            updateField(mac, userId);
+            mac.update(SIGNATURE_SEPARATOR);
+            if (body != null && length > 0) {
+                mac.update(body, offset, length);
+            }
+            return finishAndCompare(mac, expected);
+        } catch (InvalidKeyException e) {
+            log.log(System.Logger.Level.ERROR, "Failed to verify HMAC signature", e);
             return false;
         }
-        byte[] x = a.getBytes(StandardCharsets.UTF_8);
-        byte[] y = b.getBytes(StandardCharsets.UTF_8);
-        int max = Math.max(x.length, y.length);
+    }
 
-        int result = x.length ^ y.length;
-        for (int i = 0; i < max; i++) {
-            byte xb = i < x.length ? x[i] : 0;
-            byte yb = i < y.length ? y[i] : 0;
-            result |= xb ^ yb;
+    private static boolean verifySignature(SecretKeySpec key, String signature, byte[] data) {
+        byte[] expected = SIGNATURE_BUFFER.get();
+        if (!decodeHex(signature, expected)) {
+            return false;
+        }
+        try {
+            Mac mac = HMAC.get();
+            mac.init(key);
+            mac.update(data);
+            return finishAndCompare(mac, expected);
+        } catch (InvalidKeyException e) {
+            log.log(System.Logger.Level.ERROR, "Failed to verify HMAC signature", e);
+            return false;
+        }
+    }
+
+    private static boolean finishAndCompare(Mac mac, byte[] expected) {
+        byte[] actual = DIGEST_BUFFER.get();
+        try {
+            mac.doFinal(actual, 0);
+        } catch (ShortBufferException e) {
+            throw new IllegalStateException(e);
+        }
+        return MessageDigest.isEqual(actual, expected);
+    }
+
+    /**
+     * 写入签名字段；纯 ASCII 字段（方法、路径、时间戳、UUID）经线程缓冲区写入，其余按 UTF-8 编码
+     */
+    private static void updateField(Mac mac, String value) {
+        if (value == null || value.isEmpty()) {
+            return;
+        }
+        byte[] buffer = FIELD_BUFFER.get();
+        int length = value.length();
+        if (length <= buffer.length) {
+            boolean ascii = true;
+            for (int i = 0; i < length; i++) {
+                char c = value.charAt(i);
+                if (c >= 0x80) {
+                    ascii = false;
+                    break;
+                }
+                buffer[i] = (byte) c;
+            }
+            if (ascii) {
+                mac.update(buffer, 0, length);
+                return;
+            }
+        }
+        mac.update(value.getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * 十六进制签名解码到定长缓冲区（大小写均可），格式不符返回 false
+     */
+    private static boolean decodeHex(String hex, byte[] out) {
+        if (hex == null || hex.length() != out.length * 2) {
+            return false;
+        }
+        for (int i = 0; i < out.length; i++) {
+            int high = Character.digit(hex.charAt(i * 2), 16);
+            int low = Character.digit(hex.charAt(i * 2 + 1), 16);
+            if (high < 0 || low < 0) {
+                return false;
+            }
+            out[i] = (byte) ((high << 4) | low);
         }
-        return result == 0;
+        return true;
     }
 
     /**
@@ -0,0 +1,286 @@
+package com.github.analyticshub.util;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.TreeSet;
+import java.util.stream.Stream;
+import java.util.zip.CRC32;
+
+/**
+ * 基于内存映射文件的追加日志
+ * 目录下按序号滚动的定长段文件（000...N.seg）+ 一个消费游标文件（cursor）。
+ * 记录格式：[int 长度][int CRC32][载荷]，长度字段最后写入作为提交标记，
+ * 重启后从段头扫描到首个长度为 0 或校验失败的位置即为写入末尾（撕裂写入被丢弃）。
+ * 单写多读均通过对象锁串行化，适合低频兜底场景。
+ */
+public final class MappedSegmentLog implements Closeable {
+
+    private static final String SEGMENT_SUFFIX = ".seg";
+    private static final String CURSOR_FILE = "cursor";
+    private static final int HEADER_BYTES = 8;
+
+    private final Path dir;
+    private final int segmentBytes;
+    private final int maxSegments;
+    private final boolean forceOnWrite;
+
+    private final TreeSet<Long> segments = new TreeSet<>();
+    private long writeSeq;
+    private MappedByteBuffer writeBuffer;
+
+    private long readSeq;
+    private int readOffset;
+    private long pendingRecords;
+
+    /**
+     * @param maxSegments 最多保留的段数（<=0 表示不限制），超出时 append 拒绝写入
+     */
+    public MappedSegmentLog(Path dir, int segmentBytes, int maxSegments, boolean forceOnWrite) throws IOException {
+        if (segmentBytes <= HEADER_BYTES) {
+            throw new IllegalArgumentException("segmentBytes too small");
+        }
+        this.dir = dir;
+        this.segmentBytes = segmentBytes;
+        this.maxSegments = maxSegments;
+        this.forceOnWrite = forceOnWrite;
+
+        Files.createDirectories(dir);
+        try (Stream<Path> files = Files.list(dir)) {
+            files.map(path -> path.getFileName().toString())
+                    .filter(name -> name.endsWith(SEGMENT_SUFFIX))
+                    .forEach(name -> segments.add(Long.parseLong(name.substring(0, name.length() - SEGMENT_SUFFIX.length()))));
+        }
+        if (segments.isEmpty()) {
+            segments.add(0L);
+        }
+
+        writeSeq = segments.last();
+        writeBuffer = map(writeSeq, FileChannel.MapMode.READ_WRITE);
+        writeBuffer.position(scanEnd(writeBuffer));
+
+        loadCursor();
+        pendingRecords = countPending();
+    }
+
+    /**
+     * 追加一条记录
+     *
+     * @return false 表示已达段数上限，未写入
+     */
+    public synchronized boolean append(byte[] payload) throws IOException {
+        return appendAll(List.of(payload));
+    }
+
+    /**
+     * 追加一组记录：先按段上限预留整组所需空间，放不下时整组都不写入
+     *
+     * @return false 表示已达段数上限，一条都未写入
+     */
+    public synchronized boolean appendAll(List<byte[]> payloads) throws IOException {
+        int remaining = writeBuffer.remaining();
+        int newSegments = 0;
+        for (byte[] payload : payloads) {
+            int need = HEADER_BYTES + payload.length;
+            if (need > segmentBytes) {
+                throw new IllegalArgumentException("record larger than segment: " + payload.length);
+            }
+            if (remaining < need) {
+                newSegments++;
+                remaining = segmentBytes;
+            }
+            remaining -= need;
+        }
+        if (newSegments > 0 && maxSegments > 0 && segments.size() + newSegments > maxSegments) {
+            return false;
+        }
+
+        for (byte[] payload : payloads) {
+            write(payload);
+        }
+        return true;
+    }
+
+    private void write(byte[] payload) throws IOException {
+        int need = HEADER_BYTES + payload.length;
+        if (writeBuffer.remaining() < need) {
+            roll();
+        }
+
+        int start = writeBuffer.position();
+        CRC32 crc = new CRC32();
+        crc.update(payload);
+        writeBuffer.putInt(start + 4, (int) crc.getValue());
+        writeBuffer.put(start + HEADER_BYTES, payload);
+        // 长度最后写入：之前崩溃时该位置仍为 0，不会被当作有效记录
+        writeBuffer.putInt(start, payload.length);
+        writeBuffer.position(start + need);
+        if (forceOnWrite) {
+            writeBuffer.force(start, need);
+        }
+        pendingRecords++;
+    }
+
+    /**
+     * 从游标处读取最多 maxRecords 条记录（不移动游标）
+     */
+    public synchronized Batch read(int maxRecords) throws IOException {
+        List<byte[]> records = new ArrayList<>();
+        long seq = readSeq;
+        int offset = readOffset;
+        ByteBuffer buffer = seq == writeSeq ? writeBuffer.duplicate() : map(seq, FileChannel.MapMode.READ_ONLY);
+
+        while (records.size() < maxRecords) {
+            byte[] record = readRecord(buffer, offset);
+            if (record == null) {
+                Long next = segments.higher(seq);
+                if (next == null) {
+                    break;
+                }
+                seq = next;
+                offset = 0;
+                buffer = seq == writeSeq ? writeBuffer.duplicate() : map(seq, FileChannel.MapMode.READ_ONLY);
+                continue;
+            }
+            records.add(record);
+            offset += HEADER_BYTES + record.length;
+        }
+        return new Batch(records, seq, offset);
+    }
+
+    /**
+     * 确认一批记录已处理：推进并持久化游标，删除已消费完的段
+     */
+    public synchronized void commit(Batch batch) throws IOException {
+        if (batch.records().isEmpty()) {
+            return;
+        }
+        readSeq = batch.nextSeq();
+        readOffset = batch.nextOffset();
+        pendingRecords = Math.max(0, pendingRecords - batch.records().size());
+        writeCursor();
+
+        while (segments.first() < readSeq) {
+            long consumed = segments.pollFirst();
+            Files.deleteIfExists(segmentPath(consumed));
+        }
+    }
+
+    /**
+     * 尚未消费的记录数
+     */
+    public synchronized long pendingRecords() {
+        return pendingRecords;
+    }
+
+    public synchronized int segmentCount() {
+        return segments.size();
+    }
+
+    @Override
+    public synchronized void close() {
+        writeBuffer.force();
+    }
+
+    private void roll() throws IOException {
+        writeBuffer.force();
+        writeSeq++;
+        segments.add(writeSeq);
+        writeBuffer = map(writeSeq, FileChannel.MapMode.READ_WRITE);
+    }
+
+    private byte[] readRecord(ByteBuffer buffer, int offset) {
+        if (offset + HEADER_BYTES > buffer.limit()) {
+            return null;
+        }
+        int length = buffer.getInt(offset);
+        if (length <= 0 || offset + HEADER_BYTES + length > buffer.limit()) {
+            return null;
+        }
+        byte[] payload = new byte[length];
+        buffer.get(offset + HEADER_BYTES, payload);
+        CRC32 crc = new CRC32();
+        crc.update(payload);
+        if ((int) crc.getValue() != buffer.getInt(offset + 4)) {
+            return null;
+        }
+        return payload;
+    }
+
+    private int scanEnd(ByteBuffer buffer) {
+        int offset = 0;
+        byte[] record;
+        while ((record = readRecord(buffer, offset)) != null) {
+            offset += HEADER_BYTES + record.length;
+        }
+        return offset;
+    }
+
+    private long countPending() throws IOException {
+        long count = 0;
+        for (long seq : segments.tailSet(readSeq, true)) {
+            ByteBuffer buffer = seq == writeSeq ? writeBuffer.duplicate() : map(seq, FileChannel.MapMode.READ_ONLY);
+            int offset = seq == readSeq ? readOffset : 0;
+            byte[] record;
+            while ((record = readRecord(buffer, offset)) != null) {
+                offset += HEADER_BYTES + record.length;
+                count++;
+            }
+        }
+        return count;
+    }
+
+    private MappedByteBuffer map(long seq, FileChannel.MapMode mode) throws IOException {
+        Path path = segmentPath(seq);
+        if (mode == FileChannel.MapMode.READ_WRITE) {
+            try (FileChannel channel = FileChannel.open(path, StandardOpenOption.CREATE,
+                    StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+                return channel.map(mode, 0, segmentBytes);
+            }
+        }
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            return channel.map(mode, 0, Math.min(segmentBytes, channel.size()));
+        }
+    }
+
+    private Path segmentPath(long seq) {
+        return dir.resolve(String.format("%020d%s", seq, SEGMENT_SUFFIX));
+    }
+
+    private void loadCursor() throws IOException {
+        Path cursor = dir.resolve(CURSOR_FILE);
+        readSeq = segments.first();
+        readOffset = 0;
+        if (!Files.exists(cursor)) {
+            return;
+        }
+        String[] parts = Files.readString(cursor, StandardCharsets.UTF_8).trim().split("\\s+");
+        if (parts.length == 2) {
+            long seq = Long.parseLong(parts[0]);
+            if (segments.contains(seq)) {
+                readSeq = seq;
+                readOffset = Integer.parseInt(parts[1]);
+            }
+        }
+    }
+
+    private void writeCursor() throws IOException {
+        Path tmp = dir.resolve(CURSOR_FILE + ".tmp");
+        Files.writeString(tmp, readSeq + " " + readOffset, StandardCharsets.UTF_8);
+        Files.move(tmp, dir.resolve(CURSOR_FILE), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    /**
+     * 一次读取的结果；commit 后游标移动到 nextSeq/nextOffset
+     */
+    public record Batch(List<byte[]> records, long nextSeq, int nextOffset) {}
+}
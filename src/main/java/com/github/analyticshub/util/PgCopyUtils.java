@@ -0,0 +1,98 @@
+package com.github.analyticshub.util;
+
+import org.postgresql.PGConnection;
+import org.postgresql.copy.CopyIn;
+import org.springframework.jdbc.core.ConnectionCallback;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import java.nio.charset.StandardCharsets;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.util.List;
+import java.util.function.Function;
+
+/**
+ * PostgreSQL COPY 协议工具类
+ * 以 CSV 格式把行数据流式写入 COPY FROM STDIN，绕开 VALUES 拼接的绑定参数上限
+ */
+public final class PgCopyUtils {
+
+    // 单次下发给驱动的缓冲大小，避免大批量时整体物化
+    private static final int FLUSH_THRESHOLD_CHARS = 64 * 1024;
+
+    private PgCopyUtils() {
+        throw new UnsupportedOperationException("Utility class");
+    }
+
+    /**
+     * 通过 COPY ... FROM STDIN (FORMAT csv) 写入一组行
+     *
+     * @param table   已校验并加引号的表名
+     * @param columns 列名列表（逗号分隔）
+     * @param rows    待写入的行
+     * @param toFields 行 → 字段值（顺序与 columns 一致，null 表示 SQL NULL）
+     * @return 写入行数
+     */
+    public static <T> long copyIn(JdbcTemplate jdbcTemplate, String table, String columns,
+                                  List<T> rows, Function<T, Object[]> toFields) {
+        String sql = String.format("COPY %s (%s) FROM STDIN WITH (FORMAT csv)", table, columns);
+        Long copied = jdbcTemplate.execute((ConnectionCallback<Long>) connection -> {
+            CopyIn copyIn = connection.unwrap(PGConnection.class).getCopyAPI().copyIn(sql);
+            try {
+                StringBuilder buffer = new StringBuilder(FLUSH_THRESHOLD_CHARS + 1024);
+                for (T row : rows) {
+                    appendCsvRow(buffer, toFields.apply(row));
+                    if (buffer.length() >= FLUSH_THRESHOLD_CHARS) {
+                        writeAndClear(copyIn, buffer);
+                    }
+                }
+                if (!buffer.isEmpty()) {
+                    writeAndClear(copyIn, buffer);
+                }
+                return copyIn.endCopy();
+            } finally {
+                if (copyIn.isActive()) {
+                    copyIn.cancelCopy();
+                }
+            }
+        });
+        return copied == null ? 0L : copied;
+    }
+
+    /**
+     * 追加一行 CSV（字段统一加引号；null 输出为空且不加引号，对应 COPY 的 NULL）
+     */
+    public static void appendCsvRow(StringBuilder buffer, Object[] fields) {
+        for (int i = 0; i < fields.length; i++) {
+            if (i > 0) {
+                buffer.append(',');
+            }
+            appendCsvField(buffer, fields[i]);
+        }
+        buffer.append('\n');
+    }
+
+    static void appendCsvField(StringBuilder buffer, Object value) {
+        if (value == null) {
+            return;
+        }
+        String text = value instanceof Timestamp timestamp
+                ? timestamp.toInstant().toString()
+                : value.toString();
+        buffer.append('"');
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            if (c == '"') {
+                buffer.append('"');
+            }
+            buffer.append(c);
+        }
+        buffer.append('"');
+    }
+
+    private static void writeAndClear(CopyIn copyIn, StringBuilder buffer) throws SQLException {
+        byte[] bytes = buffer.toString().getBytes(StandardCharsets.UTF_8);
+        copyIn.writeToCopy(bytes, 0, bytes.length);
+        buffer.setLength(0);
+    }
+}
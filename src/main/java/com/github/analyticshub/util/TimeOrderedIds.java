@@ -0,0 +1,89 @@
+package com.github.analyticshub.util;
+
+import java.util.UUID;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 时间有序 128 位 ID 生成器（UUIDv7 布局）
+ * 高 48 位毫秒时间戳 + 12 位单调序号（rand_a）+ 62 位随机数（rand_b）。
+ * 时间戳与序号合并为一个 AtomicLong 通过 CAS 推进：同一毫秒内序号递增，序号用尽或时钟回拨时借用下一毫秒，
+ * 保证本节点内严格递增且无锁；多节点之间依靠 62 位随机数避免冲突。
+ * 文本形式为 26 位 Crockford Base32，与二进制顺序一致，可直接按字典序排序。
+ */
+public final class TimeOrderedIds {
+
+    private static final char[] CROCKFORD = "0123456789ABCDEFGHJKMNPQRSTVWXYZ".toCharArray();
+    private static final int ENCODED_LENGTH = 26;
+    private static final int SEQUENCE_BITS = 12;
+
+    /**
+     * (毫秒时间戳 << 12) | 序号
+     */
+    private static final AtomicLong STATE = new AtomicLong();
+
+    private TimeOrderedIds() {
+        throw new UnsupportedOperationException("Utility class");
+    }
+
+    /**
+     * 生成 UUIDv7
+     */
+    public static UUID nextUuid() {
+        long now = System.currentTimeMillis() << SEQUENCE_BITS;
+        long prev;
+        long next;
+        do {
+            prev = STATE.get();
+            next = Math.max(now, prev + 1);
+        } while (!STATE.compareAndSet(prev, next));
+
+        long msb = ((next >>> SEQUENCE_BITS) << 16) | 0x7000L | (next & 0xFFFL);
+        long lsb = (ThreadLocalRandom.current().nextLong() & 0x3FFF_FFFF_FFFF_FFFFL) | 0x8000_0000_0000_0000L;
+        return new UUID(msb, lsb);
+    }
+
+    /**
+     * 生成带前缀的文本 ID
+     * 格式: <prefix><26位 Crockford Base32>
+     */
+    public static String nextId(String prefix) {
+        UUID uuid = nextUuid();
+        char[] chars = new char[prefix.length() + ENCODED_LENGTH];
+        prefix.getChars(0, prefix.length(), chars, 0);
+        encode(uuid.getMostSignificantBits(), uuid.getLeastSignificantBits(), chars, prefix.length());
+        return new String(chars);
+    }
+
+    /**
+     * UUID 的 26 位 Crockford Base32 文本
+     */
+    public static String toBase32(UUID uuid) {
+        char[] chars = new char[ENCODED_LENGTH];
+        encode(uuid.getMostSignificantBits(), uuid.getLeastSignificantBits(), chars, 0);
+        return new String(chars);
+    }
+
+    /**
+     * UUIDv7 中的毫秒时间戳
+     */
+    public static long timestampMillis(UUID uuid) {
+        return uuid.getMostSignificantBits() >>> 16;
+    }
+
+    private static void encode(long msb, long lsb, char[] out, int offset) {
+        // 128 位按 5 位一组从低位向高位编码，首字符只含最高 3 位
+        for (int i = ENCODED_LENGTH - 1; i >= 0; i--) {
+            int shift = (ENCODED_LENGTH - 1 - i) * 5;
+            int value;
+            if (shift >= 64) {
+                value = (int) (msb >>> (shift - 64)) & 31;
+            } else if (shift + 5 <= 64) {
+                value = (int) (lsb >>> shift) & 31;
+            } else {
+                value = (int) ((lsb >>> shift) | (msb << (64 - shift))) & 31;
+            }
+            out[offset + i] = CROCKFORD[value];
+        }
+    }
+}
@@ -0,0 +1,29 @@
+package com.github.analyticshub.util;
+
+import org.springframework.jdbc.core.ConnectionCallback;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import javax.sql.DataSource;
+import java.sql.Connection;
+
+/**
+ * 事务工具类
+ */
+public final class TransactionUtils {
+
+    private TransactionUtils() {
+        throw new UnsupportedOperationException("Utility class");
+    }
+
+    /**
+     * 当前线程在该数据源上是否处于事务中
+     * 事务同步激活时 DataSourceUtils 会把该数据源的连接绑定到线程（即使事务在其他数据源上，如系统库 @Transactional），
+     * 此处取回的是同一连接，以其 autoCommit 判断语句是否随事务提交；同步未激活时语句均为自动提交
+     */
+    public static boolean inTransaction(DataSource dataSource) {
+        return TransactionSynchronizationManager.isSynchronizationActive()
+                && Boolean.FALSE.equals(new JdbcTemplate(dataSource)
+                .execute((ConnectionCallback<Boolean>) Connection::getAutoCommit));
+    }
+}
@@ -0,0 +1,8 @@
+-- 项目只读副本配置（可选）：管理端分析查询与公开统计接口路由到副本，减少与写入争用
+-- 副本与主库为同一物理复制集群，库名 / schema 与主库相同；用户、密码为空时沿用主库
+ALTER TABLE analytics_projects ADD COLUMN IF NOT EXISTS replica_db_host VARCHAR(255);
+ALTER TABLE analytics_projects ADD COLUMN IF NOT EXISTS replica_db_port INTEGER;
+ALTER TABLE analytics_projects ADD COLUMN IF NOT EXISTS replica_db_user VARCHAR(100);
+ALTER TABLE analytics_projects ADD COLUMN IF NOT EXISTS replica_db_password_encrypted TEXT;
+
+COMMENT ON COLUMN analytics_projects.replica_db_host IS '只读副本主机（为空表示未配置副本）';
@@ -0,0 +1,6 @@
+-- 项目原始数据保留期（天）：NULL 使用 app.retention.defaults，0 表示永久保留
+-- 到期数据先汇总到按天的聚合表（{prefix}events_daily / traffic_daily / sessions_daily），再分批删除或整体删除分区
+ALTER TABLE analytics_projects ADD COLUMN IF NOT EXISTS retention_events_days INTEGER;
+ALTER TABLE analytics_projects ADD COLUMN IF NOT EXISTS retention_traffic_days INTEGER;
+ALTER TABLE analytics_projects ADD COLUMN IF NOT EXISTS retention_sessions_days INTEGER;
+ALTER TABLE analytics_projects ADD COLUMN IF NOT EXISTS retention_idempotency_days INTEGER;
@@ -0,0 +1,70 @@
+-- ============================================================
+-- Project Init Script - Partitioned Layout (Template)
+-- app.project-db.partitioning 为 month / day 时，在 project-init.sql 之前执行：
+-- 事件表与流量指标表按 created_at 范围分区（{{PARTITION_GRANULARITY}}），
+-- project-init.sql 中同名的 CREATE TABLE / CREATE INDEX IF NOT EXISTS 随后跳过。
+-- 分区表的主键与唯一约束必须包含分区键：主键为 (id, created_at)，唯一约束为 (event_id / metric_id, created_at)；
+-- 按周期的分区由 ProjectPartitionManager 预先创建，未覆盖的时间落入 DEFAULT 分区。
+-- ============================================================
+
+SET timezone = 'UTC';
+CREATE SCHEMA IF NOT EXISTS {{SCHEMA}};
+SET search_path TO {{SCHEMA}}, public;
+
+-- 2. 事件记录表（分区）
+CREATE TABLE IF NOT EXISTS {{PREFIX}}events (
+    id BIGSERIAL,
+    event_id {{ID_COLUMN_TYPE}} NOT NULL,
+    device_id UUID NOT NULL,
+    user_id VARCHAR(128) NOT NULL,
+    session_id UUID,
+    event_type {{EVENT_TYPE_COLUMN_TYPE}} NOT NULL,
+    event_timestamp BIGINT NOT NULL,
+    properties JSONB,
+    project_id VARCHAR(50) NOT NULL,
+    created_at TIMESTAMP WITH TIME ZONE NOT NULL DEFAULT NOW(),
+    PRIMARY KEY (id, created_at),
+    UNIQUE (event_id, created_at)
+) PARTITION BY RANGE (created_at);
+
+COMMENT ON TABLE {{PREFIX}}events IS 'partition-granularity={{PARTITION_GRANULARITY}}';
+CREATE TABLE IF NOT EXISTS {{PREFIX}}events_default PARTITION OF {{PREFIX}}events DEFAULT;
+
+CREATE INDEX IF NOT EXISTS idx_events_device_id ON {{PREFIX}}events(device_id);
+CREATE INDEX IF NOT EXISTS idx_events_user_id ON {{PREFIX}}events(user_id);
+CREATE INDEX IF NOT EXISTS idx_events_event_type ON {{PREFIX}}events(event_type);
+CREATE INDEX IF NOT EXISTS idx_events_created_at ON {{PREFIX}}events(created_at DESC);
+CREATE INDEX IF NOT EXISTS idx_events_project_device ON {{PREFIX}}events(project_id, device_id);
+CREATE INDEX IF NOT EXISTS idx_events_project_created ON {{PREFIX}}events(project_id, created_at DESC);
+CREATE INDEX IF NOT EXISTS idx_events_properties ON {{PREFIX}}events USING gin(properties);
+
+-- 4. 流量指标表（分区）
+CREATE TABLE IF NOT EXISTS {{PREFIX}}traffic_metrics (
+    id BIGSERIAL,
+    metric_id {{ID_COLUMN_TYPE}} NOT NULL,
+    device_id UUID NOT NULL,
+    user_id VARCHAR(128) NOT NULL,
+    session_id UUID,
+    metric_type {{METRIC_TYPE_COLUMN_TYPE}} NOT NULL,
+    page_path VARCHAR(255),
+    referrer VARCHAR(255),
+    metric_timestamp BIGINT NOT NULL,
+    metadata JSONB,
+    project_id VARCHAR(50) NOT NULL,
+    created_at TIMESTAMP WITH TIME ZONE NOT NULL DEFAULT NOW(),
+    PRIMARY KEY (id, created_at),
+    UNIQUE (metric_id, created_at)
+) PARTITION BY RANGE (created_at);
+
+COMMENT ON TABLE {{PREFIX}}traffic_metrics IS 'partition-granularity={{PARTITION_GRANULARITY}}';
+CREATE TABLE IF NOT EXISTS {{PREFIX}}traffic_metrics_default PARTITION OF {{PREFIX}}traffic_metrics DEFAULT;
+
+CREATE INDEX IF NOT EXISTS idx_traffic_device_id ON {{PREFIX}}traffic_metrics(device_id);
+CREATE INDEX IF NOT EXISTS idx_traffic_user_id ON {{PREFIX}}traffic_metrics(user_id);
+CREATE INDEX IF NOT EXISTS idx_traffic_type ON {{PREFIX}}traffic_metrics(metric_type);
+CREATE INDEX IF NOT EXISTS idx_traffic_created_at ON {{PREFIX}}traffic_metrics(created_at DESC);
+CREATE INDEX IF NOT EXISTS idx_traffic_project_device ON {{PREFIX}}traffic_metrics(project_id, device_id);
+CREATE INDEX IF NOT EXISTS idx_traffic_project_created ON {{PREFIX}}traffic_metrics(project_id, created_at DESC);
+CREATE INDEX IF NOT EXISTS idx_traffic_page_path ON {{PREFIX}}traffic_metrics(page_path);
+CREATE INDEX IF NOT EXISTS idx_traffic_referrer ON {{PREFIX}}traffic_metrics(referrer);
+CREATE INDEX IF NOT EXISTS idx_traffic_metadata ON {{PREFIX}}traffic_metrics USING gin(metadata);
@@ -1,6 +1,9 @@
 -- ============================================================
 -- Project Init Script (Template)
 -- 使用 {{PREFIX}} 作为表前缀占位符
+-- {{ID_COLUMN_TYPE}} 为 event_id / metric_id 列类型（app.project-db.id-type：text → VARCHAR(64)，uuid → UUID）
+-- {{EVENT_TYPE_COLUMN_TYPE}} / {{METRIC_TYPE_COLUMN_TYPE}} 为类型列的列类型（app.project-db.type-encoding：
+--   text → VARCHAR，dictionary → SMALLINT，名称存于 event_types / metric_types 字典表）
 -- 该脚本运行在“项目自己的数据库”中
 -- ============================================================
 
@@ -31,11 +34,11 @@ CREATE UNIQUE INDEX IF NOT EXISTS idx_devices_project_device ON {{PREFIX}}device
 -- 2. 事件记录表
 CREATE TABLE IF NOT EXISTS {{PREFIX}}events (
     id BIGSERIAL PRIMARY KEY,
-    event_id VARCHAR(64) NOT NULL UNIQUE,
+    event_id {{ID_COLUMN_TYPE}} NOT NULL UNIQUE,
     device_id UUID NOT NULL,
     user_id VARCHAR(128) NOT NULL,
     session_id UUID,
-    event_type VARCHAR(100) NOT NULL,
+    event_type {{EVENT_TYPE_COLUMN_TYPE}} NOT NULL,
     event_timestamp BIGINT NOT NULL,
     properties JSONB,
     project_id VARCHAR(50) NOT NULL,
@@ -50,6 +53,16 @@ CREATE INDEX IF NOT EXISTS idx_events_project_device ON {{PREFIX}}events(project
 CREATE INDEX IF NOT EXISTS idx_events_project_created ON {{PREFIX}}events(project_id, created_at DESC);
 CREATE INDEX IF NOT EXISTS idx_events_properties ON {{PREFIX}}events USING gin(properties);
 
+-- 2.1 事件幂等键表（采集链路通过项目数据源访问，需与事件表位于同一库）
+-- 客户端发送 idempotencyKey → 服务端 SHA-256 哈希后以 ON CONFLICT DO NOTHING 认领
+CREATE TABLE IF NOT EXISTS analytics_idempotency_keys (
+    project_id   VARCHAR(50)  NOT NULL,
+    key_hash     VARCHAR(64)  NOT NULL,
+    event_id     VARCHAR(64)  NOT NULL,
+    created_at   TIMESTAMPTZ  DEFAULT NOW(),
+    PRIMARY KEY (project_id, key_hash)
+);
+
 -- 3. 会话记录表
 CREATE TABLE IF NOT EXISTS {{PREFIX}}sessions (
     id SERIAL PRIMARY KEY,
@@ -77,11 +90,11 @@ CREATE INDEX IF NOT EXISTS idx_sessions_start_time ON {{PREFIX}}sessions(session
 -- 4. 流量指标表（可选）
 CREATE TABLE IF NOT EXISTS {{PREFIX}}traffic_metrics (
     id BIGSERIAL PRIMARY KEY,
-    metric_id VARCHAR(64) NOT NULL UNIQUE,
+    metric_id {{ID_COLUMN_TYPE}} NOT NULL UNIQUE,
     device_id UUID NOT NULL,
     user_id VARCHAR(128) NOT NULL,
     session_id UUID,
-    metric_type VARCHAR(50) NOT NULL,
+    metric_type {{METRIC_TYPE_COLUMN_TYPE}} NOT NULL,
     page_path VARCHAR(255),
     referrer VARCHAR(255),
     metric_timestamp BIGINT NOT NULL,
@@ -151,3 +164,41 @@ CREATE INDEX IF NOT EXISTS idx_privacy_project_user_requested
     ON {{PREFIX}}privacy_requests(project_id, user_id, requested_at DESC);
 CREATE INDEX IF NOT EXISTS idx_privacy_project_processor_requested
     ON {{PREFIX}}privacy_requests(project_id, processor, requested_at DESC);
+
+-- 7. 按天聚合表（保留期到期的原始数据先汇总到这里再删除，见 RetentionService）
+CREATE TABLE IF NOT EXISTS {{PREFIX}}events_daily (
+    day DATE NOT NULL,
+    event_type VARCHAR(100) NOT NULL,
+    events BIGINT NOT NULL,
+    users BIGINT NOT NULL,
+    devices BIGINT NOT NULL,
+    PRIMARY KEY (day, event_type)
+);
+
+CREATE TABLE IF NOT EXISTS {{PREFIX}}traffic_daily (
+    day DATE NOT NULL,
+    metric_type VARCHAR(50) NOT NULL,
+    page_path VARCHAR(255) NOT NULL DEFAULT '',
+    metrics BIGINT NOT NULL,
+    devices BIGINT NOT NULL,
+    PRIMARY KEY (day, metric_type, page_path)
+);
+
+CREATE TABLE IF NOT EXISTS {{PREFIX}}sessions_daily (
+    day DATE PRIMARY KEY,
+    sessions BIGINT NOT NULL,
+    users BIGINT NOT NULL,
+    devices BIGINT NOT NULL,
+    total_duration_ms BIGINT NOT NULL
+);
+
+-- 8. 类型字典（字典编码的项目库中 events.event_type / traffic_metrics.metric_type 存字典 ID，见 TypeDictionary）
+CREATE TABLE IF NOT EXISTS {{PREFIX}}event_types (
+    id SMALLINT GENERATED BY DEFAULT AS IDENTITY PRIMARY KEY,
+    name VARCHAR(100) NOT NULL UNIQUE
+);
+
+CREATE TABLE IF NOT EXISTS {{PREFIX}}metric_types (
+    id SMALLINT GENERATED BY DEFAULT AS IDENTITY PRIMARY KEY,
+    name VARCHAR(50) NOT NULL UNIQUE
+);
@@ -0,0 +1,20 @@
+-- ============================================================
+-- V1: 运营计数器表
+-- 早期初始化的项目库可能没有计数器表（此前由 CounterService 在运行时补建），
+-- 约束名带表前缀，避免同一 schema 下多个前缀的项目冲突。
+-- ============================================================
+
+CREATE TABLE IF NOT EXISTS {{PREFIX}}counters (
+    id BIGSERIAL PRIMARY KEY,
+    counter_key VARCHAR(100) NOT NULL,
+    counter_value BIGINT NOT NULL DEFAULT 0,
+    display_name JSONB,
+    unit JSONB,
+    event_trigger JSONB,
+    is_public BOOLEAN DEFAULT FALSE,
+    description TEXT,
+    project_id VARCHAR(50) NOT NULL,
+    created_at TIMESTAMP WITH TIME ZONE DEFAULT NOW(),
+    updated_at TIMESTAMP WITH TIME ZONE DEFAULT NOW(),
+    CONSTRAINT uq_{{PREFIX}}counters_project_key UNIQUE (project_id, counter_key)
+);
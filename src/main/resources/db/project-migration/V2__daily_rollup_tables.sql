@@ -0,0 +1,30 @@
+-- ============================================================
+-- V2: 按天聚合表（保留期到期的原始数据先汇总到这里再删除，见 RetentionService）
+-- 新项目由 project-init.sql 创建，这里为已有项目库补建。
+-- ============================================================
+
+CREATE TABLE IF NOT EXISTS {{PREFIX}}events_daily (
+    day DATE NOT NULL,
+    event_type VARCHAR(100) NOT NULL,
+    events BIGINT NOT NULL,
+    users BIGINT NOT NULL,
+    devices BIGINT NOT NULL,
+    PRIMARY KEY (day, event_type)
+);
+
+CREATE TABLE IF NOT EXISTS {{PREFIX}}traffic_daily (
+    day DATE NOT NULL,
+    metric_type VARCHAR(50) NOT NULL,
+    page_path VARCHAR(255) NOT NULL DEFAULT '',
+    metrics BIGINT NOT NULL,
+    devices BIGINT NOT NULL,
+    PRIMARY KEY (day, metric_type, page_path)
+);
+
+CREATE TABLE IF NOT EXISTS {{PREFIX}}sessions_daily (
+    day DATE PRIMARY KEY,
+    sessions BIGINT NOT NULL,
+    users BIGINT NOT NULL,
+    devices BIGINT NOT NULL,
+    total_duration_ms BIGINT NOT NULL
+);
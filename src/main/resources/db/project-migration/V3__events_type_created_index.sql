@@ -0,0 +1,8 @@
+-- ============================================================
+-- V3: 事件类型 + 时间复合索引
+-- 热门事件、漏斗、留存按 event_type 过滤并限定 created_at 范围；
+-- CONCURRENTLY 构建不阻塞写入（脚本不在事务中执行，分区表由迁移器逐个分区构建后挂载）。
+-- ============================================================
+
+CREATE INDEX CONCURRENTLY IF NOT EXISTS idx_{{PREFIX}}events_type_created
+    ON {{PREFIX}}events(event_type, created_at DESC);
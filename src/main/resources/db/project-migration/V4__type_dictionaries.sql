@@ -0,0 +1,15 @@
+-- ============================================================
+-- V4: 类型字典表
+-- 字典编码（app.project-db.type-encoding = dictionary）初始化的项目库中，类型列存放这里的 SMALLINT ID；
+-- 文本列的项目库同样创建，便于之后迁移。
+-- ============================================================
+
+CREATE TABLE IF NOT EXISTS {{PREFIX}}event_types (
+    id SMALLINT GENERATED BY DEFAULT AS IDENTITY PRIMARY KEY,
+    name VARCHAR(100) NOT NULL UNIQUE
+);
+
+CREATE TABLE IF NOT EXISTS {{PREFIX}}metric_types (
+    id SMALLINT GENERATED BY DEFAULT AS IDENTITY PRIMARY KEY,
+    name VARCHAR(50) NOT NULL UNIQUE
+);
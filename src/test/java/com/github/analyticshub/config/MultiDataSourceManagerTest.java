@@ -0,0 +1,205 @@
+package com.github.analyticshub.config;
+
+import com.baomidou.mybatisplus.core.conditions.Wrapper;
+import com.github.analyticshub.entity.AnalyticsProject;
+import com.github.analyticshub.mapper.AnalyticsProjectMapper;
+import com.zaxxer.hikari.HikariDataSource;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.mockito.junit.jupiter.MockitoSettings;
+import org.mockito.quality.Strictness;
+import org.springframework.boot.context.properties.bind.Binder;
+import org.springframework.boot.context.properties.source.MapConfigurationPropertySource;
+import org.springframework.jdbc.datasource.DelegatingDataSource;
+
+import javax.sql.DataSource;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+@MockitoSettings(strictness = Strictness.LENIENT)
+class MultiDataSourceManagerTest {
+
+    @Mock
+    private AnalyticsProjectMapper projectMapper;
+
+    private MultiDataSourceManager manager;
+
+    @BeforeEach
+    void setUp() {
+        when(projectMapper.selectList(any(Wrapper.class))).thenReturn(List.of(project("app-a", "a_")));
+        // 关闭定时刷新，只保留按需刷新
+        manager = newManager("per-project");
+    }
+
+    private MultiDataSourceManager newManager(String pooling) {
+        ProjectDataSourceSettings settings = new ProjectDataSourceSettings(pooling, 20, 5, 250, 2000,
+                new ProjectDataSourceSettings.AdaptiveSizing(false, 2, 1000, 30_000),
+                new ProjectDataSourceSettings.Eviction(0, 0),
+                new ProjectDataSourceSettings.Warmup(0, 0, ""),
+                new ProjectDataSourceSettings.CircuitBreaker(true, 5, 10_000),
+                new ProjectDataSourceSettings.Replica(true, 4, 10_000, 5000, 30_000));
+        MultiDataSourceManager created = new MultiDataSourceManager(projectMapper, 0, 60_000, 100, settings);
+        created.loadSnapshot();
+        return created;
+    }
+
+    @AfterEach
+    void tearDown() {
+        manager.closeAll();
+    }
+
+    @Test
+    void settingsBindFromProjectDatasourceKeysWithDefaults() {
+        ProjectDataSourceSettings settings = new Binder(new MapConfigurationPropertySource(Map.of(
+                "app.project-datasource.pooling", "shared",
+                "app.project-datasource.connection-timeout-ms", "1500",
+                "app.project-datasource.warmup.schedule", "app-a@08:30",
+                "app.project-datasource.circuit-breaker.failure-threshold", "3",
+                "app.project-datasource.replica.max-lag-ms", "2000")))
+                .bindOrCreate("app.project-datasource", ProjectDataSourceSettings.class);
+
+        assertEquals("shared", settings.pooling());
+        assertEquals(1500, settings.connectionTimeoutMs());
+        assertEquals(20, settings.maxPoolSize());
+        assertEquals("app-a@08:30", settings.warmup().schedule());
+        assertEquals(300_000, settings.warmup().afterIdleMs());
+        assertEquals(3, settings.circuitBreaker().failureThreshold());
+        assertTrue(settings.circuitBreaker().enabled());
+        assertEquals(2000, settings.replica().maxLagMs());
+        assertTrue(settings.adaptiveSizing().enabled());
+        assertEquals(1_800_000, settings.eviction().idleTimeoutMs());
+    }
+
+    @Test
+    void knownProjectsAreServedFromSnapshot() {
+        for (int i = 0; i < 10; i++) {
+            assertEquals("a_", manager.getProjectConfig("app-a").tablePrefix());
+        }
+        assertEquals("\"a_events\"", manager.getTableName("app-a", "events"));
+
+        verify(projectMapper, times(1)).selectList(any(Wrapper.class));
+        verify(projectMapper, never()).selectOne(any(Wrapper.class));
+    }
+
+    @Test
+    void sharedPoolingQualifiesTableNamesWithSchema() {
+        MultiDataSourceManager shared = newManager("shared");
+        try {
+            assertTrue(shared.isSharedPooling());
+            assertEquals("\"analytics\".\"a_events\"", shared.getTableName("app-a", "events"));
+            assertEquals("\"analytics\".\"analytics_idempotency_keys\"",
+                    shared.getSchemaTableName("app-a", "analytics_idempotency_keys"));
+            assertEquals("\"analytics_idempotency_keys\"", manager.getSchemaTableName("app-a", "analytics_idempotency_keys"));
+        } finally {
+            shared.closeAll();
+        }
+    }
+
+    @Test
+    void unknownProjectsAreNegativelyCached() {
+        for (int i = 0; i < 100; i++) {
+            assertNull(manager.getProjectConfig("bogus"));
+        }
+
+        // 首次出现触发一次后台刷新，之后命中负向缓存
+        verify(projectMapper, timeout(1000).times(2)).selectList(any(Wrapper.class));
+        verify(projectMapper, after(200).times(2)).selectList(any(Wrapper.class));
+        verify(projectMapper, never()).selectOne(any(Wrapper.class));
+        assertThrows(IllegalArgumentException.class, () -> manager.getProjectConfig("Bad Id"));
+    }
+
+    @Test
+    void reloadUpdatesSnapshotAndClearsNegativeEntry() {
+        assertNull(manager.getProjectConfig("app-b"));
+        // 未知项目会触发后台刷新：系统库（selectList）与重载结果保持一致，刷新与重载的先后不影响结果
+        verify(projectMapper, timeout(1000).times(2)).selectList(any(Wrapper.class));
+
+        when(projectMapper.selectList(any(Wrapper.class))).thenReturn(List.of(project("app-a", "a_"), project("app-b", "b_")));
+        when(projectMapper.selectOne(any(Wrapper.class))).thenReturn(project("app-b", "b_"));
+        manager.reloadProject("app-b");
+        assertEquals("b_", manager.getProjectConfig("app-b").tablePrefix());
+
+        when(projectMapper.selectList(any(Wrapper.class))).thenReturn(List.of(project("app-b", "b_")));
+        when(projectMapper.selectOne(any(Wrapper.class))).thenReturn(null);
+        manager.reloadProject("app-a");
+        assertNull(manager.getProjectConfig("app-a"));
+        assertNotNull(manager.getProjectConfig("app-b"));
+    }
+
+    @Test
+    void reloadKeepsPoolWhenConnectionSettingsAreUnchanged() {
+        DataSource before = manager.getDataSource("app-a");
+
+        when(projectMapper.selectOne(any(Wrapper.class))).thenReturn(project("app-a", "a2_"));
+        manager.reloadProject("app-a");
+
+        assertEquals("a2_", manager.getProjectConfig("app-a").tablePrefix());
+        assertSame(before, manager.getDataSource("app-a"));
+    }
+
+    @Test
+    void reloadSwapsPoolAndDrainsOldOneWhenConnectionSettingsChange() throws Exception {
+        HikariDataSource before = unwrap(manager.getDataSource("app-a"));
+
+        AnalyticsProject moved = project("app-a", "a_");
+        moved.setDbHost("127.0.0.1");
+        when(projectMapper.selectOne(any(Wrapper.class))).thenReturn(moved);
+        manager.reloadProject("app-a");
+
+        HikariDataSource after = unwrap(manager.getDataSource("app-a"));
+        assertNotSame(before, after);
+        assertTrue(after.getJdbcUrl().contains("127.0.0.1"));
+        assertFalse(after.isClosed());
+
+        // 旧连接池无活跃连接，过最短保留时间后关闭
+        long deadline = System.currentTimeMillis() + 5000;
+        while (!before.isClosed() && System.currentTimeMillis() < deadline) {
+            Thread.sleep(50);
+        }
+        assertTrue(before.isClosed());
+    }
+
+    @Test
+    void warmupScheduleIsParsedAndMatchedByMinute() {
+        List<MultiDataSourceManager.WarmupWindow> windows =
+                MultiDataSourceManager.WarmupWindow.parseAll(" app-a@08:55, app-b@23:59 ,");
+        assertEquals(2, windows.size());
+        assertEquals("app-a", windows.get(0).projectId());
+
+        assertTrue(windows.get(0).isDue(LocalDateTime.of(2026, 1, 1, 8, 55, 40)));
+        assertFalse(windows.get(0).isDue(LocalDateTime.of(2026, 1, 1, 8, 56, 0)));
+        assertTrue(windows.get(1).isDue(LocalDateTime.of(2026, 1, 1, 23, 59, 59)));
+
+        assertTrue(MultiDataSourceManager.WarmupWindow.parseAll("").isEmpty());
+        assertThrows(IllegalArgumentException.class, () -> MultiDataSourceManager.WarmupWindow.parseAll("app-a@25:00"));
+        assertThrows(IllegalArgumentException.class, () -> MultiDataSourceManager.WarmupWindow.parseAll("08:55"));
+    }
+
+    private static HikariDataSource unwrap(DataSource dataSource) {
+        return (HikariDataSource) ((DelegatingDataSource) dataSource).getTargetDataSource();
+    }
+
+    private static AnalyticsProject project(String projectId, String tablePrefix) {
+        AnalyticsProject project = new AnalyticsProject();
+        project.setProjectId(projectId);
+        project.setProjectName(projectId);
+        project.setDbHost("localhost");
+        project.setDbPort(5432);
+        project.setDbName("analytics");
+        project.setDbSchema("analytics");
+        project.setDbUser("analytic");
+        project.setTablePrefix(tablePrefix);
+        project.setIsActive(Boolean.TRUE);
+        return project;
+    }
+}
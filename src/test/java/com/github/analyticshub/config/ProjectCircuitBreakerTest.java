@@ -0,0 +1,125 @@
+package com.github.analyticshub.config;
+
+import com.github.analyticshub.exception.ProjectDbUnavailableException;
+import org.junit.jupiter.api.Test;
+
+import javax.sql.DataSource;
+import java.net.ConnectException;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.SQLTransientConnectionException;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+class ProjectCircuitBreakerTest {
+
+    private static final long MS = 1_000_000L;
+
+    @Test
+    void opensAfterConsecutiveFailuresAndProbesWhenHalfOpen() {
+        ProjectCircuitBreaker breaker = new ProjectCircuitBreaker(3, 1000);
+        long now = 1_000 * MS;
+
+        breaker.onFailure(now);
+        breaker.onFailure(now);
+        breaker.onSuccess();
+        breaker.onFailure(now);
+        breaker.onFailure(now);
+        assertEquals(ProjectCircuitBreaker.State.CLOSED, breaker.state());
+        breaker.onFailure(now);
+        assertEquals(ProjectCircuitBreaker.State.OPEN, breaker.state());
+        assertFalse(breaker.tryAcquire(now + 500 * MS));
+
+        // 打开周期结束：只放行一个探测
+        assertTrue(breaker.tryAcquire(now + 1000 * MS));
+        assertEquals(ProjectCircuitBreaker.State.HALF_OPEN, breaker.state());
+        assertFalse(breaker.tryAcquire(now + 1001 * MS));
+
+        // 探测失败重新打开
+        breaker.onFailure(now + 1002 * MS);
+        assertEquals(ProjectCircuitBreaker.State.OPEN, breaker.state());
+        assertFalse(breaker.tryAcquire(now + 1500 * MS));
+
+        // 探测成功关闭
+        assertTrue(breaker.tryAcquire(now + 2100 * MS));
+        breaker.onSuccess();
+        assertEquals(ProjectCircuitBreaker.State.CLOSED, breaker.state());
+        assertEquals(0, breaker.snapshot().consecutiveFailures());
+        assertNull(breaker.snapshot().openedAtMillis());
+    }
+
+    @Test
+    void dataSourceFailsFastWhileOpen() throws Exception {
+        DataSource target = mock(DataSource.class);
+        when(target.getConnection()).thenThrow(connectTimeout());
+        ProjectCircuitBreaker breaker = new ProjectCircuitBreaker(2, 60_000);
+        CircuitBreakingDataSource dataSource = new CircuitBreakingDataSource(target, "p1", breaker);
+
+        assertThrows(SQLTransientConnectionException.class, dataSource::getConnection);
+        assertThrows(SQLTransientConnectionException.class, dataSource::getConnection);
+        ProjectDbUnavailableException e = assertThrows(ProjectDbUnavailableException.class, dataSource::getConnection);
+        assertEquals("p1", e.getProjectId());
+        verify(target, times(2)).getConnection();
+    }
+
+    @Test
+    void successfulConnectionResetsFailures() throws Exception {
+        DataSource target = mock(DataSource.class);
+        Connection connection = mock(Connection.class);
+        when(target.getConnection())
+                .thenThrow(connectTimeout())
+                .thenReturn(connection);
+        ProjectCircuitBreaker breaker = new ProjectCircuitBreaker(2, 60_000);
+        CircuitBreakingDataSource dataSource = new CircuitBreakingDataSource(target, "p1", breaker);
+
+        assertThrows(SQLTransientConnectionException.class, dataSource::getConnection);
+        assertSame(connection, dataSource.getConnection());
+        assertEquals(0, breaker.snapshot().consecutiveFailures());
+    }
+
+    @Test
+    void poolTimeoutWithoutConnectErrorIsNotCounted() throws Exception {
+        DataSource target = mock(DataSource.class);
+        when(target.getConnection()).thenThrow(new SQLTransientConnectionException("p1 - Connection is not available"));
+        ProjectCircuitBreaker breaker = new ProjectCircuitBreaker(2, 60_000);
+        CircuitBreakingDataSource dataSource = new CircuitBreakingDataSource(target, "p1", breaker);
+
+        for (int i = 0; i < 5; i++) {
+            assertThrows(SQLTransientConnectionException.class, dataSource::getConnection);
+        }
+        assertEquals(ProjectCircuitBreaker.State.CLOSED, breaker.state());
+        assertEquals(0, breaker.snapshot().consecutiveFailures());
+    }
+
+    @Test
+    void recognisesConnectFailures() {
+        assertTrue(CircuitBreakingDataSource.isConnectFailure(new SQLException("refused", "08001")));
+        assertTrue(CircuitBreakingDataSource.isConnectFailure(connectTimeout()));
+        assertTrue(CircuitBreakingDataSource.isConnectFailure(
+                new SQLTransientConnectionException("timeout", null, new ConnectException("Connection refused"))));
+        assertFalse(CircuitBreakingDataSource.isConnectFailure(new SQLTransientConnectionException("timeout")));
+        assertFalse(CircuitBreakingDataSource.isConnectFailure(new SQLException("password authentication failed", "28P01")));
+    }
+
+    @Test
+    void inconclusiveProbeReleasesHalfOpenSlot() {
+        ProjectCircuitBreaker breaker = new ProjectCircuitBreaker(1, 1000);
+        long now = 1_000 * MS;
+        breaker.onFailure(now);
+
+        assertTrue(breaker.tryAcquire(now + 1000 * MS));
+        assertFalse(breaker.tryAcquire(now + 1001 * MS));
+        breaker.onInconclusive(now + 1002 * MS);
+        assertEquals(ProjectCircuitBreaker.State.HALF_OPEN, breaker.state());
+        assertTrue(breaker.tryAcquire(now + 1003 * MS));
+    }
+
+    /**
+     * HikariCP 借用超时且最近一次建连失败：沿用驱动的 08 类 SQLState 并以其为 cause
+     */
+    private static SQLTransientConnectionException connectTimeout() {
+        return new SQLTransientConnectionException("p1 - Connection is not available", "08001",
+                new SQLException("Connection to localhost:5432 refused", "08001"));
+    }
+}
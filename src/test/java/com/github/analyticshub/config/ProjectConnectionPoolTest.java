@@ -0,0 +1,101 @@
+package com.github.analyticshub.config;
+
+import com.zaxxer.hikari.HikariConfigMXBean;
+import com.zaxxer.hikari.HikariDataSource;
+import com.zaxxer.hikari.HikariPoolMXBean;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.mockito.junit.jupiter.MockitoSettings;
+import org.mockito.quality.Strictness;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+@MockitoSettings(strictness = Strictness.LENIENT)
+class ProjectConnectionPoolTest {
+
+    @Mock
+    private HikariDataSource dataSource;
+
+    @Mock
+    private HikariPoolMXBean poolBean;
+
+    @Mock
+    private HikariConfigMXBean configBean;
+
+    private final AtomicInteger maximumPoolSize = new AtomicInteger(20);
+    private final AtomicInteger minimumIdle = new AtomicInteger(5);
+
+    private ProjectConnectionPool pool;
+
+    @BeforeEach
+    void setUp() {
+        when(dataSource.getHikariPoolMXBean()).thenReturn(poolBean);
+        when(dataSource.getHikariConfigMXBean()).thenReturn(configBean);
+        when(configBean.getMaximumPoolSize()).thenAnswer(inv -> maximumPoolSize.get());
+        doAnswer(inv -> {
+            maximumPoolSize.set(inv.getArgument(0));
+            return null;
+        }).when(configBean).setMaximumPoolSize(anyInt());
+        doAnswer(inv -> {
+            minimumIdle.set(inv.getArgument(0));
+            return null;
+        }).when(configBean).setMinimumIdle(anyInt());
+
+        pool = new ProjectConnectionPool(dataSource, 5, 2, 20);
+    }
+
+    @Test
+    void idlePoolShrinksToMinimum() {
+        pool.sample();
+        pool.resize();
+
+        assertEquals(2, maximumPoolSize.get());
+        assertEquals(2, minimumIdle.get());
+    }
+
+    @Test
+    void waitingThreadsGrowPoolImmediately() {
+        maximumPoolSize.set(2);
+        minimumIdle.set(2);
+        when(poolBean.getActiveConnections()).thenReturn(2);
+        when(poolBean.getThreadsAwaitingConnection()).thenReturn(4);
+
+        pool.sample();
+
+        // 需求 6 → 6 + 3 + 1
+        assertEquals(10, maximumPoolSize.get());
+        assertEquals(5, minimumIdle.get());
+    }
+
+    @Test
+    void touchReportsFirstAccessAndAccessAfterLongIdle() {
+        long second = 1_000_000_000L;
+        long start = 100 * second;
+        assertTrue(pool.touch(start, 60 * second));
+        assertFalse(pool.touch(start + 10 * second, 60 * second));
+        assertFalse(pool.isIdleLongerThan(start + 20 * second, 30 * second));
+        assertTrue(pool.isIdleLongerThan(start + 50 * second, 30 * second));
+        assertTrue(pool.touch(start + 100 * second, 60 * second));
+    }
+
+    @Test
+    void resizeFollowsPeakDemandWithinBounds() {
+        when(poolBean.getThreadsAwaitingConnection()).thenReturn(0);
+        when(poolBean.getActiveConnections()).thenReturn(4, 1);
+        pool.sample();
+        pool.sample();
+        pool.resize();
+        assertEquals(7, maximumPoolSize.get());
+
+        assertEquals(20, pool.targetSize(100));
+        assertEquals(2, pool.targetSize(0));
+    }
+}
@@ -0,0 +1,95 @@
+package com.github.analyticshub.config;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.mockito.junit.jupiter.MockitoSettings;
+import org.mockito.quality.Strictness;
+import org.springframework.boot.health.contributor.Health;
+import org.springframework.boot.health.contributor.Status;
+
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+@MockitoSettings(strictness = Strictness.LENIENT)
+class ProjectPoolPrewarmerTest {
+
+    @Mock
+    private MultiDataSourceManager dataSourceManager;
+
+    @Mock
+    private DataSource dataSource;
+
+    @Mock
+    private Connection connection;
+
+    @Mock
+    private PreparedStatement statement;
+
+    @Mock
+    private ResultSet resultSet;
+
+    @Mock
+    private ResultSetMetaData metaData;
+
+    private String lastTable;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        when(dataSourceManager.activeProjectIds()).thenReturn(List.of("p1", "p2"));
+        when(dataSourceManager.prewarm("p1")).thenReturn(5);
+        when(dataSourceManager.prewarm("p2")).thenThrow(new IllegalStateException("connection refused"));
+        when(dataSourceManager.getDataSource("p1")).thenReturn(dataSource);
+        when(dataSourceManager.getTableName(eq("p1"), anyString()))
+                .thenAnswer(inv -> "\"p1_" + inv.getArgument(1) + "\"");
+
+        when(dataSource.getConnection()).thenReturn(connection);
+        when(connection.prepareStatement(anyString())).thenReturn(statement);
+        doAnswer(inv -> {
+            lastTable = inv.getArgument(1);
+            return null;
+        }).when(statement).setString(eq(1), anyString());
+        when(statement.executeQuery()).thenReturn(resultSet);
+        when(resultSet.next()).thenReturn(true, false, true, false, true, false, true, false, true, false);
+        when(resultSet.getMetaData()).thenReturn(metaData);
+        when(metaData.getColumnCount()).thenReturn(1);
+        // sessions 表不存在
+        when(resultSet.getString(1)).thenAnswer(inv -> lastTable.equals("\"p1_sessions\"") ? null : lastTable);
+    }
+
+    @Test
+    void disabledPrewarmIsAlwaysUp() {
+        ProjectPoolPrewarmer prewarmer = new ProjectPoolPrewarmer(dataSourceManager, false, 4, 60_000);
+
+        assertEquals(Status.UP, prewarmer.health().getStatus());
+        assertTrue(prewarmer.isCompleted());
+        verifyNoInteractions(dataSourceManager);
+    }
+
+    @Test
+    void readinessIsOutOfServiceUntilPrewarmCompletes() {
+        ProjectPoolPrewarmer prewarmer = new ProjectPoolPrewarmer(dataSourceManager, true, 4, 60_000);
+        assertEquals(Status.OUT_OF_SERVICE, prewarmer.health().getStatus());
+
+        prewarmer.prewarmAll();
+
+        Health health = prewarmer.health();
+        assertEquals(Status.UP, health.getStatus());
+        assertEquals(2, health.getDetails().get("projects"));
+        assertEquals(1, health.getDetails().get("warmed"));
+        assertTrue(((Map<?, ?>) health.getDetails().get("failed")).containsKey("p2"));
+        assertEquals(Map.of("p1", List.of("sessions")), health.getDetails().get("missingTables"));
+    }
+}
@@ -0,0 +1,85 @@
+package com.github.analyticshub.config;
+
+import com.zaxxer.hikari.HikariDataSource;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.mockito.junit.jupiter.MockitoSettings;
+import org.mockito.quality.Strictness;
+
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLTransientConnectionException;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+@MockitoSettings(strictness = Strictness.LENIENT)
+class ReplicaRoutingDataSourceTest {
+
+    @Mock
+    private ProjectConnectionPool replicaPool;
+
+    @Mock
+    private HikariDataSource replicaDataSource;
+
+    @Mock
+    private DataSource primary;
+
+    @Mock
+    private Connection replicaConnection;
+
+    @Mock
+    private Connection primaryConnection;
+
+    @Mock
+    private PreparedStatement statement;
+
+    @Mock
+    private ResultSet resultSet;
+
+    private ReplicaRoutingDataSource routing;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        when(replicaPool.dataSource()).thenReturn(replicaDataSource);
+        when(replicaDataSource.getConnection()).thenReturn(replicaConnection);
+        when(primary.getConnection()).thenReturn(primaryConnection);
+        when(replicaConnection.prepareStatement(anyString())).thenReturn(statement);
+        when(statement.executeQuery()).thenReturn(resultSet);
+        when(resultSet.next()).thenReturn(true);
+        routing = new ReplicaRoutingDataSource("p1", replicaPool, () -> primary, 1000, 60_000, 60_000);
+    }
+
+    @Test
+    void routesToReplicaOnlyWhenLagIsKnownAndWithinLimit() throws Exception {
+        assertFalse(routing.isReplicaUsable(System.nanoTime()));
+
+        when(resultSet.getLong(1)).thenReturn(200L);
+        routing.checkLag();
+        assertEquals(200L, routing.lagMs());
+        assertSame(replicaConnection, routing.getConnection());
+
+        when(resultSet.getLong(1)).thenReturn(5000L);
+        routing.checkLag();
+        assertSame(primaryConnection, routing.getConnection());
+    }
+
+    @Test
+    void fallsBackToPrimaryWhenReplicaIsUnreachable() throws Exception {
+        when(resultSet.getLong(1)).thenReturn(0L);
+        routing.checkLag();
+        when(replicaDataSource.getConnection()).thenThrow(new SQLTransientConnectionException("timeout"));
+
+        assertSame(primaryConnection, routing.getConnection());
+        // retry-after 内不再尝试副本
+        assertSame(primaryConnection, routing.getConnection());
+        verify(replicaDataSource, times(2)).getConnection();
+    }
+}
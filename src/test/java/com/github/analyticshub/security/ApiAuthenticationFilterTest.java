@@ -1,5 +1,7 @@
 package com.github.analyticshub.security;
 
+import com.github.analyticshub.service.NdjsonStreamIngestor;
+import com.github.analyticshub.util.CryptoUtils;
 import org.junit.jupiter.api.Test;
 
 import static org.junit.jupiter.api.Assertions.assertFalse;
@@ -18,4 +20,16 @@ class ApiAuthenticationFilterTest {
         assertFalse(ApiAuthenticationFilter.isValidUserId("user@example.com"));
         assertFalse(ApiAuthenticationFilter.isValidUserId("user/../token"));
     }
+
+    @Test
+    void streamPathsSignOverDeclaredDigest() {
+        assertTrue(ApiAuthenticationFilter.isStreamPath("/api/v1/events/stream"));
+        assertTrue(ApiAuthenticationFilter.isStreamPath("/api/v1/traffic-metrics/stream"));
+        assertFalse(ApiAuthenticationFilter.isStreamPath("/api/v1/events/batch"));
+
+        assertTrue(NdjsonStreamIngestor.isValidDigest(CryptoUtils.sha256Hex("x")));
+        assertFalse(NdjsonStreamIngestor.isValidDigest("abc"));
+        assertFalse(NdjsonStreamIngestor.isValidDigest(null));
+        assertFalse(NdjsonStreamIngestor.isValidDigest("z".repeat(64)));
+    }
 }
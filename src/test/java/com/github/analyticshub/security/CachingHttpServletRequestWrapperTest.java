@@ -0,0 +1,197 @@
+package com.github.analyticshub.security;
+
+import com.github.analyticshub.util.ByteArrayPool;
+import jakarta.servlet.ReadListener;
+import jakarta.servlet.ServletInputStream;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletRequestWrapper;
+import org.junit.jupiter.api.Test;
+import org.springframework.mock.web.MockHttpServletRequest;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class CachingHttpServletRequestWrapperTest {
+
+    private static final String BODY = "{\"eventType\":\"open_app\",\"timestamp\":1700000000000}";
+
+    @Test
+    void declaredLengthOverLimitIsRejectedBeforeReading() {
+        MockHttpServletRequest request = new MockHttpServletRequest("POST", "/api/v1/events/batch") {
+            @Override
+            public ServletInputStream getInputStream() {
+                throw new AssertionError("请求体不应被读取");
+            }
+        };
+        request.setContent(new byte[2048]);
+
+        assertThrows(CachingHttpServletRequestWrapper.BodyTooLargeException.class,
+                () -> new CachingHttpServletRequestWrapper(request, new ByteArrayPool(4096, 65536, 4), 1024));
+    }
+
+    @Test
+    void declaredLengthDoesNotDriveUpFrontAllocation() throws Exception {
+        ByteArrayPool pool = new ByteArrayPool(4096, 65536, 4);
+        // 声明 8MB 但只发送了几十字节（如客户端断开）：不应按声明长度分配
+        CachingHttpServletRequestWrapper cached = new CachingHttpServletRequestWrapper(
+                declared(BODY.getBytes(StandardCharsets.UTF_8), 8 * 1024 * 1024), pool, 10 * 1024 * 1024);
+
+        assertTrue(cached.getBodyBuffer().length <= pool.maxBufferBytes());
+        assertEquals(BODY, cached.getBody());
+    }
+
+    @Test
+    void declaredBodyLargerThanPoolBuffersIsReadFully() throws Exception {
+        ByteArrayPool pool = new ByteArrayPool(4096, 65536, 4);
+        byte[] body = BODY.repeat(5000).getBytes(StandardCharsets.UTF_8);
+
+        CachingHttpServletRequestWrapper cached =
+                new CachingHttpServletRequestWrapper(declared(body, body.length), pool, body.length);
+
+        assertEquals(body.length, cached.getBodyLength());
+        assertArrayEquals(body, cached.getBodyBytes());
+    }
+
+    @Test
+    void chunkedBodyGrowsUntilLimit() throws Exception {
+        ByteArrayPool pool = new ByteArrayPool(4096, 65536, 4);
+        byte[] body = BODY.repeat(1000).getBytes(StandardCharsets.UTF_8);
+
+        CachingHttpServletRequestWrapper cached = new CachingHttpServletRequestWrapper(chunked(body), pool, body.length);
+        assertEquals(body.length, cached.getBodyLength());
+        assertArrayEquals(body, cached.getBodyBytes());
+        cached.release();
+
+        assertThrows(CachingHttpServletRequestWrapper.BodyTooLargeException.class,
+                () -> new CachingHttpServletRequestWrapper(chunked(body), pool, body.length - 1));
+        // 超限时已借出的缓冲区同样归还
+        assertTrue(pool.idleCount() > 0);
+    }
+
+    @Test
+    void bulkReadsAndReaderServeCachedBody() throws Exception {
+        MockHttpServletRequest request = new MockHttpServletRequest("POST", "/api/v1/events");
+        request.setContent(BODY.getBytes(StandardCharsets.UTF_8));
+        CachingHttpServletRequestWrapper cached =
+                new CachingHttpServletRequestWrapper(request, new ByteArrayPool(4096, 65536, 4), 1024);
+
+        ServletInputStream in = cached.getInputStream();
+        byte[] target = new byte[BODY.length() + 10];
+        assertEquals(BODY.length(), in.read(target, 5, target.length - 5));
+        assertEquals(BODY, new String(target, 5, BODY.length(), StandardCharsets.UTF_8));
+        assertTrue(in.isFinished());
+        assertEquals(-1, in.read(target, 0, 1));
+
+        // 可重复读取
+        assertEquals(BODY, cached.getReader().readLine());
+        assertEquals(BODY, cached.getBody());
+    }
+
+    @Test
+    void readListenerIsNotifiedImmediately() throws Exception {
+        MockHttpServletRequest request = new MockHttpServletRequest("POST", "/api/v1/events");
+        request.setContent(BODY.getBytes(StandardCharsets.UTF_8));
+        CachingHttpServletRequestWrapper cached =
+                new CachingHttpServletRequestWrapper(request, new ByteArrayPool(4096, 65536, 4), 1024);
+
+        List<String> calls = new ArrayList<>();
+        ServletInputStream in = cached.getInputStream();
+        in.setReadListener(new ReadListener() {
+            @Override
+            public void onDataAvailable() throws IOException {
+                calls.add("data:" + new String(in.readAllBytes(), StandardCharsets.UTF_8));
+            }
+
+            @Override
+            public void onAllDataRead() {
+                calls.add("done");
+            }
+
+            @Override
+            public void onError(Throwable t) {
+                calls.add("error");
+            }
+        });
+
+        assertEquals(List.of("data:" + BODY, "done"), calls);
+    }
+
+    @Test
+    void releaseReturnsBufferToPool() throws Exception {
+        ByteArrayPool pool = new ByteArrayPool(4096, 65536, 4);
+        MockHttpServletRequest request = new MockHttpServletRequest("POST", "/api/v1/events");
+        request.setContent(BODY.getBytes(StandardCharsets.UTF_8));
+
+        CachingHttpServletRequestWrapper first = new CachingHttpServletRequestWrapper(request, pool, 1024);
+        byte[] buffer = first.getBodyBuffer();
+        first.release();
+        assertEquals(1, pool.idleCount());
+
+        request.setContent(BODY.getBytes(StandardCharsets.UTF_8));
+        CachingHttpServletRequestWrapper second = new CachingHttpServletRequestWrapper(request, pool, 1024);
+        assertSame(buffer, second.getBodyBuffer());
+        assertEquals(BODY, second.getBody());
+    }
+
+    /**
+     * 未声明 Content-Length、每次 read 最多返回 100 字节的请求（模拟分块传输）
+     */
+    private static HttpServletRequest chunked(byte[] body) {
+        return declared(body, -1);
+    }
+
+    /**
+     * 声明指定 Content-Length、每次 read 最多返回 100 字节的请求
+     */
+    private static HttpServletRequest declared(byte[] body, long contentLength) {
+        MockHttpServletRequest raw = new MockHttpServletRequest("POST", "/api/v1/events/batch");
+        ByteArrayInputStream source = new ByteArrayInputStream(body);
+        ServletInputStream stream = new ServletInputStream() {
+            @Override
+            public boolean isFinished() {
+                return source.available() == 0;
+            }
+
+            @Override
+            public boolean isReady() {
+                return true;
+            }
+
+            @Override
+            public void setReadListener(ReadListener readListener) {
+                throw new UnsupportedOperationException();
+            }
+
+            @Override
+            public int read() {
+                return source.read();
+            }
+
+            @Override
+            public int read(byte[] b, int off, int len) {
+                return source.read(b, off, Math.min(len, 100));
+            }
+        };
+        return new HttpServletRequestWrapper(raw) {
+            @Override
+            public long getContentLengthLong() {
+                return contentLength;
+            }
+
+            @Override
+            public int getContentLength() {
+                return (int) Math.min(contentLength, Integer.MAX_VALUE);
+            }
+
+            @Override
+            public ServletInputStream getInputStream() {
+                return stream;
+            }
+        };
+    }
+}
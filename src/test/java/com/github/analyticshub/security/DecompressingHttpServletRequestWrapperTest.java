@@ -0,0 +1,110 @@
+package com.github.analyticshub.security;
+
+import com.github.analyticshub.util.ByteArrayPool;
+import jakarta.servlet.ReadListener;
+import jakarta.servlet.ServletInputStream;
+import jakarta.servlet.http.HttpServletRequest;
+import org.junit.jupiter.api.Test;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.util.StreamUtils;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.GZIPOutputStream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class DecompressingHttpServletRequestWrapperTest {
+
+    private static final ByteArrayPool POOL = new ByteArrayPool(4096, 1024 * 1024, 4);
+    private static final String BODY = "[{\"eventType\":\"open_app\",\"timestamp\":1700000000000}]".repeat(20);
+
+    @Test
+    void gzipBodyIsDecompressedAndEncodingHeadersHidden() throws Exception {
+        MockHttpServletRequest raw = compressedRequest("gzip", gzip(BODY));
+
+        HttpServletRequest request = DecompressingHttpServletRequestWrapper.wrapIfEncoded(raw, 1024 * 1024);
+        CachingHttpServletRequestWrapper cached = new CachingHttpServletRequestWrapper(request, POOL, 1024 * 1024);
+
+        // 签名覆盖解压后的原始 JSON
+        assertEquals(BODY, cached.getBody());
+        assertNull(cached.getHeader("Content-Encoding"));
+        assertEquals(-1, cached.getContentLength());
+    }
+
+    @Test
+    void deflateBodyIsDecompressed() throws Exception {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try (DeflaterOutputStream deflater = new DeflaterOutputStream(out)) {
+            deflater.write(BODY.getBytes(StandardCharsets.UTF_8));
+        }
+
+        HttpServletRequest request = DecompressingHttpServletRequestWrapper.wrapIfEncoded(
+                compressedRequest("deflate", out.toByteArray()), 0);
+        assertEquals(BODY, StreamUtils.copyToString(request.getInputStream(), StandardCharsets.UTF_8));
+    }
+
+    @Test
+    void decompressedSizeIsCapped() throws Exception {
+        HttpServletRequest request = DecompressingHttpServletRequestWrapper.wrapIfEncoded(
+                compressedRequest("gzip", gzip(BODY)), 100);
+
+        assertThrows(DecompressingHttpServletRequestWrapper.DecompressedSizeExceededException.class,
+                () -> new CachingHttpServletRequestWrapper(request, POOL, 1024 * 1024));
+    }
+
+    @Test
+    void readListenerReadsDecompressedBody() throws Exception {
+        HttpServletRequest request = DecompressingHttpServletRequestWrapper.wrapIfEncoded(
+                compressedRequest("gzip", gzip(BODY)), 0);
+
+        List<String> calls = new ArrayList<>();
+        ServletInputStream in = request.getInputStream();
+        in.setReadListener(new ReadListener() {
+            @Override
+            public void onDataAvailable() throws IOException {
+                calls.add("data:" + new String(in.readAllBytes(), StandardCharsets.UTF_8));
+            }
+
+            @Override
+            public void onAllDataRead() {
+                calls.add("done");
+            }
+
+            @Override
+            public void onError(Throwable t) {
+                calls.add("error");
+            }
+        });
+
+        assertEquals(List.of("data:" + BODY, "done"), calls);
+    }
+
+    @Test
+    void plainAndUnsupportedEncodings() throws Exception {
+        MockHttpServletRequest plain = new MockHttpServletRequest("POST", "/api/v1/events/batch");
+        assertSame(plain, DecompressingHttpServletRequestWrapper.wrapIfEncoded(plain, 0));
+
+        assertThrows(DecompressingHttpServletRequestWrapper.UnsupportedContentEncodingException.class,
+                () -> DecompressingHttpServletRequestWrapper.wrapIfEncoded(compressedRequest("br", new byte[0]), 0));
+    }
+
+    private static MockHttpServletRequest compressedRequest(String encoding, byte[] body) {
+        MockHttpServletRequest request = new MockHttpServletRequest("POST", "/api/v1/events/batch");
+        request.addHeader("Content-Encoding", encoding);
+        request.setContent(body);
+        return request;
+    }
+
+    private static byte[] gzip(String text) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try (GZIPOutputStream gzip = new GZIPOutputStream(out)) {
+            gzip.write(text.getBytes(StandardCharsets.UTF_8));
+        }
+        return out.toByteArray();
+    }
+}
@@ -0,0 +1,132 @@
+package com.github.analyticshub.security;
+
+import com.github.analyticshub.config.MultiDataSourceManager;
+import com.github.analyticshub.entity.Device;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.mockito.junit.jupiter.MockitoSettings;
+import org.mockito.quality.Strictness;
+
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.time.Instant;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+@MockitoSettings(strictness = Strictness.LENIENT)
+class DeviceCredentialCacheTest {
+
+    private static final String PROJECT_ID = "test-project";
+    private static final String DEVICE_ID = "11111111-1111-4111-8111-111111111111";
+    private static final String API_KEY = "ak_valid";
+
+    @Mock
+    private MultiDataSourceManager dataSourceManager;
+
+    @Mock
+    private DataSource dataSource;
+
+    @Mock
+    private Connection connection;
+
+    @Mock
+    private PreparedStatement statement;
+
+    @Mock
+    private ResultSet resultSet;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        when(dataSourceManager.getDataSource(PROJECT_ID)).thenReturn(dataSource);
+        when(dataSourceManager.getTableName(PROJECT_ID, "devices")).thenReturn("devices");
+        when(dataSource.getConnection()).thenReturn(connection);
+        when(connection.prepareStatement(anyString())).thenReturn(statement);
+        when(statement.executeQuery()).thenReturn(resultSet);
+
+        when(resultSet.getLong("id")).thenReturn(1L);
+        when(resultSet.getString("device_id")).thenReturn(DEVICE_ID);
+        when(resultSet.getString("api_key")).thenReturn(API_KEY);
+        when(resultSet.getString("secret_key")).thenReturn("sk_secret");
+        when(resultSet.getString("project_id")).thenReturn(PROJECT_ID);
+        when(resultSet.getTimestamp(anyString())).thenReturn(Timestamp.from(Instant.now()));
+    }
+
+    @Test
+    void knownDeviceIsServedFromCache() throws Exception {
+        when(resultSet.next()).thenReturn(true, false);
+        DeviceCredentialCache cache = cache(60_000);
+
+        Device first = cache.find(PROJECT_ID, API_KEY, DEVICE_ID).device();
+        DeviceCredentialCache.DeviceCredential second = cache.find(PROJECT_ID, API_KEY, DEVICE_ID.toUpperCase());
+
+        assertEquals("sk_secret", first.getSecretKey());
+        assertEquals("sk_secret", second.device().getSecretKey());
+        assertNotSame(first, second.device());
+        assertSame(cache.find(PROJECT_ID, API_KEY, DEVICE_ID).signingKey(), second.signingKey());
+        verify(statement, times(1)).executeQuery();
+    }
+
+    @Test
+    void unknownCredentialsAreNegativelyCached() throws Exception {
+        when(resultSet.next()).thenReturn(false);
+        DeviceCredentialCache cache = cache(60_000);
+
+        assertNull(cache.find(PROJECT_ID, "ak_guess", DEVICE_ID));
+        assertNull(cache.find(PROJECT_ID, "ak_guess", DEVICE_ID));
+
+        verify(statement, times(1)).executeQuery();
+    }
+
+    @Test
+    void mismatchedApiKeyIsNotServedFromCache() throws Exception {
+        when(resultSet.next()).thenReturn(true, false, false);
+        DeviceCredentialCache cache = cache(60_000);
+
+        assertNotNull(cache.find(PROJECT_ID, API_KEY, DEVICE_ID));
+        assertNull(cache.find(PROJECT_ID, "ak_other", DEVICE_ID));
+
+        verify(statement, times(2)).executeQuery();
+    }
+
+    @Test
+    void invalidateForcesReload() throws Exception {
+        when(resultSet.next()).thenReturn(true, false, true, false);
+        DeviceCredentialCache cache = cache(60_000);
+
+        cache.find(PROJECT_ID, API_KEY, DEVICE_ID);
+        cache.invalidate(PROJECT_ID, DEVICE_ID);
+        cache.find(PROJECT_ID, API_KEY, DEVICE_ID);
+
+        verify(statement, times(2)).executeQuery();
+    }
+
+    @Test
+    void expiredEntryIsUsedWhenDatabaseIsUnavailable() throws Exception {
+        when(resultSet.next()).thenReturn(true, false);
+        DeviceCredentialCache cache = cache(0);
+
+        assertNotNull(cache.find(PROJECT_ID, API_KEY, DEVICE_ID));
+
+        when(dataSource.getConnection()).thenThrow(new SQLException("connection refused", "08001"));
+        DeviceCredentialCache.DeviceCredential stale = cache.find(PROJECT_ID, API_KEY, DEVICE_ID);
+
+        assertNotNull(stale);
+        assertEquals("sk_secret", stale.device().getSecretKey());
+        assertThrows(RuntimeException.class, () -> cache.find(PROJECT_ID, "ak_other", DEVICE_ID));
+    }
+
+    private DeviceCredentialCache cache(long ttlMs) {
+        return new DeviceCredentialCache(dataSourceManager, new SimpleMeterRegistry(), true, 100, ttlMs, 100, 60_000);
+    }
+}
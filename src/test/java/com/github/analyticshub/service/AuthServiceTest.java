@@ -3,6 +3,7 @@ package com.github.analyticshub.service;
 import com.github.analyticshub.config.MultiDataSourceManager;
 import com.github.analyticshub.dto.DeviceRegisterRequest;
 import com.github.analyticshub.dto.DeviceRegisterResponse;
+import com.github.analyticshub.security.DeviceCredentialCache;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
@@ -29,6 +30,9 @@ class AuthServiceTest {
     @Mock
     private MultiDataSourceManager dataSourceManager;
 
+    @Mock
+    private DeviceCredentialCache deviceCredentialCache;
+
     @Mock
     private DataSource dataSource;
 
@@ -43,7 +47,7 @@ class AuthServiceTest {
 
     @BeforeEach
     void setUp() throws Exception {
-        authService = new AuthService(dataSourceManager);
+        authService = new AuthService(dataSourceManager, deviceCredentialCache);
 
         when(dataSourceManager.getProjectConfig(PROJECT_ID)).thenReturn(projectConfig());
         when(dataSourceManager.getDataSource(PROJECT_ID)).thenReturn(dataSource);
@@ -68,6 +72,7 @@ class AuthServiceTest {
         assertTrue(response.secretKey().startsWith("sk_"));
         verify(connection).prepareStatement(contains("UPDATE"));
         verify(connection, never()).prepareStatement(contains("INSERT"));
+        verify(deviceCredentialCache).invalidate(PROJECT_ID, "11111111-1111-4111-8111-111111111111");
     }
 
     @Test
@@ -105,7 +110,8 @@ class AuthServiceTest {
                 "analytics_user",
                 "password",
                 "analytics_",
-                true
+                true,
+                null
         );
     }
 }
@@ -0,0 +1,146 @@
+package com.github.analyticshub.service;
+
+import com.github.analyticshub.config.MultiDataSourceManager;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.mockito.junit.jupiter.MockitoSettings;
+import org.mockito.quality.Strictness;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import javax.sql.DataSource;
+import java.sql.Array;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+@MockitoSettings(strictness = Strictness.LENIENT)
+class CounterAccumulatorTest {
+
+    private static final String PROJECT_ID = "test-project";
+
+    @Mock
+    private MultiDataSourceManager dataSourceManager;
+
+    @Mock
+    private DataSource dataSource;
+
+    @Mock
+    private Connection connection;
+
+    @Mock
+    private PreparedStatement statement;
+
+    @Mock
+    private Array array;
+
+    private CounterAccumulator accumulator;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        // 刷新间隔足够长，测试中只通过 flushAll 手动刷新
+        accumulator = new CounterAccumulator(dataSourceManager, new SimpleMeterRegistry(), true, 3_600_000, 3_600_000);
+
+        when(dataSourceManager.getTableName(PROJECT_ID, "counters")).thenReturn("counters");
+        when(dataSourceManager.getDataSource(PROJECT_ID)).thenReturn(dataSource);
+        when(dataSource.getConnection()).thenReturn(connection);
+        when(connection.prepareStatement(anyString())).thenReturn(statement);
+        when(connection.createArrayOf(anyString(), any())).thenReturn(array);
+        when(statement.executeUpdate()).thenReturn(1);
+    }
+
+    @AfterEach
+    void tearDown() {
+        accumulator.shutdown();
+    }
+
+    @Test
+    void concurrentAddsAreVisibleAsPendingBeforeFlush() throws Exception {
+        int threads = 8;
+        int perThread = 10_000;
+        try (ExecutorService executor = Executors.newFixedThreadPool(threads)) {
+            List<Future<?>> futures = new ArrayList<>();
+            for (int t = 0; t < threads; t++) {
+                futures.add(executor.submit(() -> {
+                    for (int i = 0; i < perThread; i++) {
+                        accumulator.add(PROJECT_ID, "letters", 1);
+                    }
+                }));
+            }
+            for (Future<?> future : futures) {
+                future.get();
+            }
+        }
+
+        assertEquals((long) threads * perThread, accumulator.pending(PROJECT_ID, "letters"));
+        verifyNoInteractions(dataSource);
+    }
+
+    @Test
+    void flushWritesOneSortedUpsertPerProject() throws Exception {
+        accumulator.add(PROJECT_ID, "zeta", 2);
+        accumulator.add(PROJECT_ID, "alpha", 5);
+        accumulator.add(PROJECT_ID, "alpha", 1);
+
+        accumulator.flushAll();
+
+        ArgumentCaptor<String> sql = ArgumentCaptor.forClass(String.class);
+        verify(connection, times(1)).prepareStatement(sql.capture());
+        assertTrue(sql.getValue().contains("unnest(?::text[], ?::bigint[])"));
+        assertTrue(sql.getValue().contains("ON CONFLICT (project_id, counter_key)"));
+        verify(connection).createArrayOf("text", new Object[]{"alpha", "zeta"});
+        verify(connection).createArrayOf("bigint", new Object[]{6L, 2L});
+
+        assertEquals(0, accumulator.pending(PROJECT_ID, "alpha"));
+        assertEquals(0, accumulator.pending(PROJECT_ID, "zeta"));
+    }
+
+    @Test
+    void failedFlushKeepsDeltasForNextRound() throws Exception {
+        accumulator.add(PROJECT_ID, "letters", 3);
+        when(statement.executeUpdate()).thenThrow(new SQLException("connection refused", "08001"));
+
+        accumulator.flushAll();
+
+        assertEquals(3, accumulator.pending(PROJECT_ID, "letters"));
+    }
+
+    @Test
+    void addInsideTransactionIsAppliedAfterCommit() {
+        TransactionSynchronizationManager.initSynchronization();
+        try {
+            accumulator.add(PROJECT_ID, "letters", 1);
+            assertEquals(0, accumulator.pending(PROJECT_ID, "letters"));
+
+            TransactionSynchronizationManager.getSynchronizations().forEach(TransactionSynchronization::afterCommit);
+        } finally {
+            TransactionSynchronizationManager.clearSynchronization();
+        }
+        assertEquals(1, accumulator.pending(PROJECT_ID, "letters"));
+    }
+
+    @Test
+    void discardDropsPendingDeltas() {
+        accumulator.add(PROJECT_ID, "letters", 4);
+
+        accumulator.discard(PROJECT_ID, "letters");
+
+        assertEquals(0, accumulator.pending(PROJECT_ID, "letters"));
+    }
+}
@@ -9,9 +9,17 @@ import org.junit.jupiter.api.extension.ExtendWith;
 import org.mockito.Mock;
 import org.mockito.junit.jupiter.MockitoExtension;
 
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.util.List;
 import java.util.Map;
+import java.util.Set;
 
 import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.*;
 
 @ExtendWith(MockitoExtension.class)
 class CounterAutomationTest {
@@ -21,11 +29,14 @@ class CounterAutomationTest {
     @Mock
     private MultiDataSourceManager dataSourceManager;
 
+    @Mock
+    private CounterAccumulator counterAccumulator;
+
     private ObjectMapper objectMapper = new ObjectMapper();
 
     @BeforeEach
     void setUp() {
-        counterService = new CounterService(dataSourceManager, objectMapper);
+        counterService = new CounterService(dataSourceManager, objectMapper, counterAccumulator, 60_000);
     }
 
     @Test
@@ -60,4 +71,54 @@ class CounterAutomationTest {
         assertTrue(counterService.isMatch(trigger, "send_letter", Map.of("status", "success", "type", "quick")));
         assertFalse(counterService.isMatch(trigger, "send_letter", Map.of("status", "success", "type", "slow")));
     }
+
+    @Test
+    void testRuleIndex_GroupsByEventType() throws Exception {
+        CounterRuleIndex index = CounterRuleIndex.build(Map.of(
+                "letters", objectMapper.readTree("{\"event_type\": \"send_letter\"}"),
+                "quick_letters", objectMapper.readTree("{\"event_type\": \"send_letter\", \"conditions\": {\"type\": \"quick\"}}"),
+                "opens", objectMapper.readTree("{\"event_type\": \"open_app\"}"),
+                "broken", objectMapper.readTree("{\"conditions\": {}}")
+        ));
+
+        assertEquals(Set.of("letters", "quick_letters"), Set.copyOf(index.match("send_letter", Map.of("type", "quick"))));
+        assertEquals(List.of("letters"), index.match("send_letter", null));
+        assertEquals(List.of("opens"), index.match("open_app", Map.of()));
+        assertTrue(index.match("unknown", Map.of()).isEmpty());
+    }
+
+    @Test
+    void testProcessEvent_LoadsRulesOnceUntilInvalidated() throws Exception {
+        DataSource dataSource = mock(DataSource.class);
+        Connection connection = mock(Connection.class);
+        PreparedStatement preparedStatement = mock(PreparedStatement.class);
+        ResultSet resultSet = mock(ResultSet.class);
+
+        when(dataSourceManager.getProjectConfig("p1")).thenReturn(mock(MultiDataSourceManager.ProjectConfig.class));
+        when(dataSourceManager.getDataSource("p1")).thenReturn(dataSource);
+        when(dataSourceManager.getTableName("p1", "counters")).thenReturn("counters");
+        when(dataSource.getConnection()).thenReturn(connection);
+        when(connection.prepareStatement(anyString())).thenReturn(preparedStatement);
+        when(preparedStatement.executeQuery()).thenReturn(resultSet);
+        when(resultSet.next()).thenReturn(true, false, true, false);
+        when(resultSet.getString("counter_key")).thenReturn("letters");
+        when(resultSet.getString("event_trigger")).thenReturn("{\"event_type\": \"send_letter\"}");
+        when(counterAccumulator.isEnabled()).thenReturn(true);
+
+        counterService.processEventAutoIncrements("p1", "send_letter", null);
+        counterService.processEventAutoIncrements("p1", "send_letter", null);
+        counterService.processEventAutoIncrements("p1", "open_app", null);
+
+        verify(counterAccumulator, times(2)).add("p1", "letters", 1L);
+        verify(preparedStatement, times(1)).executeQuery();
+        // 计数器表由项目库迁移创建，运行时不再执行 DDL
+        verify(connection, never()).createStatement();
+
+        // 删除计数器后索引失效，下一次事件重新加载规则
+        counterService.delete("p1", "other");
+        counterService.processEventAutoIncrements("p1", "send_letter", null);
+
+        verify(preparedStatement, times(2)).executeQuery();
+        verify(counterAccumulator, times(3)).add("p1", "letters", 1L);
+    }
 }
@@ -0,0 +1,135 @@
+package com.github.analyticshub.service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.github.analyticshub.dto.EventTrackRequest;
+import com.github.analyticshub.exception.BusinessException;
+import jakarta.validation.Validation;
+import jakarta.validation.Validator;
+import org.junit.jupiter.api.Test;
+import org.springframework.core.io.ByteArrayResource;
+import org.springframework.core.io.InputStreamSource;
+import org.springframework.http.HttpStatus;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * 批量事件流式读取测试
+ */
+class EventBatchStreamReaderTest {
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    private final Validator validator = Validation.buildDefaultValidatorFactory().getValidator();
+
+    @Test
+    void testEventsAreDeliveredInFixedSizeChunks() {
+        EventBatchStreamReader reader = new EventBatchStreamReader(objectMapper, validator, 2, 100, 0);
+        List<EventTrackRequest[]> chunks = new ArrayList<>();
+
+        int count = reader.read(body(events(5)), -1, chunks::add);
+
+        assertEquals(5, count);
+        assertEquals(List.of(2, 2, 1), chunks.stream().map(chunk -> chunk.length).toList());
+        assertEquals("evt_4", chunks.get(2)[0].eventType());
+    }
+
+    @Test
+    void testNullElementsAreSkipped() {
+        EventBatchStreamReader reader = new EventBatchStreamReader(objectMapper, validator, 10, 100, 0);
+        List<EventTrackRequest[]> chunks = new ArrayList<>();
+
+        String json = "[{\"eventType\":\"a\",\"timestamp\":1,\"properties\":{\"k\":[1,2]}}," +
+                "null," +
+                "{\"eventType\":\"c\",\"timestamp\":2}]";
+        reader.read(body(json), -1, chunks::add);
+
+        assertEquals(1, chunks.size());
+        assertEquals(List.of("a", "c"), List.of(chunks.get(0)).stream().map(EventTrackRequest::eventType).toList());
+    }
+
+    @Test
+    void testInvalidElementsRejectWholeBatchBeforeAnyChunk() {
+        EventBatchStreamReader reader = new EventBatchStreamReader(objectMapper, validator, 1, 100, 0);
+        String valid = "{\"eventType\":\"a\",\"timestamp\":1},";
+
+        for (String invalid : List.of(
+                "{\"eventType\":\"b\",\"timestamp\":1,\"sessionId\":\"not-a-uuid\"}",
+                "42",
+                "{\"eventType\":\"\",\"timestamp\":1}",
+                "{\"eventType\":\"b\"}")) {
+            List<EventTrackRequest[]> chunks = new ArrayList<>();
+
+            BusinessException ex = assertThrows(BusinessException.class,
+                    () -> reader.read(body("[" + valid + valid + invalid + "]"), -1, chunks::add), invalid);
+
+            assertEquals("VALIDATION_ERROR", ex.getCode(), invalid);
+            assertTrue(ex.getMessage().contains("第 3 条"), ex.getMessage());
+            assertTrue(chunks.isEmpty(), invalid);
+        }
+    }
+
+    @Test
+    void testSyntaxErrorLateInArrayWritesNothing() {
+        EventBatchStreamReader reader = new EventBatchStreamReader(objectMapper, validator, 2, 100, 0);
+        List<EventTrackRequest[]> chunks = new ArrayList<>();
+        String json = events(6);
+        String truncated = json.substring(0, json.length() - 10);
+
+        BusinessException ex = assertThrows(BusinessException.class,
+                () -> reader.read(body(truncated), -1, chunks::add));
+
+        assertEquals("VALIDATION_ERROR", ex.getCode());
+        assertTrue(chunks.isEmpty());
+    }
+
+    @Test
+    void testEventCountLimitAbortsBeforeAnyChunk() {
+        EventBatchStreamReader reader = new EventBatchStreamReader(objectMapper, validator, 2, 3, 0);
+        List<EventTrackRequest[]> chunks = new ArrayList<>();
+
+        BusinessException ex = assertThrows(BusinessException.class,
+                () -> reader.read(body(events(10)), -1, chunks::add));
+
+        assertEquals(HttpStatus.PAYLOAD_TOO_LARGE, ex.getHttpStatus());
+        assertTrue(chunks.isEmpty());
+    }
+
+    @Test
+    void testBodyLimitIsEnforcedWhileReading() {
+        EventBatchStreamReader reader = new EventBatchStreamReader(objectMapper, validator, 1000, 0, 64);
+
+        BusinessException declared = assertThrows(BusinessException.class,
+                () -> reader.read(body(events(1)), 1024, chunk -> {}));
+        assertEquals("BATCH_TOO_LARGE", declared.getCode());
+
+        // 未声明 Content-Length 时在读取过程中截断
+        BusinessException streamed = assertThrows(BusinessException.class,
+                () -> reader.read(body(events(10)), -1, chunk -> {}));
+        assertEquals("BATCH_TOO_LARGE", streamed.getCode());
+    }
+
+    @Test
+    void testNonArrayBodyIsRejected() {
+        EventBatchStreamReader reader = new EventBatchStreamReader(objectMapper, validator, 10, 10, 0);
+
+        BusinessException ex = assertThrows(BusinessException.class,
+                () -> reader.read(body("{\"eventType\":\"a\"}"), -1, chunk -> {}));
+        assertEquals("VALIDATION_ERROR", ex.getCode());
+    }
+
+    private static String events(int count) {
+        StringBuilder json = new StringBuilder("[");
+        for (int i = 0; i < count; i++) {
+            if (i > 0) json.append(',');
+            json.append("{\"eventType\":\"evt_").append(i).append("\",\"timestamp\":").append(1700000000000L + i).append('}');
+        }
+        return json.append(']').toString();
+    }
+
+    private static InputStreamSource body(String json) {
+        return new ByteArrayResource(json.getBytes(StandardCharsets.UTF_8));
+    }
+}
@@ -5,6 +5,7 @@ import com.github.analyticshub.config.MultiDataSourceManager;
 import com.github.analyticshub.dto.EventTrackRequest;
 import com.github.analyticshub.entity.Device;
 import com.github.analyticshub.security.RequestContext;
+import com.github.analyticshub.util.CryptoUtils;
 import org.junit.jupiter.api.AfterEach;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
@@ -17,6 +18,7 @@ import java.sql.Connection;
 import java.sql.DatabaseMetaData;
 import java.sql.PreparedStatement;
 import java.util.Map;
+import java.util.Set;
 import java.util.UUID;
 
 import static org.mockito.ArgumentMatchers.*;
@@ -33,6 +35,18 @@ class EventCounterIntegrationTest {
     @Mock
     private CounterService counterService;
 
+    @Mock
+    private EventWriteBehindPipeline writeBehindPipeline;
+
+    @Mock
+    private IdempotencyKeyStore idempotencyKeyStore;
+
+    @Mock
+    private IngestSpool ingestSpool;
+
+    @Mock
+    private TypeDictionary typeDictionary;
+
     @Mock
     private DataSource dataSource;
 
@@ -49,8 +63,12 @@ class EventCounterIntegrationTest {
 
     @BeforeEach
     void setUp() throws Exception {
-        eventService = new EventService(dataSourceManager, objectMapper, counterService);
+        eventService = new EventService(dataSourceManager, objectMapper, counterService,
+                new EventRowWriter(1000, typeDictionary), writeBehindPipeline, idempotencyKeyStore, ingestSpool,
+                new IngestIdGenerator(dataSourceManager, "text"), typeDictionary);
         
+        lenient().when(typeDictionary.writeEncoder(anyString(), any())).thenReturn(name -> name);
+
         // Mock DB connection hierarchy for JdbcTemplate
         when(dataSource.getConnection()).thenReturn(connection);
         when(connection.prepareStatement(anyString())).thenReturn(preparedStatement);
@@ -104,4 +122,23 @@ class EventCounterIntegrationTest {
         // Verify open_app triggered
         verify(counterService, times(1)).processEventAutoIncrements(eq("test-project"), eq("open_app"), any());
     }
+
+    @Test
+    void testTrackEventsBatch_SkipsDuplicateIdempotencyKeys() {
+        EventTrackRequest[] batch = new EventTrackRequest[]{
+                new EventTrackRequest("send_letter", System.currentTimeMillis(), null, null, "key-new"),
+                new EventTrackRequest("send_letter", System.currentTimeMillis(), null, null, "key-new"),
+                new EventTrackRequest("open_app", System.currentTimeMillis(), null, null, "key-seen")
+        };
+
+        when(dataSourceManager.getTableName(anyString(), eq("events"))).thenReturn("p_events");
+        when(idempotencyKeyStore.claimAll(eq("test-project"), eq(dataSource), anyMap()))
+                .thenReturn(Set.of(CryptoUtils.sha256Hex("key-new")));
+
+        eventService.trackEventsBatch(batch);
+
+        // 同批次重复键只写入一次；已被占用的键直接跳过
+        verify(counterService, times(1)).processEventAutoIncrements(eq("test-project"), eq("send_letter"), any());
+        verify(counterService, never()).processEventAutoIncrements(eq("test-project"), eq("open_app"), any());
+    }
 }
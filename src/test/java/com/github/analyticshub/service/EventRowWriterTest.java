@@ -0,0 +1,110 @@
+package com.github.analyticshub.service;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.mockito.junit.jupiter.MockitoSettings;
+import org.mockito.quality.Strictness;
+import org.postgresql.PGConnection;
+import org.postgresql.copy.CopyIn;
+import org.postgresql.copy.CopyManager;
+
+import javax.sql.DataSource;
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.sql.Connection;
+import java.sql.DatabaseMetaData;
+import java.sql.PreparedStatement;
+import java.sql.Timestamp;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+/**
+ * 事件行写入器测试：VALUES 分段与 COPY 切换
+ */
+@ExtendWith(MockitoExtension.class)
+@MockitoSettings(strictness = Strictness.LENIENT)
+class EventRowWriterTest {
+
+    private static final String TABLE = "\"analytics_events\"";
+
+    @Mock
+    private DataSource dataSource;
+
+    @Mock
+    private Connection connection;
+
+    @Mock
+    private PreparedStatement statement;
+
+    @Mock
+    private TypeDictionary typeDictionary;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        when(dataSource.getConnection()).thenReturn(connection);
+        when(connection.prepareStatement(anyString())).thenReturn(statement);
+        when(statement.executeUpdate()).thenReturn(1);
+        // ID 以 Types.OTHER 绑定时 JdbcTemplate 会查询数据库类型
+        DatabaseMetaData metaData = mock(DatabaseMetaData.class);
+        when(metaData.getDatabaseProductName()).thenReturn("PostgreSQL");
+        when(metaData.getDriverName()).thenReturn("PostgreSQL JDBC Driver");
+        when(statement.getConnection()).thenReturn(connection);
+        when(connection.getMetaData()).thenReturn(metaData);
+        when(typeDictionary.writeEncoder(anyString(), any())).thenReturn(name -> name);
+    }
+
+    @Test
+    void testValuesAreSplitAtBindParameterLimit() throws Exception {
+        EventRowWriter writer = new EventRowWriter(0, typeDictionary);
+
+        // 9 列 × 7281 行 = 65529 个参数，再多一行即超过 65535
+        assertEquals(7282, writer.insert(dataSource, TABLE, rows(7282)));
+
+        verify(connection, times(2)).prepareStatement(startsWith("INSERT INTO " + TABLE + " ("));
+        verify(connection, never()).unwrap(PGConnection.class);
+    }
+
+    @Test
+    void testBatchAtThresholdStreamsThroughCopy() throws Exception {
+        PGConnection pgConnection = mock(PGConnection.class);
+        CopyManager copyManager = mock(CopyManager.class);
+        CopyIn copyIn = mock(CopyIn.class);
+        when(connection.unwrap(PGConnection.class)).thenReturn(pgConnection);
+        when(pgConnection.getCopyAPI()).thenReturn(copyManager);
+        when(copyManager.copyIn(anyString())).thenReturn(copyIn);
+        when(copyIn.endCopy()).thenReturn(3L);
+        ByteArrayOutputStream copied = new ByteArrayOutputStream();
+        doAnswer(invocation -> {
+            copied.write(invocation.getArgument(0), invocation.getArgument(1), invocation.getArgument(2));
+            return null;
+        }).when(copyIn).writeToCopy(any(byte[].class), anyInt(), anyInt());
+
+        EventRowWriter writer = new EventRowWriter(3, typeDictionary);
+        assertEquals(3, writer.insert(dataSource, TABLE, rows(3)));
+
+        verify(copyManager).copyIn("COPY " + TABLE + " (event_id, device_id, user_id, session_id, event_type, "
+                + "event_timestamp, properties, project_id, created_at) FROM STDIN WITH (FORMAT csv)");
+        verify(connection, never()).prepareStatement(anyString());
+        String csv = copied.toString(StandardCharsets.UTF_8);
+        assertEquals(3, csv.lines().count());
+        assertTrue(csv.startsWith("\"evt_0\",\"11111111-1111-4111-8111-111111111111\",\"user-1\",,\"page_view\","));
+    }
+
+    private static List<EventRowWriter.EventRow> rows(int count) {
+        Timestamp createdAt = Timestamp.from(Instant.parse("2026-01-01T00:00:00Z"));
+        List<EventRowWriter.EventRow> rows = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            rows.add(new EventRowWriter.EventRow("evt_" + i, "11111111-1111-4111-8111-111111111111", "user-1",
+                    null, "page_view", 1700000000000L + i, "{\"i\":" + i + "}", "test-project", createdAt));
+        }
+        return rows;
+    }
+}
@@ -0,0 +1,188 @@
+package com.github.analyticshub.service;
+
+import com.github.analyticshub.config.MultiDataSourceManager;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.dao.DataIntegrityViolationException;
+
+import javax.sql.DataSource;
+import java.sql.Timestamp;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class EventWriteBehindPipelineTest {
+
+    private static final String PROJECT_ID = "test-project";
+
+    @Mock
+    private MultiDataSourceManager dataSourceManager;
+
+    @Mock
+    private EventRowWriter eventRowWriter;
+
+    @Mock
+    private CounterService counterService;
+
+    @Mock
+    private IngestSpool ingestSpool;
+
+    @Mock
+    private IdempotencyKeyStore idempotencyKeyStore;
+
+    @Mock
+    private DataSource dataSource;
+
+    private EventWriteBehindPipeline pipeline;
+
+    @BeforeEach
+    void setUp() {
+        pipeline = new EventWriteBehindPipeline(dataSourceManager, eventRowWriter, counterService, ingestSpool,
+                idempotencyKeyStore, true, PROJECT_ID, 3, 50, 100, "sync-after-flush", 1000, 1000);
+    }
+
+    @AfterEach
+    void tearDown() {
+        pipeline.shutdown();
+    }
+
+    @Test
+    void submittedEventsAreFlushedAsMultiRowBatches() throws Exception {
+        when(dataSourceManager.getTableName(PROJECT_ID, "events")).thenReturn("p_events");
+        when(dataSourceManager.getDataSource(PROJECT_ID)).thenReturn(dataSource);
+
+        List<CompletableFuture<String>> futures = new ArrayList<>();
+        for (int i = 0; i < 5; i++) {
+            futures.add(pipeline.submit(row("evt_" + i), null, null));
+        }
+        for (int i = 0; i < futures.size(); i++) {
+            assertEquals("evt_" + i, futures.get(i).get(2, TimeUnit.SECONDS));
+        }
+
+        @SuppressWarnings("unchecked")
+        ArgumentCaptor<List<EventRowWriter.EventRow>> captor = ArgumentCaptor.forClass(List.class);
+        verify(eventRowWriter, atLeastOnce()).insert(eq(dataSource), eq("p_events"), captor.capture());
+        int total = captor.getAllValues().stream().mapToInt(List::size).sum();
+        assertEquals(5, total);
+        assertTrue(captor.getAllValues().stream().allMatch(batch -> batch.size() <= 3));
+        // 计数器在 Future 完成之后维护
+        verify(counterService, timeout(2000).times(5)).processEventAutoIncrements(eq(PROJECT_ID), eq("open_app"), any());
+    }
+
+    @Test
+    void eventsLeftAfterDrainTimeoutFailSoCallersWriteSynchronously() throws Exception {
+        EventWriteBehindPipeline slowPipeline = new EventWriteBehindPipeline(dataSourceManager, eventRowWriter,
+                counterService, ingestSpool, idempotencyKeyStore, true, PROJECT_ID, 1, 1, 100, "sync-after-flush", 1000, 50);
+        when(dataSourceManager.getTableName(PROJECT_ID, "events")).thenReturn("p_events");
+        when(dataSourceManager.getDataSource(PROJECT_ID)).thenReturn(dataSource);
+        CountDownLatch inserting = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        doAnswer(inv -> {
+            inserting.countDown();
+            release.await(2, TimeUnit.SECONDS);
+            return null;
+        }).when(eventRowWriter).insert(eq(dataSource), eq("p_events"), anyList());
+
+        CompletableFuture<String> inFlight = slowPipeline.submit(row("evt_0"), null, null);
+        assertTrue(inserting.await(2, TimeUnit.SECONDS));
+        CompletableFuture<String> queued = slowPipeline.submit(row("evt_1"), null, null);
+
+        slowPipeline.shutdown();
+
+        ExecutionException e = assertThrows(ExecutionException.class, () -> queued.get(1, TimeUnit.SECONDS));
+        assertInstanceOf(RejectedExecutionException.class, e.getCause());
+        assertNull(slowPipeline.submit(row("evt_2"), null, null));
+        release.countDown();
+        assertEquals("evt_0", inFlight.get(2, TimeUnit.SECONDS));
+    }
+
+    @Test
+    void badRowIsRetriedAloneAndItsClaimReleased() throws Exception {
+        EventWriteBehindPipeline batching = new EventWriteBehindPipeline(dataSourceManager, eventRowWriter,
+                counterService, ingestSpool, idempotencyKeyStore, true, PROJECT_ID, 3, 1000, 100,
+                "sync-after-flush", 1000, 1000);
+        when(dataSourceManager.getTableName(PROJECT_ID, "events")).thenReturn("p_events");
+        when(dataSourceManager.getDataSource(PROJECT_ID)).thenReturn(dataSource);
+        doAnswer(inv -> {
+            List<EventRowWriter.EventRow> rows = inv.getArgument(2);
+            if (rows.stream().anyMatch(r -> r.eventId().equals("evt_bad"))) {
+                throw new DataIntegrityViolationException("value too long");
+            }
+            return null;
+        }).when(eventRowWriter).insert(eq(dataSource), eq("p_events"), anyList());
+
+        try {
+            CompletableFuture<String> first = batching.submit(row("evt_0"), null, "k0");
+            CompletableFuture<String> bad = batching.submit(row("evt_bad"), null, "kbad");
+            CompletableFuture<String> last = batching.submit(row("evt_2"), null, "k2");
+
+            assertEquals("evt_0", first.get(2, TimeUnit.SECONDS));
+            assertEquals("evt_2", last.get(2, TimeUnit.SECONDS));
+            ExecutionException e = assertThrows(ExecutionException.class, () -> bad.get(2, TimeUnit.SECONDS));
+            assertInstanceOf(DataIntegrityViolationException.class, e.getCause());
+            // 只释放坏行的认领，客户端重试可重新写入
+            verify(idempotencyKeyStore).release(PROJECT_ID, dataSource, "kbad", "evt_bad");
+            verify(idempotencyKeyStore, never()).release(eq(PROJECT_ID), any(), eq("k0"), any());
+            verify(counterService, timeout(2000).times(2)).processEventAutoIncrements(eq(PROJECT_ID), eq("open_app"), any());
+        } finally {
+            batching.shutdown();
+        }
+    }
+
+    @Test
+    void acceptedEventsLeftAfterDrainTimeoutAreSpooledOrDeadLettered() throws Exception {
+        EventWriteBehindPipeline accepted = new EventWriteBehindPipeline(dataSourceManager, eventRowWriter,
+                counterService, ingestSpool, idempotencyKeyStore, true, PROJECT_ID, 1, 1, 100, "accepted", 1000, 50);
+        when(dataSourceManager.getTableName(PROJECT_ID, "events")).thenReturn("p_events");
+        when(dataSourceManager.getDataSource(PROJECT_ID)).thenReturn(dataSource);
+        when(ingestSpool.spoolEvents(eq(PROJECT_ID), anyList(), eq(Map.of()))).thenReturn(false);
+        CountDownLatch inserting = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        doAnswer(inv -> {
+            inserting.countDown();
+            release.await(2, TimeUnit.SECONDS);
+            return null;
+        }).when(eventRowWriter).insert(eq(dataSource), eq("p_events"), anyList());
+
+        accepted.submit(row("evt_0"), null, null);
+        assertTrue(inserting.await(2, TimeUnit.SECONDS));
+        accepted.submit(row("evt_1"), null, null);
+
+        accepted.shutdown();
+        release.countDown();
+
+        // 已向客户端确认的事件：落盘失败时移入死信，不静默丢弃
+        @SuppressWarnings("unchecked")
+        ArgumentCaptor<List<EventRowWriter.EventRow>> captor = ArgumentCaptor.forClass(List.class);
+        verify(ingestSpool).deadLetterEvents(eq(PROJECT_ID), captor.capture(), any(RejectedExecutionException.class));
+        assertEquals(List.of("evt_1"), captor.getValue().stream().map(EventRowWriter.EventRow::eventId).toList());
+    }
+
+    @Test
+    void projectsOutsideWhitelistAreNotQueued() {
+        assertFalse(pipeline.isEnabledFor("other-project"));
+        assertNull(pipeline.submit(new EventRowWriter.EventRow("evt_x", null, null, null, "open_app", 1L,
+                null, "other-project", Timestamp.from(Instant.now())), null, null));
+    }
+
+    private static EventRowWriter.EventRow row(String eventId) {
+        return new EventRowWriter.EventRow(eventId, "11111111-1111-4111-8111-111111111111", "user",
+                null, "open_app", System.currentTimeMillis(), null, PROJECT_ID, Timestamp.from(Instant.now()));
+    }
+}
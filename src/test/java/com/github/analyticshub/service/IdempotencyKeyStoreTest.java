@@ -0,0 +1,188 @@
+package com.github.analyticshub.service;
+
+import com.github.analyticshub.config.MultiDataSourceManager;
+import com.github.analyticshub.util.CryptoUtils;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.mockito.junit.jupiter.MockitoSettings;
+import org.mockito.quality.Strictness;
+import org.springframework.jdbc.datasource.DataSourceTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+@MockitoSettings(strictness = Strictness.LENIENT)
+class IdempotencyKeyStoreTest {
+
+    private static final String PROJECT_ID = "test-project";
+
+    @Mock
+    private MultiDataSourceManager dataSourceManager;
+
+    @Mock
+    private DataSource dataSource;
+
+    @Mock
+    private Connection connection;
+
+    @Mock
+    private PreparedStatement statement;
+
+    @Mock
+    private ResultSet resultSet;
+
+    @Mock
+    private ResultSetMetaData metaData;
+
+    private SimpleMeterRegistry meterRegistry;
+    private IdempotencyKeyStore store;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        meterRegistry = new SimpleMeterRegistry();
+        store = new IdempotencyKeyStore(dataSourceManager, meterRegistry, true, 100);
+
+        when(dataSourceManager.getSchemaTableName(PROJECT_ID, "analytics_idempotency_keys"))
+                .thenReturn("\"analytics_idempotency_keys\"");
+
+        when(dataSource.getConnection()).thenReturn(connection);
+        when(connection.prepareStatement(anyString())).thenReturn(statement);
+        when(statement.executeQuery()).thenReturn(resultSet);
+        when(resultSet.getMetaData()).thenReturn(metaData);
+        when(metaData.getColumnCount()).thenReturn(1);
+    }
+
+    @Test
+    void testRetryIsAnsweredFromMemory() throws Exception {
+        // INSERT ... RETURNING 返回一行：认领成功
+        when(resultSet.next()).thenReturn(true, false);
+        when(resultSet.getString(1)).thenReturn("evt_first");
+
+        String keyHash = CryptoUtils.sha256Hex("retry-key");
+        assertNull(store.claim(PROJECT_ID, dataSource, keyHash, "evt_first"));
+        assertEquals("evt_first", store.claim(PROJECT_ID, dataSource, keyHash, "evt_second"));
+
+        // 重试不再访问数据库
+        verify(dataSource, times(1)).getConnection();
+        assertEquals(1.0, lookups("hit"));
+        assertEquals(1.0, lookups("miss"));
+    }
+
+    @Test
+    void testReleasedClaimCanBeClaimedAgain() throws Exception {
+        // 认领成功；释放后重试直接 INSERT，再次认领成功
+        when(resultSet.next()).thenReturn(true, false, true, false);
+        when(resultSet.getString(1)).thenReturn("evt_first", "evt_second");
+        when(statement.executeUpdate()).thenReturn(1);
+
+        String keyHash = CryptoUtils.sha256Hex("failed-key");
+        assertNull(store.claim(PROJECT_ID, dataSource, keyHash, "evt_first"));
+        // 事件未能写入：释放后重试重新认领，而不是返回从未写入的事件ID
+        store.release(PROJECT_ID, dataSource, keyHash, "evt_first");
+        assertNull(store.claim(PROJECT_ID, dataSource, keyHash, "evt_second"));
+
+        verify(connection).prepareStatement(
+                "DELETE FROM \"analytics_idempotency_keys\" WHERE project_id = ? AND key_hash = ? AND event_id = ?");
+        // 未命中缓存时不先查再插
+        verify(connection, never()).prepareStatement(startsWith("SELECT"));
+    }
+
+    @Test
+    void testClaimOutsideProjectTransactionIsCachedImmediately() throws Exception {
+        when(resultSet.next()).thenReturn(true, false);
+        when(resultSet.getString(1)).thenReturn("evt_first");
+        when(connection.getAutoCommit()).thenReturn(true);
+        // 其他数据源上的事务（如系统库 @Transactional）：认领本身已自动提交
+        DataSource systemDataSource = mock(DataSource.class);
+        Connection systemConnection = mock(Connection.class);
+        when(systemDataSource.getConnection()).thenReturn(systemConnection);
+        TransactionTemplate systemTransaction = new TransactionTemplate(new DataSourceTransactionManager(systemDataSource));
+
+        String keyHash = CryptoUtils.sha256Hex("autocommit-key");
+        systemTransaction.executeWithoutResult(status -> {
+            assertNull(store.claim(PROJECT_ID, dataSource, keyHash, "evt_first"));
+            // 同一事务内的重试即可在内存命中
+            assertEquals("evt_first", store.claim(PROJECT_ID, dataSource, keyHash, "evt_second"));
+        });
+
+        verify(dataSource, times(1)).getConnection();
+        assertEquals(1.0, lookups("hit"));
+    }
+
+    @Test
+    void testConflictFallsBackToExistingEventId() throws Exception {
+        // 第一次查询（INSERT）无返回行 → 冲突；第二次查询（SELECT）返回已有事件
+        when(resultSet.next()).thenReturn(false, true, false);
+        when(resultSet.getString(1)).thenReturn("evt_existing");
+
+        String keyHash = CryptoUtils.sha256Hex("other-node-key");
+        assertEquals("evt_existing", store.claim(PROJECT_ID, dataSource, keyHash, "evt_new"));
+        assertEquals("evt_existing", store.claim(PROJECT_ID, dataSource, keyHash, "evt_newer"));
+
+        verify(dataSource, times(2)).getConnection();
+        assertEquals(1.0, lookups("hit"));
+        assertEquals(1.0, lookups("conflict"));
+        assertEquals(0.0, lookups("miss"));
+    }
+
+    @Test
+    void testRolledBackClaimIsNotCached() throws Exception {
+        when(resultSet.next()).thenReturn(true, false);
+        when(resultSet.getString(1)).thenReturn("evt_first");
+        TransactionTemplate transactionTemplate = new TransactionTemplate(new DataSourceTransactionManager(dataSource));
+
+        String keyHash = CryptoUtils.sha256Hex("rolled-back-key");
+        assertThrows(IllegalStateException.class, () -> transactionTemplate.executeWithoutResult(status -> {
+            assertNull(store.claim(PROJECT_ID, dataSource, keyHash, "evt_first"));
+            // 例如流摘要不一致：整个事务回滚
+            throw new IllegalStateException("rollback");
+        }));
+        verify(connection).rollback();
+
+        // 回滚后的重试重新认领，而不是从缓存返回未落库的事件ID
+        when(resultSet.next()).thenReturn(true, false);
+        when(resultSet.getString(1)).thenReturn("evt_retry");
+        assertNull(store.claim(PROJECT_ID, dataSource, keyHash, "evt_retry"));
+        verify(dataSource, times(2)).getConnection();
+        assertEquals(0.0, lookups("hit"));
+        assertEquals(2.0, lookups("miss"));
+
+        // 提交后的认领才进入缓存
+        assertEquals("evt_retry", store.claim(PROJECT_ID, dataSource, keyHash, "evt_third"));
+        assertEquals(1.0, lookups("hit"));
+    }
+
+    @Test
+    void testSharedPoolingUsesSchemaQualifiedTable() throws Exception {
+        // 共享连接池不设置 currentSchema：幂等键表必须带项目 schema
+        when(dataSourceManager.getSchemaTableName(PROJECT_ID, "analytics_idempotency_keys"))
+                .thenReturn("\"analytics\".\"analytics_idempotency_keys\"");
+        when(resultSet.next()).thenReturn(false, true, false);
+        when(resultSet.getString(1)).thenReturn("evt_existing");
+
+        assertEquals("evt_existing", store.claim(PROJECT_ID, dataSource, CryptoUtils.sha256Hex("k"), "evt_new"));
+        store.claimAll(PROJECT_ID, dataSource, Map.of(CryptoUtils.sha256Hex("k2"), "evt_2"));
+
+        verify(connection).prepareStatement(startsWith("INSERT INTO \"analytics\".\"analytics_idempotency_keys\" (project_id, key_hash, event_id) VALUES"));
+        verify(connection).prepareStatement(startsWith("SELECT event_id FROM \"analytics\".\"analytics_idempotency_keys\" WHERE"));
+        verify(connection).prepareStatement(startsWith("INSERT INTO \"analytics\".\"analytics_idempotency_keys\" (project_id, key_hash, event_id) SELECT"));
+    }
+
+    private double lookups(String result) {
+        return meterRegistry.counter("analytics.idempotency.lookups", "result", result).count();
+    }
+}
@@ -0,0 +1,107 @@
+package com.github.analyticshub.service;
+
+import com.github.analyticshub.config.MultiDataSourceManager;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.mockito.junit.jupiter.MockitoSettings;
+import org.mockito.quality.Strictness;
+
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
+import java.sql.SQLException;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+@MockitoSettings(strictness = Strictness.LENIENT)
+class IngestIdGeneratorTest {
+
+    @Mock
+    private MultiDataSourceManager dataSourceManager;
+
+    @Mock
+    private DataSource dataSource;
+
+    @Mock
+    private Connection connection;
+
+    @Mock
+    private PreparedStatement columnTypeQuery;
+
+    @Mock
+    private ResultSet columnTypeResult;
+
+    @Mock
+    private ResultSetMetaData metaData;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        when(dataSourceManager.getDataSource("p1")).thenReturn(dataSource);
+        when(dataSourceManager.getTableName(eq("p1"), anyString())).thenAnswer(inv -> "\"a_" + inv.getArgument(1) + "\"");
+        when(dataSource.getConnection()).thenReturn(connection);
+        when(connection.prepareStatement(startsWith("SELECT format_type"))).thenReturn(columnTypeQuery);
+        when(columnTypeQuery.executeQuery()).thenReturn(columnTypeResult);
+        when(columnTypeResult.getMetaData()).thenReturn(metaData);
+        when(metaData.getColumnCount()).thenReturn(1);
+        when(columnTypeResult.next()).thenReturn(true, false);
+    }
+
+    @Test
+    void uuidColumnsKeepUuidIdsAfterSwitchingBackToText() throws Exception {
+        when(columnTypeResult.getString(1)).thenReturn("uuid");
+        IngestIdGenerator generator = new IngestIdGenerator(dataSourceManager, "text");
+
+        assertEquals(7, UUID.fromString(generator.nextEventId("p1")).version());
+        assertEquals(7, UUID.fromString(generator.nextEventId("p1")).version());
+        // 列类型按项目缓存，只检测一次
+        verify(connection, times(1)).prepareStatement(startsWith("SELECT format_type"));
+        assertEquals("VARCHAR(64)", generator.idColumnType());
+    }
+
+    @Test
+    void varcharColumnsUseConfiguredFormat() throws Exception {
+        when(columnTypeResult.getString(1)).thenReturn("character varying(64)");
+
+        assertTrue(new IngestIdGenerator(dataSourceManager, "text").nextTrafficMetricId("p1").startsWith("tm_"));
+        assertEquals(7, UUID.fromString(new IngestIdGenerator(dataSourceManager, "uuid").nextTrafficMetricId("p1")).version());
+    }
+
+    @Test
+    void unreachableDatabaseFallsBackToUuidWithoutProbingEveryId() throws Exception {
+        when(dataSource.getConnection()).thenThrow(new SQLException("refused", "08001"));
+        IngestIdGenerator generator = new IngestIdGenerator(dataSourceManager, "text");
+
+        // UUIDv7 在 UUID 与 VARCHAR 列中都能写入（含落盘回放）
+        assertEquals(7, UUID.fromString(generator.nextEventId("p1")).version());
+        assertEquals(7, UUID.fromString(generator.nextEventId("p1")).version());
+        assertEquals(7, UUID.fromString(generator.nextTrafficMetricId("p1")).version());
+        // 失败短暂记录：故障期间不再逐个 ID 检测
+        verify(dataSource, times(1)).getConnection();
+
+        // 失败结果不作为列类型缓存：恢复后（重新初始化或退避结束）重新检测
+        reset(dataSource);
+        when(dataSource.getConnection()).thenReturn(connection);
+        when(columnTypeResult.getString(1)).thenReturn("character varying(64)");
+        generator.evict("p1");
+        assertTrue(generator.nextEventId("p1").startsWith("evt_"));
+    }
+
+    @Test
+    void openCircuitSkipsColumnTypeProbe() throws Exception {
+        when(dataSourceManager.isCircuitOpen("p1")).thenReturn(true);
+        IngestIdGenerator generator = new IngestIdGenerator(dataSourceManager, "text");
+
+        assertEquals(7, UUID.fromString(generator.nextEventId("p1")).version());
+        // 不占用 HALF_OPEN 的试探名额
+        verify(dataSourceManager, never()).getDataSource("p1");
+    }
+}
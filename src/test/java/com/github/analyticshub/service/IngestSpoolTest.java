@@ -0,0 +1,174 @@
+package com.github.analyticshub.service;
+
+import com.github.analyticshub.config.MultiDataSourceManager;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.junit.jupiter.api.io.TempDir;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.mockito.junit.jupiter.MockitoSettings;
+import org.mockito.quality.Strictness;
+import org.springframework.jdbc.CannotGetJdbcConnectionException;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.jdbc.BadSqlGrammarException;
+import org.springframework.jdbc.datasource.DataSourceTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import javax.sql.DataSource;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.time.Instant;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+@MockitoSettings(strictness = Strictness.LENIENT)
+class IngestSpoolTest {
+
+    private static final String PROJECT_ID = "test-project";
+
+    @TempDir
+    Path spoolDir;
+
+    @Mock
+    private MultiDataSourceManager dataSourceManager;
+
+    @Mock
+    private EventRowWriter eventRowWriter;
+
+    @Mock
+    private TrafficMetricRowWriter trafficMetricRowWriter;
+
+    @Mock
+    private IdempotencyKeyStore idempotencyKeyStore;
+
+    @Mock
+    private TypeDictionary typeDictionary;
+
+    @Mock
+    private CounterService counterService;
+
+    @Mock
+    private DataSource dataSource;
+
+    @Mock
+    private Connection connection;
+
+    private SimpleMeterRegistry meterRegistry;
+    private IngestSpool spool;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        meterRegistry = new SimpleMeterRegistry();
+        spool = new IngestSpool(dataSourceManager, eventRowWriter, trafficMetricRowWriter, idempotencyKeyStore,
+                typeDictionary, counterService, meterRegistry, true, spoolDir.toString(), 4096, 1024 * 1024, false, 60_000, 100, 2);
+
+        when(dataSourceManager.getDataSource(PROJECT_ID)).thenReturn(dataSource);
+        when(dataSourceManager.getTableName(PROJECT_ID, "events")).thenReturn("p_events");
+        when(dataSource.getConnection()).thenReturn(connection);
+        when(connection.isValid(anyInt())).thenReturn(true);
+        when(connection.getAutoCommit()).thenReturn(true);
+    }
+
+    @AfterEach
+    void tearDown() {
+        spool.shutdown();
+    }
+
+    @Test
+    void testOnlyConnectivityFailuresAreSpooled() {
+        assertTrue(spool.accepts(new CannotGetJdbcConnectionException("down", new SQLException("refused", "08001"))));
+        assertFalse(spool.accepts(new BadSqlGrammarException("insert", "INSERT", new SQLException("syntax", "42601"))));
+    }
+
+    @Test
+    void testSpooledEventsAreReplayedWithPendingIdempotencyKeys() {
+        EventRowWriter.EventRow first = row("evt_1", "{\"plan\":\"pro\"}");
+        EventRowWriter.EventRow duplicate = row("evt_2", null);
+        assertTrue(spool.spoolEvents(PROJECT_ID, List.of(first, duplicate), Map.of("evt_2", "hash-2")));
+        assertEquals(2.0, depth());
+
+        // 回放时 hash-2 已被其他请求占用 → evt_2 跳过
+        when(idempotencyKeyStore.claimAll(eq(PROJECT_ID), eq(dataSource), anyMap())).thenReturn(Set.of());
+        when(eventRowWriter.insertIgnoringDuplicates(eq(dataSource), eq("p_events"), anyList()))
+                .thenReturn(List.of("evt_1"));
+
+        spool.replayAll();
+
+        @SuppressWarnings("unchecked")
+        ArgumentCaptor<List<EventRowWriter.EventRow>> captor = ArgumentCaptor.forClass(List.class);
+        verify(eventRowWriter).insertIgnoringDuplicates(eq(dataSource), eq("p_events"), captor.capture());
+        assertEquals(List.of("evt_1"), captor.getValue().stream().map(EventRowWriter.EventRow::eventId).toList());
+        verify(counterService).processEventAutoIncrements(PROJECT_ID, "open_app", Map.of("plan", "pro"));
+        assertEquals(0.0, depth());
+        assertEquals(2.0, meterRegistry.counter("analytics.ingest.spool.replayed", "project", PROJECT_ID).count());
+    }
+
+    @Test
+    void testRecordFailingRepeatedlyIsDeadLettered() throws Exception {
+        assertTrue(spool.spoolEvents(PROJECT_ID, List.of(row("evt_ok", null), row("evt_bad", null)), Map.of()));
+        when(eventRowWriter.insertIgnoringDuplicates(eq(dataSource), eq("p_events"), anyList())).thenAnswer(inv -> {
+            List<EventRowWriter.EventRow> rows = inv.getArgument(2);
+            if (rows.stream().anyMatch(r -> r.eventId().equals("evt_bad"))) {
+                throw new DataIntegrityViolationException("value too long");
+            }
+            return rows.stream().map(EventRowWriter.EventRow::eventId).toList();
+        });
+
+        // 第一次失败保留整批；达到重试上限后逐条回放，坏记录移入死信
+        spool.replayAll();
+        assertEquals(2.0, depth());
+        spool.replayAll();
+
+        assertEquals(0.0, depth());
+        assertEquals(1.0, meterRegistry.counter("analytics.ingest.spool.dead_lettered", "project", PROJECT_ID).count());
+        assertEquals(1.0, meterRegistry.counter("analytics.ingest.spool.replayed", "project", PROJECT_ID).count());
+        List<String> deadLetters = Files.readAllLines(spoolDir.resolve(PROJECT_ID).resolve("dead-letter.jsonl"));
+        assertEquals(1, deadLetters.size());
+        assertTrue(deadLetters.getFirst().contains("evt_bad"));
+    }
+
+    @Test
+    void testNothingIsSpooledInsideProjectTransaction() {
+        TransactionTemplate transactionTemplate = new TransactionTemplate(new DataSourceTransactionManager(dataSource));
+
+        // 事务内落盘的行不随事务回滚：拒绝落盘，由事务回滚后客户端重传
+        transactionTemplate.executeWithoutResult(status ->
+                assertFalse(spool.spoolEvents(PROJECT_ID, List.of(row("evt_1", null)), Map.of())));
+
+        assertTrue(spool.spoolEvents(PROJECT_ID, List.of(row("evt_2", null)), Map.of()));
+        assertEquals(1.0, depth());
+    }
+
+    @Test
+    void testReplayWaitsWhileDatabaseIsDown() throws Exception {
+        spool.spoolEvents(PROJECT_ID, List.of(row("evt_1", null)), Map.of());
+        when(dataSource.getConnection()).thenThrow(new SQLException("refused", "08001"));
+
+        spool.replayAll();
+
+        verifyNoInteractions(eventRowWriter);
+        assertEquals(1.0, depth());
+    }
+
+    private double depth() {
+        return meterRegistry.get("analytics.ingest.spool.depth").tag("project", PROJECT_ID).gauge().value();
+    }
+
+    private static EventRowWriter.EventRow row(String eventId, String propertiesJson) {
+        return new EventRowWriter.EventRow(eventId, "11111111-1111-4111-8111-111111111111", "user", null,
+                "open_app", 1700000000000L, propertiesJson, PROJECT_ID, Timestamp.from(Instant.now()));
+    }
+}
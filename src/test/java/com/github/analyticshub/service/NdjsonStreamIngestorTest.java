@@ -0,0 +1,159 @@
+package com.github.analyticshub.service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.github.analyticshub.dto.EventTrackRequest;
+import com.github.analyticshub.exception.BusinessException;
+import com.github.analyticshub.util.CryptoUtils;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import javax.sql.DataSource;
+import java.io.ByteArrayInputStream;
+import java.nio.charset.StandardCharsets;
+import java.sql.Connection;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class NdjsonStreamIngestorTest {
+
+    @Mock
+    private DataSource dataSource;
+
+    @Mock
+    private Connection connection;
+
+    private NdjsonStreamIngestor ingestor;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        ingestor = new NdjsonStreamIngestor(new ObjectMapper(), 2, 1024, 100, 1 << 20);
+        lenient().when(dataSource.getConnection()).thenReturn(connection);
+        lenient().when(connection.getAutoCommit()).thenReturn(true);
+    }
+
+    @Test
+    void testLinesAreWrittenInChunksAndCommitted() throws Exception {
+        String body = """
+                {"eventType":"a","timestamp":1}
+                not-json
+
+                {"eventType":"b","timestamp":2}
+                {"eventType":"c","timestamp":3}""";
+        List<Integer> chunkSizes = new ArrayList<>();
+
+        NdjsonStreamIngestor.StreamIngestResult result = ingestor.ingest(stream(body), CryptoUtils.sha256Hex(body),
+                dataSource, EventTrackRequest.class, EventTrackRequest[]::new, chunk -> {
+                    chunkSizes.add(chunk.length);
+                    return chunk.length;
+                });
+
+        assertEquals(new NdjsonStreamIngestor.StreamIngestResult(4, 3, 1), result);
+        assertEquals(List.of(2, 1), chunkSizes);
+        // 每个分段独立提交
+        verify(connection, times(2)).commit();
+        verify(connection, times(2)).close();
+        verify(connection, never()).rollback();
+    }
+
+    @Test
+    void testBeforeChunkRunsBeforeEachChunkTransaction() throws Exception {
+        String body = """
+                {"eventType":"a","timestamp":1}
+                {"eventType":"b","timestamp":2}
+                {"eventType":"c","timestamp":3}""";
+        List<String> calls = new ArrayList<>();
+        doAnswer(invocation -> calls.add("begin")).when(connection).setAutoCommit(false);
+
+        ingestor.ingest(stream(body), CryptoUtils.sha256Hex(body), dataSource, EventTrackRequest.class,
+                EventTrackRequest[]::new,
+                chunk -> calls.add("prepare:" + chunk.length),
+                chunk -> {
+                    calls.add("write:" + chunk.length);
+                    return chunk.length;
+                });
+
+        // 如新类型字典项在事务开启之前写入，事务内不再另借连接
+        assertEquals(List.of("prepare:2", "begin", "write:2", "prepare:1", "begin", "write:1"), calls);
+    }
+
+    @Test
+    void testDigestMismatchWritesNothing() throws Exception {
+        // 超过 chunk-size 的篡改请求体：摘要校验通过前任何分段都不入库
+        String body = """
+                {"eventType":"a","timestamp":1}
+                {"eventType":"b","timestamp":2}
+                {"eventType":"c","timestamp":3}
+                {"eventType":"d","timestamp":4}
+                {"eventType":"e","timestamp":5}
+                """;
+        List<Integer> chunkSizes = new ArrayList<>();
+
+        BusinessException ex = assertThrows(BusinessException.class, () -> ingestor.ingest(stream(body),
+                CryptoUtils.sha256Hex("tampered"), dataSource, EventTrackRequest.class,
+                EventTrackRequest[]::new, chunk -> {
+                    chunkSizes.add(chunk.length);
+                    return chunk.length;
+                }));
+
+        assertEquals("DIGEST_MISMATCH", ex.getCode());
+        assertTrue(chunkSizes.isEmpty());
+        verify(dataSource, never()).getConnection();
+    }
+
+    @Test
+    void testTooManyLinesWritesNothing() throws Exception {
+        NdjsonStreamIngestor limited = new NdjsonStreamIngestor(new ObjectMapper(), 2, 1024, 3, 1 << 20);
+        String body = """
+                {"eventType":"a","timestamp":1}
+                {"eventType":"b","timestamp":2}
+                {"eventType":"c","timestamp":3}
+                {"eventType":"d","timestamp":4}
+                """;
+        List<Integer> chunkSizes = new ArrayList<>();
+
+        BusinessException ex = assertThrows(BusinessException.class, () -> limited.ingest(stream(body),
+                CryptoUtils.sha256Hex(body), dataSource, EventTrackRequest.class, EventTrackRequest[]::new, chunk -> {
+                    chunkSizes.add(chunk.length);
+                    return chunk.length;
+                }));
+
+        assertEquals("BATCH_TOO_LARGE", ex.getCode());
+        assertTrue(chunkSizes.isEmpty());
+    }
+
+    @Test
+    void testFailureAfterCommittedChunksReportsProgress() throws Exception {
+        String body = """
+                {"eventType":"a","timestamp":1}
+                {"eventType":"b","timestamp":2}
+                {"eventType":"c","timestamp":3}
+                {"eventType":"d","timestamp":4}
+                """;
+        List<Integer> chunkSizes = new ArrayList<>();
+
+        BusinessException ex = assertThrows(BusinessException.class, () -> ingestor.ingest(stream(body),
+                CryptoUtils.sha256Hex(body), dataSource, EventTrackRequest.class, EventTrackRequest[]::new, chunk -> {
+                    chunkSizes.add(chunk.length);
+                    if (chunkSizes.size() == 2) {
+                        throw new IllegalStateException("connection lost");
+                    }
+                    return chunk.length;
+                }));
+
+        assertEquals("STREAM_INTERRUPTED", ex.getCode());
+        assertTrue(ex.getMessage().contains("已提交前 2 行"));
+        verify(connection).commit();
+        verify(connection).rollback();
+    }
+
+    private static ByteArrayInputStream stream(String body) {
+        return new ByteArrayInputStream(body.getBytes(StandardCharsets.UTF_8));
+    }
+}
@@ -0,0 +1,97 @@
+package com.github.analyticshub.service;
+
+import com.github.analyticshub.config.MultiDataSourceManager;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.mockito.junit.jupiter.MockitoSettings;
+import org.mockito.quality.Strictness;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import java.time.LocalDate;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+@MockitoSettings(strictness = Strictness.LENIENT)
+class ProjectPartitionManagerTest {
+
+    @Mock
+    private MultiDataSourceManager dataSourceManager;
+
+    @Mock
+    private JdbcTemplate jdbcTemplate;
+
+    private ProjectPartitionManager manager;
+
+    @AfterEach
+    void tearDown() {
+        if (manager != null) {
+            manager.shutdown();
+        }
+    }
+
+    @Test
+    void rejectsUnknownPartitioningMode() {
+        assertThrows(IllegalArgumentException.class,
+                () -> new ProjectPartitionManager(dataSourceManager, "week", 3, 0));
+    }
+
+    @Test
+    void createsMissingPartitionsForPartitionedTablesOnly() {
+        manager = new ProjectPartitionManager(dataSourceManager, "month", 2, 0);
+        assertTrue(manager.isPartitioned());
+        assertEquals("month", manager.granularityName());
+
+        when(jdbcTemplate.queryForList(anyString(), eq("analytics"), eq("a_events")))
+                .thenReturn(List.of(Map.of("kind", "p", "description", "partition-granularity=month")));
+        when(jdbcTemplate.queryForList(anyString(), eq("analytics"), eq("a_traffic_metrics")))
+                .thenReturn(List.of(Map.of("kind", "r")));
+        // 当月分区已存在
+        when(jdbcTemplate.queryForObject(anyString(), eq(Integer.class), eq("analytics"), anyString()))
+                .thenAnswer(inv -> "a_events_p202612".equals(inv.getArgument(3)) ? 1 : 0);
+
+        int created = manager.ensurePartitions(jdbcTemplate, "analytics", "a_", LocalDate.of(2026, 12, 17));
+
+        assertEquals(2, created);
+        ArgumentCaptor<String> ddl = ArgumentCaptor.forClass(String.class);
+        verify(jdbcTemplate, times(2)).execute(ddl.capture());
+        assertEquals("CREATE TABLE IF NOT EXISTS \"analytics\".\"a_events_p202701\" PARTITION OF \"analytics\".\"a_events\" "
+                + "FOR VALUES FROM ('2027-01-01 00:00:00+00') TO ('2027-02-01 00:00:00+00')", ddl.getAllValues().get(0));
+        assertTrue(ddl.getAllValues().get(1).contains("\"a_events_p202702\""));
+    }
+
+    @Test
+    void partitionRangeEndIsDerivedFromName() {
+        assertEquals(LocalDate.of(2027, 1, 1), ProjectPartitionManager.periodEnd("a_events", "a_events_p202612"));
+        assertEquals(LocalDate.of(2026, 3, 1), ProjectPartitionManager.periodEnd("a_events", "a_events_p20260228"));
+        assertNull(ProjectPartitionManager.periodEnd("a_events", "a_events_default"));
+        assertNull(ProjectPartitionManager.periodEnd("a_events", "a_events_p2026x2"));
+    }
+
+    @Test
+    void dailyGranularityIsReadFromTableComment() {
+        manager = new ProjectPartitionManager(dataSourceManager, "none", 1, 0);
+        assertFalse(manager.isPartitioned());
+
+        when(jdbcTemplate.queryForList(anyString(), eq("analytics"), eq("a_events")))
+                .thenReturn(List.of(Map.of("kind", "p", "description", "partition-granularity=day")));
+        when(jdbcTemplate.queryForList(anyString(), eq("analytics"), eq("a_traffic_metrics"))).thenReturn(List.of());
+        when(jdbcTemplate.queryForObject(anyString(), eq(Integer.class), eq("analytics"), anyString())).thenReturn(0);
+
+        assertEquals(2, manager.ensurePartitions(jdbcTemplate, "analytics", "a_", LocalDate.of(2026, 12, 31)));
+        verify(jdbcTemplate).execute(contains("\"a_events_p20261231\""));
+        verify(jdbcTemplate).execute(contains("FROM ('2026-12-31 00:00:00+00') TO ('2027-01-01 00:00:00+00')"));
+        verify(jdbcTemplate).execute(contains("\"a_events_p20270101\""));
+
+        assertThrows(IllegalArgumentException.class,
+                () -> manager.ensurePartitions(jdbcTemplate, "analytics", "A-", LocalDate.of(2026, 12, 31)));
+    }
+}
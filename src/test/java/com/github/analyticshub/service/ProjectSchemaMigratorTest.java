@@ -0,0 +1,136 @@
+package com.github.analyticshub.service;
+
+import com.github.analyticshub.config.MultiDataSourceManager;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.InOrder;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.mockito.junit.jupiter.MockitoSettings;
+import org.mockito.quality.Strictness;
+import org.springframework.boot.health.contributor.Health;
+import org.springframework.boot.health.contributor.Status;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+@MockitoSettings(strictness = Strictness.LENIENT)
+class ProjectSchemaMigratorTest {
+
+    @Mock
+    private MultiDataSourceManager dataSourceManager;
+
+    @Mock
+    private IngestIdGenerator idGenerator;
+
+    @Mock
+    private JdbcTemplate jdbcTemplate;
+
+    private ProjectSchemaMigrator migrator;
+
+    @BeforeEach
+    void setUp() {
+        migrator = new ProjectSchemaMigrator(dataSourceManager, idGenerator, false, 2, 1000, 60_000);
+    }
+
+    @Test
+    void loadsBundledMigrationsInVersionOrder() {
+        List<ProjectSchemaMigrator.Migration> migrations = migrator.migrations();
+
+        assertEquals(List.of("V1__counters_table", "V2__daily_rollup_tables", "V3__events_type_created_index",
+                        "V4__type_dictionaries"),
+                migrations.stream().map(ProjectSchemaMigrator.Migration::name).toList());
+        assertTrue(migrations.get(0).transactional());
+        assertFalse(migrations.get(2).transactional());
+        assertTrue(migrations.get(2).render("analytics", "a_", "UUID")
+                .contains("CREATE INDEX CONCURRENTLY IF NOT EXISTS idx_a_events_type_created"));
+    }
+
+    @Test
+    void pendingSkipsAppliedVersionsAndRejectsModifiedScripts() {
+        ProjectSchemaMigrator.Migration first = migrator.migrations().getFirst();
+
+        List<ProjectSchemaMigrator.Migration> pending = migrator.pendingMigrations(Map.of(first.version(), first.checksum()));
+        assertEquals(List.of(2, 3, 4), pending.stream().map(ProjectSchemaMigrator.Migration::version).toList());
+
+        assertThrows(IllegalStateException.class,
+                () -> migrator.pendingMigrations(Map.of(first.version(), first.checksum() + 1)));
+    }
+
+    @Test
+    void readinessWaitsForTransactionalStartupPhase() {
+        assertEquals(Status.UP, migrator.health().getStatus());
+
+        ProjectSchemaMigrator startup = new ProjectSchemaMigrator(dataSourceManager, idGenerator, true, 2, 1000, 60_000);
+        assertEquals(Status.OUT_OF_SERVICE, startup.health().getStatus());
+
+        // 项目配置缺失：迁移失败只记录在详情中，不阻塞就绪
+        when(dataSourceManager.activeProjectIds()).thenReturn(List.of("p1"));
+        startup.migrateOnStartup();
+
+        Health health = startup.health();
+        assertEquals(Status.UP, health.getStatus());
+        assertTrue(((Map<?, ?>) health.getDetails().get("failed")).containsKey("p1"));
+        // 事务性阶段与 CONCURRENTLY 阶段各遍历一次项目
+        verify(dataSourceManager, times(2)).activeProjectIds();
+    }
+
+    @Test
+    void splitsStatementsOutsideQuotesAndComments() {
+        List<String> statements = ProjectSchemaMigrator.splitStatements("""
+                -- comment; not a statement
+                COMMENT ON TABLE t IS 'a;b''c';
+                /* block; comment */ SELECT 1;
+                DO $body$ BEGIN PERFORM 1; END $body$;
+                """);
+
+        assertEquals(List.of("COMMENT ON TABLE t IS 'a;b''c'", "SELECT 1", "DO $body$ BEGIN PERFORM 1; END $body$"),
+                statements);
+    }
+
+    @Test
+    void concurrentIndexOnPartitionedTableIsBuiltPerPartitionAndAttached() {
+        when(jdbcTemplate.queryForList(contains("FROM pg_class c JOIN pg_namespace"), eq(String.class), eq("analytics"), eq("a_events")))
+                .thenReturn(List.of("p"));
+        when(jdbcTemplate.queryForList(contains("FROM pg_inherits"), eq(String.class), eq("analytics"), eq("a_events")))
+                .thenReturn(List.of("a_events_default", "a_events_p202610"));
+        // 上次中断留下的无效分区索引
+        when(jdbcTemplate.queryForList(contains("NOT i.indisvalid"), eq(String.class), eq("analytics"), anyString()))
+                .thenAnswer(inv -> "a_events_default_idx_a_events_type_created".equals(inv.getArgument(3))
+                        ? List.of("i") : List.of());
+
+        migrator.executeStatement(jdbcTemplate, "analytics",
+                "CREATE INDEX CONCURRENTLY IF NOT EXISTS idx_a_events_type_created ON a_events(event_type, created_at DESC)");
+
+        InOrder order = inOrder(jdbcTemplate);
+        order.verify(jdbcTemplate).execute("CREATE INDEX IF NOT EXISTS \"idx_a_events_type_created\" "
+                + "ON ONLY \"analytics\".\"a_events\" (event_type, created_at DESC)");
+        order.verify(jdbcTemplate).execute("DROP INDEX CONCURRENTLY IF EXISTS \"analytics\".\"a_events_default_idx_a_events_type_created\"");
+        order.verify(jdbcTemplate).execute("CREATE INDEX CONCURRENTLY IF NOT EXISTS \"a_events_default_idx_a_events_type_created\" "
+                + "ON \"analytics\".\"a_events_default\" (event_type, created_at DESC)");
+        order.verify(jdbcTemplate).execute("ALTER INDEX \"analytics\".\"idx_a_events_type_created\" "
+                + "ATTACH PARTITION \"analytics\".\"a_events_default_idx_a_events_type_created\"");
+        order.verify(jdbcTemplate).execute(contains("ON \"analytics\".\"a_events_p202610\""));
+        order.verify(jdbcTemplate).execute(contains("ATTACH PARTITION \"analytics\".\"a_events_p202610_idx_a_events_type_created\""));
+        verify(jdbcTemplate, times(6)).execute(anyString());
+    }
+
+    @Test
+    void concurrentIndexOnPlainTableRunsAsWritten() {
+        when(jdbcTemplate.queryForList(anyString(), eq(String.class), eq("analytics"), anyString())).thenReturn(List.of());
+        String statement = "CREATE INDEX CONCURRENTLY IF NOT EXISTS idx_a_events_type_created ON a_events(event_type)";
+
+        migrator.executeStatement(jdbcTemplate, "analytics", statement);
+
+        verify(jdbcTemplate).execute(statement);
+        verify(jdbcTemplate, times(1)).execute(anyString());
+        assertEquals(63, ProjectSchemaMigrator.childIndexName("a".repeat(40), "idx_" + "b".repeat(40)).length());
+    }
+}
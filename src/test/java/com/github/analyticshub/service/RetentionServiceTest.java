@@ -0,0 +1,165 @@
+package com.github.analyticshub.service;
+
+import com.github.analyticshub.config.MultiDataSourceManager;
+import com.github.analyticshub.entity.AnalyticsProject;
+import com.github.analyticshub.mapper.AnalyticsProjectMapper;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.mockito.junit.jupiter.MockitoSettings;
+import org.mockito.quality.Strictness;
+
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
+import java.sql.Timestamp;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+@MockitoSettings(strictness = Strictness.LENIENT)
+class RetentionServiceTest {
+
+    @Mock
+    private AnalyticsProjectMapper projectMapper;
+
+    @Mock
+    private MultiDataSourceManager dataSourceManager;
+
+    @Mock
+    private TypeDictionary typeDictionary;
+
+    @Mock
+    private DataSource dataSource;
+
+    @Mock
+    private Connection connection;
+
+    @Mock
+    private PreparedStatement oldestQuery;
+
+    @Mock
+    private PreparedStatement rollup;
+
+    @Mock
+    private PreparedStatement partitionsQuery;
+
+    @Mock
+    private PreparedStatement delete;
+
+    @Mock
+    private ResultSet oldestResult;
+
+    @Mock
+    private ResultSet emptyResult;
+
+    @Mock
+    private ResultSetMetaData metaData;
+
+    private ProjectPartitionManager partitionManager;
+    private RetentionService retentionService;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        partitionManager = new ProjectPartitionManager(dataSourceManager, "none", 3, 0);
+        retentionService = new RetentionService(projectMapper, dataSourceManager, partitionManager, typeDictionary,
+                true, 0, 0, 0, 0, 0, 2, 0, 31);
+
+        when(dataSourceManager.getProjectConfig("p1")).thenReturn(new MultiDataSourceManager.ProjectConfig(
+                "p1", "p1", "localhost", 5432, "analytics", "analytics", "u", "pw", "a_", true, null));
+        when(dataSourceManager.getDataSource("p1")).thenReturn(dataSource);
+        when(dataSourceManager.getTableName(eq("p1"), anyString())).thenAnswer(inv -> "\"a_" + inv.getArgument(1) + "\"");
+
+        when(dataSource.getConnection()).thenReturn(connection);
+        when(connection.prepareStatement(startsWith("SELECT MIN"))).thenReturn(oldestQuery);
+        when(connection.prepareStatement(startsWith("INSERT INTO"))).thenReturn(rollup);
+        when(connection.prepareStatement(startsWith("SELECT c.relname"))).thenReturn(partitionsQuery);
+        when(connection.prepareStatement(startsWith("DELETE"))).thenReturn(delete);
+
+        when(oldestQuery.executeQuery()).thenReturn(oldestResult);
+        when(oldestResult.next()).thenReturn(true, false);
+        when(oldestResult.getMetaData()).thenReturn(metaData);
+        when(metaData.getColumnCount()).thenReturn(1);
+        when(oldestResult.getTimestamp(1)).thenReturn(Timestamp.from(Instant.parse("2026-09-15T10:00:00Z")));
+        when(partitionsQuery.executeQuery()).thenReturn(emptyResult);
+        when(delete.executeUpdate()).thenReturn(2, 1);
+    }
+
+    @AfterEach
+    void tearDown() {
+        retentionService.shutdown();
+        partitionManager.shutdown();
+    }
+
+    @Test
+    void rollsUpExpiredDaysBeforeDeletingInBatches() throws Exception {
+        AnalyticsProject project = new AnalyticsProject();
+        project.setProjectId("p1");
+        project.setRetentionEventsDays(30);
+        // 会话保留期显式设为 0：永久保留
+        project.setRetentionSessionsDays(0);
+
+        Map<String, Long> deleted = retentionService.applyRetention(project, LocalDate.of(2026, 10, 17));
+
+        assertEquals(Map.of("events", 3L), deleted);
+        // 聚合表由项目库迁移创建，清理时不再执行 DDL
+        verify(connection, never()).createStatement();
+        // 2026-09-15、2026-09-16 两天先汇总
+        verify(rollup, times(2)).executeUpdate();
+        verify(rollup).setObject(eq(1), eq(java.sql.Date.valueOf("2026-09-15")));
+        verify(delete, times(2)).executeUpdate();
+        verify(delete, times(2)).setObject(2, 2);
+
+        var order = inOrder(rollup, delete);
+        order.verify(rollup, times(2)).executeUpdate();
+        order.verify(delete, times(2)).executeUpdate();
+    }
+
+    @Test
+    void encodedTypesAreRolledUpByName() throws Exception {
+        when(typeDictionary.isEncoded("p1", TypeDictionary.Kind.EVENT)).thenReturn(true);
+        AnalyticsProject project = new AnalyticsProject();
+        project.setProjectId("p1");
+        project.setRetentionEventsDays(30);
+
+        retentionService.applyRetention(project, LocalDate.of(2026, 10, 17));
+
+        verify(connection, times(2)).prepareStatement(
+                contains("SELECT ?, d.name, COUNT(*), COUNT(DISTINCT e.user_id), COUNT(DISTINCT e.device_id) "
+                        + "FROM \"a_events\" e JOIN \"a_event_types\" d ON d.id = e.event_type"));
+    }
+
+    @Test
+    void idempotencyKeysAreDeletedFromSchemaQualifiedTable() throws Exception {
+        // 共享连接池：幂等键表不带项目前缀，但必须带 schema 限定
+        when(dataSourceManager.getSchemaTableName("p1", "analytics_idempotency_keys"))
+                .thenReturn("\"analytics\".\"analytics_idempotency_keys\"");
+        AnalyticsProject project = new AnalyticsProject();
+        project.setProjectId("p1");
+        project.setRetentionIdempotencyDays(7);
+
+        assertEquals(Map.of("idempotency_keys", 3L), retentionService.applyRetention(project, LocalDate.of(2026, 10, 17)));
+        verify(connection, times(2)).prepareStatement("DELETE FROM \"analytics\".\"analytics_idempotency_keys\" "
+                + "WHERE ctid = ANY(ARRAY(SELECT ctid FROM \"analytics\".\"analytics_idempotency_keys\" "
+                + "WHERE project_id = ? AND created_at < ? LIMIT ?))");
+    }
+
+    @Test
+    void keepsDataWhenNoRetentionIsConfigured() {
+        AnalyticsProject project = new AnalyticsProject();
+        project.setProjectId("p1");
+
+        assertTrue(retentionService.applyRetention(project, LocalDate.of(2026, 10, 17)).isEmpty());
+        verifyNoInteractions(connection);
+    }
+}
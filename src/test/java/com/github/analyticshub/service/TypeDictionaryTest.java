@@ -0,0 +1,178 @@
+package com.github.analyticshub.service;
+
+import com.github.analyticshub.config.MultiDataSourceManager;
+import com.github.analyticshub.exception.BusinessException;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.mockito.junit.jupiter.MockitoSettings;
+import org.mockito.quality.Strictness;
+import org.springframework.jdbc.datasource.DataSourceTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
+import java.util.List;
+import java.util.function.Function;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+@MockitoSettings(strictness = Strictness.LENIENT)
+class TypeDictionaryTest {
+
+    @Mock
+    private MultiDataSourceManager dataSourceManager;
+
+    @Mock
+    private DataSource dataSource;
+
+    @Mock
+    private Connection connection;
+
+    @Mock
+    private PreparedStatement columnTypeQuery;
+
+    @Mock
+    private PreparedStatement idQuery;
+
+    @Mock
+    private PreparedStatement insert;
+
+    @Mock
+    private ResultSet columnTypeResult;
+
+    @Mock
+    private ResultSet idResult;
+
+    @Mock
+    private ResultSetMetaData metaData;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        when(dataSourceManager.getDataSource("p1")).thenReturn(dataSource);
+        when(dataSourceManager.getTableName(eq("p1"), anyString())).thenAnswer(inv -> "\"a_" + inv.getArgument(1) + "\"");
+
+        when(dataSource.getConnection()).thenReturn(connection);
+        when(connection.prepareStatement(startsWith("SELECT format_type"))).thenReturn(columnTypeQuery);
+        when(connection.prepareStatement(startsWith("SELECT id FROM"))).thenReturn(idQuery);
+        when(connection.prepareStatement(startsWith("INSERT INTO"))).thenReturn(insert);
+
+        when(columnTypeQuery.executeQuery()).thenReturn(columnTypeResult);
+        when(columnTypeResult.next()).thenReturn(true, false);
+        when(columnTypeResult.getMetaData()).thenReturn(metaData);
+        when(idQuery.executeQuery()).thenReturn(idResult);
+        when(idResult.getMetaData()).thenReturn(metaData);
+        when(metaData.getColumnCount()).thenReturn(1);
+        when(insert.executeUpdate()).thenReturn(1);
+    }
+
+    @Test
+    void rejectsUnknownEncodingMode() {
+        assertThrows(IllegalArgumentException.class, () -> new TypeDictionary(dataSourceManager, "enum", 1000));
+        assertEquals("SMALLINT", new TypeDictionary(dataSourceManager, "dictionary", 1000).columnType(TypeDictionary.Kind.EVENT));
+        assertEquals("VARCHAR(50)", new TypeDictionary(dataSourceManager, "text", 1000).columnType(TypeDictionary.Kind.METRIC));
+    }
+
+    @Test
+    void textColumnsPassNamesThrough() throws Exception {
+        when(columnTypeResult.getString(1)).thenReturn("character varying(100)");
+        TypeDictionary dictionary = new TypeDictionary(dataSourceManager, "dictionary", 1000);
+
+        assertFalse(dictionary.isEncoded("p1", TypeDictionary.Kind.EVENT));
+        assertEquals("open_app", dictionary.writeEncoder("p1", TypeDictionary.Kind.EVENT).apply("open_app"));
+        assertEquals("open_app", dictionary.encode("p1", TypeDictionary.Kind.EVENT, "open_app"));
+        assertEquals("open_app", dictionary.decode("p1", TypeDictionary.Kind.EVENT, "open_app"));
+        // 列类型按项目缓存，只检测一次
+        verify(connection, times(1)).prepareStatement(startsWith("SELECT format_type"));
+        verify(connection, never()).prepareStatement(startsWith("SELECT id FROM"));
+    }
+
+    @Test
+    void encodedColumnsCreateMissingEntriesAndCacheBothDirections() throws Exception {
+        when(columnTypeResult.getString(1)).thenReturn("smallint");
+        // 首次查询不存在，插入后查到 7；之后查询的 unknown 不存在
+        when(idResult.next()).thenReturn(false, true, false, false);
+        when(idResult.getShort(1)).thenReturn((short) 7);
+        TypeDictionary dictionary = new TypeDictionary(dataSourceManager, "text", 1000);
+
+        Function<String, Object> encoder = dictionary.writeEncoder("p1", TypeDictionary.Kind.EVENT);
+        assertEquals((short) 7, encoder.apply("open_app"));
+        assertEquals((short) 7, encoder.apply("open_app"));
+        assertEquals("open_app", dictionary.decode("p1", TypeDictionary.Kind.EVENT, "7"));
+        assertEquals(TypeDictionary.UNKNOWN_ID, dictionary.encode("p1", TypeDictionary.Kind.EVENT, "unknown"));
+
+        verify(connection).prepareStatement("INSERT INTO \"a_event_types\" (name) SELECT ? "
+                + "WHERE (SELECT count(*) FROM \"a_event_types\") < ? ON CONFLICT (name) DO NOTHING");
+        // 事务外以自动提交写入，不开启独立事务
+        verify(connection, never()).setAutoCommit(false);
+        verify(insert, times(1)).executeUpdate();
+        // 只读查询不写入字典
+        verify(insert, never()).setObject(anyInt(), eq("unknown"));
+    }
+
+    @Test
+    void resolveAllocatesNewTypesBeforeTheTransactionOpens() throws Exception {
+        when(columnTypeResult.getString(1)).thenReturn("smallint");
+        when(idResult.next()).thenReturn(false, true, false);
+        when(idResult.getShort(1)).thenReturn((short) 7);
+        TypeDictionary dictionary = new TypeDictionary(dataSourceManager, "text", 1000);
+
+        dictionary.resolve("p1", TypeDictionary.Kind.EVENT, List.of("open_app", "open_app"));
+        verify(insert, times(1)).executeUpdate();
+
+        // 事务内只读缓存，不再访问字典表
+        new TransactionTemplate(new DataSourceTransactionManager(dataSource)).executeWithoutResult(status ->
+                assertEquals((short) 7, dictionary.writeEncoder("p1", TypeDictionary.Kind.EVENT).apply("open_app")));
+        verify(connection, times(2)).prepareStatement(startsWith("SELECT id FROM"));
+    }
+
+    @Test
+    void entriesCreatedInsideTheCallersTransactionAreCachedOnlyAfterCommit() throws Exception {
+        when(columnTypeResult.getString(1)).thenReturn("smallint");
+        // 事务内：不存在 → 插入后查到 7；回滚后重新写入：不存在 → 插入后查到 8
+        when(idResult.next()).thenReturn(false, true, false, false, true, false);
+        when(idResult.getShort(1)).thenReturn((short) 7, (short) 8);
+        TypeDictionary dictionary = new TypeDictionary(dataSourceManager, "text", 1000);
+        assertTrue(dictionary.isEncoded("p1", TypeDictionary.Kind.EVENT));
+
+        new TransactionTemplate(new DataSourceTransactionManager(dataSource)).executeWithoutResult(status -> {
+            Function<String, Object> encoder = dictionary.writeEncoder("p1", TypeDictionary.Kind.EVENT);
+            assertEquals((short) 7, encoder.apply("open_app"));
+            assertEquals((short) 7, encoder.apply("open_app"));
+            status.setRollbackOnly();
+        });
+
+        // 插入在调用方连接上执行，不另借连接（连接池较小时嵌套借用会互相等待）
+        verify(dataSource, times(2)).getConnection();
+        verify(connection).rollback();
+        verify(connection, never()).commit();
+        verify(insert, times(1)).executeUpdate();
+
+        // 回滚的字典项不在缓存中
+        assertEquals((short) 8, dictionary.writeEncoder("p1", TypeDictionary.Kind.EVENT).apply("open_app"));
+        assertEquals((short) 8, dictionary.writeEncoder("p1", TypeDictionary.Kind.EVENT).apply("open_app"));
+        verify(insert, times(2)).executeUpdate();
+    }
+
+    @Test
+    void newTypesAreRejectedOnceTheDictionaryIsFull() throws Exception {
+        when(columnTypeResult.getString(1)).thenReturn("smallint");
+        when(idResult.next()).thenReturn(false);
+        when(insert.executeUpdate()).thenReturn(0);
+        TypeDictionary dictionary = new TypeDictionary(dataSourceManager, "text", 2);
+
+        Function<String, Object> encoder = dictionary.writeEncoder("p1", TypeDictionary.Kind.EVENT);
+        BusinessException e = assertThrows(BusinessException.class, () -> encoder.apply("type_3"));
+
+        assertEquals("TYPE_DICTIONARY_FULL", e.getCode());
+        verify(insert).setObject(2, 2);
+    }
+}
@@ -2,6 +2,9 @@ package com.github.analyticshub.util;
 
 import org.junit.jupiter.api.Test;
 
+import javax.crypto.spec.SecretKeySpec;
+import java.nio.charset.StandardCharsets;
+
 import static org.junit.jupiter.api.Assertions.*;
 
 /**
@@ -30,6 +33,16 @@ class CryptoUtilsTest {
         String eventId = CryptoUtils.generateEventId();
         assertNotNull(eventId);
         assertTrue(eventId.startsWith("evt_"));
+        assertEquals(30, eventId.length());
+        assertTrue(CryptoUtils.generateEventId().compareTo(eventId) > 0);
+    }
+
+    @Test
+    void testGenerateTrafficMetricId() {
+        String metricId = CryptoUtils.generateTrafficMetricId();
+        assertNotNull(metricId);
+        assertTrue(metricId.startsWith("tm_"));
+        assertEquals(29, metricId.length());
     }
 
     @Test
@@ -81,4 +94,56 @@ class CryptoUtilsTest {
         assertTrue(signatureData.contains("POST"));
         assertTrue(signatureData.contains("/api/v1/events"));
     }
+
+    @Test
+    void testVerifyRequestSignatureMatchesSignatureData() {
+        String secretKey = "sk_test-secret";
+        String body = "{\"event_type\":\"页面浏览\",\"n\":1}";
+        String signature = CryptoUtils.generateSignature(CryptoUtils.buildSignatureData(
+                "POST", "/api/v1/events", "1700000000000", "device-1", "user-1", body), secretKey);
+
+        SecretKeySpec key = CryptoUtils.hmacKey(secretKey);
+        byte[] bodyBytes = body.getBytes(StandardCharsets.UTF_8);
+        assertTrue(CryptoUtils.verifyRequestSignature(key, signature,
+                "POST", "/api/v1/events", "1700000000000", "device-1", "user-1", bodyBytes));
+        assertTrue(CryptoUtils.verifyRequestSignature(key, signature.toUpperCase(),
+                "POST", "/api/v1/events", "1700000000000", "device-1", "user-1", bodyBytes));
+
+        assertFalse(CryptoUtils.verifyRequestSignature(key, signature,
+                "POST", "/api/v1/events", "1700000000001", "device-1", "user-1", bodyBytes));
+        assertFalse(CryptoUtils.verifyRequestSignature(CryptoUtils.hmacKey("sk_other"), signature,
+                "POST", "/api/v1/events", "1700000000000", "device-1", "user-1", bodyBytes));
+        assertFalse(CryptoUtils.verifyRequestSignature(key, "zz" + signature.substring(2),
+                "POST", "/api/v1/events", "1700000000000", "device-1", "user-1", bodyBytes));
+        assertFalse(CryptoUtils.verifyRequestSignature(key, null,
+                "POST", "/api/v1/events", "1700000000000", "device-1", "user-1", bodyBytes));
+    }
+
+    @Test
+    void testVerifyRequestSignatureCoversWholeLargeBody() {
+        String secretKey = "sk_test-secret";
+        // 1MB 多字节 UTF-8 请求体：逐字节计算与拼接签名串的结果一致，末字节被篡改即失败
+        String body = "[" + "{\"事件\":\"浏览\"},".repeat(60_000) + "{}]";
+        byte[] bodyBytes = body.getBytes(StandardCharsets.UTF_8);
+        String signature = CryptoUtils.generateSignature(CryptoUtils.buildSignatureData(
+                "POST", "/api/v1/events/batch", "1700000000000", "device-1", "user-1", body), secretKey);
+        SecretKeySpec key = CryptoUtils.hmacKey(secretKey);
+
+        assertTrue(CryptoUtils.verifyRequestSignature(key, signature,
+                "POST", "/api/v1/events/batch", "1700000000000", "device-1", "user-1", bodyBytes));
+
+        bodyBytes[bodyBytes.length - 1] = '}';
+        assertFalse(CryptoUtils.verifyRequestSignature(key, signature,
+                "POST", "/api/v1/events/batch", "1700000000000", "device-1", "user-1", bodyBytes));
+    }
+
+    @Test
+    void testVerifyRequestSignatureTreatsNullFieldsAsEmpty() {
+        String secretKey = "sk_test-secret";
+        String signature = CryptoUtils.generateSignature(
+                CryptoUtils.buildSignatureData("GET", "/api/v1/ping", "1", "d", null, null), secretKey);
+
+        assertTrue(CryptoUtils.verifyRequestSignature(CryptoUtils.hmacKey(secretKey), signature,
+                "GET", "/api/v1/ping", "1", "d", null, null));
+    }
 }
@@ -0,0 +1,110 @@
+package com.github.analyticshub.util;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * 内存映射段日志测试
+ */
+class MappedSegmentLogTest {
+
+    @TempDir
+    Path dir;
+
+    @Test
+    void testRecordsAreReadInOrderAcrossSegments() throws Exception {
+        try (MappedSegmentLog log = new MappedSegmentLog(dir, 64, 0, false)) {
+            for (int i = 0; i < 10; i++) {
+                assertTrue(log.append(bytes("record-" + i)));
+            }
+            assertTrue(log.segmentCount() > 1);
+            assertEquals(10, log.pendingRecords());
+
+            MappedSegmentLog.Batch batch = log.read(100);
+            assertEquals(10, batch.records().size());
+            assertEquals("record-0", text(batch.records().get(0)));
+            assertEquals("record-9", text(batch.records().get(9)));
+
+            log.commit(batch);
+            assertEquals(0, log.pendingRecords());
+            assertEquals(1, log.segmentCount());
+        }
+    }
+
+    @Test
+    void testUncommittedRecordsSurviveReopen() throws Exception {
+        try (MappedSegmentLog log = new MappedSegmentLog(dir, 1024, 0, false)) {
+            log.append(bytes("a"));
+            log.append(bytes("b"));
+            log.append(bytes("c"));
+            log.commit(log.read(1));
+        }
+
+        try (MappedSegmentLog reopened = new MappedSegmentLog(dir, 1024, 0, false)) {
+            assertEquals(2, reopened.pendingRecords());
+            reopened.append(bytes("d"));
+
+            List<String> remaining = reopened.read(10).records().stream().map(MappedSegmentLogTest::text).toList();
+            assertEquals(List.of("b", "c", "d"), remaining);
+        }
+    }
+
+    @Test
+    void testTornRecordIsDiscardedOnReopen() throws Exception {
+        try (MappedSegmentLog log = new MappedSegmentLog(dir, 1024, 0, false)) {
+            log.append(bytes("complete"));
+            log.append(bytes("torn"));
+        }
+        // 破坏第二条记录的载荷，模拟写入中途崩溃
+        Path segment = Files.list(dir).filter(p -> p.toString().endsWith(".seg")).findFirst().orElseThrow();
+        byte[] content = Files.readAllBytes(segment);
+        content[8 + "complete".length() + 8] ^= 0x7F;
+        Files.write(segment, content);
+
+        try (MappedSegmentLog reopened = new MappedSegmentLog(dir, 1024, 0, false)) {
+            assertEquals(1, reopened.pendingRecords());
+            reopened.append(bytes("next"));
+            List<String> records = reopened.read(10).records().stream().map(MappedSegmentLogTest::text).toList();
+            assertEquals(List.of("complete", "next"), records);
+        }
+    }
+
+    @Test
+    void testAppendIsRejectedWhenSegmentLimitReached() throws Exception {
+        try (MappedSegmentLog log = new MappedSegmentLog(dir, 32, 2, false)) {
+            assertTrue(log.append(bytes("0123456789")));
+            assertTrue(log.append(bytes("0123456789")));
+            assertFalse(log.append(bytes("0123456789")));
+        }
+    }
+
+    @Test
+    void testBatchIsWrittenWhollyOrNotAtAll() throws Exception {
+        try (MappedSegmentLog log = new MappedSegmentLog(dir, 32, 2, false)) {
+            // 每段只放得下一条：三条需要三段，整组拒绝
+            assertFalse(log.appendAll(List.of(bytes("0123456789"), bytes("0123456789"), bytes("0123456789"))));
+            assertEquals(0, log.pendingRecords());
+            assertEquals(1, log.segmentCount());
+
+            assertTrue(log.appendAll(List.of(bytes("0123456789"), bytes("abcdefghij"))));
+            assertEquals(2, log.pendingRecords());
+            assertEquals(List.of("0123456789", "abcdefghij"),
+                    log.read(10).records().stream().map(MappedSegmentLogTest::text).toList());
+        }
+    }
+
+    private static byte[] bytes(String text) {
+        return text.getBytes(StandardCharsets.UTF_8);
+    }
+
+    private static String text(byte[] bytes) {
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,36 @@
+package com.github.analyticshub.util;
+
+import org.junit.jupiter.api.Test;
+
+import java.sql.Timestamp;
+import java.time.Instant;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/**
+ * COPY CSV 编码测试
+ */
+class PgCopyUtilsTest {
+
+    @Test
+    void testNullIsUnquotedAndEmptyStringIsQuoted() {
+        StringBuilder buffer = new StringBuilder();
+        PgCopyUtils.appendCsvRow(buffer, new Object[]{null, "", "a"});
+        assertEquals(",\"\",\"a\"\n", buffer.toString());
+    }
+
+    @Test
+    void testQuotesAndLineBreaksAreEscaped() {
+        StringBuilder buffer = new StringBuilder();
+        PgCopyUtils.appendCsvRow(buffer, new Object[]{"{\"k\":\"v,1\"}", "line1\nline2", 42L});
+        assertEquals("\"{\"\"k\"\":\"\"v,1\"\"}\",\"line1\nline2\",\"42\"\n", buffer.toString());
+    }
+
+    @Test
+    void testTimestampIsWrittenAsUtcInstant() {
+        StringBuilder buffer = new StringBuilder();
+        Instant instant = Instant.parse("2026-01-02T03:04:05.678Z");
+        PgCopyUtils.appendCsvRow(buffer, new Object[]{Timestamp.from(instant)});
+        assertEquals("\"2026-01-02T03:04:05.678Z\"\n", buffer.toString());
+    }
+}
@@ -0,0 +1,79 @@
+package com.github.analyticshub.util;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class TimeOrderedIdsTest {
+
+    @Test
+    void uuidHasVersion7LayoutAndCurrentTimestamp() {
+        long before = System.currentTimeMillis();
+        UUID uuid = TimeOrderedIds.nextUuid();
+
+        assertEquals(7, uuid.version());
+        assertEquals(2, uuid.variant());
+        assertTrue(TimeOrderedIds.timestampMillis(uuid) >= before);
+        assertTrue(TimeOrderedIds.timestampMillis(uuid) <= System.currentTimeMillis() + 1000);
+    }
+
+    @Test
+    void idsAreStrictlyIncreasingInBinaryAndTextOrder() {
+        UUID previous = TimeOrderedIds.nextUuid();
+        for (int i = 0; i < 100_000; i++) {
+            UUID current = TimeOrderedIds.nextUuid();
+            // 按无符号字节序（PostgreSQL uuid 比较方式）严格递增
+            assertTrue(Long.compareUnsigned(current.getMostSignificantBits(), previous.getMostSignificantBits()) > 0);
+            assertTrue(TimeOrderedIds.toBase32(current).compareTo(TimeOrderedIds.toBase32(previous)) > 0);
+            previous = current;
+        }
+    }
+
+    @Test
+    void prefixedIdUsesCrockfordBase32() {
+        String id = TimeOrderedIds.nextId("evt_");
+
+        assertEquals(30, id.length());
+        assertTrue(id.startsWith("evt_"));
+        assertTrue(id.substring(4).matches("[0-9A-HJKMNP-TV-Z]{26}"));
+    }
+
+    @Test
+    void base32EncodesAllBits() {
+        assertEquals("00000000000000000000000000", TimeOrderedIds.toBase32(new UUID(0, 0)));
+        assertEquals("7ZZZZZZZZZZZZZZZZZZZZZZZZZ", TimeOrderedIds.toBase32(new UUID(-1L, -1L)));
+        assertEquals("00000000000000000000000001", TimeOrderedIds.toBase32(new UUID(0, 1)));
+        assertEquals("0000000000000G000000000000", TimeOrderedIds.toBase32(new UUID(1, 0)));
+    }
+
+    @Test
+    void concurrentGenerationProducesUniqueIds() throws Exception {
+        int threads = 8;
+        int perThread = 20_000;
+        Set<UUID> ids = ConcurrentHashMap.newKeySet();
+        try (ExecutorService executor = Executors.newFixedThreadPool(threads)) {
+            List<Future<?>> futures = new ArrayList<>();
+            for (int t = 0; t < threads; t++) {
+                futures.add(executor.submit(() -> {
+                    for (int i = 0; i < perThread; i++) {
+                        ids.add(TimeOrderedIds.nextUuid());
+                    }
+                }));
+            }
+            for (Future<?> future : futures) {
+                future.get();
+            }
+        }
+        assertEquals(threads * perThread, ids.size());
+    }
+}